@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -96,15 +96,21 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 
 
 	public MessageHeaders(Map<String, Object> headers) {
-		this.headers = (headers != null) ? new HashMap<String, Object>(headers) : new HashMap<String, Object>();
-		if (MessageHeaders.idGenerator == null){
+		int size = (headers != null) ? headers.size() : 0;
+		// size the map for the copied headers plus id and timestamp, avoiding a rehash
+		this.headers = new HashMap<String, Object>((int) ((size + 2) / 0.75f) + 1);
+		if (size > 0) {
+			this.headers.putAll(headers);
+		}
+		IdGenerator idGenerator = MessageHeaders.idGenerator;
+		if (idGenerator == null){
 			this.headers.put(ID, UUID.randomUUID());
 		}
 		else {
-			this.headers.put(ID, MessageHeaders.idGenerator.generateId());
+			this.headers.put(ID, idGenerator.generateId());
 		}
 
-		this.headers.put(TIMESTAMP, new Long(System.currentTimeMillis()));
+		this.headers.put(TIMESTAMP, Long.valueOf(System.currentTimeMillis()));
 	}
 
 	public UUID getId() {
@@ -268,6 +274,11 @@ public final class MessageHeaders implements Map<String, Object>, Serializable {
 		in.defaultReadObject();
 	}
 
+	/**
+	 * Strategy for generating message ids; the default uses {@link UUID#randomUUID()}.
+	 * A faster alternative is provided by
+	 * {@link org.springframework.integration.util.AlternativeJdkIdGenerator}.
+	 */
 	public static interface IdGenerator {
 		UUID generateId();
 	}
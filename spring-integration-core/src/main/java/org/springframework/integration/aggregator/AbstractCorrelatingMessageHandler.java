@@ -34,7 +34,7 @@ import org.springframework.integration.store.MessageGroup;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.MessageGroupStore.MessageGroupCallback;
 import org.springframework.integration.store.MessageStore;
-import org.springframework.integration.store.SimpleMessageGroup;
+import org.springframework.integration.store.SequenceAwareMessageGroup;
 import org.springframework.integration.store.SimpleMessageStore;
 import org.springframework.integration.util.DefaultLockRegistry;
 import org.springframework.integration.util.LockRegistry;
@@ -113,7 +113,17 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 	}
 
 	public AbstractCorrelatingMessageHandler(MessageGroupProcessor processor) {
-		this(processor, new SimpleMessageStore(0), null, null);
+		this(processor, createDefaultMessageStore(), null, null);
+	}
+
+	/*
+	 * The default store is private to this handler and is only accessed while holding the group's lock,
+	 * so it can hand out its (mutable) groups without copying them.
+	 */
+	private static SimpleMessageStore createDefaultMessageStore() {
+		SimpleMessageStore store = new SimpleMessageStore(0);
+		store.setCopyOnGet(false);
+		return store;
 	}
 
 	public void setLockRegistry(LockRegistry lockRegistry) {
@@ -215,16 +225,13 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 		}
 
 		// TODO: INT-1117 - make the lock global?
-		Lock lock = this.lockRegistry.obtain(UUIDConverter.getUUID(correlationKey).toString());
+		Lock lock = this.lockRegistry.obtain(this.lockKey(correlationKey));
 
 		lock.lockInterruptibly();
 		try {
 			MessageGroup messageGroup = messageStore.getMessageGroup(correlationKey);
-			if (this.sequenceAware){
-				messageGroup = new SequenceAwareMessageGroup(messageGroup);
-			}
 
-			if (!messageGroup.isComplete() && messageGroup.canAdd(message)) {
+			if (!messageGroup.isComplete() && this.canAdd(messageGroup, message)) {
 				if (logger.isTraceEnabled()) {
 					logger.trace("Adding message to group [ " + messageGroup + "]");
 				}
@@ -261,8 +268,7 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 	private void forceComplete(MessageGroup group) {
 
 		Object correlationKey = group.getGroupId();
-		// UUIDConverter is no-op if already converted
-		Lock lock = this.lockRegistry.obtain(UUIDConverter.getUUID(correlationKey).toString());
+		Lock lock = this.lockRegistry.obtain(this.lockKey(correlationKey));
 		boolean removeGroup = true;
 		try {
 			lock.lockInterruptibly();
@@ -317,6 +323,57 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 		}
 	}
 
+	/**
+	 * Persistent stores may return groups whose id is the UUID-converted correlation key
+	 * (e.g. when expiring groups), so the lock key is normally derived with the
+	 * {@link UUIDConverter} (a no-op if already converted). A {@link SimpleMessageStore} always
+	 * retains the original key, so the (relatively expensive) conversion is not needed.
+	 */
+	private Object lockKey(Object correlationKey) {
+		if (this.messageStore instanceof SimpleMessageStore) {
+			return correlationKey;
+		}
+		return UUIDConverter.getUUID(correlationKey).toString();
+	}
+
+	/**
+	 * When sequence aware, determine whether messages have been added to the group that supersede the given
+	 * message based on its sequence id. This can be helpful to avoid ending up with sequences larger than their
+	 * required sequence size or sequences that are missing certain sequence numbers.
+	 */
+	private boolean canAdd(MessageGroup messageGroup, Message<?> message) {
+		if (!this.sequenceAware) {
+			return messageGroup.canAdd(message);
+		}
+		if (messageGroup.size() == 0) {
+			return true;
+		}
+		Integer messageSequenceNumber = message.getHeaders().getSequenceNumber();
+		if (messageSequenceNumber != null && messageSequenceNumber > 0) {
+			Integer messageSequenceSize = message.getHeaders().getSequenceSize();
+			if (!messageSequenceSize.equals(messageGroup.getSequenceSize())) {
+				return false;
+			}
+			else if (messageGroup instanceof SequenceAwareMessageGroup) {
+				return !((SequenceAwareMessageGroup) messageGroup).containsSequence(messageSequenceNumber);
+			}
+			else {
+				return !this.containsSequenceNumber(messageGroup.getMessages(), messageSequenceNumber);
+			}
+		}
+		return true;
+	}
+
+	private boolean containsSequenceNumber(Collection<Message<?>> messages, Integer messageSequenceNumber) {
+		for (Message<?> member : messages) {
+			Integer memberSequenceNumber = member.getHeaders().getSequenceNumber();
+			if (messageSequenceNumber.equals(memberSequenceNumber)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	void remove(MessageGroup group) {
 		Object correlationKey = group.getGroupId();
 		messageStore.removeMessageGroup(correlationKey);
@@ -432,43 +489,4 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageH
 		return false;
 	}
 
-	private static class SequenceAwareMessageGroup extends SimpleMessageGroup {
-
-		public SequenceAwareMessageGroup(MessageGroup messageGroup) {
-			super(messageGroup);
-		}
-
-		/**
-		 * This method determines whether messages have been added to this group that supersede the given message based on
-		 * its sequence id. This can be helpful to avoid ending up with sequences larger than their required sequence size
-		 * or sequences that are missing certain sequence numbers.
-		 */
-		@Override
-		public boolean canAdd(Message<?> message) {
-			if (this.size() == 0) {
-				return true;
-			}
-			Integer messageSequenceNumber = message.getHeaders().getSequenceNumber();
-			if (messageSequenceNumber != null && messageSequenceNumber > 0) {
-				Integer messageSequenceSize = message.getHeaders().getSequenceSize();
-				if (!messageSequenceSize.equals(this.getSequenceSize())) {
-					return false;
-				}
-				else {
-					return !this.containsSequenceNumber(this.getMessages(), messageSequenceNumber);
-				}
-			}
-			return true;
-		}
-
-		private boolean containsSequenceNumber(Collection<Message<?>> messages, Integer messageSequenceNumber) {
-			for (Message<?> member : messages) {
-				Integer memberSequenceNumber = member.getHeaders().getSequenceNumber();
-				if (messageSequenceNumber.equals(memberSequenceNumber)) {
-					return true;
-				}
-			}
-			return false;
-		}
-	}
 }
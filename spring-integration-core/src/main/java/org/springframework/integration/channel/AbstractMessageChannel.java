@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.integration.channel;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -30,6 +31,8 @@ import org.springframework.integration.MessageDeliveryException;
 import org.springframework.integration.MessagingException;
 import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.history.MessageHistory;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.util.Assert;
@@ -44,14 +47,22 @@ import org.springframework.util.StringUtils;
  * @author Mark Fisher
  * @author Oleg Zhurakousky
  */
-public abstract class AbstractMessageChannel extends IntegrationObjectSupport implements MessageChannel, TrackableComponent {
+public abstract class AbstractMessageChannel extends IntegrationObjectSupport implements MessageChannel, TrackableComponent,
+		MessageHistorySamplerAware {
 
 	protected final Log logger = LogFactory.getLog(this.getClass());
 
 	private volatile boolean shouldTrack = false;
 
+	private volatile MessageHistorySampler messageHistorySampler;
+
 	private volatile Class<?>[] datatypes = new Class<?>[] { Object.class };
 
+	/**
+	 * True when any payload type is accepted, so that no conversion check is needed.
+	 */
+	private volatile boolean anyDatatype = true;
+
 	private final ChannelInterceptorList interceptors = new ChannelInterceptorList();
 
 
@@ -63,6 +74,10 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 		this.shouldTrack = shouldTrack;
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.messageHistorySampler = sampler;
+	}
+
 	/**
 	 * Specify the Message payload datatype(s) supported by this channel. If a
 	 * payload type does not match directly, but the 'conversionService' is
@@ -74,8 +89,10 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 	 * @see #setConversionService(ConversionService)
 	 */
 	public void setDatatypes(Class<?>... datatypes) {
-		this.datatypes = (datatypes != null && datatypes.length > 0)
+		Class<?>[] datatypesToUse = (datatypes != null && datatypes.length > 0)
 				? datatypes : new Class<?>[] { Object.class };
+		this.anyDatatype = Arrays.asList(datatypesToUse).contains(Object.class);
+		this.datatypes = datatypesToUse;
 	}
 
 	/**
@@ -146,9 +163,11 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 		Assert.notNull(message, "message must not be null");
 		Assert.notNull(message.getPayload(), "message payload must not be null");
 		if (this.shouldTrack) {
-			message = MessageHistory.write(message, this);
+			message = MessageHistory.write(message, this, this.messageHistorySampler);
+		}
+		if (!this.anyDatatype) {
+			message = this.convertPayloadIfNecessary(message);
 		}
-		message = this.convertPayloadIfNecessary(message);
 		message = this.interceptors.preSend(message, this);
 		if (message == null) {
 			return false;
@@ -201,7 +220,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 
 
 	/**
-	 * A convenience wrapper class for the list of ChannelInterceptors.
+	 * A convenience wrapper class for the list of ChannelInterceptors. An empty
+	 * list is detected without creating an iterator so that an unintercepted
+	 * channel pays nothing for the interceptor support.
 	 */
 	protected class ChannelInterceptorList {
 
@@ -223,6 +244,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			if (logger.isDebugEnabled()) {
 				logger.debug("preSend on channel '" + channel + "', message: " + message);
 			}
+			if (this.interceptors.isEmpty()) {
+				return message;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				message = interceptor.preSend(message, channel);
 				if (message == null) {
@@ -236,6 +260,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			if (logger.isDebugEnabled()) {
 				logger.debug("postSend (sent=" + sent + ") on channel '" + channel + "', message: " + message);
 			}
+			if (this.interceptors.isEmpty()) {
+				return;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				interceptor.postSend(message, channel, sent);
 			}
@@ -245,6 +272,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			if (logger.isTraceEnabled()) {
 				logger.trace("preReceive on channel '" + channel + "'");
 			}
+			if (this.interceptors.isEmpty()) {
+				return true;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				if (!interceptor.preReceive(channel)) {
 					return false;
@@ -260,6 +290,9 @@ public abstract class AbstractMessageChannel extends IntegrationObjectSupport im
 			else if (logger.isTraceEnabled()) {
 				logger.trace("postReceive on channel '" + channel + "', message is null");
 			}
+			if (this.interceptors.isEmpty()) {
+				return message;
+			}
 			for (ChannelInterceptor interceptor : interceptors) {
 				message = interceptor.postReceive(message, channel);
 				if (message == null) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -44,6 +44,10 @@ public class PublishSubscribeChannel extends AbstractSubscribableChannel {
 
 	private volatile int maxSubscribers = Integer.MAX_VALUE;
 
+	private volatile int requiredSuccesses;
+
+	private volatile long gatherTimeout = -1;
+
 	@Override
 	public String getComponentType(){
 		return "publish-subscribe-channel";
@@ -116,6 +120,32 @@ public class PublishSubscribeChannel extends AbstractSubscribableChannel {
 		this.maxSubscribers = maxSubscribers;
 		this.getDispatcher().setMaxSubscribers(maxSubscribers);
 	}
+
+	/**
+	 * Specify the number of subscribers that must successfully handle a message before
+	 * a send returns (scatter-gather); a negative value means all subscribers. Requires
+	 * an Executor, so that the subscribers are invoked in parallel. Default 0 - the send
+	 * does not wait for the subscribers.
+	 * @param requiredSuccesses the number of successful subscribers to wait for.
+	 * @since 3.0
+	 * @see BroadcastingDispatcher#setRequiredSuccesses(int)
+	 */
+	public void setRequiredSuccesses(int requiredSuccesses) {
+		this.requiredSuccesses = requiredSuccesses;
+		this.getDispatcher().setRequiredSuccesses(requiredSuccesses);
+	}
+
+	/**
+	 * Specify the maximum time (in milliseconds) a send waits for the required number of
+	 * subscribers to succeed. Default -1 (indefinitely).
+	 * @param gatherTimeout the timeout.
+	 * @since 3.0
+	 */
+	public void setGatherTimeout(long gatherTimeout) {
+		this.gatherTimeout = gatherTimeout;
+		this.getDispatcher().setGatherTimeout(gatherTimeout);
+	}
+
 	/**
 	 * Callback method for initialization.
 	 */
@@ -133,6 +163,8 @@ public class PublishSubscribeChannel extends AbstractSubscribableChannel {
 			this.dispatcher.setIgnoreFailures(this.ignoreFailures);
 			this.dispatcher.setApplySequence(this.applySequence);
 			this.dispatcher.setMaxSubscribers(this.maxSubscribers);
+			this.dispatcher.setRequiredSuccesses(this.requiredSuccesses);
+			this.dispatcher.setGatherTimeout(this.gatherTimeout);
 		}
 	}
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -67,6 +67,7 @@ public class DelayerParser extends AbstractConsumerEndpointParser {
 		}
 
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "message-store");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "timer");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "send-timeout");
 
 		Element txElement = DomUtils.getChildElementByTagName(element, "transactional");
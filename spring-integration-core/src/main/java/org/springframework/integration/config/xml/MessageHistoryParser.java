@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -56,6 +56,7 @@ public class MessageHistoryParser extends AbstractSimpleBeanDefinitionParser {
 	
 	protected void doParse(Element element, ParserContext parserContext, BeanDefinitionBuilder builder) {
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "tracked-components", "componentNamePatterns");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "sample-rate");
 		postProcess(builder, element);
 	}
 
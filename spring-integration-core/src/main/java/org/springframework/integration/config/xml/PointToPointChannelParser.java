@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,6 +27,7 @@ import org.springframework.integration.channel.PriorityChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.channel.RendezvousChannel;
 import org.springframework.integration.store.MessageGroupQueue;
+import org.springframework.integration.util.RingBufferBlockingQueue;
 import org.springframework.util.StringUtils;
 import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Element;
@@ -53,7 +54,21 @@ public class PointToPointChannelParser extends AbstractChannelParser {
 			builder = BeanDefinitionBuilder.genericBeanDefinition(QueueChannel.class);
 			boolean hasStoreRef = this.parseStoreRef(builder, queueElement, element.getAttribute(ID_ATTRIBUTE));
 			boolean hasQueueRef = this.parseQueueRef(builder, queueElement);
-			if (!hasStoreRef) {
+			boolean hasWaitStrategy = StringUtils.hasText(queueElement.getAttribute("wait-strategy"));
+			if (hasWaitStrategy) {
+				if (hasStoreRef || hasQueueRef) {
+					parserContext.getReaderContext().error("The 'wait-strategy' attribute is not allowed"
+							+ " when providing a 'ref' to a custom queue or a 'message-store'.", element);
+				}
+				else if (!StringUtils.hasText(queueElement.getAttribute("capacity"))) {
+					parserContext.getReaderContext().error(
+							"The 'capacity' attribute is required with 'wait-strategy'.", element);
+				}
+				else {
+					this.parseRingBuffer(builder, queueElement);
+				}
+			}
+			else if (!hasStoreRef) {
 				boolean hasCapacity = this.parseQueueCapacity(builder, queueElement);
 				if (hasCapacity && hasQueueRef) {
 					parserContext.getReaderContext().error(
@@ -168,6 +183,13 @@ public class PointToPointChannelParser extends AbstractChannelParser {
 		return false;
 	}
 
+	private void parseRingBuffer(BeanDefinitionBuilder builder, Element queueElement) {
+		BeanDefinitionBuilder queueBuilder = BeanDefinitionBuilder.genericBeanDefinition(RingBufferBlockingQueue.class);
+		queueBuilder.addConstructorArgValue(queueElement.getAttribute("capacity"));
+		queueBuilder.addConstructorArgValue(queueElement.getAttribute("wait-strategy"));
+		builder.addConstructorArgValue(queueBuilder.getBeanDefinition());
+	}
+
 	private boolean parseStoreRef(BeanDefinitionBuilder builder, Element queueElement, String channel) {
 		String storeRef = queueElement.getAttribute("message-store");
 		if (StringUtils.hasText(storeRef)) {
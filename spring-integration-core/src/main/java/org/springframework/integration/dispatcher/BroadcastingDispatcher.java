@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,8 +18,10 @@ package org.springframework.integration.dispatcher;
 
 import java.util.Collection;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageDeliveryException;
 import org.springframework.integration.MessageDispatchingException;
 import org.springframework.integration.MessagingException;
 import org.springframework.integration.core.MessageHandler;
@@ -34,6 +36,11 @@ import org.springframework.integration.support.MessageBuilder;
  * If the 'ignoreFailures' flag is set to <code>true</code> on the other hand, it will make a best effort to send the
  * message to each of its handlers. In other words, when 'ignoreFailures' is <code>true</code>, if it fails to send to
  * any one handler, it will simply log a warn-level message but continue to send the Message to any other handlers.
+ * <p>
+ * When an Executor is provided and 'requiredSuccesses' is set, the dispatcher performs a scatter-gather: the
+ * handlers are invoked in parallel and {@link #dispatch(Message)} waits (up to the 'gatherTimeout') until the
+ * required number of handlers have handled the Message successfully, so the time taken is that of the slowest
+ * required handler rather than the sum of all of them.
  *
  * @author Mark Fisher
  * @author Iwein Fuld
@@ -48,6 +55,10 @@ public class BroadcastingDispatcher extends AbstractDispatcher {
 
 	private volatile boolean applySequence;
 
+	private volatile int requiredSuccesses;
+
+	private volatile long gatherTimeout = -1;
+
 	private final Executor executor;
 
 	public BroadcastingDispatcher() {
@@ -89,6 +100,32 @@ public class BroadcastingDispatcher extends AbstractDispatcher {
 		this.applySequence = applySequence;
 	}
 
+	/**
+	 * When an Executor is provided, specify the number of handlers that must successfully handle a Message
+	 * before {@link #dispatch(Message)} returns; a negative value means all handlers. If the required number
+	 * of handlers has not succeeded when all handlers have completed (or when it can no longer be reached,
+	 * or the 'gatherTimeout' expires), a {@link MessageDeliveryException} reporting the outcome and latency
+	 * of each handler is thrown, unless 'ignoreFailures' is <code>true</code>. A handler failure is reported
+	 * in this way rather than to the Executor's error handler. Default 0 - do not wait for the handlers.
+	 * Has no effect without an Executor.
+	 * @param requiredSuccesses the number of successful handlers to wait for.
+	 * @since 3.0
+	 */
+	public void setRequiredSuccesses(int requiredSuccesses) {
+		this.requiredSuccesses = requiredSuccesses;
+	}
+
+	/**
+	 * Specify the maximum time (in milliseconds) to wait for the required number of handlers to succeed; a
+	 * negative value means wait indefinitely (default).
+	 * @param gatherTimeout the timeout.
+	 * @since 3.0
+	 * @see #setRequiredSuccesses(int)
+	 */
+	public void setGatherTimeout(long gatherTimeout) {
+		this.gatherTimeout = gatherTimeout;
+	}
+
 	public boolean dispatch(Message<?> message) {
 		boolean dispatched = false;
 		int sequenceNumber = 1;
@@ -96,6 +133,9 @@ public class BroadcastingDispatcher extends AbstractDispatcher {
 		if (this.requireSubscribers && handlers.size() == 0) {
 			throw new MessageDispatchingException(message, "Dispatcher has no subscribers");
 		}
+		if (this.executor != null && this.requiredSuccesses != 0 && handlers.size() > 0) {
+			return this.scatterGather(message, handlers);
+		}
 		int sequenceSize = handlers.size();
 		for (final MessageHandler handler : handlers) {
 			final Message<?> messageToSend = (!this.applySequence) ? message : MessageBuilder.fromMessage(message)
@@ -116,6 +156,55 @@ public class BroadcastingDispatcher extends AbstractDispatcher {
 		return dispatched;
 	}
 
+	private boolean scatterGather(Message<?> message, Collection<MessageHandler> handlers) {
+		int sequenceSize = handlers.size();
+		int required = (this.requiredSuccesses < 0) ? sequenceSize : Math.min(this.requiredSuccesses, sequenceSize);
+		final Gatherer gatherer = new Gatherer(handlers.toArray(new MessageHandler[sequenceSize]), required);
+		for (int i = 0; i < sequenceSize; i++) {
+			final int index = i;
+			final MessageHandler handler = gatherer.handlers[i];
+			final Message<?> messageToSend = (!this.applySequence) ? message : MessageBuilder.fromMessage(message)
+					.pushSequenceDetails(message.getHeaders().getId(), i + 1, sequenceSize).build();
+			try {
+				this.executor.execute(new Runnable() {
+					public void run() {
+						try {
+							handler.handleMessage(messageToSend);
+							gatherer.completed(index, null);
+						}
+						catch (RuntimeException e) {
+							gatherer.completed(index, e);
+						}
+						catch (Error e) {
+							gatherer.completed(index, e);
+							throw e;
+						}
+					}
+				});
+			}
+			catch (RuntimeException e) {
+				// e.g. a bounded executor rejected the task
+				gatherer.completed(index, e);
+			}
+		}
+		boolean succeeded = gatherer.await(this.gatherTimeout);
+		if (succeeded) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Scatter-gather succeeded for " + message + ": " + gatherer);
+			}
+			return true;
+		}
+		String description = "Scatter-gather failed; " + gatherer.getSuccesses() + " of " + required
+				+ " required handlers succeeded: " + gatherer;
+		if (this.ignoreFailures) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("Suppressing failure since 'ignoreFailures' is set to TRUE. " + description);
+			}
+			return gatherer.getSuccesses() > 0;
+		}
+		throw new MessageDeliveryException(message, description, gatherer.getFirstFailure());
+	}
+
 	private boolean invokeHandler(MessageHandler handler, Message<?> message) {
 		try {
 			handler.handleMessage(message);
@@ -135,4 +224,116 @@ public class BroadcastingDispatcher extends AbstractDispatcher {
 		}
 	}
 
+
+	/**
+	 * Tracks the outcome and latency of each handler in a scatter-gather.
+	 */
+	private static class Gatherer {
+
+		private final MessageHandler[] handlers;
+
+		private final int required;
+
+		private final long start = System.nanoTime();
+
+		private final long[] latencies;
+
+		private final Throwable[] failures;
+
+		private int successes;
+
+		private int completions;
+
+		private Throwable firstFailure;
+
+		private Gatherer(MessageHandler[] handlers, int required) {
+			this.handlers = handlers;
+			this.required = required;
+			this.latencies = new long[handlers.length];
+			this.failures = new Throwable[handlers.length];
+			for (int i = 0; i < this.latencies.length; i++) {
+				this.latencies[i] = -1;
+			}
+		}
+
+		private synchronized void completed(int index, Throwable failure) {
+			this.latencies[index] = System.nanoTime() - this.start;
+			if (failure == null) {
+				this.successes++;
+			}
+			else {
+				this.failures[index] = failure;
+				if (this.firstFailure == null) {
+					this.firstFailure = failure;
+				}
+			}
+			this.completions++;
+			if (this.isDone()) {
+				this.notifyAll();
+			}
+		}
+
+		/*
+		 * Done when enough handlers have succeeded, or too many have failed for that to happen.
+		 */
+		private boolean isDone() {
+			return this.successes >= this.required
+					|| this.completions - this.successes > this.handlers.length - this.required;
+		}
+
+		private synchronized boolean await(long timeout) {
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				while (!this.isDone()) {
+					if (timeout < 0) {
+						this.wait();
+					}
+					else {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							break;
+						}
+						this.wait(remaining);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return this.successes >= this.required;
+		}
+
+		private synchronized int getSuccesses() {
+			return this.successes;
+		}
+
+		private synchronized Throwable getFirstFailure() {
+			return this.firstFailure;
+		}
+
+		@Override
+		public synchronized String toString() {
+			StringBuilder builder = new StringBuilder("[");
+			for (int i = 0; i < this.handlers.length; i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				builder.append(this.handlers[i]).append(": ");
+				if (this.latencies[i] < 0) {
+					builder.append("pending after ")
+							.append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start)).append("ms");
+				}
+				else {
+					builder.append(this.failures[i] == null ? "succeeded in " : "failed in ")
+							.append(TimeUnit.NANOSECONDS.toMillis(this.latencies[i])).append("ms");
+					if (this.failures[i] != null) {
+						builder.append(" (").append(this.failures[i]).append(")");
+					}
+				}
+			}
+			return builder.append("]").toString();
+		}
+
+	}
+
 }
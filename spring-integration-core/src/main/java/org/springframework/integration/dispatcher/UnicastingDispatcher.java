@@ -1,4 +1,4 @@
-/* Copyright 2002-2012 the original author or authors.
+/* Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,9 +19,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageDeliveryException;
@@ -52,7 +49,7 @@ import org.springframework.integration.core.MessageHandler;
 public class UnicastingDispatcher extends AbstractDispatcher {
 
 	private volatile boolean failover = true;
-	private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+
 	private volatile LoadBalancingStrategy loadBalancingStrategy;
 
 	private final Executor executor;
@@ -80,14 +77,7 @@ public class UnicastingDispatcher extends AbstractDispatcher {
 	 * Provide a {@link LoadBalancingStrategy} for this dispatcher.
 	 */
 	public void setLoadBalancingStrategy(LoadBalancingStrategy loadBalancingStrategy) {
-		Lock lock = rwLock.writeLock();
-		lock.lock();
-		try {
-			this.loadBalancingStrategy = loadBalancingStrategy;
-		}
-		finally {
-			lock.unlock();
-		}
+		this.loadBalancingStrategy = loadBalancingStrategy;
 	}
 
 	public final boolean dispatch(final Message<?> message) {
@@ -103,12 +93,30 @@ public class UnicastingDispatcher extends AbstractDispatcher {
 	}
 
 	private boolean doDispatch(Message<?> message) {
+		LoadBalancingStrategy loadBalancingStrategy = this.loadBalancingStrategy;
+		if (loadBalancingStrategy == null || loadBalancingStrategy instanceof RoundRobinLoadBalancingStrategy) {
+			// the handler set is copy-on-write; its iterator is a snapshot
+			Iterator<MessageHandler> handlers = this.getHandlers().iterator();
+			if (handlers.hasNext()) {
+				MessageHandler handler = handlers.next();
+				if (!handlers.hasNext()) {
+					// a single subscriber: no load balancing or failover is possible
+					try {
+						handler.handleMessage(message);
+						return true;
+					}
+					catch (Exception e) {
+						throw this.wrapExceptionIfNecessary(message, e);
+					}
+				}
+			}
+		}
 		boolean success = false;
-		Iterator<MessageHandler> handlerIterator = this.getHandlerIterator(message);
+		Iterator<MessageHandler> handlerIterator = this.getHandlerIterator(message, loadBalancingStrategy);
 		if (!handlerIterator.hasNext()) {
 			throw new MessageDispatchingException(message, "Dispatcher has no subscribers");
 		}
-		List<RuntimeException> exceptions = new ArrayList<RuntimeException>();
+		List<RuntimeException> exceptions = null;
 		while (success == false && handlerIterator.hasNext()) {
 			MessageHandler handler = handlerIterator.next();
 			try {
@@ -116,35 +124,36 @@ public class UnicastingDispatcher extends AbstractDispatcher {
 				success = true; // we have a winner.
 			}
 			catch (Exception e) {
-				RuntimeException runtimeException = (e instanceof RuntimeException)
-						? (RuntimeException) e
-						: new MessageDeliveryException(message,
-								"Dispatcher failed to deliver Message.", e);
-				if (e instanceof MessagingException &&
-						((MessagingException) e).getFailedMessage() == null) {
-					((MessagingException) e).setFailedMessage(message);
+				if (exceptions == null) {
+					exceptions = new ArrayList<RuntimeException>();
 				}
-				exceptions.add(runtimeException);
+				exceptions.add(this.wrapExceptionIfNecessary(message, e));
 				this.handleExceptions(exceptions, message, !handlerIterator.hasNext());
 			}
 		}
 		return success;
 	}
 
+	private RuntimeException wrapExceptionIfNecessary(Message<?> message, Exception e) {
+		RuntimeException runtimeException = (e instanceof RuntimeException)
+				? (RuntimeException) e
+				: new MessageDeliveryException(message,
+						"Dispatcher failed to deliver Message.", e);
+		if (e instanceof MessagingException &&
+				((MessagingException) e).getFailedMessage() == null) {
+			((MessagingException) e).setFailedMessage(message);
+		}
+		return runtimeException;
+	}
+
 	/**
 	 * Returns the iterator that will be used to loop over the handlers.
 	 * Delegates to a {@link LoadBalancingStrategy} if available. Otherwise,
 	 * it simply returns the Iterator for the existing handler List.
 	 */
-	private Iterator<MessageHandler> getHandlerIterator(Message<?> message) {
-		Lock lock = rwLock.readLock();
-		lock.lock();
-		try {
-			if (this.loadBalancingStrategy != null) {
-				return this.loadBalancingStrategy.getHandlerIterator(message, this.getHandlers());
-			}
-		} finally {
-			lock.unlock();
+	private Iterator<MessageHandler> getHandlerIterator(Message<?> message, LoadBalancingStrategy loadBalancingStrategy) {
+		if (loadBalancingStrategy != null) {
+			return loadBalancingStrategy.getHandlerIterator(message, this.getHandlers());
 		}
 		return this.getHandlers().iterator();
 	}
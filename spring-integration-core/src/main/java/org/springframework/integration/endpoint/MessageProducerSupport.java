@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,6 +23,8 @@ import org.springframework.integration.MessagingException;
 import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.core.MessagingTemplate;
 import org.springframework.integration.history.MessageHistory;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.integration.message.ErrorMessage;
 import org.springframework.util.Assert;
@@ -33,7 +35,8 @@ import org.springframework.util.Assert;
  * 
  * @author Mark Fisher
  */
-public abstract class MessageProducerSupport extends AbstractEndpoint implements MessageProducer, TrackableComponent {
+public abstract class MessageProducerSupport extends AbstractEndpoint implements MessageProducer, TrackableComponent,
+		MessageHistorySamplerAware {
 
 	private volatile MessageChannel outputChannel;
 
@@ -41,6 +44,8 @@ public abstract class MessageProducerSupport extends AbstractEndpoint implements
 
 	private volatile boolean shouldTrack = false;
 
+	private volatile MessageHistorySampler messageHistorySampler;
+
 	private final MessagingTemplate messagingTemplate = new MessagingTemplate();
 
 
@@ -60,6 +65,10 @@ public abstract class MessageProducerSupport extends AbstractEndpoint implements
 		this.shouldTrack = shouldTrack;
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.messageHistorySampler = sampler;
+	}
+
 	@Override
 	protected void onInit() {
 		Assert.notNull(this.outputChannel, "outputChannel is required");
@@ -86,7 +95,7 @@ public abstract class MessageProducerSupport extends AbstractEndpoint implements
 			throw new MessagingException("cannot send a null message");
 		}
 		if (this.shouldTrack) {
-			message = MessageHistory.write(message, this);
+			message = MessageHistory.write(message, this, this.messageHistorySampler);
 		}
 		try {
 			this.messagingTemplate.send(this.outputChannel, message);
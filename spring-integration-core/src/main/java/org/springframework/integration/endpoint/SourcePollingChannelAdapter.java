@@ -23,6 +23,8 @@ import org.springframework.integration.context.NamedComponent;
 import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.core.MessagingTemplate;
 import org.springframework.integration.history.MessageHistory;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.integration.transaction.IntegrationResourceHolder;
 import org.springframework.util.Assert;
@@ -36,7 +38,7 @@ import org.springframework.util.Assert;
  * @author Gary Russell
  */
 public class SourcePollingChannelAdapter extends AbstractPollingEndpoint
-		implements TrackableComponent {
+		implements TrackableComponent, MessageHistorySamplerAware {
 
 	private volatile MessageSource<?> source;
 
@@ -44,6 +46,8 @@ public class SourcePollingChannelAdapter extends AbstractPollingEndpoint
 
 	private volatile boolean shouldTrack;
 
+	private volatile MessageHistorySampler messageHistorySampler;
+
 	private final MessagingTemplate messagingTemplate = new MessagingTemplate();
 
 	/**
@@ -75,6 +79,10 @@ public class SourcePollingChannelAdapter extends AbstractPollingEndpoint
 		this.shouldTrack = shouldTrack;
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.messageHistorySampler = sampler;
+	}
+
 	@Override
 	public String getComponentType() {
 		return (this.source instanceof NamedComponent) ?
@@ -91,7 +99,7 @@ public class SourcePollingChannelAdapter extends AbstractPollingEndpoint
 	@Override
 	protected void handleMessage(Message<?> message) {
 		if (this.shouldTrack) {
-			message = MessageHistory.write(message, this);
+			message = MessageHistory.write(message, this, this.messageHistorySampler);
 		}
 		try {
 			this.messagingTemplate.send(this.outputChannel, message);
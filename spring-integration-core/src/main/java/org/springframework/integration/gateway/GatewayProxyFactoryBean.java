@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -47,9 +47,12 @@ import org.springframework.integration.annotation.Gateway;
 import org.springframework.integration.annotation.Payload;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.endpoint.AbstractEndpoint;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.integration.support.channel.BeanFactoryChannelResolver;
 import org.springframework.integration.support.channel.ChannelResolver;
+import org.springframework.integration.util.HashedWheelTimer;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
@@ -68,7 +71,8 @@ import org.springframework.util.StringUtils;
  * @author Oleg Zhurakousky
  * @author Gary Russell
  */
-public class GatewayProxyFactoryBean extends AbstractEndpoint implements TrackableComponent, FactoryBean<Object>, MethodInterceptor, BeanClassLoaderAware {
+public class GatewayProxyFactoryBean extends AbstractEndpoint implements TrackableComponent,
+		MessageHistorySamplerAware, FactoryBean<Object>, MethodInterceptor, BeanClassLoaderAware {
 
 	private volatile Class<?> serviceInterface;
 
@@ -86,6 +90,8 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 
 	private volatile boolean shouldTrack = false;
 
+	private volatile MessageHistorySampler messageHistorySampler;
+
 	private volatile TypeConverter typeConverter = new SimpleTypeConverter();
 
 	private volatile ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
@@ -96,6 +102,10 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 
 	private volatile AsyncTaskExecutor asyncExecutor = new SimpleAsyncTaskExecutor();
 
+	private volatile boolean asyncReplies;
+
+	private volatile HashedWheelTimer replyTimer;
+
 	private volatile boolean initialized;
 
 	private final Object initializationMonitor = new Object();
@@ -189,12 +199,41 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		}
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.messageHistorySampler = sampler;
+		if (!CollectionUtils.isEmpty(this.gatewayMap)) {
+			for (MethodInvocationGateway gateway : this.gatewayMap.values()) {
+				gateway.setMessageHistorySampler(sampler);
+			}
+		}
+	}
+
 	public void setAsyncExecutor(Executor executor) {
 		Assert.notNull(executor, "executor must not be null");
 		this.asyncExecutor = (executor instanceof AsyncTaskExecutor) ? (AsyncTaskExecutor) executor
 				: new TaskExecutorAdapter(executor);
 	}
 
+	/**
+	 * When true, methods with a {@link Future} return type send the request on the
+	 * calling thread and return a {@link Future} that is completed when the reply
+	 * arrives, instead of using a thread from the async executor to wait for the reply.
+	 * Reply timeouts are driven by a timer shared by the gateway's methods, which is
+	 * stopped when the gateway is stopped; a timed out {@link Future} throws an
+	 * {@link java.util.concurrent.ExecutionException} caused by a
+	 * {@link org.springframework.integration.MessageTimeoutException}. The error flow
+	 * of a failed request runs on the async executor. Note that
+	 * the calling thread performs the send, so the request channel should hand off the
+	 * message (for example a queue or executor channel) to avoid blocking the caller
+	 * while the request is processed. Default false.
+	 *
+	 * @param asyncReplies true to complete futures directly from the reply.
+	 * @since 3.0
+	 */
+	public void setAsyncReplies(boolean asyncReplies) {
+		this.asyncReplies = asyncReplies;
+	}
+
 	public void setTypeConverter(TypeConverter typeConverter) {
 		Assert.notNull(typeConverter, "typeConverter must not be null");
 		this.typeConverter = typeConverter;
@@ -218,6 +257,9 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 			if (this.channelResolver == null && beanFactory != null) {
 				this.channelResolver = new BeanFactoryChannelResolver(beanFactory);
 			}
+			if (this.asyncReplies && this.getTaskScheduler() != null) {
+				this.replyTimer = new HashedWheelTimer(this.getTaskScheduler());
+			}
 			Class<?> proxyInterface = this.determineServiceInterface();
 			Method[] methods = ReflectionUtils.getAllDeclaredMethods(proxyInterface);
 			for (Method method : methods) {
@@ -254,7 +296,9 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 	}
 
 	public Object invoke(final MethodInvocation invocation) throws Throwable {
-		if (Future.class.isAssignableFrom(invocation.getMethod().getReturnType())) {
+		Method method = invocation.getMethod();
+		if (Future.class.isAssignableFrom(method.getReturnType())
+				&& !(this.asyncReplies && this.hasRequest(method))) {
 			return this.asyncExecutor.submit(new AsyncInvocationTask(invocation));
 		}
 		return this.doInvoke(invocation);
@@ -284,15 +328,8 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		boolean shouldReturnMessage = Message.class.isAssignableFrom(returnType)
 				|| hasFutureParameterizedWithMessage(method);
 		boolean shouldReply = returnType != void.class;
-		int paramCount = method.getParameterTypes().length;
 		Object response = null;
-		boolean hasPayloadExpression = method.isAnnotationPresent(Payload.class);
-		if (!hasPayloadExpression && this.methodMetadataMap != null) {
-			// check for the method metadata next
-			GatewayMethodMetadata metadata = this.methodMetadataMap.get(method.getName());
-			hasPayloadExpression = (metadata != null) && StringUtils.hasText(metadata.getPayloadExpression());
-		}
-		if (paramCount == 0 && !hasPayloadExpression) {
+		if (!this.hasRequest(method)) {
 			if (shouldReply) {
 				if (shouldReturnMessage) {
 					return gateway.receive();
@@ -302,7 +339,10 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		}
 		else {
 			Object[] args = invocation.getArguments();
-			if (shouldReply) {
+			if (this.asyncReplies && Future.class.isAssignableFrom(returnType)) {
+				return shouldReturnMessage ? gateway.sendAndReceiveMessageAsync(args) : gateway.sendAndReceiveAsync(args);
+			}
+			else if (shouldReply) {
 				response = shouldReturnMessage ? gateway.sendAndReceiveMessage(args) : gateway.sendAndReceive(args);
 			}
 			else {
@@ -313,6 +353,18 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		return (response != null) ? this.convert(response, returnType) : null;
 	}
 
+	private boolean hasRequest(Method method) {
+		if (method.getParameterTypes().length > 0 || method.isAnnotationPresent(Payload.class)) {
+			return true;
+		}
+		if (this.methodMetadataMap != null) {
+			// check for the method metadata next
+			GatewayMethodMetadata metadata = this.methodMetadataMap.get(method.getName());
+			return (metadata != null) && StringUtils.hasText(metadata.getPayloadExpression());
+		}
+		return false;
+	}
+
 	private void rethrowExceptionCauseIfPossible(Throwable originalException, Method method) throws Throwable {
 		Class<?>[] exceptionTypes = method.getExceptionTypes();
 		Throwable t = originalException;
@@ -397,6 +449,10 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		if (this.getTaskScheduler() != null) {
 			gateway.setTaskScheduler(this.getTaskScheduler());
 		}
+		if (this.replyTimer != null) {
+			gateway.setReplyTimer(this.replyTimer);
+		}
+		gateway.setAsyncExecutor(this.asyncExecutor);
 		gateway.setBeanName(this.getComponentName());
 		gateway.setRequestChannel(requestChannel);
 		gateway.setReplyChannel(replyChannel);
@@ -417,6 +473,7 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		}
 		if (this.shouldTrack) {
 			gateway.setShouldTrack(this.shouldTrack);
+			gateway.setMessageHistorySampler(this.messageHistorySampler);
 		}
 		gateway.afterPropertiesSet();
 		return gateway;
@@ -443,6 +500,10 @@ public class GatewayProxyFactoryBean extends AbstractEndpoint implements Trackab
 		for (MethodInvocationGateway gateway : this.gatewayMap.values()) {
 			gateway.stop();
 		}
+		if (this.replyTimer != null) {
+			// restarted if a reply is timed out again
+			this.replyTimer.stop();
+		}
 	}
 
 	@SuppressWarnings("unchecked")
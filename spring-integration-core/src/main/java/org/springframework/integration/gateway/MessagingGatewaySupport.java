@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,22 @@
 
 package org.springframework.integration.gateway;
 
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.integration.MessageHeaders;
+import org.springframework.integration.MessageTimeoutException;
 import org.springframework.integration.MessagingException;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.core.MessagingTemplate;
@@ -28,12 +42,16 @@ import org.springframework.integration.endpoint.EventDrivenConsumer;
 import org.springframework.integration.endpoint.PollingConsumer;
 import org.springframework.integration.handler.BridgeHandler;
 import org.springframework.integration.history.HistoryWritingMessagePostProcessor;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.integration.mapping.InboundMessageMapper;
 import org.springframework.integration.mapping.OutboundMessageMapper;
 import org.springframework.integration.message.ErrorMessage;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.support.converter.SimpleMessageConverter;
+import org.springframework.integration.util.HashedWheelTimer;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.Assert;
 
 /**
@@ -44,7 +62,8 @@ import org.springframework.util.Assert;
  * 
  * @author Mark Fisher
  */
-public abstract class MessagingGatewaySupport extends AbstractEndpoint implements TrackableComponent {
+public abstract class MessagingGatewaySupport extends AbstractEndpoint implements TrackableComponent,
+		MessageHistorySamplerAware {
 
 	private static final long DEFAULT_TIMEOUT = 1000L;
 
@@ -72,6 +91,14 @@ public abstract class MessagingGatewaySupport extends AbstractEndpoint implement
 
 	private final Object replyMessageCorrelatorMonitor = new Object();
 
+	private volatile HashedWheelTimer replyTimer;
+
+	private volatile boolean replyTimerOwned;
+
+	private final Object replyTimerMonitor = new Object();
+
+	private volatile Executor asyncExecutor = new SimpleAsyncTaskExecutor();
+
 
 	public MessagingGatewaySupport() {
 		MessagingTemplate template = new MessagingTemplate();
@@ -131,6 +158,30 @@ public abstract class MessagingGatewaySupport extends AbstractEndpoint implement
 		this.messagingTemplate.setReceiveTimeout(replyTimeout);
 	}
 
+	/**
+	 * Set the timer used to time out replies to the asynchronous sendAndReceive
+	 * operations. If not provided, a timer using the task scheduler is created
+	 * when first needed, and stopped when this gateway is stopped; a provided
+	 * timer is not stopped by this gateway.
+	 *
+	 * @param replyTimer the timer
+	 */
+	public void setReplyTimer(HashedWheelTimer replyTimer) {
+		this.replyTimer = replyTimer;
+	}
+
+	/**
+	 * Set the executor used to run the error flow (see {@link #setErrorChannel(MessageChannel)})
+	 * for a failed asynchronous sendAndReceive operation, so that the thread that delivered
+	 * the error is not blocked by the error flow. Default {@link SimpleAsyncTaskExecutor}.
+	 *
+	 * @param asyncExecutor the executor
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		Assert.notNull(asyncExecutor, "'asyncExecutor' must not be null");
+		this.asyncExecutor = asyncExecutor;
+	}
+
 	/**
 	 * Provide an {@link InboundMessageMapper} for creating request Messages
 	 * from any object passed in a send or sendAndReceive operation.
@@ -157,6 +208,10 @@ public abstract class MessagingGatewaySupport extends AbstractEndpoint implement
 		this.historyWritingPostProcessor.setShouldTrack(shouldTrack);
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.historyWritingPostProcessor.setMessageHistorySampler(sampler);
+	}
+
 	@Override
 	public String getComponentType() {
 		return "gateway";
@@ -207,6 +262,23 @@ public abstract class MessagingGatewaySupport extends AbstractEndpoint implement
 		return (Message<?>) this.doSendAndReceive(object, false);
 	}
 
+	/**
+	 * Send the request and return a {@link Future} that is completed when the reply (or
+	 * an error) arrives on the reply channel; no thread waits for the reply. If the reply
+	 * timeout is not negative and no reply has been received within the timeout, the
+	 * future completes with an {@link ExecutionException} caused by a
+	 * {@link MessageTimeoutException}. Replies still pending when the gateway is stopped
+	 * are no longer timed out, unless a shared timer has been provided.
+	 */
+	protected Future<Object> sendAndReceiveAsync(Object object) {
+		return this.doSendAndReceiveAsync(object, true);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected Future<Message<?>> sendAndReceiveMessageAsync(Object object) {
+		return (Future) this.doSendAndReceiveAsync(object, false);
+	}
+
 	@SuppressWarnings("unchecked")
 	private Object doSendAndReceive(Object object, boolean shouldConvert) {
 		this.initializeIfNecessary();
@@ -242,32 +314,93 @@ public abstract class MessagingGatewaySupport extends AbstractEndpoint implement
 		}
 
 		if (error != null) {
-			if (this.errorChannel != null) {
-				Message<?> errorMessage = new ErrorMessage(error);
-				Message<?> errorFlowReply = null;
-				try {
-					errorFlowReply = this.messagingTemplate.sendAndReceive(this.errorChannel, errorMessage);
-				}
-				catch (Exception errorFlowFailure) {
-					throw new MessagingException(errorMessage, "failure occurred in error-handling flow", errorFlowFailure);
-				}
-				if (shouldConvert) {
-					Object result = (errorFlowReply != null) ? errorFlowReply.getPayload() : null;
-					if (result instanceof Throwable) {
-						this.rethrow((Throwable) result, "error flow returned Exception");
-					}
-					return result;
-				}
-				if (errorFlowReply != null && errorFlowReply.getPayload() instanceof Throwable) {
-					this.rethrow((Throwable) errorFlowReply.getPayload(), "error flow returned an Error Message");
+			return this.handleError(error, shouldConvert);
+		}
+		return reply;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ReplyFuture doSendAndReceiveAsync(Object object, boolean shouldConvert) {
+		this.initializeIfNecessary();
+		Assert.notNull(object, "request must not be null");
+		if (this.requestChannel == null) {
+			throw new MessagingException("No request channel available. Cannot send request message.");
+		}
+		if (this.replyChannel != null && this.replyMessageCorrelator == null) {
+			this.registerReplyMessageCorrelator();
+		}
+		ReplyFuture future = new ReplyFuture(shouldConvert);
+		try {
+			Message<?> requestMessage;
+			if (object instanceof Message<?>) {
+				requestMessage = (Message<?>) object;
+			}
+			else if (shouldConvert) {
+				requestMessage = this.messageConverter.toMessage(object);
+			}
+			else {
+				requestMessage = this.requestMapper.toMessage(object);
+			}
+			requestMessage = this.historyWritingPostProcessor.postProcessMessage(requestMessage);
+			future.originalReplyChannelHeader = requestMessage.getHeaders().getReplyChannel();
+			future.originalErrorChannelHeader = requestMessage.getHeaders().getErrorChannel();
+			requestMessage = MessageBuilder.fromMessage(requestMessage)
+					.setReplyChannel(future)
+					.setErrorChannel(future)
+					.build();
+			this.messagingTemplate.send(this.requestChannel, requestMessage);
+			if (this.replyTimeout >= 0 && !future.isDone()) {
+				future.scheduleTimeout(this.getReplyTimer(), this.replyTimeout, requestMessage);
+			}
+		}
+		catch (Exception e) {
+			logger.warn("failure occurred in gateway sendAndReceive", e);
+			future.completeWithError(e);
+		}
+		return future;
+	}
+
+	private Object handleError(Throwable error, boolean shouldConvert) {
+		if (this.errorChannel != null) {
+			Message<?> errorMessage = new ErrorMessage(error);
+			Message<?> errorFlowReply = null;
+			try {
+				errorFlowReply = this.messagingTemplate.sendAndReceive(this.errorChannel, errorMessage);
+			}
+			catch (Exception errorFlowFailure) {
+				throw new MessagingException(errorMessage, "failure occurred in error-handling flow", errorFlowFailure);
+			}
+			if (shouldConvert) {
+				Object result = (errorFlowReply != null) ? errorFlowReply.getPayload() : null;
+				if (result instanceof Throwable) {
+					this.rethrow((Throwable) result, "error flow returned Exception");
 				}
-				return errorFlowReply;
+				return result;
 			}
-			else { // no errorChannel so we'll propagate
-				this.rethrow(error, "gateway received checked Exception");
+			if (errorFlowReply != null && errorFlowReply.getPayload() instanceof Throwable) {
+				this.rethrow((Throwable) errorFlowReply.getPayload(), "error flow returned an Error Message");
 			}
+			return errorFlowReply;
+		}
+		else { // no errorChannel so we'll propagate
+			this.rethrow(error, "gateway received checked Exception");
+			return null; // preceding call always throws
 		}
-		return reply;
+	}
+
+	private HashedWheelTimer getReplyTimer() {
+		if (this.replyTimer == null) {
+			synchronized (this.replyTimerMonitor) {
+				if (this.replyTimer == null) {
+					TaskScheduler taskScheduler = this.getTaskScheduler();
+					Assert.state(taskScheduler != null,
+							"a TaskScheduler or reply timer is required to time out asynchronous replies");
+					this.replyTimer = new HashedWheelTimer(taskScheduler);
+					this.replyTimerOwned = true;
+				}
+			}
+		}
+		return this.replyTimer;
 	}
 
 	private void rethrow(Throwable t, String description) {
@@ -315,6 +448,188 @@ public abstract class MessagingGatewaySupport extends AbstractEndpoint implement
 		if (this.replyMessageCorrelator != null) {
 			this.replyMessageCorrelator.stop();
 		}
+		if (this.replyTimerOwned) {
+			// restarted if a reply is timed out again
+			this.replyTimer.stop();
+		}
+	}
+
+
+	/**
+	 * Serves as the reply and error channel for an asynchronous request and completes
+	 * when the first reply (or the timeout) arrives; later replies are discarded.
+	 */
+	private class ReplyFuture implements Future<Object>, MessageChannel {
+
+		private final boolean shouldConvert;
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private volatile Object originalReplyChannelHeader;
+
+		private volatile Object originalErrorChannelHeader;
+
+		private volatile HashedWheelTimer.Timeout timeout;
+
+		private volatile Object result;
+
+		private volatile Throwable error;
+
+		private volatile boolean cancelled;
+
+		private ReplyFuture(boolean shouldConvert) {
+			this.shouldConvert = shouldConvert;
+		}
+
+		public boolean send(Message<?> message) {
+			return this.send(message, -1);
+		}
+
+		public boolean send(Message<?> message, long timeout) {
+			if (!this.claimed.compareAndSet(false, true)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("reply received after the gateway request was completed: " + message);
+				}
+				return true;
+			}
+			this.processReply(message);
+			return true;
+		}
+
+		private void processReply(Message<?> message) {
+			Message<?> reply = MessageBuilder.fromMessage(message)
+					.setHeader(MessageHeaders.REPLY_CHANNEL, this.originalReplyChannelHeader)
+					.setHeader(MessageHeaders.ERROR_CHANNEL, this.originalErrorChannelHeader)
+					.build();
+			Throwable error = null;
+			Object result = null;
+			try {
+				if (this.shouldConvert) {
+					result = messageConverter.fromMessage(reply);
+					if (result instanceof Throwable) {
+						error = (Throwable) result;
+					}
+				}
+				else {
+					result = reply;
+					if (reply instanceof ErrorMessage) {
+						error = ((ErrorMessage) reply).getPayload();
+					}
+				}
+			}
+			catch (Throwable t) {
+				error = t;
+			}
+			if (error != null) {
+				this.handleErrorAndComplete(error);
+			}
+			else {
+				this.result = result;
+				this.done();
+			}
+		}
+
+		private void completeWithError(Throwable error) {
+			if (this.claimed.compareAndSet(false, true)) {
+				this.handleErrorAndComplete(error);
+			}
+		}
+
+		/*
+		 * The error flow may block (it is a sendAndReceive to the error channel), so it
+		 * runs on the async executor rather than on the thread that delivered the error.
+		 */
+		private void handleErrorAndComplete(final Throwable error) {
+			Runnable errorHandler = new Runnable() {
+				public void run() {
+					try {
+						result = handleError(error, shouldConvert);
+					}
+					catch (Throwable t) {
+						ReplyFuture.this.error = t;
+					}
+					done();
+				}
+			};
+			if (errorChannel == null) {
+				// no error flow; handleError() only propagates the error
+				errorHandler.run();
+				return;
+			}
+			try {
+				asyncExecutor.execute(errorHandler);
+			}
+			catch (RejectedExecutionException e) {
+				this.error = new MessagingException("failed to hand off the error flow", error);
+				this.done();
+			}
+		}
+
+		private void scheduleTimeout(HashedWheelTimer timer, final long replyTimeout, final Message<?> requestMessage) {
+			this.timeout = timer.schedule(new Runnable() {
+				public void run() {
+					if (claimed.compareAndSet(false, true)) {
+						error = new MessageTimeoutException(requestMessage,
+								"no reply received within " + replyTimeout + " ms");
+						done();
+					}
+				}
+			}, new Date(System.currentTimeMillis() + replyTimeout));
+			if (this.isDone()) {
+				this.timeout.cancel();
+			}
+		}
+
+		private void done() {
+			this.latch.countDown();
+			HashedWheelTimer.Timeout timeout = this.timeout;
+			if (timeout != null) {
+				timeout.cancel();
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (this.claimed.compareAndSet(false, true)) {
+				this.cancelled = true;
+				this.done();
+				return true;
+			}
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isDone() {
+			return this.latch.getCount() == 0;
+		}
+
+		public Object get() throws InterruptedException, ExecutionException {
+			this.latch.await();
+			return this.report();
+		}
+
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+				TimeoutException {
+			if (!this.latch.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+			return this.report();
+		}
+
+		private Object report() throws ExecutionException {
+			if (this.cancelled) {
+				throw new CancellationException();
+			}
+			if (this.error != null) {
+				throw new ExecutionException(this.error);
+			}
+			return this.result;
+		}
+
 	}
 
 
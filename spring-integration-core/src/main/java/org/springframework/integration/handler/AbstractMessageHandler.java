@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,8 @@ import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.context.Orderable;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.history.MessageHistory;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.util.Assert;
 
@@ -36,10 +38,13 @@ import org.springframework.util.Assert;
  * @author Mark Fisher
  * @author Oleg Zhurakousky
  */
-public abstract class AbstractMessageHandler extends IntegrationObjectSupport implements MessageHandler, TrackableComponent, Orderable {
+public abstract class AbstractMessageHandler extends IntegrationObjectSupport implements MessageHandler, TrackableComponent,
+		MessageHistorySamplerAware, Orderable {
 
 	private volatile boolean shouldTrack = false;
 
+	private volatile MessageHistorySampler messageHistorySampler;
+
 	private volatile int order = Ordered.LOWEST_PRECEDENCE;
 
 
@@ -60,6 +65,10 @@ public abstract class AbstractMessageHandler extends IntegrationObjectSupport im
 		this.shouldTrack = shouldTrack;
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.messageHistorySampler = sampler;
+	}
+
 	public final void handleMessage(Message<?> message) {
 		Assert.notNull(message, "Message must not be null");
 		Assert.notNull(message.getPayload(), "Message payload must not be null");
@@ -68,7 +77,7 @@ public abstract class AbstractMessageHandler extends IntegrationObjectSupport im
 		}
 		try {
 			if (message != null && this.shouldTrack) {
-				message = MessageHistory.write(message, this);
+				message = MessageHistory.write(message, this, this.messageHistorySampler);
 			}
 			this.handleMessageInternal(message);
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -150,13 +150,18 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 	}
 
 	private void handleResult(Object result, MessageHeaders requestHeaders) {
-		if (result instanceof Iterable<?> && this.shouldSplitReply((Iterable<?>) result)) {
-			for (Object o : (Iterable<?>) result) {
-				this.produceReply(o, requestHeaders);
+		try {
+			if (result instanceof Iterable<?> && this.shouldSplitReply((Iterable<?>) result)) {
+				for (Object o : (Iterable<?>) result) {
+					this.produceReply(o, requestHeaders);
+				}
+			}
+			else if (result != null) {
+				this.produceReply(result, requestHeaders);
 			}
 		}
-		else if (result != null) {
-			this.produceReply(result, requestHeaders);
+		finally {
+			this.releaseResult(result);
 		}
 	}
 
@@ -224,7 +229,12 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 		}
 	}
 
-	private boolean shouldSplitReply(Iterable<?> reply) {
+	/**
+	 * Determine whether an Iterable result should be sent as separate reply Messages; by default,
+	 * true if any of its elements is a Message or MessageBuilder. Subclasses returning a result
+	 * that can only be iterated once should override this to avoid iterating it here.
+	 */
+	protected boolean shouldSplitReply(Iterable<?> reply) {
 		for (Object next : reply) {
 			if (next instanceof Message<?> || next instanceof MessageBuilder<?>) {
 				return true;
@@ -233,6 +243,15 @@ public abstract class AbstractReplyProducingMessageHandler extends AbstractMessa
 		return false;
 	}
 
+	/**
+	 * Called once the replies for a result have been produced, or producing one has failed.
+	 * Subclasses whose result holds resources until it has been iterated completely may
+	 * release them here; the replies themselves must not be affected. Does nothing by default.
+	 * @param result the result of {@link #handleRequestMessage(Message)}.
+	 */
+	protected void releaseResult(Object result) {
+	}
+
 	/**
 	 * Subclasses may override this. True by default.
 	 */
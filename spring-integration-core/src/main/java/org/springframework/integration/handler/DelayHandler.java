@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -34,6 +34,7 @@ import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.MessageStore;
 import org.springframework.integration.store.SimpleMessageStore;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.util.HashedWheelTimer;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
@@ -64,6 +65,10 @@ import org.springframework.util.CollectionUtils;
  * seconds from the current time). If the value is a Date, it will be
  * delayed at least until that Date occurs (i.e. the delay in that case is
  * equivalent to <code>headerDate.getTime() - new Date().getTime()</code>).
+ * <p/>
+ * When very large numbers of messages are delayed, a {@link HashedWheelTimer} can
+ * be provided; the delayed messages are then held in the timer's wheel instead of
+ * adding a task to the scheduler's queue for each message.
  *
  * @author Mark Fisher
  * @author Artem Bilan
@@ -87,6 +92,8 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 
 	private volatile MessageHandler releaseHandler = new ReleaseMessageHandler();
 
+	private volatile HashedWheelTimer timer;
+
 	/**
 	 * Create a DelayHandler with the given 'messageGroupId' that is used as 'key' for {@link MessageGroup}
 	 * to store delayed Messages in the {@link MessageGroupStore}. The sending of Messages after
@@ -136,6 +143,17 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 		this.messageStore = messageStore;
 	}
 
+	/**
+	 * Specify a {@link HashedWheelTimer} to use for releasing messages instead of scheduling
+	 * a task with the {@link TaskScheduler} for each message. Messages are released up to
+	 * one tick duration after their delay has expired. The timer may be shared by several
+	 * handlers.
+	 * @since 3.0
+	 */
+	public void setTimer(HashedWheelTimer timer) {
+		this.timer = timer;
+	}
+
 	/**
 	 * Specify the <code>List<Advice></code> to advise {@link DelayHandler.ReleaseMessageHandler} proxy.
 	 * Usually used to add transactions to delayed messages retrieved from a transactional message store.
@@ -243,13 +261,21 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 			this.messageStore.addMessageToGroup(this.messageGroupId, delayedMessage);
 		}
 
-		final Message<?> messageToSchedule = delayedMessage;
+		this.scheduleRelease(delayedMessage, new Date(messageWrapper.getRequestDate() + delay));
+	}
 
-		this.getTaskScheduler().schedule(new Runnable() {
+	private void scheduleRelease(final Message<?> message, Date releaseTime) {
+		Runnable releaseTask = new Runnable() {
 			public void run() {
-				releaseMessage(messageToSchedule);
+				releaseMessage(message);
 			}
-		}, new Date(messageWrapper.getRequestDate() + delay));
+		};
+		if (this.timer != null) {
+			this.timer.schedule(releaseTask, releaseTime);
+		}
+		else {
+			this.getTaskScheduler().schedule(releaseTask, releaseTime);
+		}
 	}
 
 	private void releaseMessage(Message<?> message) {
@@ -280,9 +306,25 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 	 * The logic is based on iteration over 'messageGroup.getMessages()'
 	 * and schedules task about 'delay' logic.
 	 * This behavior is dictated by the avoidance of invocation thread overload.
+	 * When a {@link HashedWheelTimer} is in use, the messages are added directly
+	 * to the timer, which is an O(1) operation for each message; messages
+	 * that are already due are released on the timer's next tick.
 	 */
 	public void reschedulePersistedMessages() {
 		MessageGroup messageGroup = this.messageStore.getMessageGroup(this.messageGroupId);
+		if (this.timer != null) {
+			Date now = new Date();
+			for (Message<?> message : messageGroup.getMessages()) {
+				long delay = determineDelayForMessage(message);
+				if (delay > 0) {
+					releaseMessageAfterDelay(message, delay);
+				}
+				else {
+					scheduleRelease(message, now);
+				}
+			}
+			return;
+		}
 		for (final Message<?> message : messageGroup.getMessages()) {
 			this.getTaskScheduler().schedule(new Runnable() {
 				public void run() {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,12 +24,14 @@ import org.springframework.util.Assert;
  * @author Mark Fisher
  * @since 2.0
  */
-public class HistoryWritingMessagePostProcessor implements MessagePostProcessor {
+public class HistoryWritingMessagePostProcessor implements MessagePostProcessor, MessageHistorySamplerAware {
 
 	private volatile TrackableComponent trackableComponent;
 
 	private volatile boolean shouldTrack;
 
+	private volatile MessageHistorySampler messageHistorySampler;
+
 
 	public HistoryWritingMessagePostProcessor() {
 	}
@@ -48,9 +50,13 @@ public class HistoryWritingMessagePostProcessor implements MessagePostProcessor
 		this.shouldTrack = shouldTrack;
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.messageHistorySampler = sampler;
+	}
+
 	public Message<?> postProcessMessage(Message<?> message) {
 		if (this.shouldTrack && this.trackableComponent != null) {
-			return MessageHistory.write(message, this.trackableComponent);
+			return MessageHistory.write(message, this.trackableComponent, this.messageHistorySampler);
 		}
 		return message;
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,13 @@
 
 package org.springframework.integration.history;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -26,18 +31,38 @@ import java.util.ListIterator;
 import java.util.Properties;
 
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageChannel;
 import org.springframework.integration.context.NamedComponent;
+import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 /**
+ * The immutable history of the components a Message has passed through.
+ * <p>
+ * Each history shares the entries of the history it was appended to (a persistent
+ * linked list), so writing an entry at each hop does not copy the previous entries.
+ * The serialized form only contains the name, type and timestamp of each entry.
+ * <p>
+ * When a {@link MessageHistorySampler} is provided, a new history is only started by a
+ * component that produces messages (rather than a channel or a handler), for the flows
+ * that the sampler selects; a flow that is not sampled carries no history header.
+ *
  * @author Mark Fisher
  * @since 2.0
  */
-@SuppressWarnings("serial")
 public class MessageHistory implements List<Properties>, Serializable {
 
+	private static final long serialVersionUID = -7044278328856981218L;
+
+	/*
+	 * Retain the field of the original serialized form so that histories serialized by
+	 * earlier versions can be read; it is written as null and followed by the entries.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("components", List.class) };
+
 	public static final String HEADER_NAME = "history";
 
 	public static final String NAME_PROPERTY = "name";
@@ -47,7 +72,9 @@ public class MessageHistory implements List<Properties>, Serializable {
 	public static final String TIMESTAMP_PROPERTY = "timestamp";
 
 
-	private final List<Properties> components;
+	private transient Node last;
+
+	private transient volatile List<Properties> components;
 
 
 	public static MessageHistory read(Message<?> message) {
@@ -56,82 +83,118 @@ public class MessageHistory implements List<Properties>, Serializable {
 	}
 
 	public static <T> Message<T> write(Message<T> message, NamedComponent component) {
+		return write(message, component, null);
+	}
+
+	/**
+	 * Add the component to the history of the message. If the message has no history yet
+	 * and a sampler is provided, a history is only started if the component produces
+	 * messages (it is neither a {@link MessageChannel} nor a {@link MessageHandler}) and
+	 * the sampler selects the flow.
+	 * @param message the message.
+	 * @param component the component.
+	 * @param sampler the sampler; may be null, in which case all flows are tracked.
+	 * @return the message with the history header, or the original message.
+	 * @since 3.0
+	 */
+	public static <T> Message<T> write(Message<T> message, NamedComponent component,
+			MessageHistorySampler sampler) {
 		Assert.notNull(message, "Message must not be null");
 		Assert.notNull(component, "Component must not be null");
+		MessageHistory previousHistory = message.getHeaders().get(HEADER_NAME, MessageHistory.class);
+		if (previousHistory == null && sampler != null
+				&& (component instanceof MessageChannel || component instanceof MessageHandler
+						|| !sampler.sample())) {
+			return message;
+		}
 		Properties metadata = extractMetadata(component);
 		if (!metadata.isEmpty()) {
-			MessageHistory previousHistory = message.getHeaders().get(HEADER_NAME, MessageHistory.class);
-			List<Properties> components = (previousHistory != null) ?
-					new ArrayList<Properties>(previousHistory) : new ArrayList<Properties>();
-			components.add(metadata);
-			MessageHistory history = new MessageHistory(components);
+			Node previous = (previousHistory != null) ? previousHistory.last : null;
+			MessageHistory history = new MessageHistory(new Node(metadata, previous));
 			message = MessageBuilder.fromMessage(message).setHeader(HEADER_NAME, history).build();
 		}
 		return message;
 	}
 
 
-	private MessageHistory(List<Properties> components) {
-		Assert.notEmpty(components, "component list must not be empty");
-		this.components = components;
+	private MessageHistory(Node last) {
+		this.last = last;
 	}
 
 
+	/*
+	 * The entries are materialized (once) for the List operations that need them.
+	 */
+	private List<Properties> getComponents() {
+		List<Properties> components = this.components;
+		if (components == null) {
+			Properties[] entries = new Properties[this.size()];
+			Node node = this.last;
+			for (int i = entries.length - 1; i >= 0; i--) {
+				entries[i] = node.entry;
+				node = node.previous;
+			}
+			components = Collections.unmodifiableList(Arrays.asList(entries));
+			this.components = components;
+		}
+		return components;
+	}
+
 	public int size() {
-		return this.components.size();
+		return (this.last != null) ? this.last.size : 0;
 	}
 
 	public boolean isEmpty() {
-		return this.components.isEmpty();
+		return this.last == null;
 	}
 
 	public boolean contains(Object o) {
-		return this.components.contains(o);
+		return this.getComponents().contains(o);
 	}
 	
 	public boolean containsAll(Collection<?> c) {
-		return this.components.containsAll(c);
+		return this.getComponents().containsAll(c);
 	}
 
 	public Properties get(int index) {
-		return this.components.get(index);
+		return this.getComponents().get(index);
 	}
 
 	public Iterator<Properties> iterator() {
-		return Collections.unmodifiableList(this.components).iterator();
+		return this.getComponents().iterator();
 	}
 
 	public ListIterator<Properties> listIterator() {
-		return Collections.unmodifiableList(this.components).listIterator();
+		return this.getComponents().listIterator();
 	}
 
 	public ListIterator<Properties> listIterator(int index) {
-		return Collections.unmodifiableList(this.components).listIterator(index);
+		return this.getComponents().listIterator(index);
 	}
 
 	public List<Properties> subList(int fromIndex, int toIndex) {
-		return Collections.unmodifiableList(this.components).subList(fromIndex, toIndex);
+		return this.getComponents().subList(fromIndex, toIndex);
 	}
 
 	public Object[] toArray() {
-		return this.components.toArray();
+		return this.getComponents().toArray();
 	}
 
 	public <T> T[] toArray(T[] a) {
-		return this.components.toArray(a);
+		return this.getComponents().toArray(a);
 	}
 
 	public int indexOf(Object o) {
-		return this.components.indexOf(o);
+		return this.getComponents().indexOf(o);
 	}
 
 	public int lastIndexOf(Object o) {
-		return this.components.lastIndexOf(o);
+		return this.getComponents().lastIndexOf(o);
 	}
 
 	public String toString() {
 		List<String> names = new ArrayList<String>();
-		for (Properties p : this.components) {
+		for (Properties p : this) {
 			String name = p.getProperty(NAME_PROPERTY);
 			if (name != null) {
 				names.add(name);
@@ -186,6 +249,55 @@ public class MessageHistory implements List<Properties>, Serializable {
 	}
 
 
+	/*
+	 * Serialization
+	 */
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.putFields().put("components", null);
+		out.writeFields();
+		out.writeInt(this.size());
+		for (Properties entry : this) {
+			// repeated names and types are written as back references
+			out.writeObject(entry.getProperty(NAME_PROPERTY));
+			out.writeObject(entry.getProperty(TYPE_PROPERTY));
+			String timestamp = entry.getProperty(TIMESTAMP_PROPERTY);
+			out.writeLong((timestamp != null) ? Long.parseLong(timestamp) : -1);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		List<Properties> components = (List<Properties>) in.readFields().get("components", null);
+		Node node = null;
+		if (components != null) {
+			for (Properties entry : components) {
+				node = new Node(entry, node);
+			}
+		}
+		else {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				Entry entry = new Entry();
+				String name = (String) in.readObject();
+				String type = (String) in.readObject();
+				long timestamp = in.readLong();
+				if (name != null) {
+					entry.setName(name.intern());
+				}
+				if (type != null) {
+					entry.setType(type.intern());
+				}
+				if (timestamp >= 0) {
+					entry.setTimestamp(Long.toString(timestamp));
+				}
+				node = new Node(entry, node);
+			}
+		}
+		this.last = node;
+	}
+
+
 	private static Properties extractMetadata(NamedComponent component) {
 		Entry entry = new Entry();
 		String name = component.getComponentName();
@@ -203,11 +315,33 @@ public class MessageHistory implements List<Properties>, Serializable {
 	}
 
 
+	/**
+	 * A history entry, linked to the (shared) previous entries.
+	 */
+	private static class Node {
+
+		private final Properties entry;
+
+		private final Node previous;
+
+		private final int size;
+
+		private Node(Properties entry, Node previous) {
+			this.entry = entry;
+			this.previous = previous;
+			this.size = (previous != null) ? previous.size + 1 : 1;
+		}
+
+	}
+
+
 	/**
 	 * Inner class for each Entry in the history.
 	 */
 	public static class Entry extends Properties {
 
+		private static final long serialVersionUID = -8225834391885601079L;
+
 		public String getName() {
 			return this.getProperty(NAME_PROPERTY);
 		}
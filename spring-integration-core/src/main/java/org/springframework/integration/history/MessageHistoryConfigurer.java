@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -42,6 +42,8 @@ public class MessageHistoryConfigurer implements SmartLifecycle, BeanFactoryAwar
 
 	private volatile String[] componentNamePatterns = new String[] { "*" };
 
+	private volatile int sampleRate = 1;
+
 	private final Set<String> currentlyTrackedComponentNames = new HashSet<String>();
 
 	private volatile BeanFactory beanFactory;
@@ -60,6 +62,19 @@ public class MessageHistoryConfigurer implements SmartLifecycle, BeanFactoryAwar
 		this.componentNamePatterns = componentNamePatterns;
 	}
 
+	/**
+	 * Track the history of only 1 in 'sampleRate' message flows, reducing the overhead of
+	 * message history on high volume flows. Default 1 (all flows). The sampling only applies
+	 * to the components tracked by this configurer; when sampling, only components that
+	 * produce messages (such as inbound channel adapters and gateways) start a new history.
+	 * @param sampleRate the sample rate.
+	 * @since 3.0
+	 */
+	public void setSampleRate(int sampleRate) {
+		Assert.isTrue(sampleRate > 0, "'sampleRate' must be greater than 0");
+		this.sampleRate = sampleRate;
+	}
+
 	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
 		this.beanFactory = beanFactory;
 	}
@@ -88,9 +103,13 @@ public class MessageHistoryConfigurer implements SmartLifecycle, BeanFactoryAwar
 	public void start() {
 		synchronized (this.lifecycleMonitor) {
 			if (!this.running && this.beanFactory instanceof ListableBeanFactory) {
+				MessageHistorySampler sampler = (this.sampleRate > 1) ? new MessageHistorySampler(this.sampleRate) : null;
 				for (TrackableComponent component : getTrackableComponents((ListableBeanFactory) beanFactory)) {
 					String componentName = component.getComponentName();
 					boolean shouldTrack = PatternMatchUtils.simpleMatch(this.componentNamePatterns, componentName);
+					if (shouldTrack && component instanceof MessageHistorySamplerAware) {
+						((MessageHistorySamplerAware) component).setMessageHistorySampler(sampler);
+					}
 					component.setShouldTrack(shouldTrack);
 					if (shouldTrack) {
 						this.currentlyTrackedComponentNames.add(componentName);
@@ -111,6 +130,9 @@ public class MessageHistoryConfigurer implements SmartLifecycle, BeanFactoryAwar
 					String componentName = component.getComponentName();
 					if (this.currentlyTrackedComponentNames.contains(componentName)) {
 						component.setShouldTrack(false);
+						if (component instanceof MessageHistorySamplerAware) {
+							((MessageHistorySamplerAware) component).setMessageHistorySampler(null);
+						}
 						if (this.logger.isInfoEnabled()) {
 							this.logger.info("Disabling MessageHistory tracking for component '" + componentName + "'");
 						}
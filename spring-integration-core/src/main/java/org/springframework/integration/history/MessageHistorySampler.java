@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.history;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Selects 1 in 'sampleRate' of the message flows for which a new {@link MessageHistory}
+ * would be started.
+ *
+ * @since 3.0
+ */
+public class MessageHistorySampler {
+
+	private final int sampleRate;
+
+	private final AtomicLong counter = new AtomicLong();
+
+
+	public MessageHistorySampler(int sampleRate) {
+		Assert.isTrue(sampleRate > 0, "'sampleRate' must be greater than 0");
+		this.sampleRate = sampleRate;
+	}
+
+
+	public int getSampleRate() {
+		return this.sampleRate;
+	}
+
+	/**
+	 * @return true if the history of the next new message flow should be tracked.
+	 */
+	public boolean sample() {
+		return this.sampleRate == 1 || this.counter.getAndIncrement() % this.sampleRate == 0;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,8 +16,6 @@
 
 package org.springframework.integration.splitter;
 
-import java.util.Collection;
-
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.integration.Message;
@@ -34,10 +32,10 @@ import org.springframework.util.Assert;
  */
 abstract class AbstractMessageProcessingSplitter extends AbstractMessageSplitter {
 
-	private final MessageProcessor<Collection<?>> messageProcessor;
+	private final MessageProcessor<?> messageProcessor;
 
 
-	protected AbstractMessageProcessingSplitter(MessageProcessor<Collection<?>> expressionEvaluatingMessageProcessor) {
+	protected AbstractMessageProcessingSplitter(MessageProcessor<?> expressionEvaluatingMessageProcessor) {
 		Assert.notNull(expressionEvaluatingMessageProcessor, "messageProcessor must not be null");
 		this.messageProcessor = expressionEvaluatingMessageProcessor;
 	}
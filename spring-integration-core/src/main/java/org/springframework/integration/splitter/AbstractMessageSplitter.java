@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,20 +16,29 @@
 
 package org.springframework.integration.splitter;
 
-import java.util.ArrayList;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
+import java.util.Iterator;
 
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageHeaders;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
 
 /**
  * Base class for Message-splitting handlers.
- * 
+ * <p>
+ * The reply Messages are created as they are sent rather than all up front. If the split
+ * result is an {@link Iterator} or an {@link Iterable} (other than a {@link Collection}),
+ * its elements are also only retrieved as they are sent, so large results (e.g. the lines
+ * of a file or the rows of a query) can be split with bounded memory. Since the number of
+ * elements is not known in advance in that case, the 'sequenceSize' header is set to 0.
+ *
  * @author Mark Fisher
  * @author Dave Syer
  */
@@ -55,27 +64,40 @@ public abstract class AbstractMessageSplitter extends AbstractReplyProducingMess
 		}
 		MessageHeaders headers = message.getHeaders();
 		Object correlationId = headers.getId();
-		List<MessageBuilder<?>> messageBuilders = new ArrayList<MessageBuilder<?>>();
 		if (result instanceof Collection) {
 			Collection<?> items = (Collection<?>) result;
-			int sequenceNumber = 0;
-			int sequenceSize = items.size();
-			for (Object item : items) {
-				messageBuilders.add(this.createBuilder(item, headers, correlationId, ++sequenceNumber, sequenceSize));
-			}
+			return new MessageBuilders(items.iterator(), headers, correlationId, items.size());
 		}
 		else if (result.getClass().isArray()) {
 			Object[] items = (Object[]) result;
-			int sequenceNumber = 0;
-			int sequenceSize = items.length;
-			for (Object item : items) {
-				messageBuilders.add(this.createBuilder(item, headers, correlationId, ++sequenceNumber, sequenceSize));
+			return new MessageBuilders(Arrays.asList(items).iterator(), headers, correlationId, items.length);
+		}
+		else if (result instanceof Iterable || result instanceof Iterator) {
+			Iterator<?> items = (result instanceof Iterator)
+					? (Iterator<?>) result : ((Iterable<?>) result).iterator();
+			if (!items.hasNext()) {
+				return null;
 			}
+			// the size is not known until the iterator is exhausted
+			return new MessageBuilders(items, headers, correlationId, 0);
 		}
-		else {
-			messageBuilders.add(this.createBuilder(result, headers, correlationId, 1, 1));
+		return this.createBuilder(result, headers, correlationId, 1, 1);
+	}
+
+	/**
+	 * Close the split result's {@link Iterator} if it is {@link Closeable}.
+	 */
+	@Override
+	protected void releaseResult(Object result) {
+		if (result instanceof MessageBuilders) {
+			((MessageBuilders) result).close();
 		}
-		return messageBuilders;
+	}
+
+	@Override
+	protected boolean shouldSplitReply(Iterable<?> reply) {
+		// avoid iterating a lazy result more than once
+		return (reply instanceof MessageBuilders) || super.shouldSplitReply(reply);
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" })
@@ -101,11 +123,72 @@ public abstract class AbstractMessageSplitter extends AbstractReplyProducingMess
 	}
 
 	/**
-	 * Subclasses must override this method to split the received Message. The return value may be a Collection or
-	 * Array. The individual elements may be Messages, but it is not necessary. If the elements are not Messages, each
+	 * Subclasses must override this method to split the received Message. The return value may be a Collection,
+	 * Array, Iterable or Iterator. The individual elements may be Messages, but it is not necessary. If the elements are not Messages, each
 	 * will be provided as the payload of a Message. It is also acceptable to return a single Object or Message. In that
-	 * case, a single reply Message will be produced.
+	 * case, a single reply Message will be produced. An Iterator that is also {@link Closeable} is closed when the
+	 * split Messages have been sent, or sending one of them fails.
 	 */
 	protected abstract Object splitMessage(Message<?> message);
 
+
+	/**
+	 * Creates a {@link MessageBuilder} for each item as it is requested; may only be iterated once.
+	 */
+	private class MessageBuilders implements Iterable<MessageBuilder<?>> {
+
+		private final Iterator<?> items;
+
+		private final MessageHeaders headers;
+
+		private final Object correlationId;
+
+		private final int sequenceSize;
+
+		private volatile boolean iterated;
+
+		private MessageBuilders(Iterator<?> items, MessageHeaders headers, Object correlationId, int sequenceSize) {
+			this.items = items;
+			this.headers = headers;
+			this.correlationId = correlationId;
+			this.sequenceSize = sequenceSize;
+		}
+
+		public Iterator<MessageBuilder<?>> iterator() {
+			Assert.state(!this.iterated, "the split result can only be iterated once");
+			this.iterated = true;
+			return new Iterator<MessageBuilder<?>>() {
+
+				private int sequenceNumber;
+
+				public boolean hasNext() {
+					return items.hasNext();
+				}
+
+				public MessageBuilder<?> next() {
+					return createBuilder(items.next(), headers, correlationId, ++this.sequenceNumber, sequenceSize);
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+
+			};
+		}
+
+		private void close() {
+			if (this.items instanceof Closeable) {
+				try {
+					((Closeable) this.items).close();
+				}
+				catch (IOException e) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("failed to close the split result of '" + AbstractMessageSplitter.this + "'", e);
+					}
+				}
+			}
+		}
+
+	}
+
 }
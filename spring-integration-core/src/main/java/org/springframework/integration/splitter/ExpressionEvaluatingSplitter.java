@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,14 +17,19 @@
 package org.springframework.integration.splitter;
 
 import java.util.Collection;
+import java.util.Iterator;
 
+import org.springframework.core.convert.TypeDescriptor;
 import org.springframework.expression.Expression;
-import org.springframework.integration.handler.ExpressionEvaluatingMessageProcessor;
+import org.springframework.integration.Message;
+import org.springframework.integration.handler.AbstractMessageProcessor;
+import org.springframework.util.Assert;
 
 /**
  * A Message Splitter implementation that evaluates the specified SpEL
  * expression. The result of evaluation will typically be a Collection or
- * Array. If the result is not a Collection or Array, then the single Object
+ * Array. An Iterator or Iterable result is split lazily. Any other result
+ * is converted to a Collection if possible; otherwise the single Object
  * will be returned as the payload of a single reply Message.
  * 
  * @author Mark Fisher
@@ -32,9 +37,34 @@ import org.springframework.integration.handler.ExpressionEvaluatingMessageProces
  */
 public class ExpressionEvaluatingSplitter extends AbstractMessageProcessingSplitter {
 
-	@SuppressWarnings({"unchecked", "rawtypes"})
 	public ExpressionEvaluatingSplitter(Expression expression) {
-		super(new ExpressionEvaluatingMessageProcessor(expression, Collection.class));
+		super(new SplitterExpressionEvaluatingMessageProcessor(expression));
+	}
+
+
+	/**
+	 * Evaluates the expression, converting the result to a Collection unless it is
+	 * an Iterator or Iterable, which would otherwise be fully materialized.
+	 */
+	private static class SplitterExpressionEvaluatingMessageProcessor extends AbstractMessageProcessor<Object> {
+
+		private static final TypeDescriptor COLLECTION_TYPE = TypeDescriptor.valueOf(Collection.class);
+
+		private final Expression expression;
+
+		private SplitterExpressionEvaluatingMessageProcessor(Expression expression) {
+			Assert.notNull(expression, "The expression must not be null");
+			this.expression = expression;
+		}
+
+		public Object processMessage(Message<?> message) {
+			Object result = this.evaluateExpression(this.expression, message, Object.class);
+			if (result == null || result instanceof Iterator || result instanceof Iterable) {
+				return result;
+			}
+			return this.getEvaluationContext().getTypeConverter().convertValue(result,
+					TypeDescriptor.forObject(result), COLLECTION_TYPE);
+		}
 	}
 
 }
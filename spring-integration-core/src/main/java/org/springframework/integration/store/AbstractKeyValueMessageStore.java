@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors
+ * Copyright 2002-2013 the original author or authors
  *
  *     Licensed under the Apache License, Version 2.0 (the "License");
  *     you may not use this file except in compliance with the License.
@@ -18,9 +18,12 @@ package org.springframework.integration.store;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
 
@@ -33,6 +36,12 @@ import org.springframework.util.Assert;
 
 /**
  * Base class for implementations of Key/Value style {@link MessageGroupStore} and {@link MessageStore}
+ * <p>
+ * Each message added to a group is stored individually and its id is stored in a separate
+ * entry, so the cost of adding a message is independent of the size of the group.
+ * Groups returned by this store retrieve their messages lazily; the number of members with
+ * each sequence number is also stored, so a group can be checked for a sequence number
+ * without retrieving its messages.
  *
  * @author Oleg Zhurakousky
  * @since 2.1
@@ -43,8 +52,25 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 
 	protected static final String MESSAGE_GROUP_KEY_PREFIX = "MESSAGE_GROUP_";
 
+	/**
+	 * Prefix for the keys of the entries holding the ids of a group's messages; it must not
+	 * start with either of the above prefixes because those are used as key patterns.
+	 */
+	protected static final String MESSAGE_GROUP_ENTRY_KEY_PREFIX = "GROUP_ENTRY_";
+
+	/**
+	 * Prefix for the keys of the counts of a group's messages with each sequence number.
+	 */
+	protected static final String MESSAGE_GROUP_SEQUENCE_KEY_PREFIX = "GROUP_SEQUENCE_";
+
 	protected static final String CREATED_DATE = "CREATED_DATE";
 
+	/**
+	 * Header recording the index of the entry holding the id of a stored group member,
+	 * so the entry can be found without scanning the group.
+	 */
+	protected static final String GROUP_ENTRY_INDEX = "GROUP_ENTRY_INDEX";
+
 	// MessageStore methods
 
 	public Message<?> getMessage(UUID id) {
@@ -85,76 +111,87 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 	// MessageGroupStore methods
 
 	/**
-	 * Will create a new instance of SimpleMessageGroup if necessary.
+	 * Will create a new instance of SimpleMessageGroup if necessary. The messages of an
+	 * existing group are retrieved lazily, when first needed.
 	 */
 	public MessageGroup getMessageGroup(Object groupId) {
-		return this.buildMessageGroup(groupId, false);
+		Assert.notNull(groupId, "'groupId' must not be null");
+		MessageGroupMetadata groupMetadata = this.getGroupMetadata(groupId);
+		if (groupMetadata != null) {
+			return new PersistentMessageGroup(groupId, groupMetadata);
+		}
+		return new SimpleMessageGroup(groupId);
 	}
 
 
 	/**
-	 * Add a Message to the group with the provided group ID.
+	 * Add a Message to the group with the provided group ID. Only the message, an entry
+	 * holding its id, the count for its sequence number and the (fixed size) group
+	 * metadata are written, regardless of the size of the group.
 	 */
 	public MessageGroup addMessageToGroup(Object groupId, Message<?> message) {
 		Assert.notNull(groupId, "'groupId' must not be null");
 		Assert.notNull(message, "'message' must not be null");
 
-		// add message as is to the MG accessible by the caller
-		SimpleMessageGroup messageGroup = this.getSimpleMessageGroup(this.getMessageGroup(groupId));
-
-		messageGroup.add(message);
+		MessageGroupMetadata groupMetadata = this.getGroupMetadata(groupId);
+		if (groupMetadata == null) {
+			groupMetadata = new MessageGroupMetadata(new SimpleMessageGroup(groupId));
+		}
+		long index = groupMetadata.appendEntry();
 
 		// enrich Message with additional headers and add it to MS
-		Message<?> enrichedMessage = this.enrichMessage(message);
-
+		Message<?> enrichedMessage = this.enrichMessage(message, index);
 		this.addMessage(enrichedMessage);
 
-		// build raw MessageGroup and add enriched Message to it
-		SimpleMessageGroup rawGroup = this.buildMessageGroup(groupId, true);
-		rawGroup.setLastModified(System.currentTimeMillis());
-		rawGroup.add(enrichedMessage);
+		// the entry is stored first so that the metadata never refers to a missing entry
+		this.doStore(this.entryKey(groupId, index), enrichedMessage.getHeaders().getId());
+		this.updateSequenceCount(groupId, message, 1);
 
-		// store MessageGroupMetadata built from enriched MG
-		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, new MessageGroupMetadata(rawGroup));
+		groupMetadata.setLastModified(System.currentTimeMillis());
+		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, groupMetadata);
 
-		// return clean MG
-		return this.getMessageGroup(groupId);
+		return new PersistentMessageGroup(groupId, groupMetadata);
 	}
 
 	/**
-	 * Remove a Message from the group with the provided group ID.
+	 * Remove a Message from the group with the provided group ID. The entry holding its
+	 * id is located using the index recorded in the stored message.
 	 */
 	public MessageGroup removeMessageFromGroup(Object groupId, Message<?> messageToRemove) {
 		Assert.notNull(groupId, "'groupId' must not be null");
 		Assert.notNull(messageToRemove, "'messageToRemove' must not be null");
 
-		// build raw MG
-		SimpleMessageGroup rawGroup = this.buildMessageGroup(groupId, true);
-
-		// create a clean instance of
-		SimpleMessageGroup messageGroup = this.normalizeSimpleMessageGroup(rawGroup);
-
-		for (Message<?> message : rawGroup.getMessages()) {
-			if (message.getHeaders().getId().equals(messageToRemove.getHeaders().getId())){
-				rawGroup.remove(message);
+		UUID idToRemove = messageToRemove.getHeaders().getId();
+		MessageGroupMetadata groupMetadata = this.getGroupMetadata(groupId);
+		if (groupMetadata != null) {
+			Message<?> storedMessage = this.getRawMessage(idToRemove);
+			boolean removed = groupMetadata.remove(idToRemove);
+			if (!removed && storedMessage != null) {
+				Long index = storedMessage.getHeaders().get(GROUP_ENTRY_INDEX, Long.class);
+				if (index != null && idToRemove.equals(this.doRetrieve(this.entryKey(groupId, index)))) {
+					this.doRemove(this.entryKey(groupId, index));
+					groupMetadata.removeEntry(index);
+					removed = true;
+				}
+			}
+			if (removed) {
+				this.updateSequenceCount(groupId, storedMessage, -1);
 			}
+			groupMetadata.setLastModified(System.currentTimeMillis());
+			this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, groupMetadata);
 		}
-		this.removeMessage(messageToRemove.getHeaders().getId());
-		rawGroup.setLastModified(System.currentTimeMillis());
+		this.removeMessage(idToRemove);
 
-		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, new MessageGroupMetadata(rawGroup));
-		messageGroup = this.getSimpleMessageGroup(this.getMessageGroup(groupId));
-
-		return messageGroup;
+		return this.getMessageGroup(groupId);
 	}
 
 
 	public void completeGroup(Object groupId) {
 		Assert.notNull(groupId, "'groupId' must not be null");
-		SimpleMessageGroup messageGroup = this.buildMessageGroup(groupId, true);
-		messageGroup.complete();
-		messageGroup.setLastModified(System.currentTimeMillis());
-		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, new MessageGroupMetadata(messageGroup));
+		MessageGroupMetadata groupMetadata = this.getOrCreateGroupMetadata(groupId);
+		groupMetadata.complete();
+		groupMetadata.setLastModified(System.currentTimeMillis());
+		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, groupMetadata);
 	}
 
 	/**
@@ -169,32 +206,49 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 
 			Iterator<UUID> messageIds = messageGroupMetadata.messageIdIterator();
 			while (messageIds.hasNext()){
-				this.removeMessage(messageIds.next());
+				this.removeSequenceCount(groupId, this.removeMessage(messageIds.next()));
+			}
+			for (long index = messageGroupMetadata.getFirstEntry(); index < messageGroupMetadata.getNextEntry(); index++) {
+				Object messageId = this.doRemove(this.entryKey(groupId, index));
+				if (messageId != null) {
+					this.removeSequenceCount(groupId, this.removeMessage((UUID) messageId));
+				}
 			}
 		}
 	}
 
 	public void setLastReleasedSequenceNumberForGroup(Object groupId, int sequenceNumber) {
 		Assert.notNull(groupId, "'groupId' must not be null");
-		SimpleMessageGroup messageGroup = this.buildMessageGroup(groupId, true);
-		messageGroup.setLastReleasedMessageSequenceNumber(sequenceNumber);
-		messageGroup.setLastModified(System.currentTimeMillis());
-		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, new MessageGroupMetadata(messageGroup));
+		MessageGroupMetadata groupMetadata = this.getOrCreateGroupMetadata(groupId);
+		groupMetadata.setLastReleasedMessageSequenceNumber(sequenceNumber);
+		groupMetadata.setLastModified(System.currentTimeMillis());
+		this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, groupMetadata);
 	}
 
 	public Message<?> pollMessageFromGroup(Object groupId) {
 		Assert.notNull(groupId, "'groupId' must not be null");
-		Object mgm = this.doRetrieve(MESSAGE_GROUP_KEY_PREFIX + groupId);
-		if (mgm != null) {
-			Assert.isInstanceOf(MessageGroupMetadata.class, mgm);
-			MessageGroupMetadata messageGroupMetadata = (MessageGroupMetadata) mgm;
-
-			UUID firstId = messageGroupMetadata.firstId();
+		MessageGroupMetadata groupMetadata = this.getGroupMetadata(groupId);
+		if (groupMetadata != null) {
+			UUID firstId = groupMetadata.firstId();
 			if (firstId != null){
-				messageGroupMetadata.remove(firstId);
-				messageGroupMetadata.setLastModified(System.currentTimeMillis());
-				this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, messageGroupMetadata);
-				return this.removeMessage(firstId);
+				groupMetadata.remove(firstId);
+			}
+			else {
+				for (long index = groupMetadata.getFirstEntry(); index < groupMetadata.getNextEntry(); index++) {
+					Object messageId = this.doRemove(this.entryKey(groupId, index));
+					if (messageId != null) {
+						groupMetadata.removeEntry(index);
+						firstId = (UUID) messageId;
+						break;
+					}
+				}
+			}
+			if (firstId != null) {
+				groupMetadata.setLastModified(System.currentTimeMillis());
+				this.doStore(MESSAGE_GROUP_KEY_PREFIX + groupId, groupMetadata);
+				Message<?> message = this.removeMessage(firstId);
+				this.updateSequenceCount(groupId, message, -1);
+				return message;
 			}
 		}
 		return null;
@@ -224,11 +278,9 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 	}
 
 	public int messageGroupSize(Object groupId) {
-		Object mgm = this.doRetrieve(MESSAGE_GROUP_KEY_PREFIX + groupId);
-		if (mgm != null) {
-			Assert.isInstanceOf(MessageGroupMetadata.class, mgm);
-			MessageGroupMetadata messageGroupMetadata = (MessageGroupMetadata) mgm;
-			return messageGroupMetadata.size();
+		MessageGroupMetadata groupMetadata = this.getGroupMetadata(groupId);
+		if (groupMetadata != null) {
+			return groupMetadata.size();
 		}
 		return 0;
 	}
@@ -243,7 +295,8 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	private Message<?> normalizeMessage(Message<?> message){
-		Message<?> normalizedMessage = MessageBuilder.fromMessage(message).removeHeader("CREATED_DATE").build();
+		Message<?> normalizedMessage = MessageBuilder.fromMessage(message).removeHeader("CREATED_DATE")
+				.removeHeader(GROUP_ENTRY_INDEX).build();
 		Map innerMap = (Map) new DirectFieldAccessor(normalizedMessage.getHeaders()).getPropertyValue("headers");
 		innerMap.put(MessageHeaders.ID, message.getHeaders().getId());
 		innerMap.put(MessageHeaders.TIMESTAMP, message.getHeaders().getTimestamp());
@@ -253,62 +306,120 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 	/**
 	 * Will enrich Message with additional meta headers
 	 * @param message
+	 * @param index the index of the entry that will hold the message id
 	 * @return
 	 */
     @SuppressWarnings({ "rawtypes", "unchecked" })
-	private Message<?> enrichMessage(Message<?> message){
-    	Message<?> enrichedMessage = MessageBuilder.fromMessage(message).setHeader(CREATED_DATE, System.currentTimeMillis()).build();
+	private Message<?> enrichMessage(Message<?> message, long index){
+    	Message<?> enrichedMessage = MessageBuilder.fromMessage(message).setHeader(CREATED_DATE, System.currentTimeMillis())
+    			.setHeader(GROUP_ENTRY_INDEX, index).build();
 		Map innerMap = (Map) new DirectFieldAccessor(enrichedMessage.getHeaders()).getPropertyValue("headers");
 		innerMap.put(MessageHeaders.ID, message.getHeaders().getId());
 		innerMap.put(MessageHeaders.TIMESTAMP, message.getHeaders().getTimestamp());
 		return enrichedMessage;
 	}
 
-	private SimpleMessageGroup buildMessageGroup(Object groupId, boolean raw){
-		Assert.notNull(groupId, "'groupId' must not be null");
+	private MessageGroupMetadata getGroupMetadata(Object groupId) {
 		Object mgm = this.doRetrieve(MESSAGE_GROUP_KEY_PREFIX + groupId);
 		if (mgm != null) {
 			Assert.isInstanceOf(MessageGroupMetadata.class, mgm);
-			MessageGroupMetadata messageGroupMetadata = (MessageGroupMetadata) mgm;
-			ArrayList<Message<?>> messages = new ArrayList<Message<?>>();
-
-			Iterator<UUID> messageIds = messageGroupMetadata.messageIdIterator();
-			while (messageIds.hasNext()){
-				if (raw){
-					messages.add(this.getRawMessage(messageIds.next()));
-				}
-				else {
-					messages.add(this.getMessage(messageIds.next()));
-				}
-			}
-
-			SimpleMessageGroup messageGroup = new SimpleMessageGroup(messages,
-						groupId, messageGroupMetadata.getTimestamp(), messageGroupMetadata.isComplete());
-			messageGroup.setLastModified(messageGroupMetadata.getLastModified());
-			messageGroup.setLastReleasedMessageSequenceNumber(messageGroupMetadata.getLastReleasedMessageSequenceNumber());
-			return messageGroup;
+			return (MessageGroupMetadata) mgm;
 		}
-		else {
-			return new SimpleMessageGroup(groupId);
+		return null;
+	}
+
+	private MessageGroupMetadata getOrCreateGroupMetadata(Object groupId) {
+		MessageGroupMetadata groupMetadata = this.getGroupMetadata(groupId);
+		if (groupMetadata == null) {
+			groupMetadata = new MessageGroupMetadata(new SimpleMessageGroup(groupId));
 		}
+		return groupMetadata;
+	}
+
+	private String entryKey(Object groupId, long index) {
+		return MESSAGE_GROUP_ENTRY_KEY_PREFIX + groupId + "_" + index;
 	}
 
-	private SimpleMessageGroup getSimpleMessageGroup(MessageGroup messageGroup){
-		if (messageGroup instanceof SimpleMessageGroup){
-			return (SimpleMessageGroup) messageGroup;
+	private String sequenceKey(Object groupId, Integer sequenceNumber) {
+		return MESSAGE_GROUP_SEQUENCE_KEY_PREFIX + groupId + "_" + sequenceNumber;
+	}
+
+	private static Integer sequenceNumber(Message<?> message) {
+		if (message == null) {
+			return null;
 		}
-		else {
-			return new SimpleMessageGroup(messageGroup);
+		Integer sequenceNumber = message.getHeaders().getSequenceNumber();
+		return sequenceNumber != null && sequenceNumber > 0 ? sequenceNumber : null;
+	}
+
+	/**
+	 * Adjust the stored count of the group's members with the message's sequence number.
+	 */
+	private void updateSequenceCount(Object groupId, Message<?> message, int delta) {
+		Integer sequenceNumber = sequenceNumber(message);
+		if (sequenceNumber != null) {
+			String key = this.sequenceKey(groupId, sequenceNumber);
+			Object count = this.doRetrieve(key);
+			int newCount = (count == null ? 0 : (Integer) count) + delta;
+			if (newCount > 0) {
+				this.doStore(key, newCount);
+			}
+			else if (count != null) {
+				this.doRemove(key);
+			}
 		}
 	}
 
-	private SimpleMessageGroup normalizeSimpleMessageGroup(SimpleMessageGroup messageGroup){
-		SimpleMessageGroup normalizedGroup = new SimpleMessageGroup(messageGroup.getGroupId());
-		for (Message<?> message : messageGroup.getMessages()) {
-			Message<?> normailizedMessage = this.normalizeMessage(message);
-			normalizedGroup.add(normailizedMessage);
+	private void removeSequenceCount(Object groupId, Message<?> message) {
+		Integer sequenceNumber = sequenceNumber(message);
+		if (sequenceNumber != null) {
+			this.doRemove(this.sequenceKey(groupId, sequenceNumber));
 		}
-		return normalizedGroup;
+	}
+
+	/**
+	 * Return the ids of the group's messages, in order; the ids held in separate
+	 * entries are retrieved as the iterator advances.
+	 */
+	private Iterator<UUID> messageIdIterator(final Object groupId, final MessageGroupMetadata groupMetadata) {
+		final Iterator<UUID> inlineIds = groupMetadata.messageIdIterator();
+		return new Iterator<UUID>() {
+
+			private long index = groupMetadata.getFirstEntry();
+
+			private UUID next;
+
+			public boolean hasNext() {
+				if (this.next != null) {
+					return true;
+				}
+				if (inlineIds.hasNext()) {
+					this.next = inlineIds.next();
+					return true;
+				}
+				while (this.index < groupMetadata.getNextEntry()) {
+					Object messageId = doRetrieve(entryKey(groupId, this.index++));
+					if (messageId != null) {
+						this.next = (UUID) messageId;
+						return true;
+					}
+				}
+				return false;
+			}
+
+			public UUID next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				UUID id = this.next;
+				this.next = null;
+				return id;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
 	private Message<?> getRawMessage(UUID id) {
@@ -317,6 +428,122 @@ public abstract class AbstractKeyValueMessageStore extends AbstractMessageGroupS
 		return (Message<?>) message;
 	}
 
+	/**
+	 * A {@link MessageGroup} backed by the stored {@link MessageGroupMetadata}; the
+	 * messages themselves are only retrieved when they are needed.
+	 */
+	private class PersistentMessageGroup implements SequenceAwareMessageGroup {
+
+		private final Object groupId;
+
+		private final MessageGroupMetadata groupMetadata;
+
+		private volatile Collection<Message<?>> messages;
+
+		private volatile boolean complete;
+
+		private PersistentMessageGroup(Object groupId, MessageGroupMetadata groupMetadata) {
+			this.groupId = groupId;
+			this.groupMetadata = groupMetadata;
+			this.complete = groupMetadata.isComplete();
+		}
+
+		public boolean canAdd(Message<?> message) {
+			return true;
+		}
+
+		/**
+		 * Look up the stored count for the sequence number; only members with ids
+		 * held in the metadata itself (stored before 3.0) are retrieved.
+		 */
+		public boolean containsSequence(Integer sequenceNumber) {
+			if (doRetrieve(sequenceKey(this.groupId, sequenceNumber)) != null) {
+				return true;
+			}
+			Iterator<UUID> inlineIds = this.groupMetadata.messageIdIterator();
+			while (inlineIds.hasNext()) {
+				Message<?> message = getRawMessage(inlineIds.next());
+				if (message != null && sequenceNumber.equals(message.getHeaders().getSequenceNumber())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public Collection<Message<?>> getMessages() {
+			if (this.messages == null) {
+				List<Message<?>> messages = new ArrayList<Message<?>>(this.groupMetadata.size());
+				Iterator<UUID> messageIds = messageIdIterator(this.groupId, this.groupMetadata);
+				while (messageIds.hasNext()) {
+					Message<?> message = getMessage(messageIds.next());
+					if (message != null) { //see INT-2666
+						messages.add(message);
+					}
+				}
+				this.messages = Collections.unmodifiableCollection(messages);
+			}
+			return this.messages;
+		}
+
+		public Object getGroupId() {
+			return this.groupId;
+		}
+
+		public int getLastReleasedMessageSequenceNumber() {
+			return this.groupMetadata.getLastReleasedMessageSequenceNumber();
+		}
+
+		public boolean isComplete() {
+			return this.complete;
+		}
+
+		public void complete() {
+			this.complete = true;
+		}
+
+		public int getSequenceSize() {
+			Message<?> one = this.getOne();
+			return one == null ? 0 : one.getHeaders().getSequenceSize();
+		}
+
+		public int size() {
+			return this.messages == null ? this.groupMetadata.size() : this.messages.size();
+		}
+
+		public Message<?> getOne() {
+			if (this.messages != null) {
+				Iterator<Message<?>> iterator = this.messages.iterator();
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+			Iterator<UUID> messageIds = messageIdIterator(this.groupId, this.groupMetadata);
+			while (messageIds.hasNext()) {
+				Message<?> message = getMessage(messageIds.next());
+				if (message != null) {
+					return message;
+				}
+			}
+			return null;
+		}
+
+		public long getTimestamp() {
+			return this.groupMetadata.getTimestamp();
+		}
+
+		public long getLastModified() {
+			return this.groupMetadata.getLastModified();
+		}
+
+		@Override
+		public String toString() {
+			return "PersistentMessageGroup{" +
+					"groupId=" + this.groupId +
+					", size=" + this.size() +
+					", timestamp=" + this.getTimestamp() +
+					", lastModified=" + this.getLastModified() +
+					'}';
+		}
+	}
+
 	private class MessageGroupIterator implements Iterator<MessageGroup> {
 
 		private final Iterator<?> idIterator;
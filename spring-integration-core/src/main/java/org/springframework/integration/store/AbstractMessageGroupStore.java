@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -13,11 +13,14 @@
 
 package org.springframework.integration.store;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.integration.Message;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 
 /**
@@ -108,6 +111,37 @@ public abstract class AbstractMessageGroupStore implements MessageGroupStore, It
 		return count;
 	}
 
+	/**
+	 * Poll up to <code>maxMessages</code> messages from the group, oldest first. This
+	 * implementation invokes {@link #pollMessageFromGroup(Object)} for each message;
+	 * stores that can retrieve several messages at once should override it.
+	 *
+	 * @param groupId the id of the group to poll the messages from
+	 * @param maxMessages the maximum number of messages to return
+	 * @return the polled messages; never null
+	 * @since 3.0
+	 */
+	public List<Message<?>> pollMessagesFromGroup(Object groupId, int maxMessages) {
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		Message<?> message;
+		while (messages.size() < maxMessages && (message = this.pollMessageFromGroup(groupId)) != null) {
+			messages.add(message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Whether {@link #pollMessageFromGroup(Object)} may be invoked concurrently for the same
+	 * group, each message being returned to one caller only. If so, a {@link MessageGroupQueue}
+	 * does not serialize its pollers. Default false.
+	 *
+	 * @return true if the store can be polled concurrently.
+	 * @since 3.0
+	 */
+	public boolean isConcurrentPollingSupported() {
+		return false;
+	}
+
 	private void expire(MessageGroup group) {
 	
 		RuntimeException exception = null;
@@ -128,4 +162,4 @@ public abstract class AbstractMessageGroupStore implements MessageGroupStore, It
 		}
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,7 +26,12 @@ import org.springframework.integration.Message;
 import org.springframework.util.Assert;
 
 /**
- * Immutable Value Object holding metadata about a MessageGroup.
+ * Value Object holding metadata about a MessageGroup.
+ * <p>
+ * Since 3.0, message ids may also be held outside of this object, as a series of
+ * separately stored <em>entries</em> (see {@link AbstractKeyValueMessageStore}); this
+ * object then only records the range of entry indexes in use and the number of
+ * entries present, so its size does not grow with the size of the group.
  * 
  * @author Oleg Zhurakousky
  * @since 2.1
@@ -39,13 +44,19 @@ public class MessageGroupMetadata implements Serializable{
 	
 	private final List<UUID> messageIds = new LinkedList<UUID>();
 
-	private final boolean complete;
+	private volatile boolean complete;
 
 	private final long timestamp;
 	
 	private volatile long lastModified;
 
-	private final int lastReleasedMessageSequenceNumber;
+	private volatile int lastReleasedMessageSequenceNumber;
+
+	private volatile long firstEntry;
+
+	private volatile long nextEntry;
+
+	private volatile int entryCount;
 
 	public MessageGroupMetadata(MessageGroup messageGroup) {
 		
@@ -60,8 +71,63 @@ public class MessageGroupMetadata implements Serializable{
 		this.lastModified = messageGroup.getLastModified();
 	}
 
-	public void remove(UUID messageId){
-		this.messageIds.remove(messageId);
+	/**
+	 * Remove a message id held by this object (rather than in a separate entry).
+	 * @param messageId the id.
+	 * @return true if the id was removed.
+	 */
+	public boolean remove(UUID messageId){
+		return this.messageIds.remove(messageId);
+	}
+
+	/**
+	 * Allocate the index for a new entry.
+	 * @return the index.
+	 * @since 3.0
+	 */
+	public long appendEntry() {
+		this.entryCount++;
+		return this.nextEntry++;
+	}
+
+	/**
+	 * Record the removal of the entry with the supplied index.
+	 * @param index the index.
+	 * @since 3.0
+	 */
+	public void removeEntry(long index) {
+		Assert.isTrue(index >= this.firstEntry && index < this.nextEntry, "No entry with index " + index);
+		this.entryCount--;
+		if (this.entryCount == 0) {
+			this.firstEntry = this.nextEntry;
+		}
+		else if (index == this.firstEntry) {
+			this.firstEntry++;
+		}
+	}
+
+	/**
+	 * @return the lowest index of an entry that may be present.
+	 * @since 3.0
+	 */
+	public long getFirstEntry() {
+		return this.firstEntry;
+	}
+
+	/**
+	 * @return the index that will be allocated to the next entry.
+	 * @since 3.0
+	 */
+	public long getNextEntry() {
+		return this.nextEntry;
+	}
+
+	public void complete() {
+		this.complete = true;
+	}
+
+	public void setLastReleasedMessageSequenceNumber(int lastReleasedMessageSequenceNumber) {
+		this.lastReleasedMessageSequenceNumber = lastReleasedMessageSequenceNumber;
 	}
 	
 	public void setLastModified(long lastModified) {
@@ -72,14 +138,26 @@ public class MessageGroupMetadata implements Serializable{
 		return this.groupId;
 	}
 	
+	/**
+	 * @return an iterator over the message ids held by this object; ids held
+	 * in separate entries are not included.
+	 */
 	public Iterator<UUID> messageIdIterator(){
 		return this.messageIds.iterator();
 	}
 	
+	/**
+	 * @return the number of messages in the group, including those with ids
+	 * held in separate entries.
+	 */
 	public int size(){
-		return this.messageIds.size();
+		return this.messageIds.size() + this.entryCount;
 	}
 	
+	/**
+	 * @return the first message id held by this object (ids held in separate
+	 * entries are not considered), or null.
+	 */
 	public UUID firstId(){
 		if (this.messageIds.size() > 0){
 			return this.messageIds.iterator().next();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -50,6 +51,8 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 
 	private static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
 
+	private static final int DRAIN_BATCH_SIZE = 100;
+
 	private final MessageGroupStore messageGroupStore;
 
 	private final Object groupId;
@@ -63,6 +66,15 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 
 	private final Condition messageStoreNotEmpty;
 
+	private final boolean concurrentPolling;
+
+	/**
+	 * Incremented (while holding the 'storeLock') whenever a message is offered, so that a
+	 * poller, which releases the lock between polling the store and waiting, does not wait
+	 * for a message that was offered after its poll.
+	 */
+	private volatile long offerCount;
+
 	public MessageGroupQueue(MessageGroupStore messageGroupStore, Object groupId) {
 		this(messageGroupStore, groupId, DEFAULT_CAPACITY, new ReentrantLock(true));
 	}
@@ -86,6 +98,8 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 		this.messageGroupStore = messageGroupStore;
 		this.groupId = groupId;
 		this.capacity = capacity;
+		this.concurrentPolling = messageGroupStore instanceof AbstractMessageGroupStore
+				&& ((AbstractMessageGroupStore) messageGroupStore).isConcurrentPollingSupported();
 	}
 
 	public Iterator<Message<?>> iterator() {
@@ -118,35 +132,31 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 	}
 
 	public Message<?> poll(long timeout, TimeUnit unit) throws InterruptedException {
-		Message<?> message = null;
 		long timeoutInNanos = unit.toNanos(timeout);
-		final Lock storeLock = this.storeLock;
-		storeLock.lockInterruptibly();
-
-		try {
-			while (this.size() == 0 && timeoutInNanos > 0){
-				timeoutInNanos = this.messageStoreNotEmpty.awaitNanos(timeoutInNanos);
+		long offers = this.offerCount;
+		// poll rather than first counting the messages in the store
+		Message<?> message = this.doPoll();
+		while (message == null && timeoutInNanos > 0) {
+			final Lock storeLock = this.storeLock;
+			storeLock.lockInterruptibly();
+			try {
+				while (this.offerCount == offers && timeoutInNanos > 0) {
+					timeoutInNanos = this.messageStoreNotEmpty.awaitNanos(timeoutInNanos);
+				}
+				offers = this.offerCount;
+			}
+			finally {
+				storeLock.unlock();
 			}
 			message = this.doPoll();
-
-		}
-		finally {
-			storeLock.unlock();
 		}
 		return message;
 	}
 
 	public Message<?> poll() {
 		Message<?> message = null;
-		final Lock storeLock = this.storeLock;
 		try {
-			storeLock.lockInterruptibly();
-			try {
-				message = this.doPoll();
-			}
-			finally {
-				storeLock.unlock();
-			}
+			message = this.doPoll();
 		}
 		catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
@@ -162,20 +172,17 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 		Assert.notNull(collection, "'collection' must not be null");
 		int originalSize = collection.size();
 		ArrayList<Message<?>> list = new ArrayList<Message<?>>();
-		final Lock storeLock = this.storeLock;
 		try {
-			storeLock.lockInterruptibly();
-			try {
-				Message<?> message = this.messageGroupStore.pollMessageFromGroup(groupId);
-				for (int i = 0; i < maxElements && message != null; i++) {
-					list.add(message);
-					message = this.messageGroupStore.pollMessageFromGroup(groupId);
+			List<Message<?>> polled;
+			do {
+				int batchSize = Math.min(maxElements - list.size(), DRAIN_BATCH_SIZE);
+				if (batchSize <= 0) {
+					break;
 				}
-				this.messageStoreNotFull.signal();
-			}
-			finally {
-				storeLock.unlock();
+				polled = this.doPoll(batchSize);
+				list.addAll(polled);
 			}
+			while (polled.size() > 0);
 		}
 		catch (InterruptedException e) {
 			logger.warn("Queue may not have drained completely since this operation was interrupted", e);
@@ -249,35 +256,110 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 	}
 
 	public Message<?> take() throws InterruptedException {
-		Message<?> message = null;
-		final Lock storeLock = this.storeLock;
-		storeLock.lockInterruptibly();
+		long offers = this.offerCount;
+		Message<?> message = this.doPoll();
+		while (message == null) {
+			final Lock storeLock = this.storeLock;
+			storeLock.lockInterruptibly();
+			try {
+				while (this.offerCount == offers) {
+					this.messageStoreNotEmpty.await();
+				}
+				offers = this.offerCount;
+			}
+			finally {
+				storeLock.unlock();
+			}
+			message = this.doPoll();
+		}
+		return message;
+	}
 
+	private Collection<Message<?>> getMessages(){
+		return messageGroupStore.getMessageGroup(groupId).getMessages();
+	}
+
+	/**
+	 * Poll a message from the store. Unless the store supports concurrent polling, the
+	 * 'storeLock' is held while polling; otherwise concurrent pollers are not serialized
+	 * while the store retrieves a message (e.g. from a database) and the store is
+	 * responsible for handing each message to one poller only.
+	 */
+	private Message<?> doPoll() throws InterruptedException {
+		this.lockForPoll();
 		try {
-			while (this.size() == 0){
-				this.messageStoreNotEmpty.await();
+			Message<?> message = this.messageGroupStore.pollMessageFromGroup(groupId);
+			if (message != null) {
+				this.signalNotFull(false);
 			}
-			message = this.doPoll();
+			return message;
+		}
+		finally {
+			this.unlockAfterPoll();
+		}
+	}
 
+	private List<Message<?>> doPoll(int maxMessages) throws InterruptedException {
+		this.lockForPoll();
+		try {
+			List<Message<?>> messages;
+			if (this.messageGroupStore instanceof AbstractMessageGroupStore) {
+				messages = ((AbstractMessageGroupStore) this.messageGroupStore).pollMessagesFromGroup(groupId, maxMessages);
+			}
+			else {
+				messages = new ArrayList<Message<?>>();
+				Message<?> message;
+				while (messages.size() < maxMessages
+						&& (message = this.messageGroupStore.pollMessageFromGroup(groupId)) != null) {
+					messages.add(message);
+				}
+			}
+			if (!messages.isEmpty()) {
+				this.signalNotFull(true);
+			}
+			return messages;
 		}
 		finally {
-			storeLock.unlock();
+			this.unlockAfterPoll();
 		}
-		return message;
 	}
 
-	private Collection<Message<?>> getMessages(){
-		return messageGroupStore.getMessageGroup(groupId).getMessages();
+	private void lockForPoll() throws InterruptedException {
+		if (!this.concurrentPolling) {
+			this.storeLock.lockInterruptibly();
+		}
+	}
+
+	private void unlockAfterPoll() {
+		if (!this.concurrentPolling) {
+			this.storeLock.unlock();
+		}
 	}
 
 	/**
-	 * It is assumed that the 'storeLock' is being held by the caller, otherwise
-	 * IllegalMonitorStateException may be thrown
+	 * Signal threads waiting for capacity; the 'storeLock' is obtained if the caller
+	 * does not hold it already, i.e. if the store supports concurrent polling.
 	 */
-	private Message<?> doPoll() {
-		Message<?> message = this.messageGroupStore.pollMessageFromGroup(groupId);
-		this.messageStoreNotFull.signal();
-		return message;
+	private void signalNotFull(boolean all) {
+		if (capacity == Integer.MAX_VALUE) {
+			return;
+		}
+		if (this.concurrentPolling) {
+			this.storeLock.lock();
+		}
+		try {
+			if (all) {
+				this.messageStoreNotFull.signalAll();
+			}
+			else {
+				this.messageStoreNotFull.signal();
+			}
+		}
+		finally {
+			if (this.concurrentPolling) {
+				this.storeLock.unlock();
+			}
+		}
 	}
 
 	/**
@@ -289,6 +371,7 @@ public class MessageGroupQueue extends AbstractQueue<Message<?>> implements Bloc
 		if (capacity == Integer.MAX_VALUE || this.size() < capacity){
 			messageGroupStore.addMessageToGroup(groupId, message);
 			offered = true;
+			this.offerCount++;
 			this.messageStoreNotEmpty.signal();
 		}
 		return offered;
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.store;
+
+/**
+ * A {@link MessageGroup} that can determine whether it contains a message with a
+ * given sequence number without retrieving its messages.
+ *
+ * @since 3.0
+ */
+public interface SequenceAwareMessageGroup extends MessageGroup {
+
+	/**
+	 * @param sequenceNumber the sequence number.
+	 * @return true if the group contains a message with the sequence number.
+	 */
+	boolean containsSequence(Integer sequenceNumber);
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -15,10 +15,13 @@ package org.springframework.integration.store;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageHeaders;
 
 /**
  * Represents a mutable group of correlated messages that is bound to a certain {@link MessageStore} and group id. The
@@ -30,12 +33,18 @@ import org.springframework.integration.Message;
  * @author Gary Russell
  * @since 2.0
  */
-public class SimpleMessageGroup implements MessageGroup {
+public class SimpleMessageGroup implements SequenceAwareMessageGroup {
 
 	private final Object groupId;
 
 	public final BlockingQueue<Message<?>> messages = new LinkedBlockingQueue<Message<?>>();
 
+	/*
+	 * Count of members for each sequence number, maintained as messages are added and
+	 * removed so that containsSequence() does not have to scan the messages.
+	 */
+	private final Map<Integer, Integer> sequences = new HashMap<Integer, Integer>();
+
 	private volatile int lastReleasedMessageSequence;
 
 	private final long timestamp;
@@ -88,7 +97,21 @@ public class SimpleMessageGroup implements MessageGroup {
 	}
 
 	public void remove(Message<?> message) {
-		messages.remove(message);
+		Integer sequenceNumber = sequenceNumber(message);
+		if (messages.remove(message) && sequenceNumber != null) {
+			synchronized (this.sequences) {
+				Integer count = this.sequences.remove(sequenceNumber);
+				if (count != null && count > 1) {
+					this.sequences.put(sequenceNumber, count - 1);
+				}
+			}
+		}
+	}
+
+	public boolean containsSequence(Integer sequenceNumber) {
+		synchronized (this.sequences) {
+			return this.sequences.containsKey(sequenceNumber);
+		}
 	}
 
 	public int getLastReleasedMessageSequenceNumber() {
@@ -96,9 +119,21 @@ public class SimpleMessageGroup implements MessageGroup {
 	}
 
 	private boolean addMessage(Message<?> message) {
+		Integer sequenceNumber = sequenceNumber(message);
+		if (sequenceNumber != null) {
+			synchronized (this.sequences) {
+				Integer count = this.sequences.get(sequenceNumber);
+				this.sequences.put(sequenceNumber, count == null ? 1 : count + 1);
+			}
+		}
 		return this.messages.offer(message);
 	}
 
+	private static Integer sequenceNumber(Message<?> message) {
+		MessageHeaders headers = message.getHeaders();
+		return headers != null ? headers.getSequenceNumber() : null;
+	}
+
 	public Collection<Message<?>> getMessages() {
 		return Collections.unmodifiableCollection(messages);
 	}
@@ -137,6 +172,9 @@ public class SimpleMessageGroup implements MessageGroup {
 
 	public void clear(){
 		this.messages.clear();
+		synchronized (this.sequences) {
+			this.sequences.clear();
+		}
 	}
 
 	@Override
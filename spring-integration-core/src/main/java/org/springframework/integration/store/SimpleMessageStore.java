@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -58,6 +58,8 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 
 	private volatile boolean isUsed;
 
+	private volatile boolean copyOnGet = true;
+
 	/**
 	 * Creates a SimpleMessageStore with a maximum size limited by the given capacity, or unlimited size if the given
 	 * capacity is less than 1. The capacities are applied independently to messages stored via
@@ -103,6 +105,18 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 		this.lockRegistry = lockRegistry;
 	}
 
+	/**
+	 * Set to false to return the stored (mutable) group from {@link #getMessageGroup(Object)},
+	 * rather than a copy. This avoids copying the group's messages each time it is retrieved
+	 * but is only safe when all access to a group is serialized by the caller, for example
+	 * by a correlating message handler that holds the group's lock. Default true.
+	 * @param copyOnGet false to return the stored group.
+	 * @since 3.0
+	 */
+	public void setCopyOnGet(boolean copyOnGet) {
+		this.copyOnGet = copyOnGet;
+	}
+
 	@ManagedAttribute
 	public long getMessageCount() {
 		return idToMessage.size();
@@ -138,6 +152,9 @@ public class SimpleMessageStore extends AbstractMessageGroupStore implements Mes
 		if (group == null) {
 			return new SimpleMessageGroup(groupId);
 		}
+		if (!this.copyOnGet) {
+			return group;
+		}
 		SimpleMessageGroup simpleMessageGroup = new SimpleMessageGroup(group);
 		simpleMessageGroup.setLastModified(group.getLastModified());
 		return simpleMessageGroup;
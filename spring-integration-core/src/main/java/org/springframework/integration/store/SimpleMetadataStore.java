@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -13,8 +13,8 @@
 
 package org.springframework.integration.store;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple implementation of {@link MetadataStore} that uses an in-memory map only.
@@ -25,7 +25,7 @@ import java.util.Map;
  */
 public class SimpleMetadataStore implements MetadataStore {
 
-	private final Map<String, String> metadata = new HashMap<String, String>();
+	private final Map<String, String> metadata = new ConcurrentHashMap<String, String>();
 
 
 	public void put(String key, String value) {
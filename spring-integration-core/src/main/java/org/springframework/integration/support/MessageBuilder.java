@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -59,7 +59,10 @@ public final class MessageBuilder<T> {
 		this.payload = payload;
 		this.originalMessage = originalMessage;
 		if (originalMessage != null) {
-			this.copyHeaders(originalMessage.getHeaders());
+			// the original headers have already been validated; copy them directly
+			this.headers.putAll(originalMessage.getHeaders());
+			this.headers.remove(MessageHeaders.ID);
+			this.headers.remove(MessageHeaders.TIMESTAMP);
 			this.modified = (!this.payload.equals(originalMessage.getPayload()));
 		}
 	}
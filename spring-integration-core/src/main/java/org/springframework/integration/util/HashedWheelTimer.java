@@ -0,0 +1,349 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+/**
+ * A timer, based on a hashed timing wheel, for very large numbers of one-shot tasks
+ * (such as message delays). Scheduling and cancelling a task are O(1) operations and,
+ * unlike scheduling each task with a {@link TaskScheduler}, there is only ever one
+ * task (the 'tick') in the scheduler's queue, regardless of the number of pending
+ * tasks.
+ * <p>
+ * The wheel has a number of buckets (rounded up to a power of 2), each representing
+ * one tick. A task is placed in the bucket for its deadline, together with the number
+ * of complete revolutions of the wheel that must elapse before it expires. On each
+ * tick, the current bucket's tasks are either expired or have their remaining rounds
+ * decremented. Tasks therefore run up to one tick duration after their deadline.
+ * <p>
+ * Expired tasks are run by the provided {@link Executor}; by default, the scheduler
+ * is used if it is also a {@link TaskExecutor} (as is the case for the
+ * ThreadPoolTaskScheduler); otherwise tasks run on the tick thread.
+ *
+ * @since 3.0
+ */
+public class HashedWheelTimer implements DisposableBean {
+
+	public static final long DEFAULT_TICK_DURATION = 100;
+
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	private static final Log logger = LogFactory.getLog(HashedWheelTimer.class);
+
+	private final TaskScheduler taskScheduler;
+
+	private final long tickDuration;
+
+	private final List<LinkedList<Timeout>> wheel;
+
+	private final int mask;
+
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	// removed from the wheel by a tick, but not yet run; cancelled by stop()
+	private final Queue<Timeout> expiredTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	// guards starting and stopping the timer, and adding new timeouts
+	private final Object lifecycleMonitor = new Object();
+
+	private final Object tickMonitor = new Object();
+
+	private volatile Executor executor;
+
+	private volatile ScheduledFuture<?> tickFuture;
+
+	private volatile long startTime;
+
+	private volatile boolean restarted;
+
+	// only accessed while holding the tick monitor
+	private long tick;
+
+	public HashedWheelTimer(TaskScheduler taskScheduler) {
+		this(taskScheduler, DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * @param taskScheduler the scheduler used to run the tick.
+	 * @param tickDuration the duration of a tick (the timer's resolution) in milliseconds.
+	 * @param ticksPerWheel the number of buckets in the wheel; rounded up to a power of 2.
+	 */
+	public HashedWheelTimer(TaskScheduler taskScheduler, long tickDuration, int ticksPerWheel) {
+		Assert.notNull(taskScheduler, "'taskScheduler' must not be null");
+		Assert.isTrue(tickDuration > 0, "'tickDuration' must be greater than 0");
+		Assert.isTrue(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30, "'ticksPerWheel' must be between 1 and 2^30");
+		this.taskScheduler = taskScheduler;
+		this.tickDuration = tickDuration;
+		int size = 1;
+		while (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		this.wheel = new ArrayList<LinkedList<Timeout>>(size);
+		for (int i = 0; i < size; i++) {
+			this.wheel.add(new LinkedList<Timeout>());
+		}
+		this.mask = size - 1;
+		if (taskScheduler instanceof TaskExecutor) {
+			this.executor = (TaskExecutor) taskScheduler;
+		}
+	}
+
+	/**
+	 * Set the executor used to run expired tasks.
+	 * @param executor the executor.
+	 */
+	public void setExecutor(Executor executor) {
+		Assert.notNull(executor, "'executor' must not be null");
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the number of tasks that have been scheduled and have neither expired nor been cancelled.
+	 */
+	public int getPendingCount() {
+		return this.pendingCount.get();
+	}
+
+	/**
+	 * Schedule the task to run at (or up to one tick after) the start time. A start time in the
+	 * past causes the task to run on the next tick.
+	 * @param task the task.
+	 * @param startTime the time at which the task should run.
+	 * @return a {@link Timeout} that can be used to cancel the task.
+	 */
+	public Timeout schedule(Runnable task, Date startTime) {
+		Assert.notNull(task, "'task' must not be null");
+		Assert.notNull(startTime, "'startTime' must not be null");
+		Timeout timeout = new Timeout(task, startTime.getTime());
+		// a concurrent stop() either precedes the start, or cancels the new timeout
+		synchronized (this.lifecycleMonitor) {
+			this.start();
+			this.pendingCount.incrementAndGet();
+			this.newTimeouts.add(timeout);
+		}
+		return timeout;
+	}
+
+	/*
+	 * Must be called while holding the lifecycle monitor.
+	 */
+	private void start() {
+		if (this.tickFuture == null) {
+			this.startTime = System.currentTimeMillis();
+			this.restarted = true;
+			this.tickFuture = this.taskScheduler.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					tick();
+				}
+			}, this.tickDuration);
+		}
+	}
+
+	/**
+	 * Stop the timer; tasks that have not expired are cancelled and will not be run.
+	 * The timer is started again when a task is next scheduled.
+	 */
+	public void stop() {
+		synchronized (this.lifecycleMonitor) {
+			if (this.tickFuture != null) {
+				this.tickFuture.cancel(false);
+				this.tickFuture = null;
+				// the tick never runs tasks (which may schedule or stop) while holding its monitor
+				synchronized (this.tickMonitor) {
+					this.cancelAll();
+				}
+			}
+		}
+	}
+
+	private void cancelAll() {
+		Timeout timeout;
+		while ((timeout = this.newTimeouts.poll()) != null) {
+			timeout.cancel();
+		}
+		while ((timeout = this.expiredTimeouts.poll()) != null) {
+			timeout.cancel();
+		}
+		for (LinkedList<Timeout> bucket : this.wheel) {
+			for (Timeout bucketTimeout : bucket) {
+				bucketTimeout.cancel();
+			}
+			bucket.clear();
+		}
+	}
+
+	public void destroy() {
+		this.stop();
+	}
+
+	/*
+	 * Process all ticks that have elapsed; fixed rate executions are never concurrent,
+	 * but a tick of a stopped timer may still be running when the timer is restarted.
+	 */
+	private void tick() {
+		synchronized (this.tickMonitor) {
+			if (this.restarted) {
+				this.restarted = false;
+				this.restart();
+			}
+			long now = System.currentTimeMillis();
+			while (this.startTime + (this.tick + 1) * this.tickDuration <= now) {
+				this.transferNewTimeouts();
+				this.collectExpiredTimeouts(this.wheel.get((int) (this.tick & this.mask)));
+				this.tick++;
+			}
+		}
+		// run the tasks after releasing the monitor; a task run on this thread may schedule
+		// tasks or stop the timer, and a task cancelled in the meantime is not run
+		Timeout timeout;
+		while ((timeout = this.expiredTimeouts.poll()) != null) {
+			timeout.expire();
+		}
+	}
+
+	/*
+	 * The tick count is relative to the start time; any tasks still in the wheel (scheduled
+	 * while the timer was being stopped) are placed again, relative to the new start time.
+	 */
+	private void restart() {
+		this.tick = 0;
+		for (LinkedList<Timeout> bucket : this.wheel) {
+			this.newTimeouts.addAll(bucket);
+			bucket.clear();
+		}
+	}
+
+	private void transferNewTimeouts() {
+		Timeout timeout;
+		while ((timeout = this.newTimeouts.poll()) != null) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long deadlineTick = (timeout.deadline - this.startTime) / this.tickDuration;
+			// don't schedule into the past; an expired task runs on the current tick
+			long targetTick = Math.max(deadlineTick, this.tick);
+			timeout.remainingRounds = (targetTick - this.tick) / this.wheel.size();
+			this.wheel.get((int) (targetTick & this.mask)).add(timeout);
+		}
+	}
+
+	private void collectExpiredTimeouts(LinkedList<Timeout> bucket) {
+		Iterator<Timeout> iterator = bucket.iterator();
+		while (iterator.hasNext()) {
+			Timeout timeout = iterator.next();
+			if (timeout.cancelled) {
+				iterator.remove();
+			}
+			else if (timeout.remainingRounds <= 0) {
+				iterator.remove();
+				this.expiredTimeouts.add(timeout);
+			}
+			else {
+				timeout.remainingRounds--;
+			}
+		}
+	}
+
+
+	/**
+	 * A handle to a scheduled task.
+	 */
+	public class Timeout {
+
+		private final Runnable task;
+
+		private final long deadline;
+
+		private volatile boolean cancelled;
+
+		private volatile boolean expired;
+
+		// only accessed by the tick task
+		private long remainingRounds;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancel the task; the task is removed from the wheel lazily, when its bucket is next visited.
+		 * @return true if the task was cancelled, false if it had already expired or been cancelled.
+		 */
+		public boolean cancel() {
+			synchronized (this) {
+				if (this.cancelled || this.expired) {
+					return false;
+				}
+				this.cancelled = true;
+			}
+			pendingCount.decrementAndGet();
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isExpired() {
+			return this.expired;
+		}
+
+		private void expire() {
+			synchronized (this) {
+				if (this.cancelled) {
+					return;
+				}
+				this.expired = true;
+			}
+			pendingCount.decrementAndGet();
+			Executor executor = HashedWheelTimer.this.executor;
+			try {
+				if (executor != null) {
+					executor.execute(this.task);
+				}
+				else {
+					this.task.run();
+				}
+			}
+			catch (Throwable t) {
+				logger.error("Failed to run expired task " + this.task, t);
+			}
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.util;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
@@ -43,6 +44,7 @@ import org.springframework.core.MethodParameter;
 import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.EvaluationException;
 import org.springframework.expression.Expression;
 import org.springframework.expression.TypeConverter;
@@ -68,6 +70,11 @@ import org.springframework.util.StringUtils;
  * is provided, and more than one declared method has that name, the method-selection will be dynamic, based on the
  * underlying SpEL method resolution. Alternatively, an annotation type may be provided so that the candidates for
  * SpEL's method resolution are determined by the presence of that annotation rather than the method name.
+ * <p>
+ * When the method to invoke is unambiguous, the arguments for unqualified {@link Payload}, {@link Header},
+ * {@link Headers}, {@link Message} and {@link Map} parameters are resolved directly from the message (only
+ * qualifier expressions such as <code>@Payload("foo.bar")</code> are evaluated with SpEL) and the method is
+ * invoked reflectively, rather than evaluating a SpEL expression for the whole invocation.
  *
  * @author Mark Fisher
  * @author Oleg Zhurakousky
@@ -155,6 +162,9 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		this.targetObject = targetObject;
 		this.handlerMethods = Collections.<Class<?>, HandlerMethod> singletonMap(handlerMethod.getTargetParameterType()
 				.getObjectType(), handlerMethod);
+		// the fixed method filter only applies if the target is not a proxy
+		handlerMethod.setDirectlyInvocable(this.isDirectlyInvocable(method,
+				AopUtils.getTargetClass(targetObject).equals(targetObject.getClass())));
 		this.prepareEvaluationContext(this.getEvaluationContext(), method, annotationType);
 		this.setDisplayString(targetObject, method);
 	}
@@ -167,6 +177,9 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		this.targetObject = targetObject;
 		this.requiresReply = expectedType != null;
 		this.handlerMethods = this.findHandlerMethodsForTarget(targetObject, annotationType, methodName, requiresReply);
+		for (HandlerMethod handlerMethod : this.handlerMethods.values()) {
+			handlerMethod.setDirectlyInvocable(this.isDirectlyInvocable(handlerMethod.method, false));
+		}
 		this.prepareEvaluationContext(this.getEvaluationContext(), methodName, annotationType);
 		this.setDisplayString(targetObject, methodName);
 	}
@@ -202,6 +215,31 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		context.setVariable("target", targetObject);
 	}
 
+	/*
+	 * A method can be invoked directly (rather than via the SpEL expression) if SpEL
+	 * would certainly resolve the same method: either the method is fixed, or it is the
+	 * only public method with its name.
+	 */
+	private boolean isDirectlyInvocable(Method method, boolean fixed) {
+		if (!Modifier.isPublic(method.getModifiers()) || method.isVarArgs()
+				|| !method.getDeclaringClass().isInstance(this.targetObject)) {
+			return false;
+		}
+		if (!fixed) {
+			int count = 0;
+			for (Method candidate : this.targetObject.getClass().getMethods()) {
+				if (!candidate.isBridge() && candidate.getName().equals(method.getName())) {
+					count++;
+				}
+			}
+			if (count != 1) {
+				return false;
+			}
+		}
+		ReflectionUtils.makeAccessible(method);
+		return true;
+	}
+
 	private boolean canReturnExpectedType(AnnotatedMethodFilter filter, Class<?> targetType, TypeConverter typeConverter) {
 		if (expectedType == null) {
 			return true;
@@ -221,10 +259,12 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		Assert.state(!candidates.isEmpty(), "No candidate methods found for messages.");
 		for (HandlerMethod candidate : candidates) {
 			try {
-				Expression expression = candidate.getExpression();
 				Class<?> expectedType = this.expectedType != null ? this.expectedType : candidate.method.getReturnType();
+				Object[] arguments = candidate.resolveArguments(parameters, this.getEvaluationContext());
 				@SuppressWarnings("unchecked")
-				T result = (T) this.evaluateExpression(expression, parameters, expectedType);
+				T result = (arguments != null)
+						? (T) this.invokeHandlerMethod(candidate, arguments, parameters, expectedType)
+						: (T) this.evaluateExpression(candidate.getExpression(), parameters, expectedType);
 				if (this.requiresReply) {
 					Assert.notNull(result,
 							"Expression evaluation result was null, but this processor requires a reply.");
@@ -265,6 +305,29 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		}
 	}
 
+	/*
+	 * Exceptions are propagated as they are when the expression invokes the method.
+	 */
+	private Object invokeHandlerMethod(HandlerMethod candidate, Object[] arguments, ParametersWrapper parameters,
+			Class<?> expectedType) throws Exception {
+		Object result;
+		try {
+			result = candidate.method.invoke(this.targetObject, arguments);
+		}
+		catch (InvocationTargetException e) {
+			Throwable cause = e.getTargetException();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new MessageHandlingException(parameters.getMessage(), "Failed to invoke method " + candidate, cause);
+		}
+		if (result == null || org.springframework.util.ClassUtils.isAssignableValue(expectedType, result)) {
+			return result;
+		}
+		return this.getEvaluationContext().getTypeConverter().convertValue(result,
+				candidate.returnTypeDescriptor.narrow(result), TypeDescriptor.valueOf(expectedType));
+	}
+
 	private Map<Class<?>, HandlerMethod> findHandlerMethodsForTarget(final Object targetObject,
 			final Class<? extends Annotation> annotationType, final String methodName, final boolean requiresReply) {
 
@@ -433,10 +496,22 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 
 		private final boolean canProcessMessageList;
 
+		private final ArgumentSource[] argumentSources;
+
+		private final TypeDescriptor[] parameterTypeDescriptors;
+
+		private final TypeDescriptor returnTypeDescriptor;
+
+		private volatile boolean directlyInvocable;
+
 
 		HandlerMethod(Method method, boolean canProcessMessageList) {
 			this.method = method;
 			this.canProcessMessageList = canProcessMessageList;
+			int parameterCount = method.getParameterTypes().length;
+			this.argumentSources = new ArgumentSource[parameterCount];
+			this.parameterTypeDescriptors = new TypeDescriptor[parameterCount];
+			this.returnTypeDescriptor = new TypeDescriptor(new MethodParameter(method, -1));
 			this.expression = this.generateExpression(method);
 		}
 
@@ -445,6 +520,48 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 			return this.expression;
 		}
 
+		void setDirectlyInvocable(boolean directlyInvocable) {
+			this.directlyInvocable = directlyInvocable;
+		}
+
+		/**
+		 * Resolve the arguments for invoking the method directly, converting them (as SpEL
+		 * would) to the parameter types.
+		 * @return the arguments, or null if the method must be invoked by evaluating the expression.
+		 */
+		Object[] resolveArguments(ParametersWrapper parameters, EvaluationContext context) {
+			if (!this.directlyInvocable) {
+				return null;
+			}
+			TypeConverter typeConverter = context.getTypeConverter();
+			Object[] arguments = new Object[this.argumentSources.length];
+			for (int i = 0; i < arguments.length; i++) {
+				ArgumentSource source = this.argumentSources[i];
+				if (!source.canResolve(parameters)) {
+					return null;
+				}
+				Object argument = source.resolve(parameters, context);
+				TypeDescriptor parameterType = this.parameterTypeDescriptors[i];
+				if (argument == null) {
+					if (parameterType.isPrimitive()) {
+						return null;
+					}
+				}
+				else if (!parameterType.getObjectType().isInstance(argument) || parameterType.isCollection()
+						|| parameterType.isMap() || parameterType.isArray()) {
+					TypeDescriptor argumentType = TypeDescriptor.forObject(argument);
+					if (!argumentType.isAssignableTo(parameterType)) {
+						if (!typeConverter.canConvert(argumentType, parameterType)) {
+							return null;
+						}
+					}
+					argument = typeConverter.convertValue(argument, argumentType, parameterType);
+				}
+				arguments[i] = argument;
+			}
+			return arguments;
+		}
+
 		TypeDescriptor getTargetParameterType() {
 			return this.targetParameterType;
 		}
@@ -463,7 +580,10 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 				if (i != 0) {
 					sb.append(", ");
 				}
+				int argumentExpressionStart = sb.length();
+				ArgumentSource argumentSource = null;
 				TypeDescriptor parameterTypeDescriptor = new TypeDescriptor(new MethodParameter(method, i));
+				this.parameterTypeDescriptors[i] = parameterTypeDescriptor;
 				defaultParameterTypeDescriptor = parameterTypeDescriptor;
 				Class<?> parameterType = parameterTypeDescriptor.getObjectType();
 				Annotation mappingAnnotation = findMappingAnnotation(parameterAnnotations[i]);
@@ -477,6 +597,7 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 						}
 						if (!StringUtils.hasText(qualifierExpression)) {
 							this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+							argumentSource = ArgumentSource.PAYLOAD;
 						}
 					}
 					if (annotationType.equals(Payloads.class)) {
@@ -488,33 +609,44 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 						sb.append("]");
 						if (!StringUtils.hasText(qualifierExpression)) {
 							this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+							argumentSource = ArgumentSource.PAYLOADS;
 						}
 					}
 					else if (annotationType.equals(Headers.class)) {
 						Assert.isTrue(Map.class.isAssignableFrom(parameterType),
 								"The @Headers annotation can only be applied to a Map-typed parameter.");
 						sb.append("headers");
+						argumentSource = ArgumentSource.HEADERS;
 					}
 					else if (annotationType.equals(Header.class)) {
 						Header headerAnnotation = (Header) mappingAnnotation;
-						sb.append(this.determineHeaderExpression(headerAnnotation, new MethodParameter(method, i)));
+						MethodParameter methodParameter = new MethodParameter(method, i);
+						sb.append(this.determineHeaderExpression(headerAnnotation, methodParameter));
+						String headerName = this.determineHeaderName(headerAnnotation, methodParameter);
+						if (headerName.indexOf('.') == -1) {
+							argumentSource = new HeaderArgumentSource(headerName, headerAnnotation.required());
+						}
 					}
 				}
 				else if (parameterTypeDescriptor.isAssignableTo(messageTypeDescriptor)) {
 					sb.append("message");
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+					argumentSource = ArgumentSource.MESSAGE;
 				}
 				else if ((parameterTypeDescriptor.isAssignableTo(messageListTypeDescriptor) || parameterTypeDescriptor
 								.isAssignableTo(messageArrayTypeDescriptor))) {
 					sb.append("messages");
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+					argumentSource = ArgumentSource.MESSAGES;
 				}
 				else if (Collection.class.isAssignableFrom(parameterType) || parameterType.isArray()) {
 					if (canProcessMessageList) {
 						sb.append("messages.![payload]");
+						argumentSource = ArgumentSource.PAYLOADS;
 					}
 					else {
 						sb.append("payload");
+						argumentSource = ArgumentSource.PAYLOAD;
 					}
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
 				}
@@ -530,9 +662,11 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 						}
 						if (parameterizedType != null && Message.class.isAssignableFrom((Class<?>)parameterizedType)){
 							sb.append("messages.iterator()");
+							argumentSource = ArgumentSource.MESSAGES_ITERATOR;
 						}
 						else {
 							sb.append("messages.![payload].iterator()");
+							argumentSource = ArgumentSource.PAYLOADS_ITERATOR;
 						}
 					}
 					else {
@@ -544,9 +678,11 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 					if (Properties.class.isAssignableFrom(parameterType)) {
 						sb.append("payload instanceof T(java.util.Map) or "
 								+ "(payload instanceof T(String) and payload.contains('=')) ? payload : headers");
+						argumentSource = ArgumentSource.PROPERTIES;
 					}
 					else {
 						sb.append("(payload instanceof T(java.util.Map) ? payload : headers)");
+						argumentSource = ArgumentSource.MAP;
 					}
 					Assert.isTrue(!hasUnqualifiedMapParameter,
 							"Found more than one Map typed parameter without any qualification. "
@@ -556,7 +692,14 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 				else {
 					sb.append("payload");
 					this.setExclusiveTargetParameterType(parameterTypeDescriptor);
+					argumentSource = ArgumentSource.PAYLOAD;
 				}
+				if (argumentSource == null) {
+					// a qualifier (or other) expression; evaluate just this argument with SpEL
+					argumentSource = new ExpressionArgumentSource(
+							EXPRESSION_PARSER.parseExpression(sb.substring(argumentExpressionStart)));
+				}
+				this.argumentSources[i] = argumentSource;
 			}
 			if (hasUnqualifiedMapParameter) {
 				if (targetParameterType != null && Map.class.isAssignableFrom(this.targetParameterType.getObjectType())) {
@@ -593,25 +736,15 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 		}
 
 		private String determineHeaderExpression(Header headerAnnotation, MethodParameter methodParameter) {
-			methodParameter.initParameterNameDiscovery(PARAMETER_NAME_DISCOVERER);
-			String headerName = null;
+			String headerName = this.determineHeaderName(headerAnnotation, methodParameter);
 			String relativeExpression = "";
-			String valueAttribute = headerAnnotation.value();
-			if (!StringUtils.hasText(valueAttribute)) {
-				headerName = methodParameter.getParameterName();
-			}
-			else if (valueAttribute.indexOf('.') != -1) {
-				String tokens[] = valueAttribute.split("\\.", 2);
+			if (headerName.indexOf('.') != -1) {
+				String tokens[] = headerName.split("\\.", 2);
 				headerName = tokens[0];
 				if (StringUtils.hasText(tokens[1])) {
 					relativeExpression = "." + tokens[1];
 				}
 			}
-			else {
-				headerName = valueAttribute;
-			}
-			Assert.notNull(headerName, "Cannot determine header name. Possible reasons: -debug is "
-					+ "disabled or header name is not explicitly provided via @Header annotation.");
 			String headerRetrievalExpression = "headers['" + headerName + "']";
 			String fullHeaderExpression = headerRetrievalExpression + relativeExpression;
 			String fallbackExpression = (headerAnnotation.required())
@@ -620,6 +753,20 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 			return headerRetrievalExpression + " != null ? " + fullHeaderExpression + " : " + fallbackExpression;
 		}
 
+		/**
+		 * @return the header name, possibly followed by a '.' and a relative expression.
+		 */
+		private String determineHeaderName(Header headerAnnotation, MethodParameter methodParameter) {
+			String headerName = headerAnnotation.value();
+			if (!StringUtils.hasText(headerName)) {
+				methodParameter.initParameterNameDiscovery(PARAMETER_NAME_DISCOVERER);
+				headerName = methodParameter.getParameterName();
+			}
+			Assert.notNull(headerName, "Cannot determine header name. Possible reasons: -debug is "
+					+ "disabled or header name is not explicitly provided via @Header annotation.");
+			return headerName;
+		}
+
 		private synchronized void setExclusiveTargetParameterType(TypeDescriptor targetParameterType) {
 			Assert.isNull(this.targetParameterType, "Found more than one parameter type candidate: ["
 					+ this.targetParameterType + "] and [" + targetParameterType + "]");
@@ -670,6 +817,14 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 			return message;
 		}
 
+		boolean hasPayload() {
+			return payload != null;
+		}
+
+		boolean hasMessages() {
+			return messages != null;
+		}
+
 		public Class<?> getFirstParameterType() {
 			if (payload != null) {
 				return payload.getClass();
@@ -679,4 +834,142 @@ public class MessagingMethodInvokerHelper<T> extends AbstractExpressionEvaluator
 
 	}
 
+
+	/**
+	 * Resolves a method argument directly from the {@link ParametersWrapper}; each source
+	 * is the equivalent of the SpEL expression generated for the parameter.
+	 */
+	private static abstract class ArgumentSource {
+
+		static final ArgumentSource PAYLOAD = new ArgumentSource(true, false) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return parameters.getPayload();
+			}
+		};
+
+		static final ArgumentSource PAYLOADS = new ArgumentSource(false, true) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return payloads(parameters);
+			}
+		};
+
+		static final ArgumentSource PAYLOADS_ITERATOR = new ArgumentSource(false, true) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return payloads(parameters).iterator();
+			}
+		};
+
+		static final ArgumentSource MESSAGE = new ArgumentSource(false, false) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return parameters.getMessage();
+			}
+		};
+
+		static final ArgumentSource MESSAGES = new ArgumentSource(false, true) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return parameters.getMessages();
+			}
+		};
+
+		static final ArgumentSource MESSAGES_ITERATOR = new ArgumentSource(false, true) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return parameters.getMessages().iterator();
+			}
+		};
+
+		static final ArgumentSource HEADERS = new ArgumentSource(false, false) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				return parameters.getHeaders();
+			}
+		};
+
+		static final ArgumentSource MAP = new ArgumentSource(true, false) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				Object payload = parameters.getPayload();
+				return (payload instanceof Map) ? payload : parameters.getHeaders();
+			}
+		};
+
+		static final ArgumentSource PROPERTIES = new ArgumentSource(true, false) {
+			Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+				Object payload = parameters.getPayload();
+				return (payload instanceof Map || (payload instanceof String && ((String) payload).contains("=")))
+						? payload : parameters.getHeaders();
+			}
+		};
+
+
+		private final boolean requiresPayload;
+
+		private final boolean requiresMessages;
+
+		ArgumentSource(boolean requiresPayload, boolean requiresMessages) {
+			this.requiresPayload = requiresPayload;
+			this.requiresMessages = requiresMessages;
+		}
+
+		/**
+		 * @return false if the argument is not available, in which case the expression is
+		 * evaluated (and reports the error).
+		 */
+		boolean canResolve(ParametersWrapper parameters) {
+			return (!this.requiresPayload || parameters.hasPayload())
+					&& (!this.requiresMessages || parameters.hasMessages());
+		}
+
+		abstract Object resolve(ParametersWrapper parameters, EvaluationContext context);
+
+		private static List<Object> payloads(ParametersWrapper parameters) {
+			Collection<Message<?>> messages = parameters.getMessages();
+			List<Object> payloads = new ArrayList<Object>(messages.size());
+			for (Message<?> message : messages) {
+				payloads.add(message.getPayload());
+			}
+			return payloads;
+		}
+
+	}
+
+	private static class HeaderArgumentSource extends ArgumentSource {
+
+		private final String headerName;
+
+		private final boolean required;
+
+		HeaderArgumentSource(String headerName, boolean required) {
+			super(false, false);
+			this.headerName = headerName;
+			this.required = required;
+		}
+
+		@Override
+		boolean canResolve(ParametersWrapper parameters) {
+			return parameters.getHeaders() != null;
+		}
+
+		Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+			Object value = parameters.getHeaders().get(this.headerName);
+			if (value == null && this.required) {
+				throw new IllegalArgumentException("required header not available:  " + this.headerName);
+			}
+			return value;
+		}
+
+	}
+
+	private static class ExpressionArgumentSource extends ArgumentSource {
+
+		private final Expression expression;
+
+		ExpressionArgumentSource(Expression expression) {
+			super(false, false);
+			this.expression = expression;
+		}
+
+		Object resolve(ParametersWrapper parameters, EvaluationContext context) {
+			return this.expression.getValue(context, parameters);
+		}
+
+	}
+
 }
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded {@link BlockingQueue} backed by a pre-allocated ring buffer. Producers and
+ * consumers claim slots with a compare-and-set on separate sequence counters, so they do
+ * not contend on a shared lock and no node is allocated per element. Intended for use
+ * with a {@link org.springframework.integration.channel.QueueChannel} where throughput
+ * matters.
+ * <p>
+ * The capacity is rounded up to a power of 2 (minimum 2). The {@link WaitStrategy} determines how
+ * threads wait in the blocking (and timed) operations when the queue is full or empty:
+ * <ul>
+ * <li>{@link WaitStrategy#BLOCKING} - park on a lock condition; the lock is only taken
+ * when a thread is actually waiting (default).</li>
+ * <li>{@link WaitStrategy#YIELDING} - spin, yielding the processor between attempts.</li>
+ * <li>{@link WaitStrategy#BUSY_SPIN} - spin without yielding; lowest latency, but
+ * consumes a processor for each waiting thread.</li>
+ * </ul>
+ * {@link #remove(Object)} (used when purging a channel) marks the element's slot as
+ * removed; the slot is skipped and released by the consumer that reaches it. Until
+ * then, the element is excluded from {@link #size()} but its slot still reduces the
+ * {@link #remainingCapacity()}.
+ * {@link #size()} and iteration are weakly consistent.
+ *
+ * @since 3.0
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+	public enum WaitStrategy {
+
+		BLOCKING,
+
+		YIELDING,
+
+		BUSY_SPIN
+
+	}
+
+	private static final Object REMOVED = new Object();
+
+	private final int capacity;
+
+	private final int mask;
+
+	private final AtomicReferenceArray<Object> buffer;
+
+	/*
+	 * For each slot, the position at which a producer may write to it (position) or
+	 * a consumer may read from it (position + 1).
+	 */
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicInteger removedCount = new AtomicInteger();
+
+	private final WaitStrategy waitStrategy;
+
+	private final ReentrantLock waitLock = new ReentrantLock();
+
+	private final Condition notEmpty = this.waitLock.newCondition();
+
+	private final Condition notFull = this.waitLock.newCondition();
+
+	private final AtomicInteger waitingConsumers = new AtomicInteger();
+
+	private final AtomicInteger waitingProducers = new AtomicInteger();
+
+	public RingBufferBlockingQueue(int capacity) {
+		this(capacity, WaitStrategy.BLOCKING);
+	}
+
+	/**
+	 * Create a queue with the wait strategy named by a String such as "busy-spin"
+	 * (case-insensitive, '-' or '_' separated); this allows the strategy to be
+	 * configured with a property placeholder.
+	 * @param capacity the capacity.
+	 * @param waitStrategy the wait strategy name.
+	 */
+	public RingBufferBlockingQueue(int capacity, String waitStrategy) {
+		this(capacity, toWaitStrategy(waitStrategy));
+	}
+
+	public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+		Assert.isTrue(capacity > 0 && capacity <= 1 << 30, "'capacity' must be between 1 and 2^30");
+		Assert.notNull(waitStrategy, "'waitStrategy' must not be null");
+		// a slot's sequence must distinguish 'published' from 'free for the next lap'
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+		this.buffer = new AtomicReferenceArray<Object>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+		this.waitStrategy = waitStrategy;
+	}
+
+	private static WaitStrategy toWaitStrategy(String waitStrategy) {
+		Assert.hasText(waitStrategy, "'waitStrategy' must not be empty");
+		return WaitStrategy.valueOf(waitStrategy.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+	}
+
+	public boolean offer(E e) {
+		Assert.notNull(e, "element must not be null");
+		while (true) {
+			long position = this.tail.get();
+			int index = (int) (position & this.mask);
+			long available = this.sequences.get(index) - position;
+			if (available == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.buffer.set(index, e);
+					this.sequences.set(index, position + 1);
+					this.signal(this.waitingConsumers, this.notEmpty);
+					return true;
+				}
+			}
+			else if (available < 0) {
+				return false;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		while (true) {
+			long position = this.head.get();
+			int index = (int) (position & this.mask);
+			long available = this.sequences.get(index) - (position + 1);
+			if (available == 0) {
+				if (this.head.compareAndSet(position, position + 1)) {
+					Object element = this.buffer.getAndSet(index, null);
+					this.sequences.set(index, position + this.capacity);
+					this.signal(this.waitingProducers, this.notFull);
+					if (element != REMOVED) {
+						return (E) element;
+					}
+					this.removedCount.decrementAndGet();
+				}
+			}
+			else if (available < 0) {
+				return null;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		long to = this.tail.get();
+		for (long position = this.head.get(); position < to; position++) {
+			int index = (int) (position & this.mask);
+			if (this.sequences.get(index) == position + 1) {
+				Object element = this.buffer.get(index);
+				if (element != null && element != REMOVED) {
+					return (E) element;
+				}
+			}
+		}
+		return null;
+	}
+
+	public void put(E e) throws InterruptedException {
+		this.doOffer(e, 0, true);
+	}
+
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		return this.doOffer(e, unit.toNanos(timeout), false);
+	}
+
+	private boolean doOffer(E e, long nanos, boolean forever) throws InterruptedException {
+		Assert.notNull(e, "element must not be null");
+		if (this.offer(e)) {
+			return true;
+		}
+		if (this.waitStrategy == WaitStrategy.BLOCKING) {
+			this.waitingProducers.incrementAndGet();
+			try {
+				this.waitLock.lockInterruptibly();
+				try {
+					while (!this.offer(e)) {
+						if (forever) {
+							this.notFull.await();
+						}
+						else if (nanos <= 0) {
+							return false;
+						}
+						else {
+							nanos = this.notFull.awaitNanos(nanos);
+						}
+					}
+					return true;
+				}
+				finally {
+					this.waitLock.unlock();
+				}
+			}
+			finally {
+				this.waitingProducers.decrementAndGet();
+			}
+		}
+		long deadline = System.nanoTime() + nanos;
+		while (!this.offer(e)) {
+			if (!forever && System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			this.spin();
+		}
+		return true;
+	}
+
+	public E take() throws InterruptedException {
+		return this.doPoll(0, true);
+	}
+
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.doPoll(unit.toNanos(timeout), false);
+	}
+
+	private E doPoll(long nanos, boolean forever) throws InterruptedException {
+		E element = this.poll();
+		if (element != null) {
+			return element;
+		}
+		if (this.waitStrategy == WaitStrategy.BLOCKING) {
+			this.waitingConsumers.incrementAndGet();
+			try {
+				this.waitLock.lockInterruptibly();
+				try {
+					while ((element = this.poll()) == null) {
+						if (forever) {
+							this.notEmpty.await();
+						}
+						else if (nanos <= 0) {
+							return null;
+						}
+						else {
+							nanos = this.notEmpty.awaitNanos(nanos);
+						}
+					}
+					return element;
+				}
+				finally {
+					this.waitLock.unlock();
+				}
+			}
+			finally {
+				this.waitingConsumers.decrementAndGet();
+			}
+		}
+		long deadline = System.nanoTime() + nanos;
+		while ((element = this.poll()) == null) {
+			if (!forever && System.nanoTime() - deadline >= 0) {
+				return null;
+			}
+			this.spin();
+		}
+		return element;
+	}
+
+	private void spin() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (this.waitStrategy == WaitStrategy.YIELDING) {
+			Thread.yield();
+		}
+	}
+
+	/*
+	 * Waiters register (volatile write) before re-checking the buffer under the lock, and
+	 * the buffer is updated (volatile write) before this check, so a waiter cannot miss a
+	 * signal; the lock is not touched at all when nobody is waiting.
+	 */
+	private void signal(AtomicInteger waiting, Condition condition) {
+		if (waiting.get() > 0) {
+			this.waitLock.lock();
+			try {
+				condition.signalAll();
+			}
+			finally {
+				this.waitLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Remove an element from the queue; its slot is released when a consumer reaches it.
+	 */
+	@Override
+	public boolean remove(Object o) {
+		if (o == null) {
+			return false;
+		}
+		long to = this.tail.get();
+		for (long position = this.head.get(); position < to; position++) {
+			int index = (int) (position & this.mask);
+			if (this.sequences.get(index) == position + 1) {
+				Object element = this.buffer.get(index);
+				if (element != null && element != REMOVED && o.equals(element)
+						&& this.buffer.compareAndSet(index, element, REMOVED)) {
+					this.removedCount.incrementAndGet();
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public int drainTo(Collection<? super E> c) {
+		return this.drainTo(c, Integer.MAX_VALUE);
+	}
+
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		Assert.notNull(c, "collection must not be null");
+		Assert.isTrue(c != this, "cannot drain to self");
+		int n = 0;
+		E element;
+		while (n < maxElements && (element = this.poll()) != null) {
+			c.add(element);
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public int size() {
+		long size = this.tail.get() - this.head.get() - this.removedCount.get();
+		return (int) Math.max(0, Math.min(size, this.capacity));
+	}
+
+	/**
+	 * Return the number of free slots; the slots of removed elements are not free
+	 * until a consumer reaches them.
+	 */
+	public int remainingCapacity() {
+		long occupied = this.tail.get() - this.head.get();
+		return (int) Math.max(0, this.capacity - Math.max(0, occupied));
+	}
+
+	/**
+	 * Return a weakly consistent iterator over a snapshot of the elements.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<E>();
+		long to = this.tail.get();
+		for (long position = this.head.get(); position < to; position++) {
+			int index = (int) (position & this.mask);
+			if (this.sequences.get(index) == position + 1) {
+				Object element = this.buffer.get(index);
+				if (element != null && element != REMOVED) {
+					snapshot.add((E) element);
+				}
+			}
+		}
+		final Iterator<E> iterator = snapshot.iterator();
+		return new Iterator<E>() {
+
+			private E last;
+
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			public E next() {
+				this.last = iterator.next();
+				return this.last;
+			}
+
+			public void remove() {
+				Assert.state(this.last != null, "next() has not been called");
+				RingBufferBlockingQueue.this.remove(this.last);
+				this.last = null;
+			}
+
+		};
+	}
+
+}
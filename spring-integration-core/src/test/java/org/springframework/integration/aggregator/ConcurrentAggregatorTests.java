@@ -16,8 +16,12 @@
 
 package org.springframework.integration.aggregator;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -41,6 +45,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Mark Fisher
@@ -298,6 +303,45 @@ public class ConcurrentAggregatorTests {
 		assertNull(reply);
 	}
 
+	@Test
+	public void testManyConcurrentGroupsWithDefaultStore() throws InterruptedException {
+		this.aggregator = new AggregatingMessageHandler(new MultiplyingProcessor());
+		final QueueChannel replyChannel = new QueueChannel();
+		final int groups = 2000;
+		final List<Message<?>> messages = new ArrayList<Message<?>>();
+		for (int i = 0; i < groups; i++) {
+			messages.add(createMessage(3, i, 3, 1, replyChannel, null));
+			messages.add(createMessage(5, i, 3, 2, replyChannel, null));
+			messages.add(createMessage(7, i, 3, 3, replyChannel, null));
+			// duplicate sequence number - whichever arrives last is discarded
+			messages.add(createMessage(11, i, 3, 3, replyChannel, null));
+		}
+		Collections.shuffle(messages);
+		int threads = 8;
+		final CountDownLatch latch = new CountDownLatch(threads);
+		final AtomicInteger next = new AtomicInteger();
+		for (int i = 0; i < threads; i++) {
+			this.taskExecutor.execute(new Runnable() {
+				public void run() {
+					int n;
+					while ((n = next.getAndIncrement()) < messages.size()) {
+						aggregator.handleMessage(messages.get(n));
+					}
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		int replies = 0;
+		Message<?> reply;
+		while ((reply = replyChannel.receive(0)) != null) {
+			Integer product = (Integer) reply.getPayload();
+			assertTrue(product.toString(), product == 105 || product == 165);
+			replies++;
+		}
+		assertEquals(groups, replies);
+	}
+
 
 	private static Message<?> createMessage(Object payload,
 			Object correlationId, int sequenceSize, int sequenceNumber,
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -122,6 +122,18 @@ public class ChannelParserTests {
 		assertEquals(executorBean, innerExecutor);
 	}
 
+	@Test
+	public void testScatterGatherPublishSubscribeChannel() {
+		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("channelParserTests.xml", this
+				.getClass());
+		MessageChannel channel = (MessageChannel) context.getBean("scatterGatherChannel");
+		DirectFieldAccessor accessor = new DirectFieldAccessor(
+				new DirectFieldAccessor(channel).getPropertyValue("dispatcher"));
+		assertEquals(-1, accessor.getPropertyValue("requiredSuccesses"));
+		assertEquals(5000L, accessor.getPropertyValue("gatherTimeout"));
+		context.close();
+	}
+
 	@Test
 	public void channelWithCustomQueue() {
 		ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
@@ -29,6 +29,9 @@ import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.integration.util.RingBufferBlockingQueue;
+import org.springframework.integration.util.RingBufferBlockingQueue.WaitStrategy;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -48,6 +51,14 @@ public class ChannelWithCustomQueueParserTests {
 	@Autowired
 	QueueChannel customQueueChannel;
 
+	@Qualifier("ringBufferChannel")
+	@Autowired
+	QueueChannel ringBufferChannel;
+
+	@Qualifier("placeholderRingBufferChannel")
+	@Autowired
+	QueueChannel placeholderRingBufferChannel;
+
 	@Test
 	public void parseConfig() throws Exception {
 		assertNotNull(customQueueChannel);
@@ -62,4 +73,19 @@ public class ChannelWithCustomQueueParserTests {
 		assertThat(((BlockingQueue<?>)queue).remainingCapacity(), is(2));
 	}
 
+	@Test
+	public void ringBuffer() throws Exception {
+		Object queue = TestUtils.getPropertyValue(ringBufferChannel, "queue");
+		assertThat(queue, is(RingBufferBlockingQueue.class));
+		assertThat(((BlockingQueue<?>) queue).remainingCapacity(), is(8));
+		assertThat(TestUtils.getPropertyValue(queue, "waitStrategy", WaitStrategy.class), is(WaitStrategy.BUSY_SPIN));
+	}
+
+	@Test
+	public void ringBufferWaitStrategyPlaceholder() throws Exception {
+		Object queue = TestUtils.getPropertyValue(placeholderRingBufferChannel, "queue");
+		assertThat(queue, is(RingBufferBlockingQueue.class));
+		assertThat(TestUtils.getPropertyValue(queue, "waitStrategy", WaitStrategy.class), is(WaitStrategy.YIELDING));
+	}
+
 }
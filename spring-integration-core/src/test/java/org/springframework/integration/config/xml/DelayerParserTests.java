@@ -100,6 +100,13 @@ public class DelayerParserTests {
 		assertEquals(context.getBean("testMessageStore"), accessor.getPropertyValue("messageStore"));
 	}
 
+	@Test
+	public void customTimer() {
+		Object endpoint = context.getBean("delayerWithTimer");
+		DelayHandler delayHandler = TestUtils.getPropertyValue(endpoint, "handler", DelayHandler.class);
+		assertSame(context.getBean("testTimer"), TestUtils.getPropertyValue(delayHandler, "timer"));
+	}
+
 	@Test //INT-2649
 	public void transactionalSubElement() {
 		Object endpoint = context.getBean("delayerWithTransactional");
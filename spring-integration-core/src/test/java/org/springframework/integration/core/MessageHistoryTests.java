@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,16 +17,26 @@
 package org.springframework.integration.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Properties;
 
 import org.junit.Test;
 
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.context.NamedComponent;
 import org.springframework.integration.history.MessageHistory;
+import org.springframework.integration.history.MessageHistoryConfigurer;
+import org.springframework.integration.history.MessageHistorySampler;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
 
@@ -58,6 +68,97 @@ public class MessageHistoryTests {
 	}
 
 
+	@Test
+	public void entriesAreShared() {
+		Message<String> result1 = MessageHistory.write(new GenericMessage<String>("foo"), new TestComponent(1));
+		Message<String> result2 = MessageHistory.write(result1, new TestComponent(2));
+		Message<String> result3 = MessageHistory.write(result1, new TestComponent(3));
+		MessageHistory history1 = MessageHistory.read(result1);
+		MessageHistory history2 = MessageHistory.read(result2);
+		MessageHistory history3 = MessageHistory.read(result3);
+		assertEquals(1, history1.size());
+		assertEquals(2, history2.size());
+		assertEquals("testComponent-1,testComponent-3", history3.toString());
+		assertSame(history1.get(0), history2.get(0));
+		assertSame(history1.get(0), history3.get(0));
+		assertEquals("type-2", history2.get(1).getProperty(MessageHistory.TYPE_PROPERTY));
+	}
+
+	@Test
+	public void serialization() throws Exception {
+		Message<String> message = MessageHistory.write(new GenericMessage<String>("foo"), new TestComponent(1));
+		message = MessageHistory.write(message, new TestComponent(2));
+		MessageHistory history = MessageHistory.read(message);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(history);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		MessageHistory result = (MessageHistory) in.readObject();
+		assertEquals(2, result.size());
+		assertEquals(history.get(0), result.get(0));
+		assertEquals(history.get(1), result.get(1));
+		assertSame("testComponent-2", ((MessageHistory.Entry) result.get(1)).getName());
+		Message<String> appended = MessageHistory.write(
+				MessageBuilder.fromMessage(message).setHeader(MessageHistory.HEADER_NAME, result).build(),
+				new TestComponent(3));
+		assertEquals("testComponent-1,testComponent-2,testComponent-3", MessageHistory.read(appended).toString());
+	}
+
+	@Test
+	public void sampling() {
+		MessageHistorySampler sampler = new MessageHistorySampler(4);
+		QueueChannel channel = new QueueChannel();
+		channel.setBeanName("channel");
+		int sampled = 0;
+		for (int i = 0; i < 100; i++) {
+			Message<String> message = MessageHistory.write(new GenericMessage<String>("foo"), new TestComponent(1),
+					sampler);
+			message = MessageHistory.write(message, channel, sampler);
+			MessageHistory history = MessageHistory.read(message);
+			if (history != null) {
+				assertEquals(2, history.size());
+				sampled++;
+			}
+			else {
+				assertFalse(message.getHeaders().containsKey(MessageHistory.HEADER_NAME));
+			}
+		}
+		assertEquals(25, sampled);
+		assertNull(MessageHistory.read(MessageHistory.write(new GenericMessage<String>("foo"), channel, sampler)));
+	}
+
+	@Test
+	public void samplingIsPerConfigurer() {
+		QueueChannel channel1 = new QueueChannel();
+		MessageHistoryConfigurer configurer1 = this.configurer(channel1, 1);
+		QueueChannel channel2 = new QueueChannel();
+		MessageHistoryConfigurer configurer2 = this.configurer(channel2, 4);
+		configurer1.start();
+		configurer2.start();
+		for (int i = 0; i < 10; i++) {
+			channel1.send(new GenericMessage<String>("foo"));
+			channel2.send(new GenericMessage<String>("foo"));
+			assertNotNull(MessageHistory.read(channel1.receive(0)));
+			assertNull(MessageHistory.read(channel2.receive(0)));
+		}
+		configurer2.stop();
+		channel1.send(new GenericMessage<String>("foo"));
+		assertNotNull(MessageHistory.read(channel1.receive(0)));
+		configurer1.stop();
+	}
+
+	private MessageHistoryConfigurer configurer(QueueChannel channel, int sampleRate) {
+		channel.setBeanName("channel");
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("channel", channel);
+		MessageHistoryConfigurer configurer = new MessageHistoryConfigurer();
+		configurer.setBeanFactory(beanFactory);
+		configurer.setSampleRate(sampleRate);
+		return configurer;
+	}
+
+
 	private static class TestComponent implements NamedComponent {
 
 		private final int id;
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,11 +24,17 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.easymock.IAnswer;
 import org.junit.Before;
@@ -36,10 +42,12 @@ import org.junit.Test;
 
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageDeliveryException;
 import org.springframework.integration.MessagingException;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
  * @author Mark Fisher
@@ -301,6 +309,182 @@ public class BroadcastingDispatcherTests {
 		verify(globalMocks);
 	}
 
+	@Test
+	public void scatterGatherWaitsForAllInParallel() {
+		ThreadPoolTaskExecutor executor = this.createExecutor(3);
+		try {
+			dispatcher = new BroadcastingDispatcher(executor);
+			dispatcher.setRequiredSuccesses(-1);
+			final AtomicInteger handled = new AtomicInteger();
+			for (int i = 0; i < 3; i++) {
+				dispatcher.addHandler(new MessageHandler() {
+					public void handleMessage(Message<?> message) throws MessagingException {
+						sleep(300);
+						handled.incrementAndGet();
+					}
+				});
+			}
+			long start = System.currentTimeMillis();
+			assertTrue(dispatcher.dispatch(new GenericMessage<String>("foo")));
+			long elapsed = System.currentTimeMillis() - start;
+			assertEquals(3, handled.get());
+			// max(latency), not sum(latency)
+			assertTrue("Elapsed: " + elapsed, elapsed < 850);
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void scatterGatherFirstSuccess() throws Exception {
+		ThreadPoolTaskExecutor executor = this.createExecutor(3);
+		final CountDownLatch latch = new CountDownLatch(1);
+		try {
+			dispatcher = new BroadcastingDispatcher(executor);
+			dispatcher.setRequiredSuccesses(1);
+			dispatcher.setGatherTimeout(10000);
+			dispatcher.addHandler(new MessageHandler() {
+				public void handleMessage(Message<?> message) throws MessagingException {
+				}
+			});
+			for (int i = 0; i < 2; i++) {
+				dispatcher.addHandler(new MessageHandler() {
+					public void handleMessage(Message<?> message) throws MessagingException {
+						try {
+							latch.await(10, TimeUnit.SECONDS);
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+			assertTrue(dispatcher.dispatch(new GenericMessage<String>("foo")));
+			assertTrue(latch.getCount() > 0);
+		}
+		finally {
+			latch.countDown();
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void scatterGatherFailure() {
+		ThreadPoolTaskExecutor executor = this.createExecutor(2);
+		try {
+			dispatcher = new BroadcastingDispatcher(executor);
+			dispatcher.setRequiredSuccesses(-1);
+			dispatcher.addHandler(new MessageHandler() {
+				public void handleMessage(Message<?> message) throws MessagingException {
+				}
+			});
+			final RuntimeException failure = new RuntimeException("planned");
+			dispatcher.addHandler(new MessageHandler() {
+				public void handleMessage(Message<?> message) throws MessagingException {
+					throw failure;
+				}
+			});
+			Message<String> message = new GenericMessage<String>("foo");
+			try {
+				dispatcher.dispatch(message);
+				fail("Expected exception");
+			}
+			catch (MessageDeliveryException e) {
+				assertSame(failure, e.getCause());
+				assertSame(message, e.getFailedMessage());
+				// fails as soon as the requirement can no longer be met
+				assertTrue(e.getMessage(), e.getMessage().contains("of 2 required handlers succeeded"));
+				assertTrue(e.getMessage(), e.getMessage().contains("failed in"));
+			}
+			dispatcher.setIgnoreFailures(true);
+			assertTrue(dispatcher.dispatch(message));
+		}
+		finally {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void scatterGatherTimeout() {
+		ThreadPoolTaskExecutor executor = this.createExecutor(1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		try {
+			dispatcher = new BroadcastingDispatcher(executor);
+			dispatcher.setRequiredSuccesses(1);
+			dispatcher.setGatherTimeout(100);
+			dispatcher.addHandler(new MessageHandler() {
+				public void handleMessage(Message<?> message) throws MessagingException {
+					try {
+						latch.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			try {
+				dispatcher.dispatch(new GenericMessage<String>("foo"));
+				fail("Expected exception");
+			}
+			catch (MessageDeliveryException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("pending after"));
+			}
+		}
+		finally {
+			latch.countDown();
+			executor.destroy();
+		}
+	}
+
+	@Test
+	public void scatterGatherRejectedTaskIsAFailure() {
+		ThreadPoolTaskExecutor executor = this.createExecutor(1);
+		executor.setQueueCapacity(0);
+		executor.afterPropertiesSet();
+		final CountDownLatch latch = new CountDownLatch(1);
+		try {
+			dispatcher = new BroadcastingDispatcher(executor);
+			dispatcher.setRequiredSuccesses(-1);
+			for (int i = 0; i < 2; i++) {
+				dispatcher.addHandler(new MessageHandler() {
+					public void handleMessage(Message<?> message) throws MessagingException {
+						try {
+							latch.await(10, TimeUnit.SECONDS);
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+			dispatcher.setIgnoreFailures(true);
+			// the second task is rejected, so the requirement can no longer be met
+			assertFalse(dispatcher.dispatch(new GenericMessage<String>("foo")));
+		}
+		finally {
+			latch.countDown();
+			executor.destroy();
+		}
+	}
+
+	private ThreadPoolTaskExecutor createExecutor(int poolSize) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(poolSize);
+		executor.setMaxPoolSize(poolSize);
+		executor.afterPropertiesSet();
+		return executor;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	/**
 	 * Verifies that the dispatcher does not add the message to the exception if it
 	 * was attached by the handler.
@@ -16,7 +16,11 @@
 package org.springframework.integration.dispatcher;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -56,5 +60,58 @@ public class UnicastingDispatcherTests {
 		Message<String> reply = (Message<String>) exchanger.exchange(new GenericMessage<String>("Hello"));
 		assertEquals("reply", reply.getPayload());
 	}
-	
+
+	@Test
+	public void singleHandlerFailureHasFailedMessage() {
+		UnicastingDispatcher dispatcher = new UnicastingDispatcher();
+		dispatcher.setLoadBalancingStrategy(new RoundRobinLoadBalancingStrategy());
+		final MessagingException exception = new MessagingException("test");
+		dispatcher.addHandler(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				throw exception;
+			}
+		});
+		Message<String> message = new GenericMessage<String>("foo");
+		try {
+			dispatcher.dispatch(message);
+			fail("Expected exception");
+		}
+		catch (MessagingException e) {
+			assertSame(exception, e);
+			assertSame(message, e.getFailedMessage());
+		}
+	}
+
+	@Test
+	public void failoverAfterSecondHandlerSubscribed() {
+		UnicastingDispatcher dispatcher = new UnicastingDispatcher();
+		dispatcher.setLoadBalancingStrategy(new RoundRobinLoadBalancingStrategy());
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicInteger successes = new AtomicInteger();
+		dispatcher.addHandler(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				failures.incrementAndGet();
+				throw new MessagingException("test");
+			}
+		});
+		try {
+			dispatcher.dispatch(new GenericMessage<String>("foo"));
+			fail("Expected exception");
+		}
+		catch (MessagingException e) {
+			assertEquals(1, failures.get());
+		}
+		dispatcher.addHandler(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				successes.incrementAndGet();
+			}
+		});
+		for (int i = 0; i < 4; i++) {
+			assertTrue(dispatcher.dispatch(new GenericMessage<String>("foo")));
+		}
+		assertEquals(4, successes.get());
+		// round robin: the failing handler is tried first for every other message
+		assertEquals(3, failures.get());
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,18 +17,36 @@
 package org.springframework.integration.gateway;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.core.PollableChannel;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.integration.message.ErrorMessage;
 import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.integration.util.HashedWheelTimer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * @author Mark Fisher
@@ -100,6 +118,156 @@ public class AsyncGatewayTests {
 	}
 
 
+	@Test
+	public void asyncRepliesWithPayloadReturned() throws Exception {
+		QueueChannel requestChannel = new QueueChannel();
+		TestEchoService service = this.createAsyncRepliesService(requestChannel, null);
+		Future<String> f = service.returnString("foo");
+		assertFalse(f.isDone());
+		Message<?> request = requestChannel.receive(1000);
+		// the future itself is the reply channel; no thread is waiting for the reply
+		assertSame(f, request.getHeaders().getReplyChannel());
+		((MessageChannel) request.getHeaders().getReplyChannel()).send(new GenericMessage<String>("foobar"));
+		assertTrue(f.isDone());
+		assertEquals("foobar", f.get(0, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void asyncRepliesWithMessageReturned() throws Exception {
+		QueueChannel requestChannel = new QueueChannel();
+		startResponder(requestChannel);
+		TestEchoService service = this.createAsyncRepliesService(requestChannel, null);
+		Future<Message<?>> f = service.returnMessage("foo");
+		Object result = f.get(1000, TimeUnit.MILLISECONDS);
+		assertTrue(result instanceof Message<?>);
+		assertEquals("foobar", ((Message<?>) result).getPayload());
+		assertNull(((Message<?>) result).getHeaders().getReplyChannel());
+	}
+
+	@Test
+	public void asyncRepliesWithError() throws Exception {
+		QueueChannel requestChannel = new QueueChannel();
+		TestEchoService service = this.createAsyncRepliesService(requestChannel, null);
+		Future<String> f = service.returnString("foo");
+		Message<?> request = requestChannel.receive(1000);
+		((MessageChannel) request.getHeaders().getErrorChannel()).send(
+				new ErrorMessage(new MessagingException(request, "test")));
+		try {
+			f.get(1000, TimeUnit.MILLISECONDS);
+			fail("expected ExecutionException");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof MessagingException);
+			assertEquals("test", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void asyncRepliesTimeout() throws Exception {
+		QueueChannel requestChannel = new QueueChannel();
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.afterPropertiesSet();
+		try {
+			GatewayProxyFactoryBean proxyFactory = this.createAsyncRepliesProxyFactory(requestChannel, scheduler, null);
+			TestEchoService service = (TestEchoService) proxyFactory.getObject();
+			Future<String> f = service.returnString("foo");
+			try {
+				f.get(5000, TimeUnit.MILLISECONDS);
+				fail("expected ExecutionException");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof MessageTimeoutException);
+			}
+			assertTrue(f.isDone());
+			Message<?> request = requestChannel.receive(0);
+			// a late reply is discarded
+			assertTrue(((MessageChannel) request.getHeaders().getReplyChannel())
+					.send(new GenericMessage<String>("foobar")));
+			try {
+				f.get();
+				fail("expected ExecutionException");
+			}
+			catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof MessageTimeoutException);
+			}
+			// the gateway's timer is stopped with the gateway
+			HashedWheelTimer timer = TestUtils.getPropertyValue(proxyFactory, "replyTimer", HashedWheelTimer.class);
+			proxyFactory.start();
+			proxyFactory.stop();
+			assertNull(TestUtils.getPropertyValue(timer, "tickFuture"));
+		}
+		finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	public void asyncRepliesErrorFlowNotOnReplyThread() throws Exception {
+		QueueChannel requestChannel = new QueueChannel();
+		DirectChannel errorChannel = new DirectChannel();
+		final AtomicReference<Thread> errorFlowThread = new AtomicReference<Thread>();
+		errorChannel.subscribe(new AbstractReplyProducingMessageHandler() {
+
+			@Override
+			protected Object handleRequestMessage(Message<?> requestMessage) {
+				errorFlowThread.set(Thread.currentThread());
+				return "handled";
+			}
+
+		});
+		TestEchoService service = (TestEchoService) this.createAsyncRepliesProxyFactory(requestChannel, null,
+				errorChannel).getObject();
+		Future<String> f = service.returnString("foo");
+		Message<?> request = requestChannel.receive(1000);
+		((MessageChannel) request.getHeaders().getErrorChannel()).send(
+				new ErrorMessage(new MessagingException(request, "test")));
+		assertEquals("handled", f.get(10, TimeUnit.SECONDS));
+		assertNotSame(Thread.currentThread(), errorFlowThread.get());
+	}
+
+	@Test
+	public void asyncRepliesManyPending() throws Exception {
+		QueueChannel requestChannel = new QueueChannel();
+		TestEchoService service = this.createAsyncRepliesService(requestChannel, null);
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 1000; i++) {
+			futures.add(service.returnString("foo" + i));
+		}
+		Message<?> request;
+		while ((request = requestChannel.receive(0)) != null) {
+			((MessageChannel) request.getHeaders().getReplyChannel()).send(
+					new GenericMessage<String>(request.getPayload() + "bar"));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("foo" + i + "bar", futures.get(i).get(0, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	private TestEchoService createAsyncRepliesService(MessageChannel requestChannel,
+			ThreadPoolTaskScheduler scheduler) throws Exception {
+		return (TestEchoService) this.createAsyncRepliesProxyFactory(requestChannel, scheduler, null).getObject();
+	}
+
+	private GatewayProxyFactoryBean createAsyncRepliesProxyFactory(MessageChannel requestChannel,
+			ThreadPoolTaskScheduler scheduler, MessageChannel errorChannel) throws Exception {
+		GatewayProxyFactoryBean proxyFactory = new GatewayProxyFactoryBean();
+		proxyFactory.setDefaultRequestChannel(requestChannel);
+		proxyFactory.setServiceInterface(TestEchoService.class);
+		proxyFactory.setBeanName("testGateway");
+		proxyFactory.setAsyncReplies(true);
+		if (scheduler != null) {
+			DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+			beanFactory.registerSingleton("taskScheduler", scheduler);
+			proxyFactory.setBeanFactory(beanFactory);
+			proxyFactory.setDefaultReplyTimeout(100);
+		}
+		if (errorChannel != null) {
+			proxyFactory.setErrorChannel(errorChannel);
+		}
+		proxyFactory.afterPropertiesSet();
+		return proxyFactory;
+	}
+
 	private static void startResponder(final PollableChannel requestChannel) {
 		new Thread(new Runnable() {
 			public void run() {
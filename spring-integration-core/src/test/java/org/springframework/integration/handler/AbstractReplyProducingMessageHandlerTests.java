@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,10 +16,14 @@
 
 package org.springframework.integration.handler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
 import org.junit.Test;
 import org.junit.matchers.JUnitMatchers;
 import org.junit.runner.RunWith;
@@ -28,7 +32,9 @@ import org.mockito.Mock;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.FileCopyUtils;
 
 /**
  * @author Iwein Fuld
@@ -63,4 +69,31 @@ public class AbstractReplyProducingMessageHandlerTests {
 		}
 	}
 
+	@Test
+	public void streamReplyNotClosed() throws Exception {
+		ServiceActivatingHandler serviceActivator = new ServiceActivatingHandler(new StreamService(), "stream");
+		QueueChannel outputChannel = new QueueChannel();
+		serviceActivator.setOutputChannel(outputChannel);
+		serviceActivator.handleMessage(MessageBuilder.withPayload("foo").build());
+		Message<?> reply = outputChannel.receive(0);
+		assertEquals("foo", new String(FileCopyUtils.copyToByteArray((InputStream) reply.getPayload())));
+	}
+
+
+	public static class StreamService {
+
+		public InputStream stream(String payload) {
+			return new ByteArrayInputStream(payload.getBytes()) {
+
+				// like a real stream, nothing can be read once it is closed
+				@Override
+				public void close() {
+					this.count = 0;
+				}
+
+			};
+		}
+
+	}
+
 }
@@ -46,6 +46,7 @@ import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.SimpleMessageStore;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.test.util.TestUtils;
+import org.springframework.integration.util.HashedWheelTimer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
@@ -401,6 +402,50 @@ public class DelayHandlerTests {
 		assertEquals(0, messageGroupStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
 	}
 
+	@Test
+	public void delayWithTimer() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer(this.taskScheduler, 10, 64);
+		this.delayHandler.setTimer(timer);
+		this.delayHandler.setDefaultDelay(100);
+		this.startDelayerHandler();
+		Message<?> message = MessageBuilder.withPayload("test").build();
+		long start = System.currentTimeMillis();
+		this.input.send(message);
+		this.waitForLatch(10000);
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertSame(message.getPayload(), this.resultHandler.lastMessage.getPayload());
+		assertNotSame(Thread.currentThread(), this.resultHandler.lastThread);
+		assertEquals(0, timer.getPendingCount());
+		timer.destroy();
+	}
+
+	@Test
+	public void testReschedulePersistedMessagesWithTimer() throws Exception {
+		MessageGroupStore messageGroupStore = new SimpleMessageStore();
+		this.delayHandler.setDefaultDelay(200);
+		this.delayHandler.setMessageStore(messageGroupStore);
+		this.startDelayerHandler();
+		this.input.send(MessageBuilder.withPayload("test").build());
+		// emulate restart
+		this.taskScheduler.destroy();
+		assertEquals(1, messageGroupStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+
+		this.taskScheduler.afterPropertiesSet();
+		HashedWheelTimer timer = new HashedWheelTimer(this.taskScheduler, 10, 64);
+		this.delayHandler = new DelayHandler(DELAYER_MESSAGE_GROUP_ID, this.taskScheduler);
+		this.delayHandler.setOutputChannel(output);
+		this.delayHandler.setDefaultDelay(200);
+		this.delayHandler.setMessageStore(messageGroupStore);
+		this.delayHandler.setTimer(timer);
+		this.startDelayerHandler();
+		assertEquals(1, timer.getPendingCount());
+
+		assertTrue(this.latch.await(10, TimeUnit.SECONDS));
+		assertEquals("test", this.resultHandler.lastMessage.getPayload());
+		assertEquals(0, messageGroupStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+		timer.destroy();
+	}
+
 	@Test //INT-1132
 	// Can happen in the parent-child context e.g. Spring-MVC applications
 	public void testDoubleOnApplicationEvent() throws Exception {
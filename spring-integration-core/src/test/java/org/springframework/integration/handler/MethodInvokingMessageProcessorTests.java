@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,6 +23,7 @@ import java.util.Properties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hamcrest.Description;
+import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.internal.matchers.TypeSafeMatcher;
@@ -31,6 +32,7 @@ import org.junit.rules.ExpectedException;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.annotation.Header;
+import org.springframework.integration.annotation.Payload;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
@@ -322,6 +324,55 @@ public class MethodInvokingMessageProcessorTests {
 		assertEquals("true", bean.lastArg);
 	}
 
+	@Test
+	public void headerConvertedToPrimitiveParameter() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("primitiveHeader", String.class, int.class);
+		MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, method);
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("number", "42").build();
+		assertEquals("foo-43", processor.processMessage(message));
+	}
+
+	@Test
+	public void qualifiedPayloadAndHeaderExpressions() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("qualifiedExpressions", int.class, String.class, Map.class);
+		MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, method);
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("prop", "bar").build();
+		assertEquals("3-BAR-prop", processor.processMessage(message));
+	}
+
+	@Test
+	public void requiredHeaderNotAvailable() throws Exception {
+		expected.expect(new ExceptionCauseMatcher(IllegalArgumentException.class));
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("requiredHeader", Integer.class);
+		MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, method);
+		processor.processMessage(new GenericMessage<String>("foo"));
+	}
+
+	@Test
+	public void optionalHeaderNotAvailable() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("optionalHeader", Integer.class);
+		MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, method);
+		assertNull(processor.processMessage(new GenericMessage<String>("foo")));
+	}
+
+	@Test
+	@Ignore
+	public void testPerformance() throws Exception {
+		AnnotatedTestService service = new AnnotatedTestService();
+		Method method = service.getClass().getMethod("messageAndHeader", Message.class, Integer.class);
+		MethodInvokingMessageProcessor processor = new MethodInvokingMessageProcessor(service, method);
+		Message<String> message = MessageBuilder.withPayload("foo").setHeader("number", 42).build();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 1000000; i++) {
+			processor.processMessage(message);
+		}
+		logger.info("1000000 invocations took " + (System.currentTimeMillis() - start) + "ms");
+	}
+
 	private static class ExceptionCauseMatcher extends TypeSafeMatcher<Exception> {
 		private Throwable cause;
 
@@ -443,6 +494,15 @@ public class MethodInvokingMessageProcessorTests {
 			return i;
 		}
 
+		public String primitiveHeader(String payload, @Header("number") int num) {
+			return payload + "-" + (num + 1);
+		}
+
+		public String qualifiedExpressions(@Payload("length()") int length, @Header("prop.toUpperCase()") String prop,
+				Map headers) {
+			return length + "-" + prop + "-" + (headers.containsKey("prop") ? "prop" : "");
+		}
+
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2008 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,13 +25,20 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.springframework.integration.Message;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
+import org.springframework.integration.store.SimpleMessageStore;
 import org.springframework.integration.support.MessageBuilder;
 
 /**
@@ -106,4 +113,103 @@ public class DefaultSplitterTests {
 		Message<?> output = replyChannel.receive(15);
 		assertThat(output, is(nullValue()));
 	}
+
+	@Test
+	public void splitMessageWithEmptyIteratorPayload() throws Exception {
+		Message<Iterator<String>> message = MessageBuilder.withPayload(Collections.<String>emptyList().iterator()).build();
+		QueueChannel replyChannel = new QueueChannel();
+		DefaultMessageSplitter splitter = new DefaultMessageSplitter();
+		splitter.setOutputChannel(replyChannel);
+		splitter.handleMessage(message);
+		Message<?> output = replyChannel.receive(0);
+		assertThat(output, is(nullValue()));
+	}
+
+	@Test
+	public void splitMessageWithIterablePayload() throws Exception {
+		final List<String> items = Arrays.asList("x", "y", "z");
+		Iterable<String> payload = new Iterable<String>() {
+			public Iterator<String> iterator() {
+				return items.iterator();
+			}
+		};
+		Message<Iterable<String>> message = MessageBuilder.withPayload(payload).build();
+		QueueChannel replyChannel = new QueueChannel();
+		DefaultMessageSplitter splitter = new DefaultMessageSplitter();
+		splitter.setOutputChannel(replyChannel);
+		splitter.handleMessage(message);
+		List<Message<?>> replies = replyChannel.clear();
+		assertEquals(3, replies.size());
+		assertEquals("x", replies.get(0).getPayload());
+		assertEquals("y", replies.get(1).getPayload());
+		assertEquals("z", replies.get(2).getPayload());
+		assertEquals(new Integer(3), replies.get(2).getHeaders().getSequenceNumber());
+		assertEquals(new Integer(0), replies.get(2).getHeaders().getSequenceSize());
+	}
+
+	/**
+	 * Each element of an Iterator payload must only be retrieved after the previous
+	 * element has been sent, so the memory used is independent of the number of elements.
+	 */
+	@Test
+	public void splitMessageWithIteratorPayloadIsLazy() throws Exception {
+		final int count = 1000000;
+		final AtomicInteger retrieved = new AtomicInteger();
+		Iterator<Integer> payload = new Iterator<Integer>() {
+			public boolean hasNext() {
+				return retrieved.get() < count;
+			}
+			public Integer next() {
+				return retrieved.incrementAndGet();
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		final AtomicInteger received = new AtomicInteger();
+		DirectChannel outputChannel = new DirectChannel();
+		outputChannel.subscribe(new MessageHandler() {
+			public void handleMessage(Message<?> message) throws MessagingException {
+				int n = received.incrementAndGet();
+				assertEquals(n, message.getPayload());
+				assertEquals(n, retrieved.get());
+				assertEquals(new Integer(n), message.getHeaders().getSequenceNumber());
+			}
+		});
+		DefaultMessageSplitter splitter = new DefaultMessageSplitter();
+		splitter.setOutputChannel(outputChannel);
+		splitter.handleMessage(MessageBuilder.withPayload(payload).build());
+		assertEquals(count, received.get());
+	}
+
+	/**
+	 * The sequence size of an Iterator result is 0, so an aggregator with the default
+	 * (sequence size) release strategy never releases the group; it is only released,
+	 * as a partial result, when it expires.
+	 */
+	@Test
+	public void iteratorResultNotReleasedBySequenceSizeAggregator() throws Exception {
+		SimpleMessageStore store = new SimpleMessageStore();
+		AggregatingMessageHandler aggregator = new AggregatingMessageHandler(
+				new DefaultAggregatingMessageGroupProcessor(), store);
+		QueueChannel aggregatorOutput = new QueueChannel();
+		aggregator.setOutputChannel(aggregatorOutput);
+		aggregator.setSendPartialResultOnExpiry(true);
+		DirectChannel splitterOutput = new DirectChannel();
+		splitterOutput.subscribe(aggregator);
+		DefaultMessageSplitter splitter = new DefaultMessageSplitter();
+		splitter.setOutputChannel(splitterOutput);
+		Message<Iterator<String>> message = MessageBuilder.withPayload(Arrays.asList("x", "y", "z").iterator()).build();
+		splitter.handleMessage(message);
+		assertThat(aggregatorOutput.receive(0), is(nullValue()));
+		assertEquals(3, store.getMessageGroup(message.getHeaders().getId()).size());
+		assertEquals(0, store.getMessageGroup(message.getHeaders().getId()).getSequenceSize());
+
+		store.expireMessageGroups(-10000);
+		Message<?> result = aggregatorOutput.receive(0);
+		assertNotNull(result);
+		assertEquals(Arrays.asList("x", "y", "z"), result.getPayload());
+		assertEquals(0, store.getMessageGroup(message.getHeaders().getId()).size());
+	}
+
 }
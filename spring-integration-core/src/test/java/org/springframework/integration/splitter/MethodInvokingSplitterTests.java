@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertNotNull;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Test;
@@ -72,6 +73,24 @@ public class MethodInvokingSplitterTests {
 		assertEquals("bar", reply2.getPayload());
 	}
 
+	@Test
+	public void splitStringToStringIterator() throws Exception {
+		GenericMessage<String> message = new GenericMessage<String>("foo.bar");
+		MethodInvokingSplitter splitter = this.getSplitter("stringToStringIterator");
+		QueueChannel replyChannel = new QueueChannel();
+		splitter.setOutputChannel(replyChannel);
+		splitter.handleMessage(message);
+		List<Message<?>> replies = replyChannel.clear();
+		assertEquals(2, replies.size());
+		Message<?> reply1 = replies.get(0);
+		assertEquals("foo", reply1.getPayload());
+		assertEquals(new Integer(1), reply1.getHeaders().getSequenceNumber());
+		assertEquals(new Integer(0), reply1.getHeaders().getSequenceSize());
+		Message<?> reply2 = replies.get(1);
+		assertEquals("bar", reply2.getPayload());
+		assertEquals(new Integer(2), reply2.getHeaders().getSequenceNumber());
+	}
+
 	@Test
 	public void splitMessageToStringArray() throws Exception {
 		GenericMessage<String> message = new GenericMessage<String>("foo.bar");
@@ -459,6 +478,10 @@ public class MethodInvokingSplitterTests {
 			return Arrays.asList(input.split("\\."));
 		}
 
+		public Iterator<String> stringToStringIterator(String input) {
+			return Arrays.asList(input.split("\\.")).iterator();
+		}
+
 		public String[] messageToStringArray(Message<?> input) {
 			return input.getPayload().toString().split("\\.");
 		}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -46,6 +46,9 @@ public class SpelSplitterIntegrationTests {
 	@Autowired
 	private MessageChannel beanResolvingInput;
 
+	@Autowired
+	private MessageChannel iteratorInput;
+
 	@Autowired
 	private PollableChannel output;
 
@@ -84,6 +87,19 @@ public class SpelSplitterIntegrationTests {
 		assertNull(output.receive(0));
 	}
 
+	@Test
+	public void iterator() {
+		Message<?> message = MessageBuilder.withPayload(new TestBean()).build();
+		this.iteratorInput.send(message);
+		for (int i = 1; i <= 10; i++) {
+			Message<?> reply = output.receive(0);
+			assertEquals(new Integer(i), reply.getPayload());
+			assertEquals(new Integer(i), reply.getHeaders().getSequenceNumber());
+			assertEquals(new Integer(0), reply.getHeaders().getSequenceSize());
+		}
+		assertNull(output.receive(0));
+	}
+
 
 	static class TestBean {
 
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.PatternMatchUtils;
+
+/**
+ * @since 3.0
+ */
+public class AbstractKeyValueMessageStoreTests {
+
+	private final MapMessageStore store = new MapMessageStore();
+
+	@Test
+	public void testAddGetRemove() {
+		Message<?> message1 = MessageBuilder.withPayload("foo").build();
+		Message<?> message2 = MessageBuilder.withPayload("bar").build();
+		Message<?> message3 = MessageBuilder.withPayload("baz").build();
+		store.addMessageToGroup("X", message1);
+		store.addMessageToGroup("X", message2);
+		MessageGroup group = store.addMessageToGroup("X", message3);
+		assertEquals(3, group.size());
+		assertEquals("foo", group.getOne().getPayload());
+		assertEquals(3, store.messageGroupSize("X"));
+		assertEquals("[foo, bar, baz]", payloads(store.getMessageGroup("X").getMessages()).toString());
+
+		group = store.removeMessageFromGroup("X", message2);
+		assertEquals("[foo, baz]", payloads(group.getMessages()).toString());
+		assertNull(store.getMessage(message2.getHeaders().getId()));
+
+		group = store.removeMessageFromGroup("X", message1);
+		assertEquals(1, group.size());
+		assertEquals("baz", group.getOne().getPayload());
+
+		store.removeMessageGroup("X");
+		assertEquals(0, store.getMessageGroup("X").size());
+		assertTrue(store.map.isEmpty());
+	}
+
+	@Test
+	public void testPoll() {
+		for (int i = 0; i < 5; i++) {
+			store.addMessageToGroup("X", MessageBuilder.withPayload(i).build());
+		}
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, store.pollMessageFromGroup("X").getPayload());
+			assertEquals(4 - i, store.messageGroupSize("X"));
+		}
+		assertNull(store.pollMessageFromGroup("X"));
+		store.addMessageToGroup("X", MessageBuilder.withPayload("foo").build());
+		assertEquals("foo", store.pollMessageFromGroup("X").getPayload());
+	}
+
+	@Test
+	public void testCompleteAndLastReleased() {
+		store.addMessageToGroup("X", MessageBuilder.withPayload("foo").build());
+		assertFalse(store.getMessageGroup("X").isComplete());
+		store.completeGroup("X");
+		store.setLastReleasedSequenceNumberForGroup("X", 5);
+		MessageGroup group = store.getMessageGroup("X");
+		assertTrue(group.isComplete());
+		assertEquals(5, group.getLastReleasedMessageSequenceNumber());
+		assertEquals(1, group.size());
+		Iterator<MessageGroup> iterator = store.iterator();
+		assertTrue(iterator.hasNext());
+		assertEquals("X", iterator.next().getGroupId());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testLegacyMetadata() {
+		Message<?> message1 = store.addMessage(MessageBuilder.withPayload("foo").build());
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		messages.add(message1);
+		store.map.put(AbstractKeyValueMessageStore.MESSAGE_GROUP_KEY_PREFIX + "X",
+				new MessageGroupMetadata(new SimpleMessageGroup(messages, "X")));
+		store.addMessageToGroup("X", MessageBuilder.withPayload("bar").build());
+		assertEquals("[foo, bar]", payloads(store.getMessageGroup("X").getMessages()).toString());
+		assertEquals("foo", store.pollMessageFromGroup("X").getPayload());
+		assertEquals("bar", store.pollMessageFromGroup("X").getPayload());
+		assertEquals(0, store.messageGroupSize("X"));
+	}
+
+	@Test
+	public void testBytesWrittenPerAddIndependentOfGroupSize() {
+		for (int i = 0; i < 100; i++) {
+			store.addMessageToGroup("X", MessageBuilder.withPayload("foo").build());
+		}
+		store.bytesWritten = 0;
+		store.addMessageToGroup("X", MessageBuilder.withPayload("foo").build());
+		long early = store.bytesWritten;
+		for (int i = 0; i < 10000; i++) {
+			store.addMessageToGroup("X", MessageBuilder.withPayload("foo").build());
+		}
+		store.bytesWritten = 0;
+		store.addMessageToGroup("X", MessageBuilder.withPayload("foo").build());
+		// allow for the larger serialized counters
+		assertTrue(store.bytesWritten + " vs " + early, store.bytesWritten <= early + 16);
+		assertEquals(10102, store.messageGroupSize("X"));
+	}
+
+	@Test
+	public void testContainsSequenceWithoutRetrievingMessages() {
+		for (int i = 1; i <= 100; i++) {
+			store.addMessageToGroup("X", sequenceMessage(i, 200));
+		}
+		SequenceAwareMessageGroup group = (SequenceAwareMessageGroup) store.getMessageGroup("X");
+		store.retrieves = 0;
+		assertTrue(group.containsSequence(50));
+		assertFalse(group.containsSequence(150));
+		assertEquals(2, store.retrieves);
+
+		Message<?> message = store.pollMessageFromGroup("X");
+		assertEquals(Integer.valueOf(1), message.getHeaders().getSequenceNumber());
+		assertFalse(((SequenceAwareMessageGroup) store.getMessageGroup("X")).containsSequence(1));
+		assertTrue(((SequenceAwareMessageGroup) store.getMessageGroup("X")).containsSequence(2));
+	}
+
+	@Test
+	public void testRemoveFromGroupWithoutScanning() {
+		List<Message<?>> messages = new ArrayList<Message<?>>();
+		for (int i = 1; i <= 1000; i++) {
+			Message<?> message = sequenceMessage(i, 1000);
+			messages.add(message);
+			store.addMessageToGroup("X", message);
+		}
+		store.retrieves = 0;
+		MessageGroup group = store.removeMessageFromGroup("X", messages.get(500));
+		// metadata, message, entry, sequence count, then the metadata for the returned group
+		assertEquals(5, store.retrieves);
+		assertEquals(999, group.size());
+		assertFalse(((SequenceAwareMessageGroup) group).containsSequence(501));
+		assertNull(store.getMessage(messages.get(500).getHeaders().getId()));
+		assertEquals(500, payloads(group.getMessages()).indexOf(502));
+
+		store.removeMessageGroup("X");
+		assertTrue(store.map.isEmpty());
+	}
+
+	@Test
+	public void testAggregatorRejectsDuplicateSequenceWithoutLoadingGroup() {
+		QueueChannel output = new QueueChannel();
+		QueueChannel discards = new QueueChannel();
+		AggregatingMessageHandler handler = new AggregatingMessageHandler(
+				new DefaultAggregatingMessageGroupProcessor(), store);
+		handler.setOutputChannel(output);
+		handler.setDiscardChannel(discards);
+		for (int i = 1; i < 100; i++) {
+			handler.handleMessage(sequenceMessage(i, 100));
+		}
+		store.retrieves = 0;
+		handler.handleMessage(sequenceMessage(50, 100));
+		assertTrue(store.retrieves + " retrieves", store.retrieves < 10);
+		assertNotNull(discards.receive(0));
+		assertNull(output.receive(0));
+		handler.handleMessage(sequenceMessage(100, 100));
+		Message<?> result = output.receive(0);
+		assertNotNull(result);
+		assertEquals(100, ((Collection<?>) result.getPayload()).size());
+	}
+
+	private static Message<?> sequenceMessage(int sequenceNumber, int sequenceSize) {
+		return MessageBuilder.withPayload(sequenceNumber)
+				.setCorrelationId("X")
+				.setSequenceNumber(sequenceNumber)
+				.setSequenceSize(sequenceSize)
+				.build();
+	}
+
+	private static List<Object> payloads(Collection<Message<?>> messages) {
+		List<Object> payloads = new ArrayList<Object>();
+		for (Message<?> message : messages) {
+			payloads.add(message.getPayload());
+		}
+		return payloads;
+	}
+
+	private static class MapMessageStore extends AbstractKeyValueMessageStore {
+
+		private final Map<Object, Object> map = new ConcurrentHashMap<Object, Object>();
+
+		private volatile long bytesWritten;
+
+		private volatile int retrieves;
+
+		@Override
+		protected Object doRetrieve(Object id) {
+			this.retrieves++;
+			return this.map.get(id);
+		}
+
+		@Override
+		protected void doStore(Object id, Object objectToStore) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream oos = new ObjectOutputStream(bytes);
+				oos.writeObject(objectToStore);
+				oos.close();
+				this.bytesWritten += bytes.size();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			this.map.put(id, objectToStore);
+		}
+
+		@Override
+		protected Object doRemove(Object id) {
+			return this.map.remove(id);
+		}
+
+		@Override
+		protected Collection<?> doListKeys(String keyPattern) {
+			List<Object> keys = new ArrayList<Object>();
+			for (Object key : this.map.keySet()) {
+				if (PatternMatchUtils.simpleMatch(keyPattern, key.toString())) {
+					keys.add(key);
+				}
+			}
+			return keys;
+		}
+
+	}
+
+}
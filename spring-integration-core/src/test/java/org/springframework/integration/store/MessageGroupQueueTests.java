@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,14 +16,19 @@
 
 package org.springframework.integration.store;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -91,6 +96,95 @@ public class MessageGroupQueueTests {
 		assertNotNull(result);
 	}
 
+	@Test
+	public void testConcurrentPollersNotSerialized() throws Exception {
+		final CountDownLatch polling = new CountDownLatch(2);
+		SimpleMessageStore messageGroupStore = new SimpleMessageStore() {
+
+			@Override
+			public boolean isConcurrentPollingSupported() {
+				return true;
+			}
+
+			@Override
+			public Message<?> pollMessageFromGroup(Object groupId) {
+				polling.countDown();
+				try {
+					// only returns once both pollers are in the store at the same time
+					assertTrue(polling.await(10, TimeUnit.SECONDS));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.pollMessageFromGroup(groupId);
+			}
+		};
+		final MessageGroupQueue queue = new MessageGroupQueue(messageGroupStore, "FOO");
+		queue.put(new GenericMessage<String>("foo"));
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		Callable<Message<?>> poller = new Callable<Message<?>>() {
+			public Message<?> call() throws Exception {
+				return queue.poll(100, TimeUnit.MILLISECONDS);
+			}
+		};
+		Future<Message<?>> first = executorService.submit(poller);
+		Future<Message<?>> second = executorService.submit(poller);
+		Message<?> message1 = first.get(10, TimeUnit.SECONDS);
+		Message<?> message2 = second.get(10, TimeUnit.SECONDS);
+		assertTrue(message1 == null ^ message2 == null);
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testTakeWakesUpWithConcurrentPolling() throws Exception {
+		SimpleMessageStore messageGroupStore = new SimpleMessageStore() {
+
+			@Override
+			public boolean isConcurrentPollingSupported() {
+				return true;
+			}
+
+			@Override
+			public synchronized Message<?> pollMessageFromGroup(Object groupId) {
+				return super.pollMessageFromGroup(groupId);
+			}
+		};
+		final MessageGroupQueue queue = new MessageGroupQueue(messageGroupStore, "FOO");
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		Future<Message<?>> taken = executorService.submit(new Callable<Message<?>>() {
+			public Message<?> call() throws Exception {
+				return queue.take();
+			}
+		});
+		queue.put(new GenericMessage<String>("foo"));
+		assertEquals("foo", taken.get(10, TimeUnit.SECONDS).getPayload());
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testDrainToPollsInBatches() throws Exception {
+		final AtomicInteger batches = new AtomicInteger();
+		SimpleMessageStore messageGroupStore = new SimpleMessageStore() {
+
+			@Override
+			public List<Message<?>> pollMessagesFromGroup(Object groupId, int maxMessages) {
+				batches.incrementAndGet();
+				return super.pollMessagesFromGroup(groupId, maxMessages);
+			}
+		};
+		MessageGroupQueue queue = new MessageGroupQueue(messageGroupStore, "FOO", 150);
+		for (int i = 0; i < 150; i++) {
+			queue.put(new GenericMessage<Integer>(i));
+		}
+		List<Message<?>> drained = new ArrayList<Message<?>>();
+		assertEquals(150, queue.drainTo(drained));
+		assertEquals(0, drained.get(0).getPayload());
+		assertEquals(149, drained.get(149).getPayload());
+		// 100 + 50 + an empty batch
+		assertEquals(3, batches.get());
+		assertEquals(150, queue.remainingCapacity());
+	}
+
 	@Test
 	@Ignore
 	public void testConcurrentAccess() throws Exception {
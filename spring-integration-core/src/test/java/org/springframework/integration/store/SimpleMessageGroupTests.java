@@ -5,7 +5,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 
-import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -13,7 +13,11 @@ import java.util.List;
 import org.junit.Test;
 
 import org.springframework.integration.Message;
+import org.springframework.integration.aggregator.AbstractCorrelatingMessageHandler;
+import org.springframework.integration.aggregator.AggregatingMessageHandler;
+import org.springframework.integration.aggregator.DefaultAggregatingMessageGroupProcessor;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.ReflectionUtils;
 
 /**
  * @author Iwein Fuld
@@ -26,35 +30,53 @@ public class SimpleMessageGroupTests {
 
 	private SimpleMessageGroup group = new SimpleMessageGroup(Collections.<Message<?>> emptyList(), key);
 
-	@SuppressWarnings("unchecked")
-	public void prepareForSequenceAwareMessageGroup() throws Exception{
-		Class<SimpleMessageGroup> clazz =
-				(Class<SimpleMessageGroup>)Class.forName("org.springframework.integration.aggregator.AbstractCorrelatingMessageHandler$SequenceAwareMessageGroup");
-		Constructor<SimpleMessageGroup> ctr = clazz.getDeclaredConstructor(MessageGroup.class);
-		ctr.setAccessible(true);
-		group = ctr.newInstance(group);
+	private final AbstractCorrelatingMessageHandler sequenceAwareHandler =
+			new AggregatingMessageHandler(new DefaultAggregatingMessageGroupProcessor());
+
+	private boolean canAddIfSequenceAware(Message<?> message) throws Exception {
+		Method canAdd = ReflectionUtils.findMethod(AbstractCorrelatingMessageHandler.class, "canAdd",
+				MessageGroup.class, Message.class);
+		canAdd.setAccessible(true);
+		return (Boolean) canAdd.invoke(this.sequenceAwareHandler, this.group, message);
 	}
 
 	@Test
 	public void shouldFindSupersedingMessagesIfSequenceAware() throws Exception{
-		this.prepareForSequenceAwareMessageGroup();
 		final Message<?> message1 = MessageBuilder.withPayload("test").setSequenceNumber(1).build();
 		final Message<?> message2 = MessageBuilder.fromMessage(message1).setSequenceNumber(1).build();
-		assertThat(group.canAdd(message1), is(true));
+		assertThat(canAddIfSequenceAware(message1), is(true));
 		group.add(message1);
 		group.add(message2);
-		assertThat(group.canAdd(message1), is(false));
+		assertThat(canAddIfSequenceAware(message1), is(false));
 	}
 
 	@Test
 	public void shouldIgnoreMessagesWithZeroSequenceNumberIfSequenceAware() throws Exception{
-		this.prepareForSequenceAwareMessageGroup();
 		final Message<?> message1 = MessageBuilder.withPayload("test").build();
 		final Message<?> message2 = MessageBuilder.fromMessage(message1).build();
-		assertThat(group.canAdd(message1), is(true));
+		assertThat(canAddIfSequenceAware(message1), is(true));
+		group.add(message1);
+		group.add(message2);
+		assertThat(canAddIfSequenceAware(message1), is(true));
+	}
+
+	@Test
+	public void shouldTrackSequenceNumbersAsMembersChange() throws Exception {
+		final Message<?> message1 = MessageBuilder.withPayload("test").setSequenceNumber(1).build();
+		final Message<?> message2 = MessageBuilder.fromMessage(message1).build();
+		final Message<?> message3 = MessageBuilder.fromMessage(message1).setSequenceNumber(2).build();
 		group.add(message1);
 		group.add(message2);
-		assertThat(group.canAdd(message1), is(true));
+		group.add(message3);
+		assertThat(group.containsSequence(1), is(true));
+		assertThat(group.containsSequence(2), is(true));
+		assertThat(group.containsSequence(3), is(false));
+		group.remove(message1);
+		assertThat(group.containsSequence(1), is(true));
+		group.remove(message2);
+		assertThat(group.containsSequence(1), is(false));
+		group.clear();
+		assertThat(group.containsSequence(2), is(false));
 	}
 
 	@Test // shoudl not fail with NPE (see INT-2666)
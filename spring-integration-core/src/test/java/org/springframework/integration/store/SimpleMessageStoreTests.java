@@ -19,6 +19,7 @@ package org.springframework.integration.store;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import java.util.ArrayList;
@@ -125,6 +126,18 @@ public class SimpleMessageStoreTests {
 		assertEquals(1, ((Collection<?>) ReflectionTestUtils.getField(store, "expiryCallbacks")).size());
 	}
 
+	@Test
+	public void shouldReturnStoredGroupIfNotCopyOnGet() {
+		SimpleMessageStore store = new SimpleMessageStore();
+		store.addMessageToGroup("foo", MessageBuilder.withPayload("bar").build());
+		assertNotSame(store.getMessageGroup("foo"), store.getMessageGroup("foo"));
+		store.setCopyOnGet(false);
+		MessageGroup group = store.getMessageGroup("foo");
+		assertSame(group, store.getMessageGroup("foo"));
+		store.addMessageToGroup("foo", MessageBuilder.withPayload("baz").build());
+		assertEquals(2, group.size());
+	}
+
 	@Test
 	public void shouldExpireMessageGroup() throws Exception {
 
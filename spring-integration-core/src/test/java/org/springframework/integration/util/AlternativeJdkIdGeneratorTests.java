@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @since 3.0
+ */
+public class AlternativeJdkIdGeneratorTests {
+
+	private final AlternativeJdkIdGenerator generator = new AlternativeJdkIdGenerator();
+
+	@Test
+	public void testVersionAndVariant() {
+		for (int i = 0; i < 1000; i++) {
+			UUID id = this.generator.generateId();
+			assertEquals(4, id.version());
+			assertEquals(2, id.variant());
+			assertEquals(id, UUID.fromString(id.toString()));
+		}
+	}
+
+	@Test
+	public void testUniqueAcrossThreads() throws Exception {
+		final Set<UUID> ids = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+		ExecutorService exec = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; i++) {
+			exec.execute(new Runnable() {
+
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						ids.add(generator.generateId());
+					}
+				}
+
+			});
+		}
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(80000, ids.size());
+	}
+
+}
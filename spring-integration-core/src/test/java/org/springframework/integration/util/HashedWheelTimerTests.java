@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.util.HashedWheelTimer.Timeout;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * @since 3.0
+ */
+public class HashedWheelTimerTests {
+
+	private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+	@Before
+	public void setUp() {
+		this.scheduler.setPoolSize(4);
+		this.scheduler.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.destroy();
+	}
+
+	@Test
+	public void testTasksRunInDeadlineOrderAndNotEarly() throws Exception {
+		// small wheel so that tasks wrap around several times
+		HashedWheelTimer timer = new HashedWheelTimer(this.scheduler, 5, 4);
+		timer.setExecutor(new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(5);
+		long now = System.currentTimeMillis();
+		final AtomicInteger early = new AtomicInteger();
+		int[] delays = new int[] { 200, 20, 110, 0, 60 };
+		for (int i = 0; i < delays.length; i++) {
+			final int delay = delays[i];
+			final long deadline = now + delay;
+			timer.schedule(new Runnable() {
+				public void run() {
+					if (System.currentTimeMillis() < deadline) {
+						early.incrementAndGet();
+					}
+					order.add(delay);
+					latch.countDown();
+				}
+			}, new Date(deadline));
+		}
+		assertEquals(5, timer.getPendingCount());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals("[0, 20, 60, 110, 200]", order.toString());
+		assertEquals(0, early.get());
+		assertEquals(0, timer.getPendingCount());
+		timer.destroy();
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer(this.scheduler, 5, 8);
+		final AtomicInteger count = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(1);
+		Timeout cancelled = timer.schedule(new Runnable() {
+			public void run() {
+				count.incrementAndGet();
+			}
+		}, new Date(System.currentTimeMillis() + 20));
+		timer.schedule(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		}, new Date(System.currentTimeMillis() + 50));
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertEquals(1, timer.getPendingCount());
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(0, count.get());
+		assertTrue(cancelled.isCancelled());
+		assertFalse(cancelled.isExpired());
+		timer.destroy();
+	}
+
+	@Test
+	public void testManyTasks() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer(this.scheduler, 10, 64);
+		int n = 100000;
+		final CountDownLatch latch = new CountDownLatch(n);
+		long now = System.currentTimeMillis();
+		Runnable task = new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+		for (int i = 0; i < n; i++) {
+			timer.schedule(task, new Date(now + (i % 1000)));
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		assertEquals(0, timer.getPendingCount());
+		timer.destroy();
+	}
+
+	@Test
+	public void testStopAndRestart() throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer(this.scheduler, 10, 4);
+		final CountDownLatch cancelledLatch = new CountDownLatch(1);
+		timer.schedule(new Runnable() {
+			public void run() {
+				cancelledLatch.countDown();
+			}
+		}, new Date(System.currentTimeMillis() + 10000));
+		// let the wheel turn many times before stopping
+		Thread.sleep(1000);
+		timer.stop();
+		assertEquals(0, timer.getPendingCount());
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		timer.schedule(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		}, new Date(start + 20));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		// a stale tick count would hold the task until the old tick time was reached again
+		assertTrue(System.currentTimeMillis() - start < 500);
+		assertEquals(1, cancelledLatch.getCount());
+		timer.destroy();
+	}
+
+	@Test
+	public void testScheduleConcurrentWithStop() throws Exception {
+		final HashedWheelTimer timer = new HashedWheelTimer(this.scheduler, 1, 4);
+		final List<Timeout> timeouts = Collections.synchronizedList(new ArrayList<Timeout>());
+		final Runnable task = new Runnable() {
+			public void run() {
+			}
+		};
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 2000; j++) {
+						timeouts.add(timer.schedule(task, new Date()));
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				timer.stop();
+				Thread.yield();
+			}
+		}
+		timer.stop();
+		// no task may be left in a stopped timer, neither run nor cancelled
+		for (Timeout timeout : timeouts) {
+			assertTrue(timeout.isCancelled() || timeout.isExpired());
+		}
+		assertEquals(0, timer.getPendingCount());
+	}
+
+}
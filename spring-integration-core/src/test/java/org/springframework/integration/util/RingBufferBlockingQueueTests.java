@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.springframework.integration.Message;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.integration.util.RingBufferBlockingQueue.WaitStrategy;
+
+/**
+ * @since 3.0
+ */
+public class RingBufferBlockingQueueTests {
+
+	@Test
+	public void testOfferPollWrap() {
+		RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(3);
+		assertEquals(4, queue.remainingCapacity());
+		assertNull(queue.poll());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(queue.offer(i));
+			assertTrue(queue.offer(i + 100));
+			assertEquals(2, queue.size());
+			assertEquals(Integer.valueOf(i), queue.peek());
+			assertEquals(Integer.valueOf(i), queue.poll());
+			assertEquals(Integer.valueOf(i + 100), queue.poll());
+			assertNull(queue.poll());
+		}
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(4));
+		assertEquals(0, queue.remainingCapacity());
+		assertEquals("[0, 1, 2, 3]", queue.toString());
+	}
+
+	@Test
+	public void testTimedOperations() throws Exception {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(1, waitStrategy);
+			assertEquals(2, queue.remainingCapacity());
+			long start = System.currentTimeMillis();
+			assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+			assertTrue(System.currentTimeMillis() - start >= 45);
+			assertTrue(queue.offer(1, 50, TimeUnit.MILLISECONDS));
+			assertTrue(queue.offer(1, 50, TimeUnit.MILLISECONDS));
+			start = System.currentTimeMillis();
+			assertFalse(queue.offer(2, 50, TimeUnit.MILLISECONDS));
+			assertTrue(System.currentTimeMillis() - start >= 45);
+			assertEquals(Integer.valueOf(1), queue.take());
+			assertEquals(Integer.valueOf(1), queue.take());
+		}
+	}
+
+	@Test
+	public void testNegativeTimeout() throws Exception {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(1, waitStrategy);
+			assertNull(queue.poll(-1, TimeUnit.MILLISECONDS));
+			assertTrue(queue.offer(1, -1, TimeUnit.MILLISECONDS));
+			assertTrue(queue.offer(2, -1, TimeUnit.MILLISECONDS));
+			assertFalse(queue.offer(3, -1, TimeUnit.MILLISECONDS));
+			assertEquals(Integer.valueOf(1), queue.poll(-1, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testWaitStrategyName() {
+		RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(1, "busy-spin");
+		assertEquals(WaitStrategy.BUSY_SPIN, TestUtils.getPropertyValue(queue, "waitStrategy"));
+	}
+
+	@Test
+	public void testRemoveAndPurge() {
+		QueueChannel channel = new QueueChannel(new RingBufferBlockingQueue<Message<?>>(8));
+		for (int i = 0; i < 6; i++) {
+			channel.send(MessageBuilder.withPayload(i).build());
+		}
+		List<Message<?>> purged = channel.purge(new MessageSelector() {
+			public boolean accept(Message<?> message) {
+				return ((Integer) message.getPayload()) % 2 == 0;
+			}
+		});
+		assertEquals(3, purged.size());
+		assertEquals(3, channel.getQueueSize());
+		// the removed elements' slots are not free until a consumer reaches them
+		assertEquals(2, channel.getRemainingCapacity());
+		assertEquals(0, channel.receive(0).getPayload());
+		assertEquals(2, channel.receive(0).getPayload());
+		assertEquals(4, channel.receive(0).getPayload());
+		assertNull(channel.receive(0));
+		assertEquals(8, channel.getRemainingCapacity());
+	}
+
+	@Test
+	public void testDrainTo() {
+		RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(8);
+		for (int i = 0; i < 5; i++) {
+			queue.offer(i);
+		}
+		List<Integer> drained = new ArrayList<Integer>();
+		assertEquals(3, queue.drainTo(drained, 3));
+		assertEquals(2, queue.drainTo(drained));
+		assertEquals("[0, 1, 2, 3, 4]", drained.toString());
+	}
+
+	@Test
+	public void testConcurrentProducersAndConsumers() throws Exception {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			// busy spinning threads only make progress with a processor each
+			if (waitStrategy != WaitStrategy.BUSY_SPIN || Runtime.getRuntime().availableProcessors() >= 4) {
+				this.concurrentProducersAndConsumers(waitStrategy);
+			}
+		}
+	}
+
+	private void concurrentProducersAndConsumers(WaitStrategy waitStrategy) throws Exception {
+		final RingBufferBlockingQueue<Long> queue = new RingBufferBlockingQueue<Long>(16, waitStrategy);
+		final int threads = 2;
+		final int perProducer = 50000;
+		final AtomicLong sum = new AtomicLong();
+		final CountDownLatch latch = new CountDownLatch(threads * 2);
+		ExecutorService exec = Executors.newFixedThreadPool(threads * 2);
+		for (int i = 0; i < threads; i++) {
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						for (long j = 1; j <= perProducer; j++) {
+							queue.put(j);
+						}
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					latch.countDown();
+				}
+			});
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						for (int j = 0; j < perProducer; j++) {
+							sum.addAndGet(queue.take());
+						}
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(waitStrategy.toString(), latch.await(60, TimeUnit.SECONDS));
+		exec.shutdownNow();
+		assertEquals(waitStrategy.toString(), (long) threads * perProducer * (perProducer + 1) / 2, sum.get());
+		assertEquals(0, queue.size());
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,16 +16,28 @@
 
 package org.springframework.integration.file;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.expression.BeanFactoryResolver;
 import org.springframework.context.expression.MapAccessor;
 import org.springframework.expression.Expression;
@@ -41,6 +53,7 @@ import org.springframework.integration.util.DefaultLockRegistry;
 import org.springframework.integration.util.LockRegistry;
 import org.springframework.integration.util.PassThruLockRegistry;
 import org.springframework.integration.util.WhileLockedProcessor;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.Assert;
 import org.springframework.util.FileCopyUtils;
 
@@ -61,6 +74,15 @@ import org.springframework.util.FileCopyUtils;
  * Likewise, any Object can be converted to a String based on its
  * <code>toString()</code> method by the
  * {@link org.springframework.integration.transformer.ObjectToStringTransformer}.
+ * <p>
+ * When appending ({@link FileExistsMode#APPEND}), an {@link #setOpenFileCacheSize(int)
+ * open file cache} can be configured so that files are kept open (and buffered) between
+ * messages, rather than being opened and closed for each message. The least recently
+ * used file is closed when the cache is full; buffered data is flushed when the buffer
+ * is full, after a number of messages, periodically, and when this handler is stopped or
+ * destroyed. When a reply is expected, the file is flushed before the reply is sent;
+ * when source files are deleted, it is also synced to the storage device before the
+ * source file is deleted.
  *
  * @author Mark Fisher
  * @author Iwein Fuld
@@ -69,7 +91,8 @@ import org.springframework.util.FileCopyUtils;
  * @author Artem Bilan
  * @author Gunnar Hillert
  */
-public class FileWritingMessageHandler extends AbstractReplyProducingMessageHandler {
+public class FileWritingMessageHandler extends AbstractReplyProducingMessageHandler
+		implements SmartLifecycle, DisposableBean {
 
 	private volatile String temporaryFileSuffix =".writing";
 
@@ -95,6 +118,29 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 	private volatile LockRegistry lockRegistry = new PassThruLockRegistry();
 
+	private volatile int openFileCacheSize;
+
+	private volatile int bufferSize = 8192;
+
+	private volatile int flushMessageCount;
+
+	private volatile long flushInterval = 1000;
+
+	private volatile long openFileIdleTimeout = 60000;
+
+	// access order - the eldest entry is the least recently used file
+	private final Map<String, OpenFile> openFiles = new LinkedHashMap<String, OpenFile>(16, 0.75f, true);
+
+	private final Object lifecycleMonitor = new Object();
+
+	private volatile ScheduledFuture<?> flushTask;
+
+	private volatile boolean running;
+
+	private volatile boolean autoStartup = true;
+
+	private volatile int phase;
+
 	/**
 	 * Constructor which sets the {@link #destinationDirectoryExpression} using
 	 * a {@link LiteralExpression}.
@@ -196,7 +242,10 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 	 * directory. The default is <em>false</em>. When set to <em>true</em>, it
 	 * will only have an effect if the inbound Message has a File payload or
 	 * a {@link FileHeaders#ORIGINAL_FILE} header value containing either a
-	 * File instance or a String representing the original file path.
+	 * File instance or a String representing the original file path. When
+	 * appending to a file held open by the {@link #setOpenFileCacheSize(int)
+	 * open file cache}, the data is flushed and synced to the storage device
+	 * before the source file is deleted.
 	 */
 	public void setDeleteSourceFiles(boolean deleteSourceFiles) {
 		this.deleteSourceFiles = deleteSourceFiles;
@@ -212,6 +261,66 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		this.charset = Charset.forName(charset);
 	}
 
+	/**
+	 * Set the maximum number of files to keep open when appending
+	 * ({@link FileExistsMode#APPEND}); when more files are written, the least recently
+	 * used file is closed. The default (0) opens and closes the file for each message.
+	 * When a reply is expected (see {@link #setExpectReply(boolean)}), the file is flushed
+	 * before the reply is sent, so that the data is available to downstream components;
+	 * buffering across messages therefore only applies when no reply is expected.
+	 * @param openFileCacheSize the maximum number of open files.
+	 * @since 3.0
+	 */
+	public void setOpenFileCacheSize(int openFileCacheSize) {
+		Assert.isTrue(openFileCacheSize >= 0, "'openFileCacheSize' must not be negative");
+		this.openFileCacheSize = openFileCacheSize;
+	}
+
+	/**
+	 * Set the size of the buffer for each open file; data is flushed to the file when the
+	 * buffer is full. Default 8192. Only applies when the open file cache is used.
+	 * @param bufferSize the buffer size in bytes.
+	 * @since 3.0
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize > 0, "'bufferSize' must be greater than 0");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Flush an open file after this number of messages have been appended to it.
+	 * Default 0 (no count-based flushing). Only applies when the open file cache is used.
+	 * @param flushMessageCount the message count.
+	 * @since 3.0
+	 */
+	public void setFlushMessageCount(int flushMessageCount) {
+		Assert.isTrue(flushMessageCount >= 0, "'flushMessageCount' must not be negative");
+		this.flushMessageCount = flushMessageCount;
+	}
+
+	/**
+	 * Set the interval at which open files with buffered data are flushed (and idle files
+	 * are closed) while this handler is running. Default 1000 milliseconds. Only applies
+	 * when the open file cache is used.
+	 * @param flushInterval the interval in milliseconds.
+	 * @since 3.0
+	 */
+	public void setFlushInterval(long flushInterval) {
+		Assert.isTrue(flushInterval > 0, "'flushInterval' must be greater than 0");
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Close open files that have not been written to for this time. Default 60000
+	 * milliseconds. Only applies when the open file cache is used.
+	 * @param openFileIdleTimeout the timeout in milliseconds.
+	 * @since 3.0
+	 */
+	public void setOpenFileIdleTimeout(long openFileIdleTimeout) {
+		Assert.isTrue(openFileIdleTimeout > 0, "'openFileIdleTimeout' must be greater than 0");
+		this.openFileIdleTimeout = openFileIdleTimeout;
+	}
+
 	@Override
 	public final void onInit() {
 
@@ -327,6 +436,11 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 	private File handleFileMessage(final File sourceFile, File tempFile, final File resultFile) throws IOException {
 		if (FileExistsMode.APPEND.equals(this.fileExistsMode)){
 			File fileToWriteTo = this.determineFileToWrite(resultFile, tempFile);
+			if (this.openFileCacheSize > 0) {
+				this.appendToOpenFile(fileToWriteTo, null, sourceFile, this.deleteSourceFiles);
+				this.cleanUpAfterCopy(fileToWriteTo, resultFile, sourceFile);
+				return resultFile;
+			}
 			final FileOutputStream fos = new FileOutputStream(fileToWriteTo, true);
 			final FileInputStream fis = new FileInputStream(sourceFile);
 			WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry, fileToWriteTo.getAbsolutePath()){
@@ -360,6 +474,12 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 		final boolean append = FileExistsMode.APPEND.equals(this.fileExistsMode);
 
+		if (append && this.openFileCacheSize > 0) {
+			this.appendToOpenFile(fileToWriteTo, bytes, null, this.deleteSourceFiles && originalFile != null);
+			this.cleanUpAfterCopy(fileToWriteTo, resultFile, originalFile);
+			return resultFile;
+		}
+
 		final FileOutputStream fos = new FileOutputStream(fileToWriteTo, append);
 		WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry, fileToWriteTo.getAbsolutePath()){
 			@Override
@@ -378,6 +498,13 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 		final boolean append = FileExistsMode.APPEND.equals(this.fileExistsMode);
 
+		if (append && this.openFileCacheSize > 0) {
+			this.appendToOpenFile(fileToWriteTo, content.getBytes(this.charset), null,
+					this.deleteSourceFiles && originalFile != null);
+			this.cleanUpAfterCopy(fileToWriteTo, resultFile, originalFile);
+			return resultFile;
+		}
+
 		final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(fileToWriteTo, append), this.charset);
 		WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry, fileToWriteTo.getAbsolutePath()){
 			@Override
@@ -392,6 +519,183 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		return resultFile;
 	}
 
+	/*
+	 * Append the bytes, or the content of the source file, to the (cached) open file. When
+	 * the source is to be deleted, the data is synced to the device first, so that it is
+	 * not only held in the buffer (or the operating system's cache) when the source is gone.
+	 */
+	private void appendToOpenFile(final File fileToWriteTo, final byte[] bytes, final File sourceFile,
+			final boolean sync) throws IOException {
+		WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry, fileToWriteTo.getAbsolutePath()){
+			@Override
+			protected void whileLocked() throws IOException {
+				InputStream inputStream = (sourceFile != null) ? new FileInputStream(sourceFile) : null;
+				try {
+					boolean appended = false;
+					// the file may be closed (evicted) by another thread before we write to it
+					while (!appended) {
+						OpenFile openFile = getOpenFile(fileToWriteTo);
+						try {
+							appended = openFile.append(bytes, inputStream, expectReply, sync);
+						}
+						catch (IOException e) {
+							discard(openFile);
+							throw e;
+						}
+					}
+				}
+				finally {
+					if (inputStream != null) {
+						inputStream.close();
+					}
+				}
+			}
+		};
+		whileLockedProcessor.doWhileLocked();
+	}
+
+	private OpenFile getOpenFile(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		OpenFile openFile;
+		List<OpenFile> evicted = null;
+		synchronized (this.openFiles) {
+			openFile = this.openFiles.get(key);
+			if (openFile == null) {
+				openFile = new OpenFile(file, this.bufferSize);
+				this.openFiles.put(key, openFile);
+				if (this.openFiles.size() > this.openFileCacheSize) {
+					evicted = new ArrayList<OpenFile>();
+					Iterator<OpenFile> iterator = this.openFiles.values().iterator();
+					while (this.openFiles.size() > this.openFileCacheSize) {
+						evicted.add(iterator.next());
+						iterator.remove();
+					}
+				}
+			}
+		}
+		if (evicted != null) {
+			this.close(evicted);
+		}
+		return openFile;
+	}
+
+	private void discard(OpenFile openFile) {
+		synchronized (this.openFiles) {
+			String key = openFile.file.getAbsolutePath();
+			if (this.openFiles.get(key) == openFile) {
+				this.openFiles.remove(key);
+			}
+		}
+		this.close(Collections.singletonList(openFile));
+	}
+
+	/*
+	 * Flush files that have buffered data and close those that are idle (or all files).
+	 */
+	private void flushOpenFiles(boolean closeAll) {
+		List<OpenFile> toFlush;
+		List<OpenFile> toClose = new ArrayList<OpenFile>();
+		long idleSince = System.currentTimeMillis() - this.openFileIdleTimeout;
+		synchronized (this.openFiles) {
+			toFlush = new ArrayList<OpenFile>(this.openFiles.values());
+			Iterator<OpenFile> iterator = this.openFiles.values().iterator();
+			while (iterator.hasNext()) {
+				OpenFile openFile = iterator.next();
+				if (closeAll || openFile.lastWrite < idleSince) {
+					toClose.add(openFile);
+					iterator.remove();
+				}
+			}
+		}
+		toFlush.removeAll(toClose);
+		for (OpenFile openFile : toFlush) {
+			try {
+				openFile.flush();
+			}
+			catch (IOException e) {
+				logger.error("Failed to flush file " + openFile.file, e);
+			}
+		}
+		this.close(toClose);
+	}
+
+	private void close(List<OpenFile> openFiles) {
+		for (OpenFile openFile : openFiles) {
+			try {
+				openFile.close();
+			}
+			catch (IOException e) {
+				logger.error("Failed to close file " + openFile.file, e);
+			}
+		}
+	}
+
+	/**
+	 * SmartLifecycle implementation; starts periodic flushing of open files, if the
+	 * open file cache is used and a task scheduler is available.
+	 */
+	public void start() {
+		synchronized (this.lifecycleMonitor) {
+			if (!this.running) {
+				TaskScheduler taskScheduler = this.getTaskScheduler();
+				if (this.openFileCacheSize > 0 && taskScheduler != null) {
+					this.flushTask = taskScheduler.scheduleAtFixedRate(new Runnable() {
+						public void run() {
+							flushOpenFiles(false);
+						}
+					}, this.flushInterval);
+				}
+				this.running = true;
+			}
+		}
+	}
+
+	/**
+	 * SmartLifecycle implementation; flushes and closes all open files.
+	 */
+	public void stop() {
+		synchronized (this.lifecycleMonitor) {
+			if (this.flushTask != null) {
+				this.flushTask.cancel(false);
+				this.flushTask = null;
+			}
+			this.flushOpenFiles(true);
+			this.running = false;
+		}
+	}
+
+	public void stop(Runnable callback) {
+		this.stop();
+		callback.run();
+	}
+
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	public boolean isAutoStartup() {
+		return this.autoStartup;
+	}
+
+	public void setAutoStartup(boolean autoStartup) {
+		this.autoStartup = autoStartup;
+	}
+
+	public int getPhase() {
+		return this.phase;
+	}
+
+	public void setPhase(int phase) {
+		this.phase = phase;
+	}
+
+	/**
+	 * Flushes and closes all open files.
+	 */
+	public void destroy() {
+		this.stop();
+	}
+
 	private File determineFileToWrite(File resultFile, File tempFile){
 
 		final File fileToWriteTo;
@@ -477,4 +781,76 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		return destinationDirectory;
 	}
 
+
+	/**
+	 * A buffered, open file; all operations are synchronized.
+	 */
+	private class OpenFile {
+
+		private final File file;
+
+		private final FileOutputStream fileOutputStream;
+
+		private final OutputStream outputStream;
+
+		private volatile long lastWrite = System.currentTimeMillis();
+
+		private int unflushedCount;
+
+		private boolean closed;
+
+		private OpenFile(File file, int bufferSize) throws IOException {
+			this.file = file;
+			this.fileOutputStream = new FileOutputStream(file, true);
+			this.outputStream = new BufferedOutputStream(this.fileOutputStream, bufferSize);
+		}
+
+		/**
+		 * @param flush true to flush the buffer after appending.
+		 * @param sync true to flush the buffer and sync the file to the device after appending.
+		 * @return false if the file has been closed.
+		 */
+		private synchronized boolean append(byte[] bytes, InputStream inputStream, boolean flush, boolean sync)
+				throws IOException {
+			if (this.closed) {
+				return false;
+			}
+			if (bytes != null) {
+				this.outputStream.write(bytes);
+			}
+			else {
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = inputStream.read(buffer)) != -1) {
+					this.outputStream.write(buffer, 0, n);
+				}
+			}
+			this.lastWrite = System.currentTimeMillis();
+			this.unflushedCount++;
+			int flushMessageCount = FileWritingMessageHandler.this.flushMessageCount;
+			if (flush || sync || (flushMessageCount > 0 && this.unflushedCount >= flushMessageCount)) {
+				this.flush();
+			}
+			if (sync) {
+				this.fileOutputStream.getFD().sync();
+			}
+			return true;
+		}
+
+		private synchronized void flush() throws IOException {
+			if (!this.closed && this.unflushedCount > 0) {
+				this.unflushedCount = 0;
+				this.outputStream.flush();
+			}
+		}
+
+		private synchronized void close() throws IOException {
+			if (!this.closed) {
+				this.closed = true;
+				this.outputStream.close();
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.file.filters.AbstractRegexPatternFileListFilter;
+import org.springframework.integration.file.filters.AbstractSimplePatternFileListFilter;
+import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
+import org.springframework.integration.file.filters.FileListFilter;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link DirectoryScanner} for directories containing very large numbers of files.
+ * The directory is scanned in full once; after that, only directories that have been
+ * modified (files created, deleted or renamed) since they were last listed are listed
+ * again, and only the files that were not previously present are passed to the filter.
+ * <p>
+ * Files that are rejected by the filter when they first appear (for example because
+ * they are not yet complete) are passed to the filter again on each subsequent scan,
+ * until they are accepted or deleted. Files rejected by a
+ * {@link #setPatternFilter(FileListFilter) pattern filter}, or by a filter that is itself
+ * a pattern filter, are not passed to the filter again (until the next full scan), since
+ * the decision only depends on the file name. Changes to the content of existing files are not
+ * detected, other than by a full scan; a full scan (which passes all files to the filter,
+ * like the {@link DefaultDirectoryScanner}) can be performed periodically by setting a
+ * {@link #setFullScanInterval(long) full scan interval}.
+ * <p>
+ * Directories whose last modified time is close to the time they were listed are listed
+ * again on the next scan, to allow for file systems with a coarse timestamp resolution.
+ *
+ * @since 3.0
+ */
+public class IncrementalDirectoryScanner implements DirectoryScanner {
+
+	/*
+	 * Some file systems (e.g. FAT) only have a 2 second timestamp resolution.
+	 */
+	private static final long TIMESTAMP_RESOLUTION = 2000;
+
+	private volatile FileListFilter<File> filter = new AcceptOnceFileListFilter<File>();
+
+	private volatile FileListFilter<File> patternFilter;
+
+	private volatile FileLocker locker;
+
+	private volatile boolean recursive;
+
+	private volatile long fullScanInterval;
+
+	private final Map<File, DirectoryState> directories = new LinkedHashMap<File, DirectoryState>();
+
+	private final Set<File> pending = new LinkedHashSet<File>();
+
+	private File root;
+
+	private long lastFullScan;
+
+
+	public void setFilter(FileListFilter<File> filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Set a filter that only depends on the file names (such as a
+	 * {@link org.springframework.integration.file.filters.SimplePatternFileListFilter});
+	 * it is applied to new files before the
+	 * {@link #setFilter(FileListFilter) filter}, and the files it rejects are not retried.
+	 * @param patternFilter the pattern filter.
+	 */
+	public void setPatternFilter(FileListFilter<File> patternFilter) {
+		this.patternFilter = patternFilter;
+	}
+
+	public void setLocker(FileLocker locker) {
+		this.locker = locker;
+	}
+
+	/**
+	 * Set to true to list the files in sub-directories (but not the sub-directories
+	 * themselves), as the {@link RecursiveLeafOnlyDirectoryScanner} does. Default false.
+	 * @param recursive true to scan recursively.
+	 */
+	public void setRecursive(boolean recursive) {
+		this.recursive = recursive;
+	}
+
+	/**
+	 * Set the interval after which the next scan is a full scan. Default 0 - only the
+	 * first scan is a full scan.
+	 * @param fullScanInterval the interval in milliseconds.
+	 */
+	public void setFullScanInterval(long fullScanInterval) {
+		Assert.isTrue(fullScanInterval >= 0, "'fullScanInterval' must not be negative");
+		this.fullScanInterval = fullScanInterval;
+	}
+
+	public boolean tryClaim(File file) {
+		return (this.locker == null) || this.locker.lock(file);
+	}
+
+	public synchronized List<File> listFiles(File directory) throws IllegalArgumentException {
+		long now = System.currentTimeMillis();
+		List<File> candidates;
+		if (!directory.equals(this.root)
+				|| (this.fullScanInterval > 0 && now - this.lastFullScan >= this.fullScanInterval)) {
+			Set<File> known = this.knownFiles();
+			this.directories.clear();
+			this.root = directory;
+			this.lastFullScan = now;
+			candidates = new ArrayList<File>();
+			if (!this.track(directory, candidates)) {
+				this.root = null;
+				throw new MessagingException("The path [" + directory
+						+ "] does not denote a properly accessible directory.");
+			}
+			candidates = this.matchPattern(candidates);
+			for (File file : candidates) {
+				if (!known.contains(file)) {
+					this.pending.add(file);
+				}
+			}
+		}
+		else {
+			List<File> created = this.scanModifiedDirectories();
+			this.pending.addAll(this.matchPattern(created));
+			candidates = new ArrayList<File>(this.pending);
+		}
+		List<File> accepted = (this.filter == null) ? candidates
+				: this.filter.filterFiles(candidates.toArray(new File[candidates.size()]));
+		this.pending.removeAll(accepted);
+		if (this.isPatternFilter(this.filter)) {
+			this.pending.clear();
+		}
+		for (Iterator<File> iterator = this.pending.iterator(); iterator.hasNext();) {
+			if (!iterator.next().exists()) {
+				iterator.remove();
+			}
+		}
+		return accepted;
+	}
+
+	private List<File> matchPattern(List<File> files) {
+		FileListFilter<File> patternFilter = this.patternFilter;
+		return (patternFilter == null || files.isEmpty()) ? files
+				: patternFilter.filterFiles(files.toArray(new File[files.size()]));
+	}
+
+	private boolean isPatternFilter(FileListFilter<File> filter) {
+		return filter instanceof AbstractSimplePatternFileListFilter
+				|| filter instanceof AbstractRegexPatternFileListFilter;
+	}
+
+	private Set<File> knownFiles() {
+		Set<File> known = new HashSet<File>();
+		for (Map.Entry<File, DirectoryState> entry : this.directories.entrySet()) {
+			for (String name : entry.getValue().names) {
+				known.add(new File(entry.getKey(), name));
+			}
+		}
+		return known;
+	}
+
+	/*
+	 * List the directory (recursively, if so configured), remembering its state, and
+	 * adding its files to the list.
+	 */
+	private boolean track(File directory, List<File> files) {
+		long listedAt = System.currentTimeMillis();
+		long lastModified = directory.lastModified();
+		String[] names = directory.list();
+		if (names == null) {
+			return false;
+		}
+		this.directories.put(directory, new DirectoryState(lastModified, listedAt, names));
+		for (String name : names) {
+			this.addFile(new File(directory, name), files);
+		}
+		return true;
+	}
+
+	private void addFile(File file, List<File> files) {
+		if (this.recursive && file.isDirectory()) {
+			this.track(file, files);
+		}
+		else {
+			files.add(file);
+		}
+	}
+
+	private List<File> scanModifiedDirectories() {
+		List<File> created = new ArrayList<File>();
+		for (Map.Entry<File, DirectoryState> entry : new ArrayList<Map.Entry<File, DirectoryState>>(
+				this.directories.entrySet())) {
+			File directory = entry.getKey();
+			DirectoryState state = entry.getValue();
+			long lastModified = directory.lastModified();
+			if (lastModified == state.lastModified && lastModified < state.listedAt - TIMESTAMP_RESOLUTION) {
+				continue;
+			}
+			long listedAt = System.currentTimeMillis();
+			String[] names = directory.list();
+			if (names == null) {
+				// deleted (sub-directory)
+				this.directories.remove(directory);
+				continue;
+			}
+			DirectoryState newState = new DirectoryState(lastModified, listedAt, names);
+			for (String name : names) {
+				if (!state.names.contains(name)) {
+					this.addFile(new File(directory, name), created);
+				}
+			}
+			this.directories.put(directory, newState);
+		}
+		return created;
+	}
+
+
+	private static class DirectoryState {
+
+		private final long lastModified;
+
+		private final long listedAt;
+
+		private final Set<String> names;
+
+		private DirectoryState(long lastModified, long listedAt, String[] names) {
+			this.lastModified = lastModified;
+			this.listedAt = listedAt;
+			this.names = new HashSet<String>(Arrays.asList(names));
+		}
+
+	}
+
+}
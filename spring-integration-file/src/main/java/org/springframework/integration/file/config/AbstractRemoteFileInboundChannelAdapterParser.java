@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -53,6 +53,10 @@ public abstract class AbstractRemoteFileInboundChannelAdapterParser extends Abst
 		String remoteFileSeparator = element.getAttribute("remote-file-separator");
 		synchronizerBuilder.addPropertyValue("remoteFileSeparator", remoteFileSeparator);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(synchronizerBuilder, element, "temporary-file-suffix");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(synchronizerBuilder, element, "concurrency");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(synchronizerBuilder, element, "task-executor");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(synchronizerBuilder, element, "max-attempts");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(synchronizerBuilder, element, "await-downloads");
 		this.configureFilter(synchronizerBuilder, element, parserContext);
 
 		// build the MessageSource
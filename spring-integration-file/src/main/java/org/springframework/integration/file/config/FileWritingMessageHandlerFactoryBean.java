@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -60,6 +60,16 @@ public class FileWritingMessageHandlerFactoryBean extends AbstractSimpleMessageH
 
 	private volatile boolean expectReply = true;
 
+	private volatile Integer openFileCacheSize;
+
+	private volatile Integer bufferSize;
+
+	private volatile Integer flushMessageCount;
+
+	private volatile Long flushInterval;
+
+	private volatile Long openFileIdleTimeout;
+
 	public void setFileExistsMode(String fileExistsModeAsString) {
 		this.fileExistsMode = FileExistsMode.getForString(fileExistsModeAsString);
 	}
@@ -104,6 +114,26 @@ public class FileWritingMessageHandlerFactoryBean extends AbstractSimpleMessageH
 		this.expectReply = expectReply;
 	}
 
+	public void setOpenFileCacheSize(Integer openFileCacheSize) {
+		this.openFileCacheSize = openFileCacheSize;
+	}
+
+	public void setBufferSize(Integer bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public void setFlushMessageCount(Integer flushMessageCount) {
+		this.flushMessageCount = flushMessageCount;
+	}
+
+	public void setFlushInterval(Long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public void setOpenFileIdleTimeout(Long openFileIdleTimeout) {
+		this.openFileIdleTimeout = openFileIdleTimeout;
+	}
+
 	@Override
 	protected FileWritingMessageHandler createHandler() {
 
@@ -147,6 +177,21 @@ public class FileWritingMessageHandlerFactoryBean extends AbstractSimpleMessageH
 		if (this.fileExistsMode != null) {
 			handler.setFileExistsMode(this.fileExistsMode);
 		}
+		if (this.openFileCacheSize != null) {
+			handler.setOpenFileCacheSize(this.openFileCacheSize);
+		}
+		if (this.bufferSize != null) {
+			handler.setBufferSize(this.bufferSize);
+		}
+		if (this.flushMessageCount != null) {
+			handler.setFlushMessageCount(this.flushMessageCount);
+		}
+		if (this.flushInterval != null) {
+			handler.setFlushInterval(this.flushInterval);
+		}
+		if (this.openFileIdleTimeout != null) {
+			handler.setOpenFileIdleTimeout(this.openFileIdleTimeout);
+		}
 
 		return handler;
 	}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.filters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.integration.store.MetadataStore;
+import org.springframework.util.Assert;
+
+/**
+ * Base class for filters that pass a file only once, using a {@link MetadataStore} so
+ * that files are not passed again after a restart (when the store is persistent, such as
+ * the {@link org.springframework.integration.store.PropertiesPersistingMetadataStore}).
+ * A file is stored under its name (with the configured prefix) with its last modified
+ * time as the value; a file that is modified after it was accepted is passed again.
+ * <p>
+ * The most recently used entries are also kept in memory so that files that are
+ * presented to the filter repeatedly (for example, on every poll of a directory) do not
+ * require a store lookup. The in-memory entries are split into stripes, each with its
+ * own lock, to reduce contention. If a maximum capacity is provided, the least recently
+ * used entries are removed from memory when the capacity is exceeded; they remain in the
+ * store, which is consulted again when such files are presented to the filter.
+ *
+ * @since 3.0
+ */
+public abstract class AbstractPersistentAcceptOnceFileListFilter<F> extends AbstractFileListFilter<F> {
+
+	private static final int STRIPES = 16;
+
+	private final MetadataStore store;
+
+	private final String prefix;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/**
+	 * Create a filter with no capacity limit.
+	 * @param store the metadata store.
+	 * @param prefix the prefix for the store keys, allowing the store to be shared.
+	 */
+	public AbstractPersistentAcceptOnceFileListFilter(MetadataStore store, String prefix) {
+		this(store, prefix, 0);
+	}
+
+	/**
+	 * Create a filter that keeps at most (approximately) <code>maxCapacity</code> entries
+	 * in memory; the capacity is divided evenly between the stripes. All entries are
+	 * kept in the store.
+	 * @param store the metadata store.
+	 * @param prefix the prefix for the store keys, allowing the store to be shared.
+	 * @param maxCapacity the maximum number of entries in memory; 0 means no limit.
+	 */
+	public AbstractPersistentAcceptOnceFileListFilter(MetadataStore store, String prefix, int maxCapacity) {
+		Assert.notNull(store, "'store' cannot be null");
+		Assert.notNull(prefix, "'prefix' cannot be null");
+		Assert.isTrue(maxCapacity >= 0, "'maxCapacity' must not be negative");
+		this.store = store;
+		this.prefix = prefix;
+		int stripeCapacity = maxCapacity == 0 ? 0 : Math.max(1, (maxCapacity + STRIPES - 1) / STRIPES);
+		for (int i = 0; i < STRIPES; i++) {
+			this.stripes[i] = new Stripe(stripeCapacity);
+		}
+	}
+
+	@Override
+	protected boolean accept(F file) {
+		String key = this.prefix + this.fileName(file);
+		long modified = this.modified(file);
+		Stripe stripe = this.stripes[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+		synchronized (stripe) {
+			Long seen = stripe.get(key);
+			if (seen == null) {
+				seen = this.parse(this.store.get(key));
+			}
+			stripe.put(key, modified);
+			if (seen != null && seen.longValue() == modified) {
+				return false;
+			}
+			this.store.put(key, Long.toString(modified));
+			return true;
+		}
+	}
+
+	private Long parse(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param file the file.
+	 * @return the name under which the file is stored; must be unique for the
+	 * files presented to this filter.
+	 */
+	protected abstract String fileName(F file);
+
+	/**
+	 * @param file the file.
+	 * @return the file's last modified time.
+	 */
+	protected abstract long modified(F file);
+
+
+	@SuppressWarnings("serial")
+	private static class Stripe extends LinkedHashMap<String, Long> {
+
+		private final int capacity;
+
+		private Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return this.capacity > 0 && this.size() > this.capacity;
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,7 +16,9 @@
 
 package org.springframework.integration.file.filters;
 
+import java.util.HashSet;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -34,6 +36,8 @@ public class AcceptOnceFileListFilter<F> extends AbstractFileListFilter<F> {
 
 	private final Queue<F> seen;
 
+	private final Set<F> seenSet = new HashSet<F>();
+
 	private final Object monitor = new Object();
 
 
@@ -58,11 +62,11 @@ public class AcceptOnceFileListFilter<F> extends AbstractFileListFilter<F> {
 
 	public boolean accept(F file) {
 		synchronized (this.monitor) {
-			if (this.seen.contains(file)) {
+			if (!this.seenSet.add(file)) {
 				return false;
 			}
 			if (!this.seen.offer(file)) {
-				this.seen.poll();
+				this.seenSet.remove(this.seen.poll());
 				this.seen.add(file);
 			}
 			return true;
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,8 +27,15 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessagingException;
@@ -78,6 +85,13 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 
 	public static final String OPTION_EXCEPTION_WHEN_EMPTY = "-x";
 
+	/**
+	 * For ls, return an {@link Iterator} that converts each entry as it is consumed,
+	 * rather than a (sorted) {@link List}.
+	 * @since 3.0
+	 */
+	public static final String OPTION_ITERATOR = "-iterator";
+
 	private final Set<String> supportedCommands = new HashSet<String>(Arrays.asList(
 			COMMAND_LS, COMMAND_GET, COMMAND_RM, COMMAND_MGET));
 
@@ -98,6 +112,16 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 	 */
 	private volatile FileListFilter<F> filter;
 
+	private volatile int concurrency = 1;
+
+	private volatile Executor taskExecutor;
+
+	private final AtomicLong transferredFileCount = new AtomicLong();
+
+	private final AtomicLong transferredBytes = new AtomicLong();
+
+	private final AtomicLong transferNanos = new AtomicLong();
+
 
 	public AbstractRemoteFileOutboundGateway(SessionFactory<F> sessionFactory, String command,
 			String expression) {
@@ -153,6 +177,57 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		this.filter = filter;
 	}
 
+	/**
+	 * Set the number of files that the mget command downloads concurrently, each over
+	 * its own session. The session factory should normally be a
+	 * {@link org.springframework.integration.file.remote.session.CachingSessionFactory}
+	 * with at least this pool size; with fewer sessions available, fewer files are
+	 * downloaded concurrently. Default 1.
+	 * @param concurrency the concurrency.
+	 * @since 3.0
+	 */
+	public void setConcurrency(int concurrency) {
+		Assert.isTrue(concurrency > 0, "'concurrency' must be greater than 0");
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Set the executor used for concurrent mget downloads; by default, a
+	 * {@link SimpleAsyncTaskExecutor} is used.
+	 * @param taskExecutor the executor.
+	 * @since 3.0
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		Assert.notNull(taskExecutor, "'taskExecutor' must not be null");
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * @return the number of files transferred by the mget command.
+	 * @since 3.0
+	 */
+	public long getTransferredFileCount() {
+		return this.transferredFileCount.get();
+	}
+
+	/**
+	 * @return the number of bytes transferred by the mget command.
+	 * @since 3.0
+	 */
+	public long getTransferredBytes() {
+		return this.transferredBytes.get();
+	}
+
+	/**
+	 * @return the aggregate transfer rate of the mget command, in bytes per second
+	 * of elapsed mget time.
+	 * @since 3.0
+	 */
+	public double getTransferRate() {
+		long nanos = this.transferNanos.get();
+		return nanos == 0 ? 0 : this.transferredBytes.get() * 1000000000.0 / nanos;
+	}
+
 	@Override
 	protected void onInit() {
 		super.onInit();
@@ -192,6 +267,9 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 						"Failure during initialization of: " + this.getComponentType(), e);
 			}
 		}
+		if (COMMAND_MGET.equals(this.command) && this.concurrency > 1 && this.taskExecutor == null) {
+			this.taskExecutor = new SimpleAsyncTaskExecutor(this.getClass().getSimpleName() + "-");
+		}
 		if (this.getBeanFactory() != null) {
 			this.processor.setBeanFactory(this.getBeanFactory());
 		}
@@ -206,7 +284,7 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 				if (!dir.endsWith(this.remoteFileSeparator)) {
 					dir += this.remoteFileSeparator;
 				}
-				List<?> payload = ls(session, dir);
+				Object payload = this.options.contains(OPTION_ITERATOR) ? lsIterator(session, dir) : ls(session, dir);
 				return MessageBuilder.withPayload(payload)
 					.setHeader(FileHeaders.REMOTE_DIRECTORY, dir)
 					.build();
@@ -265,23 +343,16 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		F[] files = session.list(dir);
 		if (!ObjectUtils.isEmpty(files)) {
 			Collection<F> filteredFiles = this.filterFiles(files);
+			// a single pass; removing from the list would be O(n^2) for large directories
 			for (F file : filteredFiles) {
-				if (file != null) {
-					if (this.options.contains(OPTION_SUBDIRS) || !isDirectory(file)) {
-						lsFiles.add(file);
-					}
+				if (this.isListed(file)) {
+					lsFiles.add(file);
 				}
 			}
 		}
 		else {
 			return lsFiles;
 		}
-		if (!this.options.contains(OPTION_LINKS)) {
-			purgeLinks(lsFiles);
-		}
-		if (!this.options.contains(OPTION_ALL)) {
-			purgeDots(lsFiles);
-		}
 		if (this.options.contains(OPTION_NAME_ONLY)) {
 			List<String> results = new ArrayList<String>();
 			for (F file : lsFiles) {
@@ -304,10 +375,76 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		}
 	}
 
+	/**
+	 * List the directory, returning an {@link Iterator} that applies the ls options to
+	 * each entry, and converts it to a file name or {@link AbstractFileInfo}, only as it
+	 * is consumed; the results are not sorted. Intended for very large directories, with
+	 * a downstream splitter emitting each entry as it is converted.
+	 * @param session the session.
+	 * @param dir the directory.
+	 * @return the iterator.
+	 * @throws IOException if the directory cannot be listed.
+	 * @since 3.0
+	 */
+	protected Iterator<?> lsIterator(Session<F> session, final String dir) throws IOException {
+		F[] files = session.list(dir);
+		final Iterator<F> filteredFiles = ObjectUtils.isEmpty(files) ? Collections.<F>emptyList().iterator()
+				: this.filterFiles(files).iterator();
+		final boolean nameOnly = this.options.contains(OPTION_NAME_ONLY);
+		return new Iterator<Object>() {
+
+			private F next = advance();
+
+			public boolean hasNext() {
+				return this.next != null;
+			}
+
+			public Object next() {
+				if (this.next == null) {
+					throw new NoSuchElementException();
+				}
+				F file = this.next;
+				this.next = advance();
+				if (nameOnly) {
+					return getFilename(file);
+				}
+				AbstractFileInfo<F> fileInfo = asFileInfoList(Collections.singletonList(file)).get(0);
+				fileInfo.setRemoteDirectory(dir);
+				return fileInfo;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private F advance() {
+				while (filteredFiles.hasNext()) {
+					F file = filteredFiles.next();
+					if (isListed(file)) {
+						return file;
+					}
+				}
+				return null;
+			}
+
+		};
+	}
+
+	private boolean isListed(F file) {
+		return file != null
+				&& (this.options.contains(OPTION_SUBDIRS) || !isDirectory(file))
+				&& (this.options.contains(OPTION_LINKS) || !isLink(file))
+				&& (this.options.contains(OPTION_ALL) || !getFilename(file).startsWith("."));
+	}
+
 	protected final List<F> filterFiles(F[] files) {
 		return (this.filter != null) ? this.filter.filterFiles(files) : Arrays.asList(files);
 	}
 
+	/**
+	 * @deprecated Since 3.0; links are omitted while the listing is built.
+	 */
+	@Deprecated
 	protected void purgeLinks(List<F> lsFiles) {
 		Iterator<F> iterator = lsFiles.iterator();
 		while (iterator.hasNext()) {
@@ -317,6 +454,11 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		}
 	}
 
+	/**
+	 * @deprecated Since 3.0; files beginning with a dot are omitted while the listing
+	 * is built.
+	 */
+	@Deprecated
 	protected void purgeDots(List<F> lsFiles) {
 		Iterator<F> iterator = lsFiles.iterator();
 		while (iterator.hasNext()) {
@@ -388,22 +530,119 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 			throw new MessagingException("No files found at " + remoteDirectory
 					+ " with pattern " + remoteFilename);
 		}
-		List<File> files = new ArrayList<File>();
-		for (String fileName : fileNames) {
-			File file;
-			if (fileName.contains(this.remoteFileSeparator) &&
-					fileName.startsWith(remoteDirectory)) { // the server returned the full path
-				file = this.get(session, fileName,
-						fileName.substring(fileName.lastIndexOf(this.remoteFileSeparator)), false);
-			}
-			else {
-				file = this.get(session, generateFullPath(remoteDirectory, fileName), fileName, false);
+		long start = System.nanoTime();
+		List<File> files;
+		if (this.concurrency > 1 && fileNames.length > 1) {
+			files = this.mGetConcurrently(session, remoteDirectory, fileNames);
+		}
+		else {
+			files = new ArrayList<File>();
+			for (String fileName : fileNames) {
+				files.add(this.mGetFile(session, remoteDirectory, fileName));
 			}
-			files.add(file);
 		}
+		long bytes = 0;
+		for (File file : files) {
+			bytes += file.length();
+		}
+		this.transferNanos.addAndGet(System.nanoTime() - start);
+		this.transferredBytes.addAndGet(bytes);
+		this.transferredFileCount.addAndGet(files.size());
 		return files;
 	}
 
+	private File mGetFile(Session<F> session, String remoteDirectory, String fileName) throws IOException {
+		if (fileName.contains(this.remoteFileSeparator) &&
+				fileName.startsWith(remoteDirectory)) { // the server returned the full path
+			return this.get(session, fileName,
+					fileName.substring(fileName.lastIndexOf(this.remoteFileSeparator)), false);
+		}
+		else {
+			return this.get(session, generateFullPath(remoteDirectory, fileName), fileName, false);
+		}
+	}
+
+	/*
+	 * The calling thread downloads over the request session, together with up to
+	 * (concurrency - 1) workers, each with its own session; the files are returned
+	 * in listing order. A worker only claims files once it has a session, and the
+	 * calling thread stops further claims when it has no more files to download (or
+	 * a download has failed), then waits only for the downloads already claimed.
+	 * It therefore never waits for a worker that is still waiting for a session, for
+	 * example when the session cache is smaller than the concurrency. If the executor
+	 * rejects a worker, no further files are claimed and the rejection is thrown once
+	 * the claimed downloads are complete.
+	 */
+	private List<File> mGetConcurrently(Session<F> session, final String remoteDirectory, String[] fileNames)
+			throws IOException {
+		final Downloads downloads = new Downloads(fileNames);
+		int workers = Math.min(this.concurrency, fileNames.length) - 1;
+		for (int i = 0; i < workers; i++) {
+			try {
+				this.taskExecutor.execute(new Runnable() {
+
+					public void run() {
+						if (downloads.isClosed()) {
+							return;
+						}
+						Session<F> workerSession = null;
+						try {
+							workerSession = sessionFactory.getSession();
+							mGetFiles(workerSession, remoteDirectory, downloads);
+						}
+						catch (Exception e) {
+							downloads.failed(e);
+						}
+						finally {
+							if (workerSession != null) {
+								workerSession.close();
+							}
+						}
+					}
+
+				});
+			}
+			catch (RejectedExecutionException e) {
+				downloads.failed(e);
+				break;
+			}
+		}
+		mGetFiles(session, remoteDirectory, downloads);
+		try {
+			downloads.closeAndAwaitClaimed();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while waiting for mget to complete", e);
+		}
+		Exception e = downloads.failure.get();
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		else if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		else if (e != null) {
+			throw new MessagingException("Failed to get files", e);
+		}
+		return new ArrayList<File>(Arrays.asList(downloads.results));
+	}
+
+	private void mGetFiles(Session<F> session, String remoteDirectory, Downloads downloads) {
+		int i;
+		while ((i = downloads.claim()) >= 0) {
+			try {
+				downloads.results[i] = this.mGetFile(session, remoteDirectory, downloads.fileNames[i]);
+			}
+			catch (Exception e) {
+				downloads.failed(e);
+			}
+			finally {
+				downloads.completed();
+			}
+		}
+	}
+
 	private String generateFullPath(String remoteDirectory, String remoteFilename) {
 		String path;
 		if (this.remoteFileSeparator.equals(remoteDirectory)) {
@@ -448,4 +687,67 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 
 	abstract protected List<AbstractFileInfo<F>> asFileInfoList(Collection<F> files);
 
+
+	/*
+	 * The files of a concurrent mget; files are claimed by index, in listing order.
+	 */
+	private static class Downloads {
+
+		private final String[] fileNames;
+
+		private final File[] results;
+
+		private final AtomicInteger next = new AtomicInteger();
+
+		private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+		private int completed;
+
+		private Downloads(String[] fileNames) {
+			this.fileNames = fileNames;
+			this.results = new File[fileNames.length];
+		}
+
+		/*
+		 * Return the index of the next file to download, or -1 if there are no more files,
+		 * a download has failed, or claims have been closed.
+		 */
+		private int claim() {
+			while (this.failure.get() == null) {
+				int i = this.next.get();
+				if (i >= this.fileNames.length) {
+					return -1;
+				}
+				if (this.next.compareAndSet(i, i + 1)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private boolean isClosed() {
+			return this.failure.get() != null || this.next.get() >= this.fileNames.length;
+		}
+
+		private void failed(Exception e) {
+			this.failure.compareAndSet(null, e);
+		}
+
+		private synchronized void completed() {
+			this.completed++;
+			this.notifyAll();
+		}
+
+		/*
+		 * Prevent further claims, then wait for the files already claimed to be downloaded.
+		 */
+		private synchronized void closeAndAwaitClaimed() throws InterruptedException {
+			int claimed = Math.min(this.next.getAndSet(this.fileNames.length), this.fileNames.length);
+			while (this.completed < claimed) {
+				this.wait();
+			}
+		}
+
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,11 +23,16 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.expression.Expression;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.integration.MessagingException;
@@ -44,7 +49,13 @@ import org.springframework.util.ObjectUtils;
  * The implementation should run through any configured
  * {@link org.springframework.integration.file.filters.FileListFilter}s to
  * ensure the file entry is acceptable.
- * 
+ * <p/>
+ * By default, files are downloaded sequentially, over one {@link Session}. When the
+ * concurrency is greater than 1, the files are downloaded by that number of workers,
+ * each with its own {@link Session} (which should normally be obtained from a
+ * {@link org.springframework.integration.file.remote.session.CachingSessionFactory}
+ * with at least that pool size), taking the files from a shared queue.
+ *
  * @author Josh Long
  * @author Mark Fisher
  * @author Oleg Zhurakousky
@@ -86,6 +97,18 @@ public abstract class AbstractInboundFileSynchronizer<F> implements InboundFileS
 	 */
 	private volatile boolean deleteRemoteFiles;
 
+	private volatile int concurrency = 1;
+
+	private volatile Executor taskExecutor;
+
+	private volatile int maxAttempts = 1;
+
+	private volatile boolean awaitDownloads = true;
+
+	private final Object batchMonitor = new Object();
+
+	private volatile Batch currentBatch;
+
 
 	/**
 	 * Create a synchronizer with the {@link SessionFactory} used to acquire {@link Session} instances.
@@ -125,8 +148,59 @@ public abstract class AbstractInboundFileSynchronizer<F> implements InboundFileS
 		this.deleteRemoteFiles = deleteRemoteFiles;
 	}
 
+	/**
+	 * Set the number of files that are downloaded concurrently, each over its own
+	 * {@link Session}. Default 1.
+	 * @param concurrency the concurrency.
+	 * @since 3.0
+	 */
+	public void setConcurrency(int concurrency) {
+		Assert.isTrue(concurrency > 0, "'concurrency' must be greater than 0");
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Set the executor used to run the download workers when the concurrency is greater
+	 * than 1; by default, a {@link SimpleAsyncTaskExecutor} is used.
+	 * @param taskExecutor the executor.
+	 * @since 3.0
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		Assert.notNull(taskExecutor, "'taskExecutor' must not be null");
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set the maximum number of attempts to download each file when the concurrency is
+	 * greater than 1; a new {@link Session} is used for each retry. Default 1.
+	 * @param maxAttempts the maximum number of attempts.
+	 * @since 3.0
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		Assert.isTrue(maxAttempts > 0, "'maxAttempts' must be greater than 0");
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * When the concurrency is greater than 1, set to false to return from
+	 * {@link #synchronizeToLocalDirectory(File)} as soon as the first file has been
+	 * downloaded, rather than when all the files have been downloaded; the remaining
+	 * files are downloaded in the background and are available to subsequent polls as
+	 * soon as each download completes. The remote directory is not listed again until all
+	 * the downloads are complete. Failed downloads are logged rather than thrown.
+	 * Default true.
+	 * @param awaitDownloads false to not wait for all the files.
+	 * @since 3.0
+	 */
+	public void setAwaitDownloads(boolean awaitDownloads) {
+		this.awaitDownloads = awaitDownloads;
+	}
+
 	public final void afterPropertiesSet() {
 		Assert.notNull(this.remoteDirectory, "remoteDirectory must not be null");
+		if (this.concurrency > 1 && this.taskExecutor == null) {
+			this.taskExecutor = new SimpleAsyncTaskExecutor(this.getClass().getSimpleName() + "-");
+		}
 	}
 
 	protected final List<F> filterFiles(F[] files) {
@@ -138,6 +212,10 @@ public abstract class AbstractInboundFileSynchronizer<F> implements InboundFileS
 	}
 
 	public void synchronizeToLocalDirectory(File localDirectory) {
+		if (this.concurrency > 1) {
+			this.synchronizeConcurrently(localDirectory);
+			return;
+		}
 		Session<F> session = null;
 		try {
 			session = this.sessionFactory.getSession();
@@ -156,14 +234,87 @@ public abstract class AbstractInboundFileSynchronizer<F> implements InboundFileS
 			throw new MessagingException("Problem occurred while synchronizing remote to local directory", e);
 		}
 		finally {
-			if (session != null) {
-				try {
-					session.close();
+			this.closeSession(session);
+		}
+	}
+
+	private void synchronizeConcurrently(File localDirectory) {
+		Batch batch;
+		synchronized (this.batchMonitor) {
+			batch = this.currentBatch;
+			if (batch == null || batch.isComplete()) {
+				batch = this.startBatch(localDirectory);
+				if (batch == null) {
+					return;
 				}
-				catch (Exception ignored) {
-					if (logger.isDebugEnabled()) {
-						logger.debug("failed to close Session", ignored);
-					}
+			}
+		}
+		if (this.awaitDownloads) {
+			batch.awaitCompletion();
+			this.currentBatch = null;
+			if (batch.failure != null) {
+				throw new MessagingException("Problem occurred while synchronizing remote to local directory",
+						batch.failure);
+			}
+		}
+		else {
+			batch.awaitProgress();
+		}
+	}
+
+	private Batch startBatch(File localDirectory) {
+		Session<F> session = null;
+		List<F> filteredFiles;
+		try {
+			session = this.sessionFactory.getSession();
+			Assert.state(session != null, "failed to acquire a Session");
+			F[] files = session.list(this.remoteDirectory);
+			if (ObjectUtils.isEmpty(files)) {
+				return null;
+			}
+			filteredFiles = this.filterFiles(files);
+		}
+		catch (IOException e) {
+			throw new MessagingException("Problem occurred while synchronizing remote to local directory", e);
+		}
+		finally {
+			this.closeSession(session);
+		}
+		BlockingQueue<F> queue = new ArrayBlockingQueue<F>(Math.max(1, filteredFiles.size()));
+		for (F file : filteredFiles) {
+			if (file != null) {
+				queue.add(file);
+			}
+		}
+		if (queue.isEmpty()) {
+			return null;
+		}
+		int workers = Math.min(this.concurrency, queue.size());
+		Batch batch = new Batch(workers);
+		// the next synchronization waits for any workers that were started
+		this.currentBatch = batch;
+		for (int i = 0; i < workers; i++) {
+			try {
+				this.taskExecutor.execute(new Downloader(batch, queue, localDirectory));
+			}
+			catch (RejectedExecutionException e) {
+				for (int j = i; j < workers; j++) {
+					batch.workerComplete();
+				}
+				throw e;
+			}
+		}
+		return batch;
+	}
+
+	private void closeSession(Session<F> session) {
+		if (session != null) {
+			try {
+				session.close();
+			}
+			catch (Exception ignored) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("failed to close Session", ignored);
 				}
 			}
 		}
@@ -234,4 +385,123 @@ public abstract class AbstractInboundFileSynchronizer<F> implements InboundFileS
 
 	protected abstract String getFilename(F file);
 
+
+	/**
+	 * Downloads files from the queue over its own session until the queue is empty.
+	 */
+	private class Downloader implements Runnable {
+
+		private final Batch batch;
+
+		private final BlockingQueue<F> queue;
+
+		private final File localDirectory;
+
+		private Downloader(Batch batch, BlockingQueue<F> queue, File localDirectory) {
+			this.batch = batch;
+			this.queue = queue;
+			this.localDirectory = localDirectory;
+		}
+
+		public void run() {
+			Session<F> session = null;
+			try {
+				F file;
+				while ((file = this.queue.poll()) != null) {
+					for (int attempt = 1; ; attempt++) {
+						try {
+							if (session == null) {
+								session = sessionFactory.getSession();
+								Assert.state(session != null, "failed to acquire a Session");
+							}
+							copyFileToLocalDirectory(remoteDirectory, file, this.localDirectory, session);
+							break;
+						}
+						catch (Exception e) {
+							// the session may be unusable
+							closeSession(session);
+							session = null;
+							if (attempt >= maxAttempts) {
+								logger.error("Failed to copy " + getFilename(file) + " from the remote directory after "
+										+ attempt + " attempt(s)", e);
+								this.batch.failed(e);
+								break;
+							}
+							if (logger.isDebugEnabled()) {
+								logger.debug("Failed to copy " + getFilename(file) + ", retrying", e);
+							}
+						}
+					}
+					this.batch.progress();
+				}
+			}
+			finally {
+				closeSession(session);
+				this.batch.workerComplete();
+			}
+		}
+
+	}
+
+
+	/**
+	 * Tracks the progress of the downloads started by one listing of the remote directory.
+	 */
+	private static class Batch {
+
+		private int activeWorkers;
+
+		private long progress;
+
+		private volatile Exception failure;
+
+		private Batch(int workers) {
+			this.activeWorkers = workers;
+		}
+
+		private synchronized void progress() {
+			this.progress++;
+			this.notifyAll();
+		}
+
+		private synchronized void failed(Exception e) {
+			if (this.failure == null) {
+				this.failure = e;
+			}
+		}
+
+		private synchronized void workerComplete() {
+			this.activeWorkers--;
+			this.notifyAll();
+		}
+
+		private synchronized boolean isComplete() {
+			return this.activeWorkers == 0;
+		}
+
+		private synchronized void awaitCompletion() {
+			while (this.activeWorkers > 0) {
+				this.await();
+			}
+		}
+
+		private synchronized void awaitProgress() {
+			long current = this.progress;
+			while (this.activeWorkers > 0 && this.progress == current) {
+				this.await();
+			}
+		}
+
+		private void await() {
+			try {
+				this.wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException("Interrupted while waiting for remote files to be copied", e);
+			}
+		}
+
+	}
+
 }
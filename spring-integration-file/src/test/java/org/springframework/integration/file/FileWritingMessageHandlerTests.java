@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,18 +18,26 @@ package org.springframework.integration.file;
 
 import org.junit.*;
 import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.channel.NullChannel;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessageHandler;
+import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.handler.MessageHandlerChain;
 import org.springframework.integration.message.GenericMessage;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.FileCopyUtils;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
@@ -219,6 +227,131 @@ public class FileWritingMessageHandlerTests {
 		assertThat(result.getName(), is(anyFilename));
 	}
 
+	@Test
+	public void appendWithOpenFileCache() throws Exception {
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setOpenFileCacheSize(1);
+		handler.setExpectReply(false);
+		handler.handleMessage(fileMessage("foo", "a"));
+		handler.handleMessage(fileMessage("foo", "b"));
+		File foo = new File(outputDirectory, "foo");
+		assertEquals("", new String(FileCopyUtils.copyToByteArray(foo)));
+		// evicts (closes) foo
+		handler.handleMessage(fileMessage("bar", "c"));
+		assertEquals("ab", new String(FileCopyUtils.copyToByteArray(foo)));
+		File bar = new File(outputDirectory, "bar");
+		assertEquals("", new String(FileCopyUtils.copyToByteArray(bar)));
+		handler.handleMessage(fileMessage("foo", "d"));
+		handler.stop();
+		assertEquals("abd", new String(FileCopyUtils.copyToByteArray(foo)));
+		assertEquals("c", new String(FileCopyUtils.copyToByteArray(bar)));
+		assertEquals(0, TestUtils.getPropertyValue(handler, "openFiles", Map.class).size());
+	}
+
+	@Test
+	public void appendWithFlushMessageCount() throws Exception {
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setOpenFileCacheSize(10);
+		handler.setFlushMessageCount(2);
+		handler.setExpectReply(false);
+		File foo = new File(outputDirectory, "foo");
+		handler.handleMessage(fileMessage("foo", "a"));
+		assertEquals("", new String(FileCopyUtils.copyToByteArray(foo)));
+		handler.handleMessage(MessageBuilder.withPayload("b".getBytes()).setHeader(FileHeaders.FILENAME, "foo").build());
+		assertEquals("ab", new String(FileCopyUtils.copyToByteArray(foo)));
+		handler.handleMessage(MessageBuilder.withPayload(sourceFile).setHeader(FileHeaders.FILENAME, "foo").build());
+		handler.handleMessage(fileMessage("foo", "c"));
+		assertEquals("ab" + SAMPLE_CONTENT + "c", new String(FileCopyUtils.copyToByteArray(foo), DEFAULT_ENCODING));
+		handler.stop();
+	}
+
+	@Test
+	public void appendWithFlushIntervalAndIdleTimeout() throws Exception {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.afterPropertiesSet();
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("taskScheduler", scheduler);
+		handler.setBeanFactory(beanFactory);
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setOpenFileCacheSize(10);
+		handler.setFlushInterval(50);
+		handler.setOpenFileIdleTimeout(500);
+		handler.setExpectReply(false);
+		handler.start();
+		try {
+			handler.handleMessage(fileMessage("foo", "a"));
+			File foo = new File(outputDirectory, "foo");
+			Map<?, ?> openFiles = TestUtils.getPropertyValue(handler, "openFiles", Map.class);
+			int n = 0;
+			while (n++ < 100 && foo.length() == 0) {
+				Thread.sleep(50);
+			}
+			assertEquals("a", new String(FileCopyUtils.copyToByteArray(foo)));
+			n = 0;
+			while (n++ < 100 && openFiles.size() > 0) {
+				Thread.sleep(50);
+			}
+			assertEquals(0, openFiles.size());
+		}
+		finally {
+			handler.stop();
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	public void appendWithOpenFileCacheInChain() throws Exception {
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setOpenFileCacheSize(10);
+		handler.setExpectReply(false);
+		MessageHandlerChain chain = new MessageHandlerChain();
+		chain.setHandlers(Collections.<MessageHandler>singletonList(handler));
+		chain.afterPropertiesSet();
+		chain.start();
+		assertTrue(handler.isRunning());
+		chain.handleMessage(fileMessage("foo", "a"));
+		File foo = new File(outputDirectory, "foo");
+		assertEquals("", new String(FileCopyUtils.copyToByteArray(foo)));
+		chain.stop();
+		assertFalse(handler.isRunning());
+		assertEquals("a", new String(FileCopyUtils.copyToByteArray(foo)));
+	}
+
+	@Test
+	public void appendWithOpenFileCacheFlushesBeforeReply() throws Exception {
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setOpenFileCacheSize(10);
+		QueueChannel output = new QueueChannel();
+		handler.setOutputChannel(output);
+		handler.handleMessage(fileMessage("foo", "a"));
+		handler.handleMessage(fileMessage("foo", "b"));
+		Message<?> result = output.receive(0);
+		assertNotNull(result);
+		assertNotNull(output.receive(0));
+		assertEquals("ab", new String(FileCopyUtils.copyToByteArray((File) result.getPayload())));
+		handler.destroy();
+		assertEquals(0, TestUtils.getPropertyValue(handler, "openFiles", Map.class).size());
+	}
+
+	@Test
+	public void appendWithOpenFileCacheWritesBeforeDeletingSource() throws Exception {
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setOpenFileCacheSize(10);
+		handler.setExpectReply(false);
+		handler.setDeleteSourceFiles(true);
+		handler.handleMessage(MessageBuilder.withPayload(sourceFile).build());
+		assertFalse(sourceFile.exists());
+		// written through to the file, not only buffered
+		File destFile = new File(outputDirectory, sourceFile.getName());
+		assertEquals(SAMPLE_CONTENT, new String(FileCopyUtils.copyToByteArray(destFile), DEFAULT_ENCODING));
+		assertEquals(1, TestUtils.getPropertyValue(handler, "openFiles", Map.class).size());
+		handler.destroy();
+	}
+
+	private Message<String> fileMessage(String fileName, String content) {
+		return MessageBuilder.withPayload(content).setHeader(FileHeaders.FILENAME, fileName).build();
+	}
+
 	void assertFileContentIsMatching(Message<?> result) throws IOException, UnsupportedEncodingException {
 		assertThat(result, is(notNullValue()));
 		assertThat(result.getPayload(), is(File.class));
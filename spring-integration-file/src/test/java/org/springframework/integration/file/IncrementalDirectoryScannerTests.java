@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.file.filters.AbstractFileListFilter;
+import org.springframework.integration.file.filters.SimplePatternFileListFilter;
+import org.springframework.integration.test.util.TestUtils;
+
+/**
+ * @since 3.0
+ */
+public class IncrementalDirectoryScannerTests {
+
+	private static final long OLD = System.currentTimeMillis() - 60000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File root;
+
+	@Before
+	public void setup() throws Exception {
+		this.root = this.folder.getRoot();
+		new File(this.root, "file1").createNewFile();
+		new File(this.root, "file2").createNewFile();
+	}
+
+	@Test
+	public void onlyNewFilesAfterInitialScan() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		scanner.setFilter(null);
+		assertEquals(2, scanner.listFiles(this.root).size());
+		assertEquals(0, scanner.listFiles(this.root).size());
+		File file3 = new File(this.root, "file3");
+		file3.createNewFile();
+		List<File> files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals(file3, files.get(0));
+		assertEquals(0, scanner.listFiles(this.root).size());
+	}
+
+	@Test
+	public void unmodifiedDirectoryNotListed() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		this.root.setLastModified(OLD);
+		assertEquals(2, scanner.listFiles(this.root).size());
+		File file3 = new File(this.root, "file3");
+		file3.createNewFile();
+		// pretend the directory was not modified
+		this.root.setLastModified(OLD);
+		assertEquals(0, scanner.listFiles(this.root).size());
+		this.root.setLastModified(OLD + 10000);
+		List<File> files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals(file3, files.get(0));
+	}
+
+	@Test
+	public void rejectedFilesRetried() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		final List<String> rejected = new ArrayList<String>();
+		rejected.add("file2");
+		scanner.setFilter(new AbstractFileListFilter<File>() {
+
+			@Override
+			protected boolean accept(File file) {
+				return !rejected.contains(file.getName());
+			}
+
+		});
+		this.root.setLastModified(OLD);
+		List<File> files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals("file1", files.get(0).getName());
+		assertEquals(0, scanner.listFiles(this.root).size());
+		rejected.clear();
+		files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals("file2", files.get(0).getName());
+		assertEquals(0, scanner.listFiles(this.root).size());
+	}
+
+	@Test
+	public void patternRejectionsNotRetained() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		scanner.setFilter(new SimplePatternFileListFilter("*.txt"));
+		new File(this.root, "file3.txt").createNewFile();
+		List<File> files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals("file3.txt", files.get(0).getName());
+		assertEquals(0, TestUtils.getPropertyValue(scanner, "pending", Set.class).size());
+
+		scanner = new IncrementalDirectoryScanner();
+		scanner.setPatternFilter(new SimplePatternFileListFilter("*.txt"));
+		files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals(0, TestUtils.getPropertyValue(scanner, "pending", Set.class).size());
+		new File(this.root, "file4").createNewFile();
+		new File(this.root, "file4.txt").createNewFile();
+		files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals("file4.txt", files.get(0).getName());
+		assertEquals(0, TestUtils.getPropertyValue(scanner, "pending", Set.class).size());
+	}
+
+	@Test
+	public void recursive() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		scanner.setRecursive(true);
+		File sub = new File(this.root, "sub");
+		sub.mkdir();
+		new File(sub, "file3").createNewFile();
+		assertEquals(3, scanner.listFiles(this.root).size());
+		File subSub = new File(sub, "subSub");
+		subSub.mkdir();
+		File file4 = new File(subSub, "file4");
+		file4.createNewFile();
+		List<File> files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals(file4, files.get(0));
+		File file5 = new File(subSub, "file5");
+		file5.createNewFile();
+		files = scanner.listFiles(this.root);
+		assertEquals(1, files.size());
+		assertEquals(file5, files.get(0));
+	}
+
+	@Test
+	public void fullScan() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		scanner.setFilter(null);
+		scanner.setFullScanInterval(100);
+		assertEquals(2, scanner.listFiles(this.root).size());
+		assertEquals(0, scanner.listFiles(this.root).size());
+		Thread.sleep(150);
+		assertEquals(2, scanner.listFiles(this.root).size());
+	}
+
+	@Test
+	public void differentDirectory() throws Exception {
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		assertEquals(2, scanner.listFiles(this.root).size());
+		File other = this.folder.newFolder("other");
+		new File(other, "file3").createNewFile();
+		List<File> files = scanner.listFiles(other);
+		assertEquals(1, files.size());
+		assertTrue(files.get(0).getName().equals("file3"));
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -77,6 +77,9 @@ public class FileOutboundChannelAdapterParserTests {
 	@Autowired
 	EventDrivenConsumer adapterWithDirectoryExpression;
 
+	@Autowired
+	EventDrivenConsumer adapterWithOpenFileCache;
+
 	@Autowired
 	MessageChannel usageChannel;
 
@@ -111,6 +114,17 @@ public class FileOutboundChannelAdapterParserTests {
 		assertEquals(Boolean.FALSE, handlerAccessor.getPropertyValue("deleteSourceFiles"));
 	}
 
+	@Test
+	public void adapterWithOpenFileCache() {
+		FileWritingMessageHandler handler = TestUtils.getPropertyValue(adapterWithOpenFileCache, "handler",
+				FileWritingMessageHandler.class);
+		assertEquals(5, TestUtils.getPropertyValue(handler, "openFileCacheSize"));
+		assertEquals(1024, TestUtils.getPropertyValue(handler, "bufferSize"));
+		assertEquals(10, TestUtils.getPropertyValue(handler, "flushMessageCount"));
+		assertEquals(500L, TestUtils.getPropertyValue(handler, "flushInterval"));
+		assertEquals(2000L, TestUtils.getPropertyValue(handler, "openFileIdleTimeout"));
+	}
+
 	@Test
 	public void adapterWithCustomFileNameGenerator() {
 		DirectFieldAccessor adapterAccessor = new DirectFieldAccessor(adapterWithCustomNameGenerator);
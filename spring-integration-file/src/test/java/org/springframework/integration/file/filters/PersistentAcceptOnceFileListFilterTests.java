@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.store.PropertiesPersistingMetadataStore;
+import org.springframework.integration.store.SimpleMetadataStore;
+import org.springframework.integration.test.util.TestUtils;
+
+/**
+ * @since 3.0
+ */
+public class PersistentAcceptOnceFileListFilterTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void acceptOnceUnlessModified() throws Exception {
+		SimpleMetadataStore store = new SimpleMetadataStore();
+		FileSystemPersistentAcceptOnceFileListFilter filter = new FileSystemPersistentAcceptOnceFileListFilter(store, "foo:");
+		File file = this.folder.newFile("file1");
+		File[] files = new File[] {file};
+		assertEquals(1, filter.filterFiles(files).size());
+		assertEquals(0, filter.filterFiles(files).size());
+		assertEquals(Long.toString(file.lastModified()), store.get("foo:" + file.getAbsolutePath()));
+		file.setLastModified(file.lastModified() - 10000);
+		assertEquals(1, filter.filterFiles(files).size());
+		assertEquals(0, filter.filterFiles(files).size());
+	}
+
+	@Test
+	public void persistedAcrossRestarts() throws Exception {
+		File file = this.folder.newFile("file1");
+		File[] files = new File[] {file};
+		PropertiesPersistingMetadataStore store = new PropertiesPersistingMetadataStore();
+		store.setBaseDirectory(this.folder.getRoot().getAbsolutePath());
+		store.afterPropertiesSet();
+		FileSystemPersistentAcceptOnceFileListFilter filter = new FileSystemPersistentAcceptOnceFileListFilter(store, "foo:");
+		assertEquals(1, filter.filterFiles(files).size());
+		store.destroy();
+
+		store = new PropertiesPersistingMetadataStore();
+		store.setBaseDirectory(this.folder.getRoot().getAbsolutePath());
+		store.afterPropertiesSet();
+		filter = new FileSystemPersistentAcceptOnceFileListFilter(store, "foo:");
+		assertEquals(0, filter.filterFiles(files).size());
+	}
+
+	@Test
+	public void bounded() throws Exception {
+		SimpleMetadataStore store = new SimpleMetadataStore();
+		// one entry per stripe
+		FileSystemPersistentAcceptOnceFileListFilter filter =
+				new FileSystemPersistentAcceptOnceFileListFilter(store, "foo:", 16);
+		File[] files = new File[100];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = this.folder.newFile("file" + i);
+		}
+		assertEquals(100, filter.filterFiles(files).size());
+		for (File file : files) {
+			assertNotNull(store.get("foo:" + file.getAbsolutePath()));
+		}
+		// entries evicted from memory are found in the store
+		assertEquals(0, filter.filterFiles(files).size());
+		Map<?, ?>[] stripes = (Map<?, ?>[]) TestUtils.getPropertyValue(filter, "stripes");
+		for (Map<?, ?> stripe : stripes) {
+			assertTrue(stripe.size() <= 1);
+		}
+	}
+
+	@Test
+	public void acceptOnce() throws Exception {
+		AcceptOnceFileListFilter<String> filter = new AcceptOnceFileListFilter<String>(2);
+		assertEquals(2, filter.filterFiles(new String[] {"foo", "bar"}).size());
+		assertEquals(0, filter.filterFiles(new String[] {"foo", "bar"}).size());
+		assertEquals(1, filter.filterFiles(new String[] {"baz"}).size());
+		// foo has been evicted
+		assertEquals(1, filter.filterFiles(new String[] {"foo", "baz"}).size());
+	}
+
+}
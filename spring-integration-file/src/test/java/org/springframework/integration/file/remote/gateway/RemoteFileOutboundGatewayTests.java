@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,9 +16,13 @@
 package org.springframework.integration.file.remote.gateway;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -31,14 +35,23 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessagingException;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.filters.AbstractSimplePatternFileListFilter;
 import org.springframework.integration.file.remote.AbstractFileInfo;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.file.remote.session.Session;
 import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.message.GenericMessage;
@@ -326,6 +339,223 @@ public class RemoteFileOutboundGatewayTests {
 				out.getHeaders().get(FileHeaders.REMOTE_DIRECTORY));
 	}
 
+	@Test
+	public void testLs_iterator() throws Exception {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		Session session = mock(Session.class);
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway
+			(sessionFactory, "ls", "payload");
+		gw.setOptions("-iterator -dirs");
+		when(sessionFactory.getSession()).thenReturn(session);
+		TestLsEntry[] files = fileList();
+		when(session.list("testremote/x/")).thenReturn(files);
+		@SuppressWarnings("unchecked")
+		Message<Iterator<TestLsEntry>> out = (Message<Iterator<TestLsEntry>>) gw
+				.handleRequestMessage(new GenericMessage<String>("testremote/x"));
+		Iterator<TestLsEntry> iterator = out.getPayload();
+		assertSame(files[0], iterator.next()); // no sort
+		assertSame(files[1], iterator.next());
+		TestLsEntry dir = iterator.next();
+		assertSame(files[2], dir);
+		assertEquals("testremote/x/", dir.getRemoteDirectory());
+		assertFalse(iterator.hasNext());
+		assertEquals("testremote/x/",
+				out.getHeaders().get(FileHeaders.REMOTE_DIRECTORY));
+	}
+
+	@Test
+	public void testLs_1_iterator() throws Exception {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		Session session = mock(Session.class);
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway
+			(sessionFactory, "ls", "payload");
+		gw.setOptions("-1 -iterator -a -links");
+		when(sessionFactory.getSession()).thenReturn(session);
+		TestLsEntry[] files = fileList();
+		when(session.list("testremote/x/")).thenReturn(files);
+		@SuppressWarnings("unchecked")
+		Message<Iterator<String>> out = (Message<Iterator<String>>) gw
+				.handleRequestMessage(new GenericMessage<String>("testremote/x"));
+		List<String> names = new ArrayList<String>();
+		Iterator<String> iterator = out.getPayload();
+		while (iterator.hasNext()) {
+			names.add(iterator.next());
+		}
+		assertEquals(4, names.size());
+		assertEquals("f2", names.get(0));
+		assertEquals("f1", names.get(1));
+		assertEquals("f4", names.get(2));
+		assertEquals(".f5", names.get(3));
+	}
+
+	@Test
+	public void testMGetConcurrent() throws Exception {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway
+			(sessionFactory, "mget", "payload");
+		final File localDirectory = new File(this.tmpDir, "mgetConcurrent");
+		gw.setLocalDirectory(localDirectory);
+		gw.setConcurrency(3);
+		gw.afterPropertiesSet();
+		final String[] names = new String[10];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "f" + i;
+			new File(localDirectory, names[i]).delete();
+		}
+		final Set<Thread> threads = new CopyOnWriteArraySet<Thread>();
+		final AtomicInteger sessions = new AtomicInteger();
+		when(sessionFactory.getSession()).thenAnswer(new Answer<Session>() {
+
+			public Session answer(InvocationOnMock invocation) throws Throwable {
+				sessions.incrementAndGet();
+				Session session = mock(Session.class);
+				when(session.listNames("testremote/*")).thenReturn(names);
+				doAnswer(new Answer<Object>() {
+
+					public Object answer(InvocationOnMock invocation) throws Throwable {
+						threads.add(Thread.currentThread());
+						Thread.sleep(20);
+						((OutputStream) invocation.getArguments()[1]).write("testData".getBytes());
+						return null;
+					}
+
+				}).when(session).read(anyString(), any(OutputStream.class));
+				return session;
+			}
+
+		});
+		@SuppressWarnings("unchecked")
+		Message<List<File>> out = (Message<List<File>>) gw
+				.handleRequestMessage(new GenericMessage<String>("testremote/*"));
+		assertEquals(10, out.getPayload().size());
+		for (int i = 0; i < names.length; i++) {
+			assertEquals(names[i], out.getPayload().get(i).getName());
+			assertTrue(out.getPayload().get(i).delete());
+		}
+		assertEquals(3, sessions.get());
+		assertTrue(threads.size() > 1);
+		assertEquals(10, gw.getTransferredFileCount());
+		assertEquals(80, gw.getTransferredBytes());
+		assertTrue(gw.getTransferRate() > 0);
+		localDirectory.delete();
+	}
+
+	@Test(timeout = 10000)
+	public void testMGetConcurrentWithOneCachedSession() throws Exception {
+		SessionFactory targetFactory = mock(SessionFactory.class);
+		@SuppressWarnings("unchecked")
+		CachingSessionFactory<TestLsEntry> sessionFactory = new CachingSessionFactory<TestLsEntry>(targetFactory, 1);
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway
+			(sessionFactory, "mget", "payload");
+		final File localDirectory = new File(this.tmpDir, "mgetOneSession");
+		gw.setLocalDirectory(localDirectory);
+		gw.setConcurrency(3);
+		gw.afterPropertiesSet();
+		final String[] names = new String[5];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "f" + i;
+			new File(localDirectory, names[i]).delete();
+		}
+		final AtomicInteger sessions = new AtomicInteger();
+		when(targetFactory.getSession()).thenAnswer(new Answer<Session>() {
+
+			public Session answer(InvocationOnMock invocation) throws Throwable {
+				sessions.incrementAndGet();
+				Session session = mock(Session.class);
+				when(session.isOpen()).thenReturn(true);
+				when(session.listNames("testremote/*")).thenReturn(names);
+				doAnswer(new Answer<Object>() {
+
+					public Object answer(InvocationOnMock invocation) throws Throwable {
+						((OutputStream) invocation.getArguments()[1]).write("testData".getBytes());
+						return null;
+					}
+
+				}).when(session).read(anyString(), any(OutputStream.class));
+				return session;
+			}
+
+		});
+		// the workers wait for the only session, which the request holds; the request
+		// thread downloads the files itself rather than waiting for them
+		@SuppressWarnings("unchecked")
+		Message<List<File>> out = (Message<List<File>>) gw
+				.handleRequestMessage(new GenericMessage<String>("testremote/*"));
+		assertEquals(5, out.getPayload().size());
+		for (int i = 0; i < names.length; i++) {
+			assertEquals(names[i], out.getPayload().get(i).getName());
+			assertTrue(out.getPayload().get(i).delete());
+		}
+		assertEquals(1, sessions.get());
+		localDirectory.delete();
+	}
+
+	@Test(timeout = 10000)
+	public void testMGetConcurrentTaskRejected() throws Exception {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway
+			(sessionFactory, "mget", "payload");
+		final File localDirectory = new File(this.tmpDir, "mgetRejected");
+		gw.setLocalDirectory(localDirectory);
+		gw.setConcurrency(3);
+		final AtomicInteger accepted = new AtomicInteger(1);
+		gw.setTaskExecutor(new Executor() {
+
+			public void execute(Runnable task) {
+				if (accepted.getAndDecrement() <= 0) {
+					throw new TaskRejectedException("rejected");
+				}
+				new Thread(task).start();
+			}
+
+		});
+		gw.afterPropertiesSet();
+		final String[] names = new String[10];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "f" + i;
+			new File(localDirectory, names[i]).delete();
+		}
+		final AtomicInteger downloading = new AtomicInteger();
+		when(sessionFactory.getSession()).thenAnswer(new Answer<Session>() {
+
+			public Session answer(InvocationOnMock invocation) throws Throwable {
+				Session session = mock(Session.class);
+				when(session.listNames("testremote/*")).thenReturn(names);
+				doAnswer(new Answer<Object>() {
+
+					public Object answer(InvocationOnMock invocation) throws Throwable {
+						downloading.incrementAndGet();
+						try {
+							Thread.sleep(50);
+							((OutputStream) invocation.getArguments()[1]).write("testData".getBytes());
+						}
+						finally {
+							downloading.decrementAndGet();
+						}
+						return null;
+					}
+
+				}).when(session).read(anyString(), any(OutputStream.class));
+				return session;
+			}
+
+		});
+		try {
+			gw.handleRequestMessage(new GenericMessage<String>("testremote/*"));
+			fail("Expected exception");
+		}
+		catch (TaskRejectedException e) {
+			assertEquals("rejected", e.getMessage());
+		}
+		// the worker that was started has finished, without downloading every file
+		assertEquals(0, downloading.get());
+		assertTrue(localDirectory.list().length < names.length);
+		for (File file : localDirectory.listFiles()) {
+			file.delete();
+		}
+		localDirectory.delete();
+	}
+
 	@Test
 	public void testLs_None() throws Exception {
 		SessionFactory sessionFactory = mock(SessionFactory.class);
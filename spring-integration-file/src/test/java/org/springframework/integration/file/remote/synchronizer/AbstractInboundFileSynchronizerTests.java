@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.remote.synchronizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.file.remote.session.Session;
+import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * @since 3.0
+ */
+public class AbstractInboundFileSynchronizerTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File remote;
+
+	private File local;
+
+	private final AtomicInteger activeSessions = new AtomicInteger();
+
+	private final AtomicInteger maxActiveSessions = new AtomicInteger();
+
+	private final Set<String> failOnce = Collections.synchronizedSet(new HashSet<String>());
+
+	private final AtomicInteger reads = new AtomicInteger();
+
+	private volatile CountDownLatch readLatch;
+
+	@Before
+	public void setup() throws Exception {
+		this.remote = this.folder.newFolder("remote");
+		this.local = this.folder.newFolder("local");
+		for (int i = 0; i < 20; i++) {
+			FileOutputStream out = new FileOutputStream(new File(this.remote, "file" + i));
+			out.write(("foo" + i).getBytes());
+			out.close();
+		}
+	}
+
+	@Test
+	public void concurrentDownloads() throws Exception {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		synchronizer.setConcurrency(4);
+		synchronizer.afterPropertiesSet();
+		synchronizer.synchronizeToLocalDirectory(this.local);
+		assertEquals(20, this.local.list().length);
+		assertEquals("foo7", new String(FileCopyUtils.copyToByteArray(new File(this.local, "file7"))));
+		assertTrue(this.maxActiveSessions.get() > 1);
+		assertTrue(this.maxActiveSessions.get() <= 4);
+		assertEquals(0, this.activeSessions.get());
+	}
+
+	@Test
+	public void retry() throws Exception {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		synchronizer.setConcurrency(4);
+		synchronizer.setMaxAttempts(2);
+		synchronizer.afterPropertiesSet();
+		this.failOnce.add("file3");
+		this.failOnce.add("file11");
+		synchronizer.synchronizeToLocalDirectory(this.local);
+		assertEquals(20, this.local.list().length);
+	}
+
+	@Test
+	public void failureAfterOtherDownloads() throws Exception {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		synchronizer.setConcurrency(4);
+		synchronizer.afterPropertiesSet();
+		this.failOnce.add("file3");
+		try {
+			synchronizer.synchronizeToLocalDirectory(this.local);
+			fail("Expected exception");
+		}
+		catch (MessagingException e) {
+			assertEquals("failed: remote/file3", e.getCause().getCause().getMessage());
+		}
+		assertFalse(new File(this.local, "file3").exists());
+		assertTrue(new File(this.local, "file4").exists());
+	}
+
+	@Test
+	public void doNotAwaitDownloads() throws Exception {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		synchronizer.setConcurrency(2);
+		synchronizer.setAwaitDownloads(false);
+		synchronizer.afterPropertiesSet();
+		this.readLatch = new CountDownLatch(1);
+		synchronizer.synchronizeToLocalDirectory(this.local);
+		assertEquals(1, this.local.list(new FilenameFilter() {
+
+			public boolean accept(File dir, String name) {
+				return !name.endsWith(".writing");
+			}
+
+		}).length);
+		this.readLatch.countDown();
+		int n = 0;
+		while (n++ < 100 && this.activeSessions.get() > 0) {
+			Thread.sleep(50);
+		}
+		assertEquals(20, this.local.list().length);
+	}
+
+	@Test(timeout = 10000)
+	public void taskRejected() throws Exception {
+		TestSynchronizer synchronizer = new TestSynchronizer();
+		synchronizer.setConcurrency(4);
+		final AtomicInteger accepted = new AtomicInteger(1);
+		synchronizer.setTaskExecutor(new Executor() {
+
+			public void execute(Runnable task) {
+				if (accepted.getAndDecrement() <= 0) {
+					throw new TaskRejectedException("rejected");
+				}
+				new Thread(task).start();
+			}
+
+		});
+		synchronizer.afterPropertiesSet();
+		try {
+			synchronizer.synchronizeToLocalDirectory(this.local);
+			fail("Expected exception");
+		}
+		catch (TaskRejectedException e) {
+			assertEquals("rejected", e.getMessage());
+		}
+		// waits for the worker that was started, which downloads all the files
+		synchronizer.synchronizeToLocalDirectory(this.local);
+		assertEquals(20, this.local.list().length);
+		assertEquals(0, this.activeSessions.get());
+	}
+
+
+	private class TestSynchronizer extends AbstractInboundFileSynchronizer<String> {
+
+		public TestSynchronizer() {
+			super(new TestSessionFactory());
+			this.setRemoteDirectory("remote");
+		}
+
+		@Override
+		protected boolean isFile(String file) {
+			return true;
+		}
+
+		@Override
+		protected String getFilename(String file) {
+			return file;
+		}
+
+	}
+
+
+	private class TestSessionFactory implements SessionFactory<String> {
+
+		public Session<String> getSession() {
+			int active = activeSessions.incrementAndGet();
+			int max;
+			while (active > (max = maxActiveSessions.get())) {
+				maxActiveSessions.compareAndSet(max, active);
+			}
+			return new TestSession();
+		}
+
+	}
+
+
+	private class TestSession implements Session<String> {
+
+		private volatile boolean open = true;
+
+		public boolean remove(String path) throws IOException {
+			return false;
+		}
+
+		public String[] list(String path) throws IOException {
+			return remote.list();
+		}
+
+		public void read(String source, OutputStream outputStream) throws IOException {
+			if (failOnce.remove(source.substring(source.indexOf('/') + 1))) {
+				throw new IOException("failed: " + source);
+			}
+			CountDownLatch latch = readLatch;
+			if (latch != null && reads.getAndIncrement() > 0) {
+				try {
+					latch.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			else {
+				// give the other workers a chance to start
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			InputStream in = new FileInputStream(new File(remote, source.substring(source.indexOf('/') + 1)));
+			FileCopyUtils.copy(in, outputStream);
+		}
+
+		public void write(InputStream inputStream, String destination) throws IOException {
+		}
+
+		public boolean mkdir(String directory) throws IOException {
+			return false;
+		}
+
+		public void rename(String pathFrom, String pathTo) throws IOException {
+		}
+
+		public void close() {
+			if (this.open) {
+				this.open = false;
+				activeSessions.decrementAndGet();
+			}
+		}
+
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		public boolean exists(String path) throws IOException {
+			return false;
+		}
+
+		public String[] listNames(String path) throws IOException {
+			return null;
+		}
+
+	}
+
+}
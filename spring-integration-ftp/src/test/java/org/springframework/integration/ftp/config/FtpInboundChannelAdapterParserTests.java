@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -70,6 +70,10 @@ public class FtpInboundChannelAdapterParserTests {
 			(FtpInboundFileSynchronizer) TestUtils.getPropertyValue(inbound, "synchronizer");
 		assertNotNull(TestUtils.getPropertyValue(fisync, "localFilenameGeneratorExpression"));
 		assertEquals(".foo", TestUtils.getPropertyValue(fisync, "temporaryFileSuffix", String.class));
+		assertEquals(4, TestUtils.getPropertyValue(fisync, "concurrency"));
+		assertSame(ac.getBean("executor"), TestUtils.getPropertyValue(fisync, "taskExecutor"));
+		assertEquals(3, TestUtils.getPropertyValue(fisync, "maxAttempts"));
+		assertFalse(TestUtils.getPropertyValue(fisync, "awaitDownloads", Boolean.class));
 		String remoteFileSeparator = (String) TestUtils.getPropertyValue(fisync, "remoteFileSeparator");
 		assertNotNull(remoteFileSeparator);
 		assertEquals("", remoteFileSeparator);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,19 +17,29 @@
 package org.springframework.integration.groovy;
 
 import groovy.lang.GString;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyObject;
+import groovy.lang.Script;
 
 import java.util.Map;
 
+import org.codehaus.groovy.control.CompilationFailedException;
 import org.springframework.integration.Message;
 import org.springframework.integration.scripting.AbstractScriptExecutingMessageProcessor;
 import org.springframework.integration.scripting.ScriptVariableGenerator;
+import org.springframework.scripting.ScriptCompilationException;
 import org.springframework.scripting.ScriptSource;
 import org.springframework.scripting.groovy.GroovyObjectCustomizer;
-import org.springframework.scripting.groovy.GroovyScriptFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 
 /**
+ * Executes a Groovy script. The script is compiled once (and again only when the
+ * {@link ScriptSource} reports that it has been modified); each invocation runs a new
+ * instance of the script class with its own {@link groovy.lang.Binding}, so
+ * invocations on different threads execute concurrently.
+ *
  * @author Dave Syer
  * @author Mark Fisher
  * @author Oleg Zhurakousky
@@ -37,10 +47,13 @@ import org.springframework.util.CollectionUtils;
  */
 public class GroovyScriptExecutingMessageProcessor extends AbstractScriptExecutingMessageProcessor<Object> {
 
-	private final GroovyScriptFactory scriptFactory;
+	private final GroovyClassLoader groovyClassLoader = new GroovyClassLoader(ClassUtils.getDefaultClassLoader());
+
+	private final Object scriptClassMonitor = new Object();
+
+	private volatile Class<?> scriptClass;
 
-	private final VariableBindingGroovyObjectCustomizerDecorator
-			customizerDecorator = new VariableBindingGroovyObjectCustomizerDecorator();
+	private volatile GroovyObjectCustomizer customizer;
 
 	private volatile ScriptSource scriptSource;
 
@@ -52,7 +65,6 @@ public class GroovyScriptExecutingMessageProcessor extends AbstractScriptExecuti
 	public GroovyScriptExecutingMessageProcessor(ScriptSource scriptSource) {
 		super();
 		this.scriptSource = scriptSource;
-		this.scriptFactory = new GroovyScriptFactory(this.getClass().getSimpleName(), this.customizerDecorator);
 	}
 
 	/**
@@ -62,7 +74,6 @@ public class GroovyScriptExecutingMessageProcessor extends AbstractScriptExecuti
 	public GroovyScriptExecutingMessageProcessor(ScriptSource scriptSource, ScriptVariableGenerator scriptVariableGenerator) {
 		super(scriptVariableGenerator);
 		this.scriptSource = scriptSource;
-		this.scriptFactory = new GroovyScriptFactory(this.getClass().getSimpleName(), this.customizerDecorator);
 	}
 
 
@@ -70,7 +81,7 @@ public class GroovyScriptExecutingMessageProcessor extends AbstractScriptExecuti
 	 * Sets a {@link GroovyObjectCustomizer} for this processor.
 	 */
 	public void setCustomizer(GroovyObjectCustomizer customizer) {
-		this.customizerDecorator.setCustomizer(customizer);
+		this.customizer = customizer;
 	}
 
 	@Override
@@ -81,13 +92,61 @@ public class GroovyScriptExecutingMessageProcessor extends AbstractScriptExecuti
 	@Override
 	protected Object executeScript(ScriptSource scriptSource, Map<String, Object> variables) throws Exception {
 		Assert.notNull(scriptSource, "scriptSource must not be null");
-		synchronized (this) {
-			if (!CollectionUtils.isEmpty(variables)) {
-				this.customizerDecorator.setVariables(variables);
+		Class<?> scriptClass = this.getScriptClass(scriptSource);
+		// a new decorator (and script instance) per invocation; nothing mutable is shared
+		VariableBindingGroovyObjectCustomizerDecorator customizerDecorator =
+				new VariableBindingGroovyObjectCustomizerDecorator();
+		customizerDecorator.setCustomizer(this.customizer);
+		if (!CollectionUtils.isEmpty(variables)) {
+			customizerDecorator.setVariables(variables);
+		}
+		GroovyObject goo;
+		try {
+			goo = (GroovyObject) scriptClass.newInstance();
+		}
+		catch (InstantiationException e) {
+			throw new ScriptCompilationException(scriptSource, "Could not instantiate Groovy script class: "
+					+ scriptClass.getName(), e);
+		}
+		catch (IllegalAccessException e) {
+			throw new ScriptCompilationException(scriptSource, "Could not access Groovy script constructor: "
+					+ scriptClass.getName(), e);
+		}
+		if (!(goo instanceof Script)) {
+			// the source only defines a class; as with GroovyScriptFactory, the result is the
+			// instance, which has no binding for the variables
+			if (this.customizer != null) {
+				this.customizer.customize(goo);
+			}
+			return goo;
+		}
+		customizerDecorator.customize(goo);
+		Object result = ((Script) goo).run();
+		return (result instanceof GString) ? result.toString() : result;
+	}
+
+	/*
+	 * ScriptSource.isModified() may reset the source's state, so it is only called once
+	 * per invocation; if another thread has recompiled the script in the meantime, its
+	 * class is used.
+	 */
+	private Class<?> getScriptClass(ScriptSource scriptSource) throws Exception {
+		Class<?> scriptClass = this.scriptClass;
+		if (scriptClass == null || scriptSource.isModified()) {
+			synchronized (this.scriptClassMonitor) {
+				if (this.scriptClass == scriptClass) {
+					try {
+						this.scriptClass = this.groovyClassLoader.parseClass(scriptSource.getScriptAsString(),
+								scriptSource.suggestedClassName());
+					}
+					catch (CompilationFailedException e) {
+						throw new ScriptCompilationException(scriptSource, e);
+					}
+				}
+				scriptClass = this.scriptClass;
 			}
-			Object result = this.scriptFactory.getScriptedObject(scriptSource, null);
-			return (result instanceof GString) ? result.toString() : result;
 		}
+		return scriptClass;
 	}
 
 }
@@ -18,12 +18,20 @@ package org.springframework.integration.groovy;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import groovy.lang.GroovyObject;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Rule;
@@ -91,6 +99,78 @@ public class GroovyScriptExecutingMessageProcessorTests {
 		}
 	}
 
+	@Test
+	public void testClassDefiningScript() throws Exception {
+		String script = "class Greeter { String greet(String name) { \"Hello, $name\" } }";
+		TestResource resource = new TestResource(script, "classTest");
+		ScriptSource scriptSource = new ResourceScriptSource(resource);
+		MessageProcessor<Object> processor = new GroovyScriptExecutingMessageProcessor(scriptSource);
+		Object result = processor.processMessage(MessageBuilder.withPayload("foo").build());
+		assertEquals("Greeter", result.getClass().getName());
+		assertEquals("Hello, foo", ((GroovyObject) result).invokeMethod("greet", "foo").toString());
+		assertNotSame(result, processor.processMessage(MessageBuilder.withPayload("foo").build()));
+	}
+
+	@Test
+	public void testVariablesNotRetainedBetweenExecutions() throws Exception {
+		String script = "return binding.variables.containsKey('extra') ? \"$payload $extra\" : payload";
+		TestResource resource = new TestResource(script, "simpleTest");
+		ScriptSource scriptSource = new ResourceScriptSource(resource);
+		MessageProcessor<Object> processor = new GroovyScriptExecutingMessageProcessor(scriptSource,
+				new ScriptVariableGenerator() {
+					public Map<String, Object> generateScriptVariables(Message<?> message) {
+						Map<String, Object> variables = new HashMap<String, Object>();
+						variables.put("payload", message.getPayload());
+						if (message.getHeaders().containsKey("extra")) {
+							variables.put("extra", message.getHeaders().get("extra"));
+						}
+						return variables;
+					}
+				});
+		Object result = processor.processMessage(MessageBuilder.withPayload("foo").setHeader("extra", "bar").build());
+		assertEquals("foo bar", result);
+		result = processor.processMessage(MessageBuilder.withPayload("baz").build());
+		assertEquals("baz", result);
+	}
+
+	@Test
+	public void testConcurrentExecution() throws Exception {
+		String script = "sleep 100; return \"payload is $payload, header is $headers.testHeader\"";
+		TestResource resource = new TestResource(script, "simpleTest");
+		ScriptSource scriptSource = new ResourceScriptSource(resource);
+		final MessageProcessor<Object> processor = new GroovyScriptExecutingMessageProcessor(scriptSource);
+		// compile the script
+		processor.processMessage(MessageBuilder.withPayload("foo").setHeader("testHeader", "bar").build());
+		int threads = 10;
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < threads; i++) {
+			final int n = i;
+			exec.execute(new Runnable() {
+				public void run() {
+					Message<?> message = MessageBuilder.withPayload("foo" + n).setHeader("testHeader", "bar" + n)
+							.build();
+					try {
+						if (!("payload is foo" + n + ", header is bar" + n).equals(processor.processMessage(message))) {
+							failures.incrementAndGet();
+						}
+					}
+					catch (Exception e) {
+						failures.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		// serialized execution would take at least 1 second
+		assertTrue(System.currentTimeMillis() - start < 900);
+		assertEquals(0, failures.get());
+		exec.shutdownNow();
+	}
+
 	@Test
 	public void testLastModified() throws Exception {
 		String script = "return \"payload is $payload, header is $headers.testHeader\"";
@@ -123,6 +123,12 @@ public abstract class IpAdapterParserUtils {
 
 	public static final String BACKLOG = "backlog";
 
+	public static final String CORRELATION_STRATEGY = "correlation-strategy";
+
+	public static final String CORRELATION_STRATEGY_EXPRESSION = "correlation-strategy-expression";
+
+	public static final String MAX_IN_FLIGHT = "max-in-flight";
+
 	private IpAdapterParserUtils() {}
 
 	/**
@@ -20,6 +20,7 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.integration.config.xml.AbstractConsumerEndpointParser;
 import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
+import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
 /**
@@ -55,6 +56,23 @@ public class TcpOutboundGatewayParser extends AbstractConsumerEndpointParser {
 				IpAdapterParserUtils.AUTO_STARTUP);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
 				IpAdapterParserUtils.PHASE);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
+				IpAdapterParserUtils.MAX_IN_FLIGHT);
+		String correlationStrategy = element.getAttribute(IpAdapterParserUtils.CORRELATION_STRATEGY);
+		String correlationStrategyExpression = element.getAttribute(IpAdapterParserUtils.CORRELATION_STRATEGY_EXPRESSION);
+		if (StringUtils.hasText(correlationStrategy) && StringUtils.hasText(correlationStrategyExpression)) {
+			parserContext.getReaderContext().error("Only one of '" + IpAdapterParserUtils.CORRELATION_STRATEGY
+					+ "' or '" + IpAdapterParserUtils.CORRELATION_STRATEGY_EXPRESSION + "' is allowed", element);
+		}
+		if (StringUtils.hasText(correlationStrategy)) {
+			builder.addPropertyReference("correlationStrategy", correlationStrategy);
+		}
+		else if (StringUtils.hasText(correlationStrategyExpression)) {
+			BeanDefinitionBuilder strategyBuilder = BeanDefinitionBuilder.genericBeanDefinition(
+					"org.springframework.integration.aggregator.ExpressionEvaluatingCorrelationStrategy");
+			strategyBuilder.addConstructorArgValue(correlationStrategyExpression);
+			builder.addPropertyValue("correlationStrategy", strategyBuilder.getBeanDefinition());
+		}
 		return builder;
 	}
 
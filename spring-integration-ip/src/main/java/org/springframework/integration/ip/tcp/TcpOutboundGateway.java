@@ -16,8 +16,8 @@
 
 package org.springframework.integration.ip.tcp;
 
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -27,6 +27,7 @@ import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.MessageTimeoutException;
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.aggregator.CorrelationStrategy;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.ip.IpHeaders;
 import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
@@ -40,8 +41,16 @@ import org.springframework.util.Assert;
  * TCP outbound gateway that uses a client connection factory. If the factory is configured
  * for single-use connections, each request is sent on a new connection; if the factory does not use
  * single use connections, each request is blocked until the previous response is received
- * (or times out). Asynchronous requests/responses over the same connection are not
- * supported - use a pair of outbound/inbound adapters for that use case.
+ * (or times out).
+ * <p/>
+ * When a {@link CorrelationStrategy} is provided, the gateway operates in multiplexed
+ * mode; the strategy is applied to both the request and the reply messages and the
+ * resulting keys are used to match replies to requests, allowing up to
+ * {@link #setMaxInFlight(int) maxInFlight} requests to be outstanding concurrently
+ * on a shared connection. Each request waits for its own reply for up to the
+ * remote timeout. Since only the payload is written to the connection, the strategy
+ * usually extracts the correlation data from the payload (unless a custom
+ * message mapper propagates headers).
  * <p/>
  * {@link SmartLifecycle} methods delegate to the underlying {@link AbstractConnectionFactory}
  *
@@ -53,9 +62,13 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 
 	private volatile AbstractClientConnectionFactory connectionFactory;
 
-	private final Map<String, AsyncReply> pendingReplies = new ConcurrentHashMap<String, AsyncReply>();
+	private final ConcurrentMap<Object, AsyncReply> pendingReplies = new ConcurrentHashMap<Object, AsyncReply>();
+
+	private volatile Semaphore semaphore = new Semaphore(1, true);
+
+	private volatile int maxInFlight = 1;
 
-	private final Semaphore semaphore = new Semaphore(1, true);
+	private volatile CorrelationStrategy correlationStrategy;
 
 	private volatile long remoteTimeout = 10000L;
 
@@ -82,6 +95,62 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 		this.remoteTimeoutSet = true;
 	}
 
+	/**
+	 * Set the strategy used to correlate replies with requests when
+	 * a shared connection is used to send multiple requests without waiting
+	 * for each reply; the same strategy is applied to the request and reply
+	 * messages.
+	 * @param correlationStrategy the correlationStrategy to set
+	 * @since 3.0
+	 */
+	public void setCorrelationStrategy(CorrelationStrategy correlationStrategy) {
+		this.correlationStrategy = correlationStrategy;
+	}
+
+	/**
+	 * Set the maximum number of requests that may be awaiting a reply at any
+	 * one time; further requests wait for up to the request timeout for a slot.
+	 * Values greater than 1 require a {@link CorrelationStrategy}. Default 1.
+	 * @param maxInFlight the maxInFlight to set
+	 * @since 3.0
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		Assert.isTrue(maxInFlight > 0, "'maxInFlight' must be greater than 0");
+		this.maxInFlight = maxInFlight;
+		this.semaphore = new Semaphore(maxInFlight, true);
+	}
+
+	/**
+	 * @return the number of requests currently awaiting a reply.
+	 * @since 3.0
+	 */
+	public int getPendingReplyCount() {
+		return this.pendingReplies.size();
+	}
+
+	/**
+	 * @return the (estimated) number of requests waiting for an in-flight slot.
+	 * @since 3.0
+	 */
+	public int getQueuedRequestCount() {
+		return this.semaphore.getQueueLength();
+	}
+
+	/**
+	 * @return the maximum number of requests that may be awaiting a reply.
+	 * @since 3.0
+	 */
+	public int getMaxInFlight() {
+		return this.maxInFlight;
+	}
+
+	@Override
+	protected void onInit() {
+		super.onInit();
+		Assert.isTrue(this.maxInFlight == 1 || this.correlationStrategy != null,
+				"A 'correlationStrategy' is required when 'maxInFlight' is greater than 1");
+	}
+
 	@Override
 	public void setSendTimeout(long sendTimeout) {
 		super.setSendTimeout(sendTimeout);
@@ -99,6 +168,9 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 	protected Object handleRequestMessage(Message<?> requestMessage) {
 		Assert.notNull(connectionFactory, this.getClass().getName() +
 				" requires a client connection factory");
+		if (this.correlationStrategy != null) {
+			return this.handleCorrelatedRequestMessage(requestMessage);
+		}
 		boolean haveSemaphore = false;
 		String connectionId = null;
 		try {
@@ -155,7 +227,78 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 		}
 	}
 
+	private Object handleCorrelatedRequestMessage(Message<?> requestMessage) {
+		Object correlationKey = this.correlationStrategy.getCorrelationKey(requestMessage);
+		if (correlationKey == null) {
+			throw new MessagingException(requestMessage, "Cannot correlate request - no correlation key");
+		}
+		Semaphore semaphore = this.semaphore;
+		boolean haveSemaphore = false;
+		AsyncReply reply = null;
+		try {
+			if (!semaphore.tryAcquire(this.requestTimeout, TimeUnit.MILLISECONDS)) {
+				throw new MessageTimeoutException(requestMessage, "Timed out waiting for an in-flight slot");
+			}
+			haveSemaphore = true;
+			TcpConnection connection = this.connectionFactory.getConnection();
+			reply = new AsyncReply(connection.getConnectionId());
+			if (this.pendingReplies.putIfAbsent(correlationKey, reply) != null) {
+				reply = null;
+				throw new MessagingException(requestMessage, "A request with correlation key '"
+						+ correlationKey + "' is already awaiting a reply");
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Added " + correlationKey + " on " + connection.getConnectionId());
+			}
+			connection.send(requestMessage);
+			Message<?> replyMessage = reply.getReply();
+			if (replyMessage == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Remote Timeout for " + correlationKey + " on " + connection.getConnectionId());
+				}
+				/*
+				 * Other requests may be in-flight on this connection so we don't close it;
+				 * a late reply will be discarded because it can no longer be correlated.
+				 */
+				throw new MessageTimeoutException(requestMessage, "Timed out waiting for response");
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Response " + replyMessage);
+			}
+			return replyMessage;
+		}
+		catch (Exception e) {
+			if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			logger.error("Tcp Gateway exception", e);
+			throw new MessagingException("Failed to send or receive", e);
+		}
+		finally {
+			if (reply != null) {
+				this.pendingReplies.remove(correlationKey, reply);
+			}
+			if (haveSemaphore) {
+				semaphore.release();
+			}
+		}
+	}
+
 	public boolean onMessage(Message<?> message) {
+		if (this.correlationStrategy != null) {
+			Object correlationKey = this.correlationStrategy.getCorrelationKey(message);
+			if (correlationKey == null) {
+				logger.error("Cannot correlate response - no correlation key");
+				return false;
+			}
+			AsyncReply reply = pendingReplies.get(correlationKey);
+			if (reply == null) {
+				logger.error("Cannot correlate response - no pending reply for " + correlationKey);
+				return false;
+			}
+			reply.setReply(message);
+			return false;
+		}
 		String connectionId = (String) message.getHeaders().get(IpHeaders.CONNECTION_ID);
 		if (connectionId == null) {
 			logger.error("Cannot correlate response - no connection id");
@@ -184,7 +327,20 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 	}
 
 	public void removeDeadConnection(TcpConnection connection) {
-		// do nothing - no asynchronous multiplexing supported
+		if (this.correlationStrategy == null) {
+			return;
+		}
+		/*
+		 * Fail any requests that are still waiting for a reply on this connection,
+		 * rather than leaving them to time out.
+		 */
+		String connectionId = connection.getConnectionId();
+		for (AsyncReply reply : this.pendingReplies.values()) {
+			if (connectionId.equals(reply.connectionId)) {
+				reply.setFailure(new MessagingException("Connection " + connectionId
+						+ " closed while awaiting a reply"));
+			}
+		}
 	}
 
 	/**
@@ -248,10 +404,19 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 
 		private final CountDownLatch latch;
 
+		private final String connectionId;
+
 		private volatile Message<?> reply;
 
+		private volatile MessagingException failure;
+
 		public AsyncReply() {
+			this(null);
+		}
+
+		public AsyncReply(String connectionId) {
 			this.latch = new CountDownLatch(1);
+			this.connectionId = connectionId;
 		}
 
 		/**
@@ -268,6 +433,9 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 			catch (InterruptedException e) {
 				Thread.currentThread().interrupt();
 			}
+			if (this.reply == null && this.failure != null) {
+				throw this.failure;
+			}
 			return this.reply;
 		}
 
@@ -275,6 +443,11 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler imp
 			this.reply = reply;
 			this.latch.countDown();
 		}
+
+		public void setFailure(MessagingException failure) {
+			this.failure = failure;
+			this.latch.countDown();
+		}
 	}
 
 }
@@ -40,6 +40,7 @@ import org.springframework.core.serializer.Serializer;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
+import org.springframework.integration.aggregator.ExpressionEvaluatingCorrelationStrategy;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.core.MessagingTemplate;
@@ -465,6 +466,8 @@ public class ParserUnitTests {
 		assertEquals(24, dfa.getPropertyValue("order"));
 		assertFalse(tcpOutboundGateway.isAutoStartup());
 		assertEquals(127, tcpOutboundGateway.getPhase());
+		assertEquals(10, tcpOutboundGateway.getMaxInFlight());
+		assertTrue(dfa.getPropertyValue("correlationStrategy") instanceof ExpressionEvaluatingCorrelationStrategy);
 	}
 
 	@Test
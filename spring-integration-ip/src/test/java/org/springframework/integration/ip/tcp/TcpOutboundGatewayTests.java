@@ -21,9 +21,12 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
@@ -34,6 +37,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -49,6 +53,7 @@ import org.springframework.core.serializer.DefaultDeserializer;
 import org.springframework.core.serializer.DefaultSerializer;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.aggregator.CorrelationStrategy;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.ip.tcp.connection.AbstractConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
@@ -367,4 +372,89 @@ public class TcpOutboundGatewayTests {
 		assertEquals(0, TestUtils.getPropertyValue(gateway, "pendingReplies", Map.class).size());
 	}
 
+	@Test
+	public void testCorrelatedPipelinedRequests() throws Exception {
+		final int port = SocketUtils.findAvailableServerSocket();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicBoolean done = new AtomicBoolean();
+		final int count = 10;
+		Executors.newSingleThreadExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(port);
+					latch.countDown();
+					Socket socket = server.accept();
+					BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+					List<String> requests = new ArrayList<String>();
+					// all requests must be in-flight before we reply (in reverse order)
+					for (int i = 0; i < count; i++) {
+						requests.add(reader.readLine());
+					}
+					OutputStream os = socket.getOutputStream();
+					for (int i = count - 1; i >= 0; i--) {
+						os.write((requests.get(i).replace("Test", "Reply") + "\r\n").getBytes());
+					}
+					os.flush();
+					socket.close();
+					server.close();
+				}
+				catch (Exception e) {
+					if (!done.get()) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+		AbstractConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost", port);
+		ccf.setSoTimeout(10000);
+		ccf.setSingleUse(false);
+		ccf.start();
+		assertTrue(latch.await(10000, TimeUnit.MILLISECONDS));
+		final TcpOutboundGateway gateway = new TcpOutboundGateway();
+		gateway.setConnectionFactory(ccf);
+		gateway.setCorrelationStrategy(new CorrelationStrategy() {
+			public Object getCorrelationKey(Message<?> message) {
+				Object payload = message.getPayload();
+				String data = payload instanceof byte[] ? new String((byte[]) payload) : (String) payload;
+				return data.substring(data.length() - 1);
+			}
+		});
+		gateway.setMaxInFlight(count);
+		gateway.setRemoteTimeout(10000);
+		gateway.afterPropertiesSet();
+		final QueueChannel replyChannel = new QueueChannel();
+		gateway.setOutputChannel(replyChannel);
+		ExecutorService exec = Executors.newFixedThreadPool(count);
+		for (int i = 0; i < count; i++) {
+			final int j = i;
+			exec.execute(new Runnable() {
+				public void run() {
+					gateway.handleMessage(MessageBuilder.withPayload("Test" + j).build());
+				}
+			});
+		}
+		Set<String> replies = new HashSet<String>();
+		for (int i = 0; i < count; i++) {
+			Message<?> reply = replyChannel.receive(10000);
+			assertNotNull(reply);
+			replies.add(new String((byte[]) reply.getPayload()));
+		}
+		for (int i = 0; i < count; i++) {
+			assertTrue(replies.contains("Reply" + i));
+		}
+		done.set(true);
+		exec.shutdown();
+		assertEquals(0, gateway.getPendingReplyCount());
+		assertEquals(0, gateway.getQueuedRequestCount());
+		ccf.stop();
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMaxInFlightRequiresCorrelation() throws Exception {
+		TcpOutboundGateway gateway = new TcpOutboundGateway();
+		gateway.setConnectionFactory(new TcpNetClientConnectionFactory("localhost", 0));
+		gateway.setMaxInFlight(2);
+		gateway.afterPropertiesSet();
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -14,8 +14,10 @@
 package org.springframework.integration.jdbc.store;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -23,7 +25,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.DataSource;
 
@@ -52,16 +58,25 @@ import org.springframework.integration.store.SimpleMessageGroup;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.transaction.TransactionSynchronizationFactory;
 import org.springframework.integration.util.UUIDConverter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
 import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+import org.springframework.jdbc.core.SqlParameter;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.lob.DefaultLobHandler;
 import org.springframework.jdbc.support.lob.LobHandler;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedMetric;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -142,6 +157,12 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 
 	private boolean usingIdCache = false;
 
+	private volatile int insertBatchSize = 1;
+
+	private final BlockingQueue<PendingInsert> pendingInserts = new LinkedBlockingQueue<PendingInsert>();
+
+	private final Lock insertLock = new ReentrantLock();
+
 	/**
 	 * Convenient constructor for configuration use.
 	 */
@@ -309,8 +330,14 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 	 * If you do that with multiple threads and you are using transactions, other
 	 * threads may be waiting for that same locked row.</p>
 	 *
-	 * <p>If using the provided {@link OracleChannelMessageStoreQueryProvider}, don't set {@link #usingIdCache}
-	 * to true, as the Oracle query will ignore locked rows.</p>
+	 * <p>If using the provided {@link OracleChannelMessageStoreQueryProvider}, or any other
+	 * {@link ChannelMessageStoreQueryProvider} that {@link ChannelMessageStoreQueryProvider#isSkipLocked()
+	 * skips locked rows}, don't set {@link #usingIdCache} to true, as the query will ignore locked
+	 * rows; the id cache is ignored in that case.</p>
+	 *
+	 * <p>The id cache is not required to prevent a message from being delivered more than once:
+	 * a poller only returns a message if it deleted the corresponding row itself. It merely
+	 * reduces the chance of threads in this JVM selecting (and waiting for) the same row.</p>
 	 *
 	 * <p>Using the id cache, the {@link JdbcChannelMessageStore} will store each
 	 * message id in an in-memory collection for the duration of processing. With
@@ -348,6 +375,30 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 		this.usingIdCache = usingIdCache;
 	}
 
+	/**
+	 * <p>The maximum number of concurrent {@link #addMessageToGroup(Object, Message)} calls
+	 * that are coalesced into a single JDBC batch insert. Default <code>1</code> (no batching).</p>
+	 *
+	 * <p>When greater than 1, a thread adding a message while other threads are adding
+	 * messages inserts all pending messages (up to this number) using
+	 * {@link JdbcTemplate#batchUpdate(String, BatchPreparedStatementSetter)}; the
+	 * other threads return as soon as their messages have been inserted. Each
+	 * caller still returns only after its own message has been stored, and any
+	 * exception raised by the batch is thrown to all callers whose messages were
+	 * part of it.</p>
+	 *
+	 * <p>Since the batch is executed on the connection of just one of the callers,
+	 * messages added while a transaction is active are always inserted individually,
+	 * in that transaction.</p>
+	 *
+	 * @param insertBatchSize the maximum batch size.
+	 * @since 3.0
+	 */
+	public void setInsertBatchSize(int insertBatchSize) {
+		Assert.isTrue(insertBatchSize > 0, "'insertBatchSize' must be greater than 0");
+		this.insertBatchSize = insertBatchSize;
+	}
+
 	/**
 	 * Check mandatory properties ({@link DataSource} and
 	 * {@link #setChannelMessageStoreQueryProvider(ChannelMessageStoreQueryProvider)}). If no {@link MessageRowMapper} was
@@ -374,6 +425,10 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 			logger.warn("The jdbcTemplate's fetchsize is not 1 but %s. This may cause FIFO issues with Oracle databases.");
 		}
 
+		if (this.usingIdCache && this.channelMessageStoreQueryProvider.isSkipLocked() && logger.isWarnEnabled()) {
+			logger.warn("The id cache is ignored because the channelMessageStoreQueryProvider skips locked rows.");
+		}
+
 	}
 
 	/**
@@ -399,25 +454,76 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 		// using reflection to set ID since it is immutable through MessageHeaders
 		innerMap.put(MessageHeaders.ID, message.getHeaders().get(MessageHeaders.ID));
 
-		final String messageId = getKey(result.getHeaders().getId());
-		final byte[] messageBytes = serializer.convert(result);
+		final PendingInsert insert = new PendingInsert(getKey(result.getHeaders().getId()), groupKey, createdDate,
+				serializer.convert(result));
 
-		jdbcTemplate.update(getQuery(channelMessageStoreQueryProvider.getCreateMessageQuery()), new PreparedStatementSetter() {
-			public void setValues(PreparedStatement ps) throws SQLException {
-				if (logger.isDebugEnabled()){
-					logger.debug("Inserting message with id key=" + messageId);
+		if (this.insertBatchSize > 1 && !TransactionSynchronizationManager.isActualTransactionActive()) {
+			this.batchInsert(insert);
+		}
+		else {
+			jdbcTemplate.update(getQuery(channelMessageStoreQueryProvider.getCreateMessageQuery()), new PreparedStatementSetter() {
+				public void setValues(PreparedStatement ps) throws SQLException {
+					setInsertValues(ps, insert);
 				}
-				ps.setString(1, messageId);
-				ps.setString(2, groupKey);
-				ps.setString(3, region);
-				ps.setLong(4, createdDate);
-				lobHandler.getLobCreator().setBlobAsBytes(ps, 5, messageBytes);
-			}
-		});
+			});
+		}
 
 		return getMessageGroup(groupId);
 	}
 
+	/**
+	 * Enqueue the insert and, unless some other thread has inserted it by the time
+	 * the insert lock is obtained, insert it together with any other pending inserts.
+	 */
+	private void batchInsert(PendingInsert insert) {
+		this.pendingInserts.add(insert);
+		this.insertLock.lock();
+		try {
+			while (!insert.done) {
+				final List<PendingInsert> batch = new ArrayList<PendingInsert>(this.insertBatchSize);
+				this.pendingInserts.drainTo(batch, this.insertBatchSize);
+				try {
+					jdbcTemplate.batchUpdate(getQuery(channelMessageStoreQueryProvider.getCreateMessageQuery()),
+							new BatchPreparedStatementSetter() {
+								public void setValues(PreparedStatement ps, int i) throws SQLException {
+									setInsertValues(ps, batch.get(i));
+								}
+								public int getBatchSize() {
+									return batch.size();
+								}
+							});
+				}
+				catch (RuntimeException e) {
+					for (PendingInsert pendingInsert : batch) {
+						pendingInsert.failure = e;
+					}
+				}
+				finally {
+					for (PendingInsert pendingInsert : batch) {
+						pendingInsert.done = true;
+					}
+				}
+			}
+		}
+		finally {
+			this.insertLock.unlock();
+		}
+		if (insert.failure != null) {
+			throw insert.failure;
+		}
+	}
+
+	private void setInsertValues(PreparedStatement ps, PendingInsert insert) throws SQLException {
+		if (logger.isDebugEnabled()){
+			logger.debug("Inserting message with id key=" + insert.messageId);
+		}
+		ps.setString(1, insert.messageId);
+		ps.setString(2, insert.groupKey);
+		ps.setString(3, region);
+		ps.setLong(4, insert.createdDate);
+		lobHandler.getLobCreator().setBlobAsBytes(ps, 5, insert.messageBytes);
+	}
+
 	/**
 	 * Method not implemented.
 	 * @throws UnsupportedOperationException
@@ -443,14 +549,13 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 		parameters.addValue("group_key", groupIdKey);
 
 		final String query;
+		final List<String> excludedIds = this.getExcludedIds();
 
-		synchronized (idCache) {
-			if (this.usingIdCache && !this.idCache.isEmpty()) {
-				query = getQuery(this.channelMessageStoreQueryProvider.getPollFromGroupExcludeIdsQuery());
-				parameters.addValue("message_ids", idCache);
-			} else {
-				query = getQuery(this.channelMessageStoreQueryProvider.getPollFromGroupQuery());
-			}
+		if (!excludedIds.isEmpty()) {
+			query = getQuery(this.channelMessageStoreQueryProvider.getPollFromGroupExcludeIdsQuery());
+			parameters.addValue("message_ids", excludedIds);
+		} else {
+			query = getQuery(this.channelMessageStoreQueryProvider.getPollFromGroupQuery());
 		}
 
 		final List<Message<?>> messages = namedParameterJdbcTemplate.query(query, parameters, messageRowMapper);
@@ -461,7 +566,7 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 			final Message<?>message = messages.get(0);
 			final String messageId = message.getHeaders().getId().toString();
 
-			if (this.usingIdCache) {
+			if (this.isIdCacheActive()) {
 
 				boolean added = this.idCache.add(messageId);
 
@@ -475,6 +580,102 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 		return null;
 	}
 
+	/**
+	 * This method executes a call to the DB to get up to <code>maxMessages</code>
+	 * of the oldest Messages in the MessageGroup (channel), oldest first.
+	 *
+	 * @param groupIdKey String representation of message group (Channel) ID
+	 * @param maxMessages the maximum number of messages to return
+	 * @return the messages; never null
+	 */
+	protected List<Message<?>> doPollForMessages(String groupIdKey, final int maxMessages) {
+
+		final MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+		parameters.addValue("region", region);
+		parameters.addValue("group_key", groupIdKey);
+
+		final String query;
+		final List<String> excludedIds = this.getExcludedIds();
+
+		if (!excludedIds.isEmpty()) {
+			query = getQuery(this.channelMessageStoreQueryProvider.getPollMessagesFromGroupExcludeIdsQuery());
+			parameters.addValue("message_ids", excludedIds);
+		} else {
+			query = getQuery(this.channelMessageStoreQueryProvider.getPollMessagesFromGroupQuery());
+		}
+
+		final ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(query);
+		final List<SqlParameter> declaredParameters = NamedParameterUtils.buildSqlParameterList(parsedSql, parameters);
+		final PreparedStatementCreatorFactory statementCreatorFactory = new PreparedStatementCreatorFactory(
+				NamedParameterUtils.substituteNamedParameters(parsedSql, parameters), declaredParameters);
+
+		final List<Message<?>> messages = jdbcTemplate.execute(
+				statementCreatorFactory.newPreparedStatementCreator(
+						NamedParameterUtils.buildValueArray(parsedSql, parameters, declaredParameters)),
+				new PreparedStatementCallback<List<Message<?>>>() {
+					public List<Message<?>> doInPreparedStatement(PreparedStatement ps) throws SQLException {
+						// override the template's limits (typically 1); some drivers require fetchSize <= maxRows
+						ps.setMaxRows(maxMessages);
+						ps.setFetchSize(maxMessages);
+						ResultSet rs = ps.executeQuery();
+						try {
+							return new RowMapperResultSetExtractor<Message<?>>(messageRowMapper, maxMessages).extractData(rs);
+						}
+						finally {
+							JdbcUtils.closeResultSet(rs);
+						}
+					}
+				});
+
+		if (this.isIdCacheActive()) {
+			for (Message<?> message : messages) {
+				final String messageId = message.getHeaders().getId().toString();
+				boolean added = this.idCache.add(messageId);
+				if (logger.isDebugEnabled()) {
+					logger.debug(String.format("Polled message with id '%s' added: '%s'.", messageId, added));
+				}
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * A snapshot of the ids of messages being processed by other threads; the id cache
+	 * is a concurrent set, so the snapshot is taken without locking.
+	 */
+	private List<String> getExcludedIds() {
+		if (!this.isIdCacheActive() || this.idCache.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<String>(this.idCache);
+	}
+
+	private boolean isIdCacheActive() {
+		return this.usingIdCache && !this.channelMessageStoreQueryProvider.isSkipLocked();
+	}
+
+	/**
+	 * Delete a polled message; the deletion is the poller's claim to the message.
+	 *
+	 * @return true if this poller deleted the message, false if it was claimed by another poller.
+	 */
+	private boolean claimMessage(String groupKey, Message<?> message) {
+		final UUID id = message.getHeaders().getId();
+		int updated = jdbcTemplate.update(getQuery(channelMessageStoreQueryProvider.getDeleteMessageQuery()),
+				new Object[] { getKey(id), groupKey, region }, new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR });
+		if (updated != 1) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(String.format("Message with id '%s' was claimed by another poller.", id));
+			}
+			if (this.isIdCacheActive()) {
+				this.idCache.remove(id.toString());
+			}
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Helper method that converts the channel id to a UUID.
 	 *
@@ -561,19 +762,83 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 	/**
 	 * Polls the database for a new message that is persisted for the given
 	 * group id which represents the channel identifier.
+	 * <p>
+	 * A concurrent poller (in this or another JVM) may select the same message (even when
+	 * locked rows are skipped, if the poll is not transactional); only the poller that
+	 * actually deletes the row returns the message, the others poll again.
 	 */
 	public Message<?> pollMessageFromGroup(Object groupId) {
 
 		final String key = getKey(groupId);
-		final Message<?> polledMessage = this.doPollForMessage(key);
+		Message<?> polledMessage;
 
-		if (polledMessage != null){
-			this.removeMessageFromGroup(groupId, polledMessage);
+		while ((polledMessage = this.doPollForMessage(key)) != null) {
+			if (this.claimMessage(key, polledMessage)) {
+				break;
+			}
 		}
 
 		return polledMessage;
 	}
 
+	/**
+	 * Returns true; only the poller that deletes a message returns it, so concurrent
+	 * pollers never receive the same message.
+	 */
+	@Override
+	public boolean isConcurrentPollingSupported() {
+		return true;
+	}
+
+	/**
+	 * Polls the database for up to <code>maxMessages</code> messages that are
+	 * persisted for the given group id (channel identifier), oldest first, and
+	 * deletes them. The messages are selected with one query; each is then
+	 * deleted, and only the messages that this poller deleted are returned, so
+	 * that messages claimed by concurrent pollers are discarded. The statements
+	 * participate in the current transaction, if any, so polling within a
+	 * transaction claims the messages atomically.
+	 *
+	 * @param groupId The channel id to poll the messages from
+	 * @param maxMessages the maximum number of messages to return
+	 * @return the polled messages, oldest first; never null
+	 * @since 3.0
+	 */
+	@Override
+	public List<Message<?>> pollMessagesFromGroup(Object groupId, int maxMessages) {
+		Assert.isTrue(maxMessages > 0, "'maxMessages' must be greater than 0");
+
+		final String key = getKey(groupId);
+		List<Message<?>> polledMessages;
+
+		do {
+			polledMessages = this.doPollForMessages(key, maxMessages);
+			if (polledMessages.isEmpty()) {
+				break;
+			}
+			polledMessages = this.claimMessages(key, polledMessages);
+		}
+		while (polledMessages.isEmpty());
+
+		return polledMessages;
+	}
+
+	/**
+	 * Delete each of the polled messages and return those that were actually deleted
+	 * by this poller. The messages are deleted individually, rather than in a batch,
+	 * because drivers are not required to report the update count of each statement
+	 * in a batch.
+	 */
+	private List<Message<?>> claimMessages(String groupKey, List<Message<?>> messages) {
+		final List<Message<?>> claimed = new ArrayList<Message<?>>(messages.size());
+		for (Message<?> message : messages) {
+			if (this.claimMessage(groupKey, message)) {
+				claimed.add(message);
+			}
+		}
+		return claimed;
+	}
+
 	/**
 	 * Remove a single message from the database.
 	 *
@@ -644,4 +909,31 @@ public class JdbcChannelMessageStore extends AbstractMessageGroupStore implement
 
 	}
 
+	private static class PendingInsert {
+
+		private final String messageId;
+
+		private final String groupKey;
+
+		private final long createdDate;
+
+		private final byte[] messageBytes;
+
+		/*
+		 * Written by the thread that executes the batch while holding the insert lock;
+		 * read by the owner after obtaining that lock.
+		 */
+		private boolean done;
+
+		private RuntimeException failure;
+
+		private PendingInsert(String messageId, String groupKey, long createdDate, byte[] messageBytes) {
+			this.messageId = messageId;
+			this.groupKey = groupKey;
+			this.createdDate = createdDate;
+			this.messageBytes = messageBytes;
+		}
+
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -47,6 +47,40 @@ public interface ChannelMessageStoreQueryProvider {
 	 */
 	String getPollFromGroupQuery();
 
+	/**
+	 * Get the query used to retrieve the oldest messages for a channel excluding
+	 * messages that match the provided message ids. The query must not limit the
+	 * number of rows itself; the number of rows returned is limited by the
+	 * {@link JdbcChannelMessageStore} using {@link java.sql.Statement#setMaxRows(int)}.
+	 *
+	 * @return Sql Query
+	 * @since 3.0
+	 */
+	String getPollMessagesFromGroupExcludeIdsQuery();
+
+	/**
+	 * Get the query used to retrieve the oldest messages for a channel. The query
+	 * must not limit the number of rows itself; the number of rows returned is
+	 * limited by the {@link JdbcChannelMessageStore} using
+	 * {@link java.sql.Statement#setMaxRows(int)}.
+	 *
+	 * @return Sql Query
+	 * @since 3.0
+	 */
+	String getPollMessagesFromGroupQuery();
+
+	/**
+	 * Whether the poll queries lock the rows they return and skip rows that are
+	 * locked by other transactions (for example using <code>FOR UPDATE SKIP LOCKED</code>).
+	 * If so, concurrent pollers never receive the same message and the
+	 * {@link JdbcChannelMessageStore} neither needs its message id cache nor has
+	 * to verify that it won the claim to a polled message.
+	 *
+	 * @return true if the poll queries skip locked rows.
+	 * @since 3.0
+	 */
+	boolean isSkipLocked();
+
 	/**
 	 * Query that retrieves a message for the provided message id, channel and
 	 * region.
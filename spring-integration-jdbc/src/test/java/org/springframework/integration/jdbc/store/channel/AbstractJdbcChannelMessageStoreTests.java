@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,18 @@ package org.springframework.integration.jdbc.store.channel;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
@@ -30,6 +42,7 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionTemplate;
 
@@ -90,4 +103,180 @@ public class AbstractJdbcChannelMessageStoreTests {
 		assertNotNull(messageFromDb.getHeaders().get(JdbcChannelMessageStore.CREATED_DATE_KEY));
 	}
 
+	public void testPollMessages() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			messageStore.addMessageToGroup(TEST_MESSAGE_GROUP, MessageBuilder.withPayload("foo" + i).build());
+			// ensure distinct CREATED_DATE values
+			Thread.sleep(2);
+		}
+
+		final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setIsolationLevel(Isolation.READ_COMMITTED.value());
+
+		final AtomicReference<List<Message<?>>> polled = new AtomicReference<List<Message<?>>>();
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				polled.set(messageStore.pollMessagesFromGroup(TEST_MESSAGE_GROUP, 3));
+			}
+		});
+		assertEquals(3, polled.get().size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals("foo" + i, polled.get().get(i).getPayload());
+		}
+		List<Message<?>> rest = messageStore.pollMessagesFromGroup(TEST_MESSAGE_GROUP, 10);
+		assertEquals(2, rest.size());
+		assertEquals("foo3", rest.get(0).getPayload());
+		assertEquals("foo4", rest.get(1).getPayload());
+		assertEquals(0, messageStore.pollMessagesFromGroup(TEST_MESSAGE_GROUP, 10).size());
+	}
+
+	public void testConcurrentBatchInserts() throws Exception {
+		messageStore.setInsertBatchSize(10);
+		final int threads = 10;
+		final int messagesPerThread = 20;
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		for (int i = 0; i < threads; i++) {
+			final int thread = i;
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < messagesPerThread; j++) {
+							messageStore.addMessageToGroup(TEST_MESSAGE_GROUP,
+									MessageBuilder.withPayload(thread + ":" + j).build());
+						}
+					}
+					catch (Throwable t) {
+						failure.set(t);
+					}
+				}
+			});
+		}
+		start.countDown();
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+		assertNull(failure.get());
+
+		Set<Object> payloads = new HashSet<Object>();
+		for (Message<?> message : messageStore.pollMessagesFromGroup(TEST_MESSAGE_GROUP, 1000)) {
+			payloads.add(message.getPayload());
+		}
+		assertEquals(threads * messagesPerThread, payloads.size());
+		assertNull(messageStore.pollMessageFromGroup(TEST_MESSAGE_GROUP));
+	}
+
+	public void testConcurrentPollersWithoutIdCache() throws Exception {
+		concurrentPollers(false);
+	}
+
+	public void testConcurrentPollersWithIdCache() throws Exception {
+		concurrentPollers(true);
+	}
+
+	/**
+	 * Each message must be received exactly once, whether or not the id cache
+	 * is used to keep the pollers in this JVM apart.
+	 */
+	private void concurrentPollers(final boolean usingIdCache) throws Exception {
+		messageStore.setUsingIdCache(usingIdCache);
+		final int messageCount = 200;
+		for (int i = 0; i < messageCount; i++) {
+			messageStore.addMessageToGroup(TEST_MESSAGE_GROUP, MessageBuilder.withPayload(i).build());
+		}
+
+		final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setIsolationLevel(Isolation.READ_COMMITTED.value());
+
+		final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final int threads = 8;
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						Message<?> message;
+						do {
+							message = transactionTemplate.execute(new TransactionCallback<Message<?>>() {
+								public Message<?> doInTransaction(TransactionStatus status) {
+									return messageStore.pollMessageFromGroup(TEST_MESSAGE_GROUP);
+								}
+							});
+							if (message != null) {
+								received.add(message.getPayload());
+								if (usingIdCache) {
+									messageStore.removeFromIdCache(message.getHeaders().getId().toString());
+								}
+							}
+						}
+						while (message != null);
+					}
+					catch (Throwable t) {
+						failure.set(t);
+					}
+				}
+			});
+		}
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(60, TimeUnit.SECONDS));
+		assertNull(failure.get());
+		assertEquals(messageCount, received.size());
+		assertEquals(messageCount, new HashSet<Object>(received).size());
+		assertEquals(0, messageStore.getSizeOfIdCache());
+	}
+
+	/**
+	 * Two pollers that do not use transactions may select the same rows; each
+	 * message must still be returned by only one of them.
+	 */
+	public void testTwoNonTransactionalPollers() throws Exception {
+		final int messageCount = 200;
+		for (int i = 0; i < messageCount; i++) {
+			messageStore.addMessageToGroup(TEST_MESSAGE_GROUP, MessageBuilder.withPayload(i).build());
+		}
+		final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService exec = Executors.newFixedThreadPool(2);
+		exec.execute(new Runnable() {
+			public void run() {
+				try {
+					start.await();
+					Message<?> message;
+					while ((message = messageStore.pollMessageFromGroup(TEST_MESSAGE_GROUP)) != null) {
+						received.add(message.getPayload());
+					}
+				}
+				catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		});
+		exec.execute(new Runnable() {
+			public void run() {
+				try {
+					start.await();
+					List<Message<?>> messages;
+					while (!(messages = messageStore.pollMessagesFromGroup(TEST_MESSAGE_GROUP, 5)).isEmpty()) {
+						for (Message<?> message : messages) {
+							received.add(message.getPayload());
+						}
+					}
+				}
+				catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		});
+		start.countDown();
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(60, TimeUnit.SECONDS));
+		assertNull(failure.get());
+		assertEquals(messageCount, new HashSet<Object>(received).size());
+		assertEquals(messageCount, received.size());
+	}
+
 }
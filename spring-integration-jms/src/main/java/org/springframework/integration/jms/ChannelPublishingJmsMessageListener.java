@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -32,6 +32,8 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
 import org.springframework.integration.gateway.MessagingGatewaySupport;
+import org.springframework.integration.history.MessageHistorySampler;
+import org.springframework.integration.history.MessageHistorySamplerAware;
 import org.springframework.integration.history.TrackableComponent;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.jms.listener.SessionAwareMessageListener;
@@ -53,7 +55,8 @@ import org.springframework.util.Assert;
  * @author Oleg Zhurakousky
  */
 public class ChannelPublishingJmsMessageListener 
-		implements SessionAwareMessageListener<javax.jms.Message>, InitializingBean, TrackableComponent {
+		implements SessionAwareMessageListener<javax.jms.Message>, InitializingBean, TrackableComponent,
+		MessageHistorySamplerAware {
 	
 	protected final Log logger = LogFactory.getLog(getClass());
 	
@@ -118,6 +121,10 @@ public class ChannelPublishingJmsMessageListener
 		this.gatewayDelegate.setShouldTrack(shouldTrack);
 	}
 
+	public void setMessageHistorySampler(MessageHistorySampler sampler) {
+		this.gatewayDelegate.setMessageHistorySampler(sampler);
+	}
+
 	public String getComponentName() {
 		return this.gatewayDelegate.getComponentName();
 	}
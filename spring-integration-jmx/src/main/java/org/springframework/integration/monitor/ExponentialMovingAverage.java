@@ -20,6 +20,9 @@ package org.springframework.integration.monitor;
  * weight, with a decay factor determined by a "window" size chosen by the caller. The result is a good approximation to
  * the statistics of the series but with more weight given to recent measurements, so if the statistics change over time
  * those trends can be approximately reflected.
+ * <p>
+ * Measurements are recorded without locking and are folded into the statistics (in arrival order) when the
+ * statistics are read, so that many threads can append concurrently.
  * 
  * @author Dave Syer
  * @since 2.0
@@ -40,6 +43,20 @@ public class ExponentialMovingAverage {
 
 	private final double decay;
 
+	private final MeasurementBuffer<Double> buffer = new MeasurementBuffer<Double>() {
+
+		@Override
+		protected void accumulate(Double measurement) {
+			doAppend(measurement);
+		}
+
+		@Override
+		protected void clear() {
+			doReset();
+		}
+
+	};
+
 
 	/**
 	 * Create a moving average accumulator with decay lapse window provided. Measurements older than this will have
@@ -52,7 +69,11 @@ public class ExponentialMovingAverage {
 	}
 
 
-	public synchronized void reset() {
+	public void reset() {
+		this.buffer.reset();
+	}
+
+	private void doReset() {
 		weight = 0;
 		sum = 0;
 		sumSquares = 0;
@@ -66,7 +87,11 @@ public class ExponentialMovingAverage {
 	 * 
 	 * @param value the measurement to append
 	 */
-	public synchronized void append(double value) {
+	public void append(double value) {
+		this.buffer.add(value);
+	}
+
+	private void doAppend(double value) {
 		if (value > max || count == 0) {
 			max = value;
 		}
@@ -83,6 +108,7 @@ public class ExponentialMovingAverage {
 	 * @return the number of measurements recorded
 	 */
 	public int getCount() {
+		this.buffer.flush();
 		return count;
 	}
 
@@ -90,6 +116,7 @@ public class ExponentialMovingAverage {
 	 * @return the mean value
 	 */
 	public double getMean() {
+		this.buffer.flush();
 		return weight > 0 ? sum / weight : 0.;
 	}
 
@@ -106,6 +133,7 @@ public class ExponentialMovingAverage {
 	 * @return the maximum value recorded (not weighted)
 	 */
 	public double getMax() {
+		this.buffer.flush();
 		return max;
 	}
 
@@ -113,6 +141,7 @@ public class ExponentialMovingAverage {
 	 * @return the minimum value recorded (not weighted)
 	 */
 	public double getMin() {
+		this.buffer.flush();
 		return min;
 	}
 
@@ -120,6 +149,7 @@ public class ExponentialMovingAverage {
 	 * @return summary statistics (count, mean, standard deviation etc.)
 	 */
 	public Statistics getStatistics() {
+		this.buffer.flush();
 		return new Statistics(count, min, max, getMean(), getStandardDeviation());
 	}
 
@@ -25,6 +25,8 @@ package org.springframework.integration.monitor;
  * <li>per measurement according to the lapse window supplied: <code>weight = exp(-i/L)</code> where <code>L</code> is
  * the lapse window and <code>i</code> is the sequence number of the measurement.</li>
  * </ul>
+ * Events are recorded without locking and are folded into the statistics (in arrival order) when the statistics are
+ * read, so that many threads can record events concurrently.
  * 
  * @author Dave Syer
  * 
@@ -47,6 +49,20 @@ public class ExponentialMovingAverageRate {
 
 	private final double period;
 
+	private final MeasurementBuffer<Long> buffer = new MeasurementBuffer<Long>() {
+
+		@Override
+		protected void accumulate(Long measurement) {
+			doIncrement(measurement);
+		}
+
+		@Override
+		protected void clear() {
+			doReset();
+		}
+
+	};
+
 
 	/**
 	 * @param period the period to base the rate measurement (in seconds)
@@ -60,7 +76,11 @@ public class ExponentialMovingAverageRate {
 	}
 
 
-	public synchronized void reset() {
+	public void reset() {
+		this.buffer.reset();
+	}
+
+	private void doReset() {
 		min = 0;
 		max = 0;
 		weight = 0;
@@ -72,13 +92,19 @@ public class ExponentialMovingAverageRate {
 	/**
 	 * Add a new event to the series.
 	 */
-	public synchronized void increment() {
-		long t = System.currentTimeMillis();
+	public void increment() {
+		this.buffer.add(System.currentTimeMillis());
+	}
+
+	private void doIncrement(long time) {
+		// events recorded concurrently may arrive slightly out of order
+		long t = Math.max(time, t0);
 		double value = t > t0 ? (t - t0) / period : 0;
-		if (value > max || getCount() == 0) {
+		int count = rates.getCount();
+		if (value > max || count == 0) {
 			max = value;
 		}
-		if (value < min || getCount() == 0) {
+		if (value < min || count == 0) {
 			min = value;
 		}
 		double alpha = Math.exp((t0 - t) * lapse);
@@ -92,6 +118,7 @@ public class ExponentialMovingAverageRate {
 	 * @return the number of measurements recorded
 	 */
 	public int getCount() {
+		this.buffer.flush();
 		return rates.getCount();
 	}
 
@@ -99,6 +126,7 @@ public class ExponentialMovingAverageRate {
 	 * @return the time in seconds since the last measurement
 	 */
 	public double getTimeSinceLastMeasurement() {
+		this.buffer.flush();
 		return (System.currentTimeMillis() - t0) / 1000.;
 	}
 
@@ -106,6 +134,7 @@ public class ExponentialMovingAverageRate {
 	 * @return the mean value
 	 */
 	public double getMean() {
+		this.buffer.flush();
 		int count = rates.getCount();
 		if (count == 0) {
 			return 0;
@@ -119,6 +148,7 @@ public class ExponentialMovingAverageRate {
 	 * @return the approximate standard deviation
 	 */
 	public double getStandardDeviation() {
+		this.buffer.flush();
 		return rates.getStandardDeviation();
 	}
 
@@ -126,6 +156,7 @@ public class ExponentialMovingAverageRate {
 	 * @return the maximum value recorded (not weighted)
 	 */
 	public double getMax() {
+		this.buffer.flush();
 		return min > 0 ? 1 / min : 0;
 	}
 
@@ -133,6 +164,7 @@ public class ExponentialMovingAverageRate {
 	 * @return the minimum value recorded (not weighted)
 	 */
 	public double getMin() {
+		this.buffer.flush();
 		return max > 0 ? 1 / max : 0;
 	}
 
@@ -140,6 +172,7 @@ public class ExponentialMovingAverageRate {
 	 * @return summary statistics (count, mean, standard deviation etc.)
 	 */
 	public Statistics getStatistics() {
+		this.buffer.flush();
 		return new Statistics(getCount(), min, max, getMean(), getStandardDeviation());
 	}
 
@@ -23,6 +23,9 @@ package org.springframework.integration.monitor;
  * last measurement time, <code>t</code> is the current time and <code>T</code> is the lapse period)</li>
  * <li>per measurement according to the lapse window supplied: <code>weight = exp(-i/L)</code> where <code>L</code> is
  * the lapse window and <code>i</code> is the sequence number of the measurement.</li>
+ * </ul>
+ * Outcomes are recorded without locking and are folded into the statistics (in arrival order) when the statistics
+ * are read, so that many threads can record outcomes concurrently.
  * 
  * @author Dave Syer
  * @since 2.0
@@ -39,6 +42,20 @@ public class ExponentialMovingAverageRatio {
 
 	private final ExponentialMovingAverage cumulative;
 
+	private final MeasurementBuffer<Outcome> buffer = new MeasurementBuffer<Outcome>() {
+
+		@Override
+		protected void accumulate(Outcome measurement) {
+			doAppend(measurement.time, measurement.value);
+		}
+
+		@Override
+		protected void clear() {
+			doReset();
+		}
+
+	};
+
 
 	/**
 	 * @param lapsePeriod the exponential lapse rate for the rate average (in seconds)
@@ -64,15 +81,24 @@ public class ExponentialMovingAverageRatio {
 		append(0);
 	}
 
-	public synchronized void reset() {
+	public void reset() {
+		this.buffer.reset();
+	}
+
+	private void doReset() {
 		weight = 0;
 		sum = 0;
 		t0 = System.currentTimeMillis();
 		cumulative.reset();
 	}
 
-	private synchronized void append(int value) {
-		long t = System.currentTimeMillis();
+	private void append(int value) {
+		this.buffer.add(new Outcome(System.currentTimeMillis(), value));
+	}
+
+	private void doAppend(long time, int value) {
+		// outcomes recorded concurrently may arrive slightly out of order
+		long t = Math.max(time, t0);
 		double alpha = Math.exp((t0 - t) * lapse);
 		t0 = t;
 		sum = alpha * sum + value;
@@ -84,6 +110,7 @@ public class ExponentialMovingAverageRatio {
 	 * @return the number of measurements recorded
 	 */
 	public int getCount() {
+		this.buffer.flush();
 		return cumulative.getCount();
 	}
 
@@ -91,6 +118,7 @@ public class ExponentialMovingAverageRatio {
 	 * @return the time in seconds since the last measurement
 	 */
 	public double getTimeSinceLastMeasurement() {
+		this.buffer.flush();
 		return (System.currentTimeMillis() - t0) / 1000.;
 	}
 
@@ -98,6 +126,7 @@ public class ExponentialMovingAverageRatio {
 	 * @return the mean success rate
 	 */
 	public double getMean() {
+		this.buffer.flush();
 		int count = cumulative.getCount();
 		if (count == 0) {
 			// Optimistic to start: success rate is 100%
@@ -112,6 +141,7 @@ public class ExponentialMovingAverageRatio {
 	 * @return the approximate standard deviation of the success rate measurements
 	 */
 	public double getStandardDeviation() {
+		this.buffer.flush();
 		return cumulative.getStandardDeviation();
 	}
 
@@ -119,6 +149,7 @@ public class ExponentialMovingAverageRatio {
 	 * @return the maximum value recorded of the exponential weighted average (per measurement) success rate
 	 */
 	public double getMax() {
+		this.buffer.flush();
 		return cumulative.getMax();
 	}
 
@@ -126,6 +157,7 @@ public class ExponentialMovingAverageRatio {
 	 * @return the minimum value recorded of the exponential weighted average (per measurement) success rate
 	 */
 	public double getMin() {
+		this.buffer.flush();
 		return cumulative.getMin();
 	}
 
@@ -141,4 +173,18 @@ public class ExponentialMovingAverageRatio {
 		return String.format("[%s, timeSinceLast=%f]", getStatistics(), getTimeSinceLastMeasurement());
 	}
 
+
+	private static final class Outcome {
+
+		private final long time;
+
+		private final int value;
+
+		private Outcome(long time, int value) {
+			this.time = time;
+			this.value = value;
+		}
+
+	}
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package org.springframework.integration.monitor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free buffer of measurements that are folded into an accumulator lazily. Producers {@link #add(Object)}
+ * measurements without blocking; the measurements are applied, in arrival order and by a single thread at a time,
+ * when a reader calls {@link #flush()} or when the number of pending measurements exceeds the capacity (in which case
+ * the producer that notices performs the fold, unless another thread is already doing so).
+ * <p>
+ * Since the exponential moving averages are order dependent, deferring (rather than partitioning) the measurements
+ * preserves their semantics while keeping the per-measurement cost free of locks.
+ *
+ * @since 3.0
+ */
+abstract class MeasurementBuffer<T> {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private final Queue<T> pending = new ConcurrentLinkedQueue<T>();
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final int capacity;
+
+
+	MeasurementBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	MeasurementBuffer(int capacity) {
+		this.capacity = capacity;
+	}
+
+
+	/**
+	 * Record a measurement; never blocks.
+	 */
+	void add(T measurement) {
+		this.pending.add(measurement);
+		if (this.pendingCount.incrementAndGet() >= this.capacity && this.lock.tryLock()) {
+			try {
+				this.drain();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Apply all measurements recorded so far.
+	 */
+	void flush() {
+		if (this.pendingCount.get() <= 0) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			this.drain();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Discard any pending measurements and {@link #clear()} the accumulator.
+	 */
+	void reset() {
+		this.lock.lock();
+		try {
+			while (this.pending.poll() != null) {
+				this.pendingCount.decrementAndGet();
+			}
+			this.clear();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Drain at most the number of measurements pending on entry so that a busy producer cannot starve the caller.
+	 */
+	private void drain() {
+		int n = this.pendingCount.get();
+		T measurement;
+		while (n-- > 0 && (measurement = this.pending.poll()) != null) {
+			this.pendingCount.decrementAndGet();
+			this.accumulate(measurement);
+		}
+	}
+
+	/**
+	 * Apply a single measurement; always called by one thread at a time.
+	 */
+	protected abstract void accumulate(T measurement);
+
+	/**
+	 * Reset the accumulated state; always called by one thread at a time.
+	 */
+	protected abstract void clear();
+
+}
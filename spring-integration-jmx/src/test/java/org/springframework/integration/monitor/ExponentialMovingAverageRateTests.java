@@ -16,6 +16,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -92,4 +96,26 @@ public class ExponentialMovingAverageRateTests {
 		assertEquals(0, history.getMax(), 0.01);
 	}
 
+	@Test
+	public void testConcurrentIncrement() throws Exception {
+		final int threads = 16;
+		final int increments = 10000;
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			exec.execute(new Runnable() {
+				public void run() {
+					for (int j = 0; j < increments; j++) {
+						history.increment();
+					}
+				}
+			});
+		}
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(threads * increments, history.getCount());
+		assertTrue(history.getMean() > 0);
+		history.reset();
+		assertEquals(0, history.getCount());
+	}
+
 }
@@ -18,6 +18,12 @@ package org.springframework.integration.monitor;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -65,4 +71,62 @@ public class ExponentialMovingAverageTests {
 		assertEquals(String.format("[N=%d, min=%f, max=%f, mean=%f, sigma=%f]", 0, 0d, 0d, 0d, 0d), history.toString());
 	}
 
+	@Test
+	public void testConcurrentAppend() throws Exception {
+		final int threads = 16;
+		final int appends = 10000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			final double value = i + 1;
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					for (int j = 0; j < appends; j++) {
+						history.append(value);
+					}
+				}
+			});
+		}
+		start.countDown();
+		// reads may be interleaved with the appends
+		while (history.getCount() < threads * appends / 2) {
+			Thread.sleep(1);
+		}
+		exec.shutdown();
+		assertTrue(exec.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(threads * appends, history.getCount());
+		assertEquals(1, history.getMin(), 0.01);
+		assertEquals(threads, history.getMax(), 0.01);
+		assertTrue(history.getMean() >= 1 && history.getMean() <= threads);
+	}
+
+	@Test
+	public void testSameStatisticsAsSequential() throws Exception {
+		double[] values = new double[] {3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8, 9, 7, 9};
+		for (int i = 0; i < 200; i++) {
+			history.append(values[i % values.length]);
+		}
+		double sum = 0;
+		double sumSquares = 0;
+		double weight = 0;
+		double decay = 1 - 1. / 10;
+		for (int i = 0; i < 200; i++) {
+			double value = values[i % values.length];
+			sum = decay * sum + value;
+			sumSquares = decay * sumSquares + value * value;
+			weight = decay * weight + 1;
+		}
+		double mean = sum / weight;
+		assertEquals(mean, history.getMean(), 0.000001);
+		assertEquals(Math.sqrt(sumSquares / weight - mean * mean), history.getStandardDeviation(), 0.000001);
+		assertEquals(1, history.getMin(), 0.01);
+		assertEquals(9, history.getMax(), 0.01);
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -79,6 +79,8 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 
 	private volatile Expression selectorExpression;
 
+	private volatile boolean lazyFetch;
+
 	protected volatile boolean initialized;
 
 	private final Object folderMonitor = new Object();
@@ -154,6 +156,32 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 		this.maxFetchSize = maxFetchSize;
 	}
 
+	/**
+	 * Set to true to fetch only the envelope, headers and flags of each message when
+	 * it is received, rather than copying the complete message (including any
+	 * attachments). The received messages are then the JavaMail messages of the
+	 * folder, and their content is fetched from the server when it is accessed, for
+	 * example with {@link javax.mail.Part#getInputStream()} on the message or its
+	 * body parts (which, for IMAP, fetches the content in chunks). For this to work,
+	 * the folder is not closed after each {@link #receive()}: the content of a message
+	 * is available until the next {@link #receive()} (or, for IMAP, as long as the
+	 * message is not deleted). Also, the flags of the received messages are set with
+	 * a single command. Default false.
+	 * @param lazyFetch true to fetch content lazily.
+	 * @since 3.0
+	 */
+	public void setLazyFetch(boolean lazyFetch) {
+		this.lazyFetch = lazyFetch;
+	}
+
+	/**
+	 * Indicates whether the content of mail messages is fetched lazily.
+	 * @since 3.0
+	 */
+	protected boolean isLazyFetch() {
+		return this.lazyFetch;
+	}
+
 	/**
 	 * Specify whether mail messages should be deleted after retrieval.
 	 */
@@ -227,7 +255,11 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 
 	public Message[] receive() throws javax.mail.MessagingException {
 		synchronized (this.folderMonitor) {
+			boolean keepFolderOpen = false;
 			try {
+				if (this.lazyFetch) {
+					this.refreshFolder();
+				}
 				this.openFolder();
 				if (logger.isInfoEnabled()) {
 					logger.info("attempting to receive mail from folder [" + this.getFolder().getFullName() + "]");
@@ -253,15 +285,36 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 
 				this.postProcessFilteredMessages(filteredMessages);
 
+				keepFolderOpen = this.lazyFetch;
 				return filteredMessages;
 			}
 			finally {
-				MailTransportUtils.closeFolder(this.folder, this.shouldDeleteMessages);
+				if (!keepFolderOpen) {
+					MailTransportUtils.closeFolder(this.folder, this.shouldDeleteMessages);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Called at the start of each {@link #receive()} when the content is fetched lazily,
+	 * in which case the folder is left open by the previous {@link #receive()}. This
+	 * implementation closes the folder (expunging deleted messages if they should be
+	 * deleted) so that it is opened again, and new messages are found.
+	 *
+	 * @throws MessagingException in case of JavaMail errors
+	 * @since 3.0
+	 */
+	protected void refreshFolder() throws MessagingException {
+		MailTransportUtils.closeFolder(this.folder, this.shouldDeleteMessages);
+	}
+
 	private void postProcessFilteredMessages(Message[] filteredMessages) throws MessagingException {
+		if (this.lazyFetch) {
+			// the messages are not copied; their content is fetched when it is accessed
+			this.setAllMessageFlags(filteredMessages);
+			return;
+		}
 		this.setMessageFlags(filteredMessages);
 
 		if (this.shouldDeleteMessages()) {
@@ -303,6 +356,38 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 		}
 	}
 
+	/**
+	 * Set the same flags as {@link #setMessageFlags(Message[])} (and deletion, if
+	 * needed) on all the messages with a single command.
+	 */
+	private void setAllMessageFlags(Message[] filteredMessages) throws MessagingException {
+		if (filteredMessages.length == 0) {
+			return;
+		}
+		Flags flags = new Flags();
+		Flags permanentFlags = this.getFolder().getPermanentFlags();
+		if (permanentFlags == null || !permanentFlags.contains(Flags.Flag.RECENT)) {
+			if (permanentFlags != null && permanentFlags.contains(Flags.Flag.USER)) {
+				flags.add(SI_USER_FLAG);
+			}
+			else {
+				flags.add(Flags.Flag.FLAGGED);
+			}
+		}
+		MimeMessage probe = new MimeMessage((Session) null);
+		this.setAdditionalFlags(probe);
+		flags.add(probe.getFlags());
+		if (this.shouldDeleteMessages()) {
+			flags.add(Flags.Flag.DELETED);
+		}
+		if (flags.getSystemFlags().length > 0 || flags.getUserFlags().length > 0) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Setting flags on " + filteredMessages.length + " messages");
+			}
+			this.getFolder().setFlags(filteredMessages, flags, true);
+		}
+	}
+
 	/**
 	 * Will filter Messages thru selector. Messages that did not pass selector filtering criteria
 	 * will be filtered out and remain on the server as never touched.
@@ -330,7 +415,10 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 	/**
 	 * Fetches the specified messages from this receiver's folder. Default
 	 * implementation {@link Folder#fetch(Message[], FetchProfile) fetches}
-	 * every {@link javax.mail.FetchProfile.Item}.
+	 * every {@link javax.mail.FetchProfile.Item}, or just the
+	 * {@link javax.mail.FetchProfile.Item#ENVELOPE ENVELOPE} and
+	 * {@link javax.mail.FetchProfile.Item#FLAGS FLAGS} when the content is fetched
+	 * lazily.
 	 *
 	 * @param messages the messages to fetch
 	 * @throws MessagingException in case of JavaMail errors
@@ -338,7 +426,9 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 	protected void fetchMessages(Message[] messages) throws MessagingException {
 		FetchProfile contentsProfile = new FetchProfile();
 		contentsProfile.add(FetchProfile.Item.ENVELOPE);
-		contentsProfile.add(FetchProfile.Item.CONTENT_INFO);
+		if (!this.lazyFetch) {
+			contentsProfile.add(FetchProfile.Item.CONTENT_INFO);
+		}
 		contentsProfile.add(FetchProfile.Item.FLAGS);
 		this.folder.fetch(messages, contentsProfile);
 	}
@@ -358,6 +448,10 @@ public abstract class AbstractMailReceiver extends IntegrationObjectSupport impl
 	/**
 	 * Optional method allowing you to set additional flags.
 	 * Currently only implemented in IMapMailReceiver.
+	 * <p>
+	 * When the content is fetched lazily, this method is invoked once per receive, with
+	 * an empty message that does not belong to a folder, and the flags that it sets are
+	 * set on all the received messages with a single command.
 	 *
 	 * @param message
 	 * @throws MessagingException
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.integration.mail;
 
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
@@ -154,6 +155,36 @@ public class ImapMailReceiver extends AbstractMailReceiver {
 		return this.searchTermStrategy.generateSearchTerm(supportedFlags, this.getFolder());
 	}
 
+	/**
+	 * When the content is fetched lazily, also fetches all the headers, since they are
+	 * not part of the envelope.
+	 */
+	@Override
+	protected void fetchMessages(Message[] messages) throws MessagingException {
+		if (this.isLazyFetch()) {
+			FetchProfile headersProfile = new FetchProfile();
+			headersProfile.add(FetchProfile.Item.ENVELOPE);
+			headersProfile.add(FetchProfile.Item.FLAGS);
+			headersProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
+			this.getFolder().fetch(messages, headersProfile);
+		}
+		else {
+			super.fetchMessages(messages);
+		}
+	}
+
+	/**
+	 * An open IMAP folder finds new messages, so it is kept open; messages that
+	 * were flagged as deleted by the previous receive are expunged.
+	 */
+	@Override
+	protected void refreshFolder() throws MessagingException {
+		Folder folder = this.getFolder();
+		if (this.shouldDeleteMessages() && folder != null && folder.isOpen()) {
+			folder.expunge();
+		}
+	}
+
 	@Override
 	protected void setAdditionalFlags(Message message) throws MessagingException {
 		super.setAdditionalFlags(message);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -78,6 +78,7 @@ public class MailInboundChannelAdapterParser extends AbstractPollingInboundChann
 			}
 		}
 		receiverBuilder.addPropertyValue("shouldDeleteMessages", element.getAttribute("should-delete-messages"));
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(receiverBuilder, element, "lazy-fetch");
 		String markAsRead = element.getAttribute("should-mark-messages-as-read");
 		if (StringUtils.hasText(markAsRead)){
 			receiverBuilder.addPropertyValue("shouldMarkMessagesAsRead", markAsRead);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -70,6 +70,8 @@ public class MailReceiverFactoryBean implements FactoryBean<MailReceiver>, Dispo
 
 	private volatile SearchTermStrategy searchTermStrategy;
 
+	private volatile boolean lazyFetch;
+
 
 	public void setStoreUri(String storeUri) {
 		this.storeUri = storeUri;
@@ -115,6 +117,10 @@ public class MailReceiverFactoryBean implements FactoryBean<MailReceiver>, Dispo
 		this.searchTermStrategy = searchTermStrategy;
 	}
 
+	public void setLazyFetch(boolean lazyFetch) {
+		this.lazyFetch = lazyFetch;
+	}
+
 	public MailReceiver getObject() throws Exception {
 		if (this.receiver == null) {
 			this.receiver = this.createReceiver();
@@ -175,6 +181,7 @@ public class MailReceiverFactoryBean implements FactoryBean<MailReceiver>, Dispo
 		}
 		receiver.setMaxFetchSize(this.maxFetchSize);
 		receiver.setSelectorExpression(selectorExpression);
+		receiver.setLazyFetch(this.lazyFetch);
 
 		if (isPop3) {
 			if (this.isShouldMarkMessagesAsRead() && this.logger.isWarnEnabled()) {
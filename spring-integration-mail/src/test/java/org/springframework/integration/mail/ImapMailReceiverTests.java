@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,12 +17,14 @@
 package org.springframework.integration.mail;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -36,6 +38,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
@@ -48,6 +51,7 @@ import javax.mail.search.SearchTerm;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -648,6 +652,73 @@ public class ImapMailReceiverTests {
 		assertSame(folder, messages[0].getFolder());
 	}
 
+	@Test
+	public void receiveLazily() throws Exception {
+		ImapMailReceiver receiver = new ImapMailReceiver();
+		receiver.setShouldDeleteMessages(true);
+		receiver.setLazyFetch(true);
+		receiver = spy(receiver);
+		receiver.afterPropertiesSet();
+		IMAPFolder folder = mock(IMAPFolder.class);
+		when(folder.getPermanentFlags()).thenReturn(new Flags(Flags.Flag.USER));
+		when(folder.isOpen()).thenReturn(false, true);
+		new DirectFieldAccessor(receiver).setPropertyValue("folder", folder);
+
+		Message msg1 = mock(MimeMessage.class);
+		Message msg2 = mock(MimeMessage.class);
+		final Message[] messages = new Message[]{msg1, msg2};
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return null;
+			}
+		}).when(receiver).openFolder();
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return messages;
+			}
+		}).when(receiver).searchForNewMessages();
+
+		Message[] received = receiver.receive();
+		assertSame(msg1, received[0]);
+		assertSame(msg2, received[1]);
+
+		ArgumentCaptor<FetchProfile> profile = ArgumentCaptor.forClass(FetchProfile.class);
+		verify(folder).fetch(Mockito.same(messages), profile.capture());
+		assertTrue(profile.getValue().contains(IMAPFolder.FetchProfileItem.HEADERS));
+		assertFalse(profile.getValue().contains(FetchProfile.Item.CONTENT_INFO));
+
+		ArgumentCaptor<Flags> flags = ArgumentCaptor.forClass(Flags.class);
+		verify(folder, times(1)).setFlags(Mockito.any(Message[].class), flags.capture(), Mockito.eq(true));
+		assertTrue(flags.getValue().contains(Flag.SEEN));
+		assertTrue(flags.getValue().contains(Flag.DELETED));
+		assertTrue(flags.getValue().contains(AbstractMailReceiver.SI_USER_FLAG));
+		verify(msg1, never()).setFlag(Mockito.any(Flag.class), Mockito.anyBoolean());
+		verify(msg1, never()).setFlags(Mockito.any(Flags.class), Mockito.anyBoolean());
+
+		// the folder stays open, deleted messages are expunged on the next receive
+		verify(folder, never()).close(Mockito.anyBoolean());
+		verify(folder, never()).expunge();
+		receiver.receive();
+		verify(folder, times(1)).expunge();
+		verify(folder, never()).close(Mockito.anyBoolean());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void lazyFetchNotSupportedByIdleAdapter() {
+		ImapMailReceiver receiver = new ImapMailReceiver();
+		receiver.setLazyFetch(true);
+		ImapIdleChannelAdapter adapter = new ImapIdleChannelAdapter(receiver);
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.initialize();
+		adapter.setTaskScheduler(taskScheduler);
+		try {
+			adapter.start();
+		}
+		finally {
+			taskScheduler.destroy();
+		}
+	}
+
 	@Test
 	public void testExecShutdown() {
 		ImapIdleChannelAdapter adapter = new ImapIdleChannelAdapter(new ImapMailReceiver());
@@ -16,8 +16,11 @@
 
 package org.springframework.integration.mail;
 
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -29,9 +32,12 @@ import javax.mail.Flags.Flag;
 import javax.mail.Flags;
 import javax.mail.Folder;
 import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.springframework.beans.DirectFieldAccessor;
@@ -196,4 +202,55 @@ public class Pop3MailReceiverTests {
 		verify(msg1, times(0)).setFlag(Flag.DELETED, true);
 		verify(msg2, times(0)).setFlag(Flag.DELETED, true);
 	}
+
+	@Test
+	public void receiveLazilyAndDelete() throws Exception {
+		AbstractMailReceiver receiver = new Pop3MailReceiver() {
+
+			@Override
+			protected void setAdditionalFlags(Message message) throws MessagingException {
+				message.setFlag(Flag.ANSWERED, true);
+			}
+
+		};
+		receiver.setShouldDeleteMessages(true);
+		receiver.setLazyFetch(true);
+		receiver = spy(receiver);
+		receiver.afterPropertiesSet();
+
+		Field folderField = AbstractMailReceiver.class.getDeclaredField("folder");
+		folderField.setAccessible(true);
+		Folder folder = mock(Folder.class);
+		when(folder.getPermanentFlags()).thenReturn(new Flags());
+		when(folder.isOpen()).thenReturn(false, true);
+		folderField.set(receiver, folder);
+
+		Message msg1 = mock(MimeMessage.class);
+		Message msg2 = mock(MimeMessage.class);
+		final Message[] messages = new Message[]{msg1, msg2};
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return null;
+			}
+		}).when(receiver).openFolder();
+
+		doAnswer(new Answer<Object>() {
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return messages;
+			}
+		}).when(receiver).searchForNewMessages();
+
+		Message[] received = receiver.receive();
+		assertSame(msg1, received[0]);
+		ArgumentCaptor<Flags> flags = ArgumentCaptor.forClass(Flags.class);
+		verify(folder, times(1)).setFlags(Mockito.any(Message[].class), flags.capture(), Mockito.eq(true));
+		assertTrue(flags.getValue().contains(Flag.DELETED));
+		assertTrue(flags.getValue().contains(Flag.FLAGGED));
+		assertTrue(flags.getValue().contains(Flag.ANSWERED));
+		verify(msg1, never()).setFlag(Flag.DELETED, true);
+		// the folder is closed (and the messages deleted) when the next receive starts
+		verify(folder, never()).close(Mockito.anyBoolean());
+		receiver.receive();
+		verify(folder, times(1)).close(true);
+	}
 }
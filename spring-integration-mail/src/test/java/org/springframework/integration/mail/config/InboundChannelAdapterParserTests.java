@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2012 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -83,6 +83,15 @@ public class InboundChannelAdapterParserTests {
 		assertTrue(value);
 	}
 
+	@Test
+	public void imapLazyFetch() {
+		AbstractMailReceiver receiver = this.getReceiver("imapLazyFetch");
+		assertEquals(ImapMailReceiver.class, receiver.getClass());
+		assertTrue((Boolean) new DirectFieldAccessor(receiver).getPropertyValue("lazyFetch"));
+		assertFalse((Boolean) new DirectFieldAccessor(this.getReceiver("imapShouldMarkAsReadTrue"))
+				.getPropertyValue("lazyFetch"));
+	}
+
 	@Test
 	public void pop3ShouldDeleteFalse() {
 		AbstractMailReceiver receiver = this.getReceiver("pop3ShouldDeleteFalse");
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -12,23 +12,40 @@
  */
 package org.springframework.integration.scripting.jsr223;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.integration.scripting.ScriptExecutor;
 import org.springframework.integration.scripting.ScriptingException;
+import org.springframework.integration.util.SimplePool;
 import org.springframework.scripting.ScriptSource;
 import org.springframework.util.Assert;
 
 /**
  * Base Class for {@link ScriptExecutor}
- * 
+ * <p>
+ * Scripts are compiled (when the engine is {@link Compilable}) and only re-read and
+ * recompiled when the {@link ScriptSource} reports that it has been modified. Each
+ * execution is evaluated with its own {@link ScriptContext}, so variables are not
+ * shared between executions. If the engine's factory does not declare a
+ * <code>THREADING</code> parameter (the engine is not thread-safe), executions use engines
+ * from a pool, which grows to the number of concurrent executions; otherwise a single
+ * engine is used by all threads.
+ *
  * @author David Turanski
  * @author Mark Fisher
  * @since 2.1
@@ -41,6 +58,15 @@ abstract class AbstractScriptExecutor implements ScriptExecutor {
 
 	protected final String language;
 
+	/*
+	 * The current script text for each source; guarded by itself.
+	 */
+	private final Map<ScriptSource, String> scripts = new WeakHashMap<ScriptSource, String>();
+
+	private final EngineHolder sharedEngine;
+
+	private final SimplePool<EngineHolder> enginePool;
+
 	public AbstractScriptExecutor(String language) {
 		Assert.hasText(language, "language must not be empty");
 		this.language = language;
@@ -56,6 +82,33 @@ abstract class AbstractScriptExecutor implements ScriptExecutor {
 				logger.debug("using script engine : " + scriptEngine.getFactory().getEngineName());
 			}
 		}
+
+		if (scriptEngine == null || scriptEngine.getFactory().getParameter("THREADING") != null) {
+			this.sharedEngine = scriptEngine == null ? null : new EngineHolder(scriptEngine);
+			this.enginePool = null;
+		}
+		else {
+			this.sharedEngine = null;
+			final AtomicReference<ScriptEngine> initialEngine = new AtomicReference<ScriptEngine>(scriptEngine);
+			this.enginePool = new SimplePool<EngineHolder>(0, new SimplePool.PoolItemCallback<EngineHolder>() {
+
+				public EngineHolder createForPool() {
+					ScriptEngine engine = initialEngine.getAndSet(null);
+					if (engine == null) {
+						engine = new ScriptEngineManager().getEngineByName(AbstractScriptExecutor.this.language);
+					}
+					return new EngineHolder(engine);
+				}
+
+				public boolean isStale(EngineHolder item) {
+					return false;
+				}
+
+				public void removedFromPool(EngineHolder item) {
+				}
+
+			});
+		}
 	}
 
 	public Object executeScript(ScriptSource scriptSource) {
@@ -65,21 +118,28 @@ abstract class AbstractScriptExecutor implements ScriptExecutor {
 	public Object executeScript(ScriptSource scriptSource, Map<String, Object> variables) {
 		Object result = null;
 
+		EngineHolder engineHolder = null;
 		try {
+			Assert.state(this.scriptEngine != null, invlalidLanguageMessage(this.language));
+			String script = this.getScript(scriptSource);
+			engineHolder = this.enginePool == null ? this.sharedEngine : this.enginePool.getItem();
+			ScriptEngine engine = engineHolder.engine;
+			ScriptContext context = new SimpleScriptContext();
+			Bindings bindings = engine.createBindings();
 			if (variables != null) {
-				for (Entry<String, Object> entry : variables.entrySet()) {
-					scriptEngine.put(entry.getKey(), entry.getValue());
-				}
+				bindings.putAll(variables);
 			}
-			String script = scriptSource.getScriptAsString();
+			context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+			context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+			CompiledScript compiledScript = engineHolder.getCompiledScript(scriptSource, script);
 			Date start = new Date();
 			if (logger.isDebugEnabled()) {
 				logger.debug("executing script: " + script);
 			}
 
-			result = scriptEngine.eval(script);
+			result = compiledScript == null ? engine.eval(script, context) : compiledScript.eval(context);
 
-			result = postProcess(result, scriptEngine, script);
+			result = postProcess(result, engine, script, bindings);
 
 			if (logger.isDebugEnabled()) {
 				logger.debug("script executed in " + (new Date().getTime() - start.getTime()) + " ms");
@@ -89,18 +149,47 @@ abstract class AbstractScriptExecutor implements ScriptExecutor {
 		catch (Exception e) {
 			throw new ScriptingException(e.getMessage(), e);
 		}
+		finally {
+			if (engineHolder != null && this.enginePool != null) {
+				this.enginePool.releaseItem(engineHolder);
+			}
+		}
 
 		return result;
 	}
 
+	/*
+	 * ScriptSource.isModified() may reset the source's state, so it is only called once
+	 * per execution; if another thread has re-read the script in the meantime, that
+	 * script is used.
+	 */
+	private String getScript(ScriptSource scriptSource) throws IOException {
+		String script;
+		synchronized (this.scripts) {
+			script = this.scripts.get(scriptSource);
+		}
+		if (script == null || scriptSource.isModified()) {
+			synchronized (this.scripts) {
+				String current = this.scripts.get(scriptSource);
+				if (current == script) {
+					current = scriptSource.getScriptAsString();
+					this.scripts.put(scriptSource, current);
+				}
+				script = current;
+			}
+		}
+		return script;
+	}
+
 	/**
 	 * Subclasses may implement this to provide any special handling required
 	 * @param result
 	 * @param scriptEngine
 	 * @param script
+	 * @param bindings the variables of this execution
 	 * @return modified result
 	 */
-	protected abstract Object postProcess(Object result, ScriptEngine scriptEngine, String script);
+	protected abstract Object postProcess(Object result, ScriptEngine scriptEngine, String script, Bindings bindings);
 
 	private static String invlalidLanguageMessage(String language) {
 		return new StringBuilder().append(ScriptEngineManager.class.getName())
@@ -108,4 +197,50 @@ abstract class AbstractScriptExecutor implements ScriptExecutor {
 				.append("This may be due to a missing language implementation or an invalid language name.").toString();
 	}
 
+
+	/*
+	 * An engine together with the scripts compiled by it.
+	 */
+	private static class EngineHolder {
+
+		private final ScriptEngine engine;
+
+		private final Map<ScriptSource, Compiled> compiledScripts = new WeakHashMap<ScriptSource, Compiled>();
+
+		private EngineHolder(ScriptEngine engine) {
+			this.engine = engine;
+		}
+
+		/*
+		 * Returns null if the engine cannot compile scripts.
+		 */
+		private CompiledScript getCompiledScript(ScriptSource scriptSource, String script) throws ScriptException {
+			if (!(this.engine instanceof Compilable)) {
+				return null;
+			}
+			synchronized (this.compiledScripts) {
+				Compiled compiled = this.compiledScripts.get(scriptSource);
+				if (compiled == null || compiled.script != script) {
+					compiled = new Compiled(script, ((Compilable) this.engine).compile(script));
+					this.compiledScripts.put(scriptSource, compiled);
+				}
+				return compiled.compiledScript;
+			}
+		}
+
+	}
+
+	private static class Compiled {
+
+		private final String script;
+
+		private final CompiledScript compiledScript;
+
+		private Compiled(String script, CompiledScript compiledScript) {
+			this.script = script;
+			this.compiledScript = compiledScript;
+		}
+
+	}
+
 }
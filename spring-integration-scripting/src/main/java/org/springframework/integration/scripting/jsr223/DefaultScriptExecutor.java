@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
  * the License. You may obtain a copy of the License at
@@ -12,6 +12,7 @@
  */
 package org.springframework.integration.scripting.jsr223;
 
+import javax.script.Bindings;
 import javax.script.ScriptEngine;
 
 import org.springframework.integration.scripting.ScriptExecutor;
@@ -38,10 +39,10 @@ import org.springframework.integration.scripting.ScriptExecutor;
 	 * @see
 	 * org.springframework.integration.scripting.jsr223.AbstractScriptExecutor
 	 * #postProcess(java.lang.Object, javax.script.ScriptEngine,
-	 * java.lang.String)
+	 * java.lang.String, javax.script.Bindings)
 	 */
 	@Override
-	protected Object postProcess(Object result, ScriptEngine scriptEngine, String script) {
+	protected Object postProcess(Object result, ScriptEngine scriptEngine, String script, Bindings bindings) {
 		return result;
 	}
 
@@ -12,6 +12,7 @@
  */
 package org.springframework.integration.scripting.jsr223;
 
+import javax.script.Bindings;
 import javax.script.ScriptEngine;
 
 import org.springframework.integration.scripting.ScriptExecutor;
@@ -36,14 +37,14 @@ import org.springframework.integration.scripting.ScriptExecutor;
 	}
 	
 	/* (non-Javadoc)
-	 * @see org.springframework.integration.scripting.jsr223.AbstractScriptExecutor#postProcess(java.lang.Object, javax.script.ScriptEngine, java.lang.String)
+	 * @see org.springframework.integration.scripting.jsr223.AbstractScriptExecutor#postProcess(java.lang.Object, javax.script.ScriptEngine, java.lang.String, javax.script.Bindings)
 	 */
 	@Override
-	protected Object postProcess(Object result, ScriptEngine scriptEngine, String script) {
+	protected Object postProcess(Object result, ScriptEngine scriptEngine, String script, Bindings bindings) {
 		Object newResult= result;
 		if (newResult == null) {
 			String returnVariableName = PythonVariableParser.parseReturnVariable(script);
-			newResult = scriptEngine.get(returnVariableName);
+			newResult = bindings.get(returnVariableName);
 		}
 		return newResult;
 	}
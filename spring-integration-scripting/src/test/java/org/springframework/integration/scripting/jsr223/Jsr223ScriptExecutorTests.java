@@ -13,10 +13,16 @@
 package org.springframework.integration.scripting.jsr223;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
@@ -60,6 +66,58 @@ public class Jsr223ScriptExecutorTests {
 		assertEquals("js",obj.toString());
 	}
 	
+	@Test
+	public void testJsModifiedScript() {
+		ScriptExecutor executor = ScriptExecutorFactory.getScriptExecutor("js");
+		StaticScriptSource scriptSource = new StaticScriptSource("'one'");
+		assertEquals("one", executor.executeScript(scriptSource).toString());
+		assertEquals("one", executor.executeScript(scriptSource).toString());
+		scriptSource.setScript("'two'");
+		assertEquals("two", executor.executeScript(scriptSource).toString());
+	}
+
+	@Test
+	public void testJsVariablesNotShared() throws Exception {
+		final ScriptExecutor executor = ScriptExecutorFactory.getScriptExecutor("js");
+		final StaticScriptSource scriptSource = new StaticScriptSource(
+				"typeof extra == 'undefined' ? payload : payload + extra");
+		Map<String, Object> variables = new HashMap<String, Object>();
+		variables.put("payload", "foo");
+		variables.put("extra", "bar");
+		assertEquals("foobar", executor.executeScript(scriptSource, variables).toString());
+		variables.remove("extra");
+		assertEquals("foo", executor.executeScript(scriptSource, variables).toString());
+
+		int threads = 10;
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		for (int i = 0; i < threads; i++) {
+			final int n = i;
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						for (int j = 0; j < 100; j++) {
+							Map<String, Object> variables = new HashMap<String, Object>();
+							variables.put("payload", "foo" + n + "-" + j);
+							if (!("foo" + n + "-" + j).equals(executor.executeScript(scriptSource, variables)
+									.toString())) {
+								failures.incrementAndGet();
+							}
+						}
+					}
+					catch (Exception e) {
+						failures.incrementAndGet();
+					}
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		assertEquals(0, failures.get());
+		exec.shutdownNow();
+	}
+
 	@Test 
 	public void testPython() {
 		ScriptExecutor executor = ScriptExecutorFactory.getScriptExecutor("python");
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.integration.xml;
 
 import java.io.File;
 import java.io.StringReader;
+import java.lang.ref.WeakReference;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -30,11 +31,15 @@ import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.xml.util.DocumentBuilderPool;
 import org.springframework.xml.transform.StringSource;
 
 /**
  * Default implementation of {@link XmlPayloadConverter}. Supports
  * {@link Document}, {@link File} and {@link String} payloads.
+ * <p>
+ * Document builders are pooled and reused, rather than being created for each
+ * conversion.
  * 
  * @author Jonas Partner
  */
@@ -42,16 +47,57 @@ public class DefaultXmlPayloadConverter implements XmlPayloadConverter {
 
 	private DocumentBuilderFactory documentBuilderFactory;
 
+	private final DocumentBuilderPool documentBuilderPool;
+
+	private volatile ThreadLocal<LastDocument> lastDocument = new ThreadLocal<LastDocument>();
+
+	private volatile boolean reuseDocuments;
+
 
 	public DefaultXmlPayloadConverter() {
 		this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
 		this.documentBuilderFactory.setNamespaceAware(true);
+		this.documentBuilderPool = this.createDocumentBuilderPool();
 	}
 
 	public DefaultXmlPayloadConverter(DocumentBuilderFactory documentBuilderFactory) {
 		this.documentBuilderFactory = documentBuilderFactory;
+		this.documentBuilderPool = this.createDocumentBuilderPool();
+	}
+
+
+	/**
+	 * Set to true to retain, for each thread, the {@link Document} most recently parsed
+	 * from a {@link String} payload by {@link #convertToNode(Object)}, and to return it
+	 * when the same String instance is converted again on that thread. This avoids
+	 * parsing the payload again when several XPath components that share this converter
+	 * (for example a filter, a header enricher and a router) process the same message.
+	 * The components must not modify the Document. Default false.
+	 * <p>
+	 * The payload is only weakly referenced, but each thread retains its most recent
+	 * Document until it next converts a String payload; the Document is then dropped if
+	 * its payload has been garbage collected or replaced by the new one. Disabling reuse
+	 * releases the Documents retained by all threads.
+	 * @param reuseDocuments true to reuse documents.
+	 * @since 3.0
+	 */
+	public void setReuseDocuments(boolean reuseDocuments) {
+		this.reuseDocuments = reuseDocuments;
+		if (!reuseDocuments) {
+			this.lastDocument = new ThreadLocal<LastDocument>();
+		}
 	}
 
+	private DocumentBuilderPool createDocumentBuilderPool() {
+		return new DocumentBuilderPool(this.documentBuilderFactory) {
+
+			@Override
+			protected DocumentBuilder createDocumentBuilder() {
+				return getDocumentBuilder();
+			}
+
+		};
+	}
 
 	public Document convertToDocument(Object object) {
 		if (object instanceof Document) {
@@ -59,7 +105,7 @@ public class DefaultXmlPayloadConverter implements XmlPayloadConverter {
 		}
 		if (object instanceof File) {
 			try {
-				return getDocumentBuilder().parse((File) object);
+				return this.documentBuilderPool.parse((File) object);
 			}
 			catch (Exception e) {
 				throw new MessagingException("failed to parse File payload '" + object + "'", e);
@@ -67,7 +113,7 @@ public class DefaultXmlPayloadConverter implements XmlPayloadConverter {
 		}
 		if (object instanceof String) {
 			try {
-				return getDocumentBuilder().parse(new InputSource(new StringReader((String) object)));
+				return this.documentBuilderPool.parse(new InputSource(new StringReader((String) object)));
 			}
 			catch (Exception e) {
 				throw new MessagingException("failed to parse String payload '" + object + "'", e);
@@ -84,6 +130,19 @@ public class DefaultXmlPayloadConverter implements XmlPayloadConverter {
 		else if (object instanceof DOMSource) {
 			node = ((DOMSource) object).getNode();
 		}
+		else if (this.reuseDocuments && object instanceof String) {
+			ThreadLocal<LastDocument> lastDocument = this.lastDocument;
+			LastDocument last = lastDocument.get();
+			if (last != null && last.payload.get() == object) {
+				node = last.document;
+			}
+			else {
+				// drop the previous Document before parsing, so that it can be collected
+				lastDocument.remove();
+				node = convertToDocument(object);
+				lastDocument.set(new LastDocument(object, (Document) node));
+			}
+		}
 		else {
 			node = convertToDocument(object);
 		}
@@ -107,13 +166,35 @@ public class DefaultXmlPayloadConverter implements XmlPayloadConverter {
 		return source;
 	}
 
-	protected synchronized DocumentBuilder getDocumentBuilder() {
+	/**
+	 * Create a new {@link DocumentBuilder}; builders are pooled, so this is only called
+	 * when no idle builder is available. Pooled builders are not reset, so any
+	 * {@link org.xml.sax.EntityResolver} or {@link org.xml.sax.ErrorHandler} set by a
+	 * subclass applies to every conversion that uses the builder.
+	 */
+	protected DocumentBuilder getDocumentBuilder() {
 		try {
-			return this.documentBuilderFactory.newDocumentBuilder();
+			synchronized (this.documentBuilderFactory) {
+				return this.documentBuilderFactory.newDocumentBuilder();
+			}
 		}
 		catch (ParserConfigurationException e) {
 			throw new MessagingException("failed to create a new DocumentBuilder", e);
 		}
 	}
 
+
+	private static class LastDocument {
+
+		private final WeakReference<Object> payload;
+
+		private final Document document;
+
+		private LastDocument(Object payload, Document document) {
+			this.payload = new WeakReference<Object>(payload);
+			this.document = document;
+		}
+
+	}
+
 }
@@ -24,6 +24,7 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.integration.config.xml.AbstractConsumerEndpointParser;
 import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
+import org.springframework.integration.xml.splitter.StreamingXPathMessageSplitter;
 import org.springframework.integration.xml.splitter.XPathMessageSplitter;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -37,14 +38,23 @@ public class XPathMessageSplitterParser extends AbstractConsumerEndpointParser {
 
 	@Override
 	protected BeanDefinitionBuilder parseHandler(Element element, ParserContext parserContext) {
-		BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(XPathMessageSplitter.class);
+		boolean streaming = "true".equals(element.getAttribute("streaming"));
+		BeanDefinitionBuilder builder = BeanDefinitionBuilder.genericBeanDefinition(
+				streaming ? StreamingXPathMessageSplitter.class : XPathMessageSplitter.class);
 		String xPathExpressionRef = element.getAttribute("xpath-expression-ref");
 		NodeList xPathExpressionNodes = element.getElementsByTagNameNS(element.getNamespaceURI(), "xpath-expression");
 		Assert.isTrue(xPathExpressionNodes.getLength() <= 1, "At most one xpath-expression child may be specified.");
 		boolean hasChild = xPathExpressionNodes.getLength() == 1;
 		boolean hasReference = StringUtils.hasText(xPathExpressionRef);
 		Assert.isTrue(hasChild ^ hasReference, "Exactly one of 'xpath-expression' or 'xpath-expression-ref' is required.");
-		if (hasChild) {
+		Assert.isTrue(!streaming || hasChild, "A 'streaming' splitter requires an 'xpath-expression' child.");
+		if (streaming) {
+			// the path and namespaces, without the XPathExpression factory method
+			BeanDefinition beanDefinition = this.xpathParser.parse((Element) xPathExpressionNodes.item(0), parserContext);
+			builder.getRawBeanDefinition().getConstructorArgumentValues()
+					.addArgumentValues(beanDefinition.getConstructorArgumentValues());
+		}
+		else if (hasChild) {
 			BeanDefinition beanDefinition = this.xpathParser.parse((Element) xPathExpressionNodes.item(0), parserContext);
 			builder.addConstructorArgValue(beanDefinition);
 		}
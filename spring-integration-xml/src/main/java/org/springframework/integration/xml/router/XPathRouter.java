@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,10 +25,10 @@ import org.springframework.integration.Message;
 import org.springframework.integration.router.AbstractMappingMessageRouter;
 import org.springframework.integration.xml.DefaultXmlPayloadConverter;
 import org.springframework.integration.xml.XmlPayloadConverter;
+import org.springframework.integration.xml.xpath.CachingXPathExpressionFactory;
 import org.springframework.util.Assert;
 import org.springframework.xml.xpath.NodeMapper;
 import org.springframework.xml.xpath.XPathExpression;
-import org.springframework.xml.xpath.XPathExpressionFactory;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Node;
 
@@ -57,7 +57,7 @@ public class XPathRouter extends AbstractMappingMessageRouter {
 	 */
 	public XPathRouter(String expression, Map<String, String> namespaces) {
 		Assert.hasText(expression, "expression must not be empty");
-		this.xPathExpression = XPathExpressionFactory.createXPathExpression(expression, namespaces);
+		this.xPathExpression = CachingXPathExpressionFactory.createXPathExpression(expression, namespaces);
 	}
 
 	/**
@@ -72,7 +72,7 @@ public class XPathRouter extends AbstractMappingMessageRouter {
 		Assert.hasText(expression, "expression must not be empty");
 		Map<String, String> namespaces = new HashMap<String, String>();
 		namespaces.put(prefix, namespace);
-		this.xPathExpression = XPathExpressionFactory.createXPathExpression(expression, namespaces);
+		this.xPathExpression = CachingXPathExpressionFactory.createXPathExpression(expression, namespaces);
 	}
 
 	/**
@@ -83,7 +83,7 @@ public class XPathRouter extends AbstractMappingMessageRouter {
 	 */
 	public XPathRouter(String expression) {
 		Assert.hasText(expression, "expression must not be empty");
-		this.xPathExpression = XPathExpressionFactory.createXPathExpression(expression);
+		this.xPathExpression = CachingXPathExpressionFactory.createXPathExpression(expression);
 	}
 
 	/**
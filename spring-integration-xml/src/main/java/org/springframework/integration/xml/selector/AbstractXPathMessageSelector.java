@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,8 +22,8 @@ import java.util.Map;
 import org.springframework.integration.core.MessageSelector;
 import org.springframework.integration.xml.DefaultXmlPayloadConverter;
 import org.springframework.integration.xml.XmlPayloadConverter;
+import org.springframework.integration.xml.xpath.CachingXPathExpressionFactory;
 import org.springframework.xml.xpath.XPathExpression;
-import org.springframework.xml.xpath.XPathExpressionFactory;
 
 /**
  * Base class for XPath {@link MessageSelector} implementations.
@@ -41,7 +41,7 @@ public abstract class AbstractXPathMessageSelector implements MessageSelector {
 	 * @param xPathExpression XPath expression as a String
 	 */
 	public AbstractXPathMessageSelector(String xPathExpression) {
-		this.xPathExpresion = XPathExpressionFactory.createXPathExpression(xPathExpression);
+		this.xPathExpresion = CachingXPathExpressionFactory.createXPathExpression(xPathExpression);
 	}
 
 	/**
@@ -52,7 +52,7 @@ public abstract class AbstractXPathMessageSelector implements MessageSelector {
 	public AbstractXPathMessageSelector(String xPathExpression, String prefix, String namespace) {
 		Map<String,String> namespaces = new HashMap<String, String>();
 		namespaces.put(prefix, namespace);
-		this.xPathExpresion = XPathExpressionFactory.createXPathExpression(xPathExpression, namespaces);
+		this.xPathExpresion = CachingXPathExpressionFactory.createXPathExpression(xPathExpression, namespaces);
 	}
 
 	/**
@@ -60,7 +60,7 @@ public abstract class AbstractXPathMessageSelector implements MessageSelector {
 	 * @param namespaces Map of namespaces with prefixes as the Map keys
 	 */
 	public AbstractXPathMessageSelector(String xPathExpression, Map<String, String> namespaces) {
-		this.xPathExpresion = XPathExpressionFactory.createXPathExpression(xPathExpression, namespaces);
+		this.xPathExpresion = CachingXPathExpressionFactory.createXPathExpression(xPathExpression, namespaces);
 	}
 
 	/**
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.splitter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.xml.sax.InputSource;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.splitter.AbstractMessageSplitter;
+import org.springframework.util.Assert;
+
+/**
+ * Message Splitter that reads a {@link File}, {@link InputStream} or {@link String}
+ * payload with StAX and emits each element that matches a path as a separate message
+ * as soon as the element is complete, without building a DOM for the whole document.
+ * Memory use therefore depends on the size of the largest matching element rather than
+ * the size of the document.
+ * <p>
+ * Only a restricted, streamable subset of XPath is supported: an absolute location path
+ * consisting of child (<code>/</code>) and descendant (<code>//</code>) steps, each of
+ * which is an element name (optionally with a namespace prefix), <code>*</code> or
+ * <code>prefix:*</code>; for example <code>/orders/order</code>,
+ * <code>//ns:order</code> or <code>/feed/*&#47;entry</code>. Predicates, attributes and
+ * other axes are not supported. When a matching element is found, elements nested
+ * within it are not matched separately.
+ * <p>
+ * The split payloads are Strings containing the element (with all namespace
+ * declarations that are in scope for it), or {@link org.w3c.dom.Document}s if
+ * 'createDocuments' is <code>true</code>. The payload is read as the split messages are
+ * sent; a file is closed when it has been read completely, an error occurs, or sending a
+ * split message fails. An {@link InputStream} payload is not closed.
+ *
+ * @since 3.0
+ */
+public class StreamingXPathMessageSplitter extends AbstractMessageSplitter {
+
+	private final String path;
+
+	private final List<Step> steps;
+
+	private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+	private volatile XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+	private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+	private volatile boolean createDocuments;
+
+	private volatile DocumentBuilderFactory documentBuilderFactory;
+
+
+	public StreamingXPathMessageSplitter(String path) {
+		this(path, new HashMap<String, String>());
+	}
+
+	public StreamingXPathMessageSplitter(String path, Map<String, String> namespaces) {
+		Assert.hasText(path, "'path' must not be empty");
+		this.path = path;
+		this.steps = parsePath(path, namespaces == null ? new HashMap<String, String>() : namespaces);
+		this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		this.documentBuilderFactory.setNamespaceAware(true);
+	}
+
+
+	public void setCreateDocuments(boolean createDocuments) {
+		this.createDocuments = createDocuments;
+	}
+
+	public void setDocumentBuilder(DocumentBuilderFactory documentBuilderFactory) {
+		Assert.notNull(documentBuilderFactory, "DocumentBuilderFactory must not be null");
+		this.documentBuilderFactory = documentBuilderFactory;
+	}
+
+	/**
+	 * Set the factory used to create the StAX readers; it must be namespace aware.
+	 * @param inputFactory the factory.
+	 */
+	public void setXmlInputFactory(XMLInputFactory inputFactory) {
+		Assert.notNull(inputFactory, "XMLInputFactory must not be null");
+		this.inputFactory = inputFactory;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "xml:xpath-splitter";
+	}
+
+	@Override
+	protected Object splitMessage(Message<?> message) {
+		Object payload = message.getPayload();
+		InputStream fileStream = null;
+		try {
+			XMLEventReader reader;
+			if (payload instanceof File) {
+				fileStream = new FileInputStream((File) payload);
+				reader = this.inputFactory.createXMLEventReader(fileStream);
+			}
+			else if (payload instanceof InputStream) {
+				reader = this.inputFactory.createXMLEventReader((InputStream) payload);
+			}
+			else if (payload instanceof String) {
+				reader = this.inputFactory.createXMLEventReader(new StringReader((String) payload));
+			}
+			else {
+				throw new IllegalArgumentException("unsupported payload type [" + payload.getClass().getName() + "]");
+			}
+			ElementIterator iterator = new ElementIterator(message, reader, fileStream);
+			if (!iterator.hasNext()) {
+				throw new IllegalArgumentException("failed to split message with path: " + this.path);
+			}
+			return iterator;
+		}
+		catch (Exception e) {
+			close(fileStream);
+			if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			throw new MessagingException(message, "failed to split Message payload", e);
+		}
+	}
+
+	private boolean matches(List<QName> elements) {
+		return matches(0, elements, 0);
+	}
+
+	private boolean matches(int step, List<QName> elements, int depth) {
+		if (step == this.steps.size()) {
+			return depth == elements.size();
+		}
+		Step current = this.steps.get(step);
+		if (current.descendant) {
+			for (int i = depth; i < elements.size(); i++) {
+				if (current.matches(elements.get(i)) && matches(step + 1, elements, i + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return depth < elements.size() && current.matches(elements.get(depth))
+				&& matches(step + 1, elements, depth + 1);
+	}
+
+	private static List<Step> parsePath(String path, Map<String, String> namespaces) {
+		Assert.isTrue(path.startsWith("/"), "Only absolute paths are supported: " + path);
+		List<Step> steps = new ArrayList<Step>();
+		int index = 0;
+		while (index < path.length()) {
+			boolean descendant = path.startsWith("//", index);
+			index += descendant ? 2 : 1;
+			int end = path.indexOf('/', index);
+			if (end < 0) {
+				end = path.length();
+			}
+			String name = path.substring(index, end).trim();
+			Assert.isTrue(name.length() > 0 && !name.equals(".") && !name.equals("..")
+					&& !name.matches(".*[\\[\\]()@|=\"'\\s].*"),
+					"'" + path + "' is not a streamable path; only element names and '*' are supported");
+			String namespaceUri = XMLConstants.NULL_NS_URI;
+			String localName = name;
+			int colon = name.indexOf(':');
+			if (colon > 0) {
+				String prefix = name.substring(0, colon);
+				namespaceUri = namespaces.get(prefix);
+				Assert.notNull(namespaceUri, "No namespace is provided for the prefix '" + prefix + "' in: " + path);
+				localName = name.substring(colon + 1);
+			}
+			else if ("*".equals(name)) {
+				namespaceUri = null;
+			}
+			steps.add(new Step(namespaceUri, localName, descendant));
+			index = end;
+		}
+		return steps;
+	}
+
+	private static void close(InputStream inputStream) {
+		if (inputStream != null) {
+			try {
+				inputStream.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+
+	private static class Step {
+
+		private final String namespaceUri;
+
+		private final String localName;
+
+		private final boolean descendant;
+
+		/*
+		 * A null namespace or '*' local name matches any.
+		 */
+		private Step(String namespaceUri, String localName, boolean descendant) {
+			this.namespaceUri = namespaceUri;
+			this.localName = localName;
+			this.descendant = descendant;
+		}
+
+		private boolean matches(QName name) {
+			return (this.namespaceUri == null || this.namespaceUri.equals(name.getNamespaceURI()))
+					&& ("*".equals(this.localName) || this.localName.equals(name.getLocalPart()));
+		}
+
+	}
+
+	/*
+	 * Reads the payload as the matching elements are requested; closed by the splitter
+	 * when the split messages have been sent, or sending one fails.
+	 */
+	private class ElementIterator implements Iterator<Object>, Closeable {
+
+		private final Message<?> message;
+
+		private final XMLEventReader reader;
+
+		private final InputStream fileStream;
+
+		private final List<QName> elements = new ArrayList<QName>();
+
+		/*
+		 * The namespace declarations of each open element.
+		 */
+		private final List<List<Namespace>> namespaces = new ArrayList<List<Namespace>>();
+
+		private Object next;
+
+		private boolean done;
+
+		private ElementIterator(Message<?> message, XMLEventReader reader, InputStream fileStream) {
+			this.message = message;
+			this.reader = reader;
+			this.fileStream = fileStream;
+		}
+
+		public boolean hasNext() {
+			if (this.next == null && !this.done) {
+				try {
+					this.next = this.readNext();
+				}
+				catch (Exception e) {
+					this.finish();
+					throw new MessagingException(this.message, "failed to split Message payload", e);
+				}
+				if (this.next == null) {
+					this.finish();
+				}
+			}
+			return this.next != null;
+		}
+
+		public Object next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Object result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private Object readNext() throws Exception {
+			while (this.reader.hasNext()) {
+				XMLEvent event = this.reader.nextEvent();
+				if (event.isStartElement()) {
+					StartElement startElement = event.asStartElement();
+					this.elements.add(startElement.getName());
+					this.namespaces.add(this.namespacesOf(startElement));
+					if (matches(this.elements)) {
+						Object result = this.capture(startElement);
+						this.pop();
+						return result;
+					}
+				}
+				else if (event.isEndElement()) {
+					this.pop();
+				}
+			}
+			return null;
+		}
+
+		private void pop() {
+			this.elements.remove(this.elements.size() - 1);
+			this.namespaces.remove(this.namespaces.size() - 1);
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<Namespace> namespacesOf(StartElement startElement) {
+			List<Namespace> declared = new ArrayList<Namespace>();
+			Iterator<Namespace> iterator = startElement.getNamespaces();
+			while (iterator.hasNext()) {
+				declared.add(iterator.next());
+			}
+			return declared;
+		}
+
+		/*
+		 * Write the element, which has just been started, up to its end; the root element
+		 * declares all namespaces that are in scope.
+		 */
+		@SuppressWarnings("unchecked")
+		private Object capture(StartElement startElement) throws Exception {
+			Map<String, Namespace> inScope = new LinkedHashMap<String, Namespace>();
+			for (List<Namespace> declared : this.namespaces) {
+				for (Namespace namespace : declared) {
+					inScope.put(namespace.getPrefix(), namespace);
+				}
+			}
+			QName name = startElement.getName();
+			StringWriter stringWriter = new StringWriter();
+			XMLEventWriter writer = outputFactory.createXMLEventWriter(stringWriter);
+			writer.add(eventFactory.createStartElement(name.getPrefix(), name.getNamespaceURI(),
+					name.getLocalPart(), startElement.getAttributes(), inScope.values().iterator()));
+			int depth = 1;
+			while (depth > 0) {
+				XMLEvent event = this.reader.nextEvent();
+				if (event.isStartElement()) {
+					depth++;
+				}
+				else if (event.isEndElement()) {
+					depth--;
+				}
+				writer.add(event);
+			}
+			writer.close();
+			String element = stringWriter.toString();
+			if (createDocuments) {
+				DocumentBuilder documentBuilder;
+				synchronized (documentBuilderFactory) {
+					documentBuilder = documentBuilderFactory.newDocumentBuilder();
+				}
+				return documentBuilder.parse(new InputSource(new StringReader(element)));
+			}
+			return element;
+		}
+
+		public void close() {
+			if (!this.done) {
+				this.finish();
+			}
+		}
+
+		private void finish() {
+			this.done = true;
+			try {
+				this.reader.close();
+			}
+			catch (XMLStreamException e) {
+				// ignore
+			}
+			StreamingXPathMessageSplitter.close(this.fileStream);
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,7 +22,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
@@ -38,10 +37,12 @@ import org.springframework.integration.MessagingException;
 import org.springframework.integration.splitter.AbstractMessageSplitter;
 import org.springframework.integration.xml.DefaultXmlPayloadConverter;
 import org.springframework.integration.xml.XmlPayloadConverter;
+import org.springframework.integration.xml.util.DocumentBuilderPool;
+import org.springframework.integration.xml.util.TransformerPool;
+import org.springframework.integration.xml.xpath.CachingXPathExpressionFactory;
 import org.springframework.util.Assert;
 import org.springframework.xml.transform.StringResult;
 import org.springframework.xml.xpath.XPathExpression;
-import org.springframework.xml.xpath.XPathExpressionFactory;
 
 /**
  * Message Splitter that uses an {@link XPathExpression} to split a
@@ -61,6 +62,10 @@ public class XPathMessageSplitter extends AbstractMessageSplitter {
 
 	private volatile DocumentBuilderFactory documentBuilderFactory;
 
+	private volatile DocumentBuilderPool documentBuilderPool;
+
+	private final TransformerPool transformerPool = new TransformerPool(TransformerFactory.newInstance());
+
 	private volatile XmlPayloadConverter xmlPayloadConverter = new DefaultXmlPayloadConverter();
 
 
@@ -69,13 +74,14 @@ public class XPathMessageSplitter extends AbstractMessageSplitter {
 	}
 
 	public XPathMessageSplitter(String expression, Map<String, String> namespaces) {
-		this(XPathExpressionFactory.createXPathExpression(expression, namespaces));
+		this(CachingXPathExpressionFactory.createXPathExpression(expression, namespaces));
 	}
 
 	public XPathMessageSplitter(XPathExpression xpathExpression) {
 		this.xpathExpression = xpathExpression;
 		this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
 		this.documentBuilderFactory.setNamespaceAware(true);
+		this.documentBuilderPool = new DocumentBuilderPool(this.documentBuilderFactory);
 	}
 
 
@@ -90,6 +96,7 @@ public class XPathMessageSplitter extends AbstractMessageSplitter {
 	public void setDocumentBuilder(DocumentBuilderFactory documentBuilderFactory) {
 		Assert.notNull(documentBuilderFactory, "DocumentBuilderFactory must not be null");
 		this.documentBuilderFactory = documentBuilderFactory;
+		this.documentBuilderPool = new DocumentBuilderPool(documentBuilderFactory);
 	}
 
 	public void setXmlPayloadConverter(XmlPayloadConverter xmlPayloadConverter) {
@@ -122,14 +129,19 @@ public class XPathMessageSplitter extends AbstractMessageSplitter {
 
 	private Object splitDocument(Document document) throws Exception {
 		List<Node> nodes = splitNode(document);
-		Transformer transformer = TransformerFactory.newInstance().newTransformer();
-		List<String> splitStrings = new ArrayList<String>(nodes.size());
-		for (Node nodeFromList : nodes) {
-			StringResult result = new StringResult();
-			transformer.transform(new DOMSource(nodeFromList), result);
-			splitStrings.add(result.toString());
+		Transformer transformer = this.transformerPool.getTransformer();
+		try {
+			List<String> splitStrings = new ArrayList<String>(nodes.size());
+			for (Node nodeFromList : nodes) {
+				StringResult result = new StringResult();
+				transformer.transform(new DOMSource(nodeFromList), result);
+				splitStrings.add(result.toString());
+			}
+			return splitStrings;
+		}
+		finally {
+			this.transformerPool.releaseTransformer(transformer);
 		}
-		return splitStrings;
 	}
 
 	private List<Node> splitNode(Node node) throws ParserConfigurationException {
@@ -144,20 +156,13 @@ public class XPathMessageSplitter extends AbstractMessageSplitter {
 	}
 
 	private List<Node> convertNodesToDocuments(List<Node> nodes) throws ParserConfigurationException {
-		DocumentBuilder documentBuilder = this.getNewDocumentBuilder();
 		List<Node> documents = new ArrayList<Node>(nodes.size());
 		for (Node node : nodes) {
-			Document document = documentBuilder.newDocument();
+			Document document = this.documentBuilderPool.newDocument();
 			document.appendChild(document.importNode(node, true));
 			documents.add(document);
 		}
 		return documents;
 	}
 
-	private DocumentBuilder getNewDocumentBuilder() throws ParserConfigurationException {
-		synchronized (this.documentBuilderFactory) {
-			return this.documentBuilderFactory.newDocumentBuilder();
-		}
-	}
-
 }
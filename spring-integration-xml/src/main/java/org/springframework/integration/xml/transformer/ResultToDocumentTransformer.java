@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,9 +18,7 @@ package org.springframework.integration.xml.transformer;
 
 import java.io.StringReader;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Result;
 import javax.xml.transform.dom.DOMResult;
 
@@ -28,6 +26,7 @@ import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 
 import org.springframework.integration.MessagingException;
+import org.springframework.integration.xml.util.DocumentBuilderPool;
 import org.springframework.xml.transform.StringResult;
 
 /**
@@ -38,17 +37,17 @@ import org.springframework.xml.transform.StringResult;
  */
 public class ResultToDocumentTransformer implements ResultTransformer {
 
-	// Not guaranteed to be thread safe
-	private final DocumentBuilderFactory documentBuilderFactory;
+	private final DocumentBuilderPool documentBuilderPool;
 
 
 	public ResultToDocumentTransformer(DocumentBuilderFactory documentBuilderFactory) {
-		this.documentBuilderFactory = documentBuilderFactory;
+		this.documentBuilderPool = new DocumentBuilderPool(documentBuilderFactory);
 	}
 
 	public ResultToDocumentTransformer() {
-		this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		this.documentBuilderFactory.setNamespaceAware(true);
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		this.documentBuilderPool = new DocumentBuilderPool(documentBuilderFactory);
 	}
 
 
@@ -73,20 +72,11 @@ public class ResultToDocumentTransformer implements ResultTransformer {
 
 	private Document createDocumentFromStringResult(StringResult stringResult) {
 		try {
-			return getDocumentBuilder().parse(new InputSource(new StringReader(stringResult.toString())));
+			return this.documentBuilderPool.parse(new InputSource(new StringReader(stringResult.toString())));
 		}
 		catch (Exception e) {
 			throw new MessagingException("failed to create Document from StringResult payload", e);
 		}
 	}
 
-	private synchronized DocumentBuilder getDocumentBuilder() {
-		try {
-			return this.documentBuilderFactory.newDocumentBuilder();
-		}
-		catch (ParserConfigurationException e) {
-			throw new MessagingException("failed to create a new DocumentBuilder", e);
-		}
-	}
-
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,10 +24,10 @@ import org.springframework.integration.Message;
 import org.springframework.integration.transformer.HeaderEnricher;
 import org.springframework.integration.xml.DefaultXmlPayloadConverter;
 import org.springframework.integration.xml.XmlPayloadConverter;
+import org.springframework.integration.xml.xpath.CachingXPathExpressionFactory;
 import org.springframework.integration.xml.xpath.XPathEvaluationType;
 import org.springframework.util.Assert;
 import org.springframework.xml.xpath.XPathExpression;
-import org.springframework.xml.xpath.XPathExpressionFactory;
 
 /**
  * Transformer implementation that evaluates XPath expressions against the
@@ -62,7 +62,7 @@ public class XPathHeaderEnricher extends HeaderEnricher {
 
 		public XPathExpressionEvaluatingHeaderValueMessageProcessor(String expression) {
 			Assert.hasText(expression, "expression must have text");
-			this.expression = XPathExpressionFactory.createXPathExpression(expression);
+			this.expression = CachingXPathExpressionFactory.createXPathExpression(expression);
 		}
 
 		public XPathExpressionEvaluatingHeaderValueMessageProcessor(XPathExpression expression) {
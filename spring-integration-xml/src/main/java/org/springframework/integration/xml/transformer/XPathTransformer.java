@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,11 +22,11 @@ import org.springframework.integration.Message;
 import org.springframework.integration.transformer.AbstractTransformer;
 import org.springframework.integration.xml.DefaultXmlPayloadConverter;
 import org.springframework.integration.xml.XmlPayloadConverter;
+import org.springframework.integration.xml.xpath.CachingXPathExpressionFactory;
 import org.springframework.integration.xml.xpath.XPathEvaluationType;
 import org.springframework.util.Assert;
 import org.springframework.xml.xpath.NodeMapper;
 import org.springframework.xml.xpath.XPathExpression;
-import org.springframework.xml.xpath.XPathExpressionFactory;
 
 /**
  * Transformer implementation that evaluates an XPath expression against the inbound
@@ -58,7 +58,7 @@ public class XPathTransformer extends AbstractTransformer {
 	 * to be evaluated against converted inbound Message payloads. 
 	 */
 	public XPathTransformer(String expression) {
-		this.xpathExpression = XPathExpressionFactory.createXPathExpression(expression);		
+		this.xpathExpression = CachingXPathExpressionFactory.createXPathExpression(expression);		
 	}
 
 	/**
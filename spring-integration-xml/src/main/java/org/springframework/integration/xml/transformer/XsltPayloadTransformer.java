@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -47,6 +47,7 @@ import org.springframework.integration.xml.result.DomResultFactory;
 import org.springframework.integration.xml.result.ResultFactory;
 import org.springframework.integration.xml.source.DomSourceFactory;
 import org.springframework.integration.xml.source.SourceFactory;
+import org.springframework.integration.xml.util.TransformerPool;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.PatternMatchUtils;
@@ -72,6 +73,8 @@ import org.springframework.xml.transform.StringSource;
  * payload and the {@link Result} to pass into the transformer. An instance of
  * {@link ResultTransformer} can also be provided to convert the Result prior to
  * returning.
+ * <p/>
+ * The {@link Transformer}s created from the {@link Templates} are pooled and reused.
  * 
  * @author Jonas Partner
  * @author Mark Fisher
@@ -81,7 +84,7 @@ public class XsltPayloadTransformer extends AbstractTransformer {
 
 	private final Log logger = LogFactory.getLog(this.getClass());
 
-	private final Templates templates;
+	private final TransformerPool transformerPool;
 
 	private final StandardEvaluationContext evaluationContext = new StandardEvaluationContext();
 
@@ -115,7 +118,7 @@ public class XsltPayloadTransformer extends AbstractTransformer {
 	}
 
 	public XsltPayloadTransformer(Templates templates, ResultTransformer resultTransformer) throws ParserConfigurationException {
-		this.templates = templates;
+		this.transformerPool = new TransformerPool(templates);
 		this.resultTransformer = resultTransformer;
 		this.evaluationContext.addPropertyAccessor(new MapAccessor());
 	}
@@ -165,7 +168,17 @@ public class XsltPayloadTransformer extends AbstractTransformer {
 
 	@Override
 	protected Object doTransform(Message<?> message) throws Exception {
-		Transformer transformer = buildTransformer(message);
+		Transformer transformer = this.transformerPool.getTransformer();
+		try {
+			return this.doTransform(message, transformer);
+		}
+		finally {
+			this.transformerPool.releaseTransformer(transformer);
+		}
+	}
+
+	private Object doTransform(Message<?> message, Transformer transformer) throws Exception {
+		setParameters(transformer, message);
 		Object payload;
 		if (this.alwaysUseSourceFactory) {
 			payload = sourceFactory.createSource(message.getPayload());
@@ -253,9 +266,8 @@ public class XsltPayloadTransformer extends AbstractTransformer {
 		return (Document) domResult.getNode();
 	}
 
-	private Transformer buildTransformer(Message<?> message) throws TransformerException {
+	private void setParameters(Transformer transformer, Message<?> message) {
 		// process individual mappings
-		Transformer transformer = this.templates.newTransformer();
 		if (this.xslParameterMappings != null) {
 			for (String parameterName : this.xslParameterMappings.keySet()) {
 				Expression expression = this.xslParameterMappings.get(parameterName);
@@ -282,7 +294,6 @@ public class XsltPayloadTransformer extends AbstractTransformer {
 				}
 			}
 		}
-		return transformer;
 	}
 
 
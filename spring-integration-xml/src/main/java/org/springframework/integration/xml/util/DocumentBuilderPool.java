@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.util.SimplePool;
+import org.springframework.util.Assert;
+
+/**
+ * A pool of {@link DocumentBuilder}s, which are not thread-safe but can be reused
+ * instead of being created for each document. The pool grows to the number of threads
+ * using it concurrently.
+ * <p>
+ * The builders are only used by the pool to parse and create documents, so their
+ * configuration never changes after {@link #createDocumentBuilder()}; they are
+ * therefore not {@link DocumentBuilder#reset() reset} when released, and any
+ * {@link org.xml.sax.EntityResolver} or {@link org.xml.sax.ErrorHandler} set when a
+ * builder was created applies to every document it parses.
+ *
+ * @since 3.0
+ */
+public class DocumentBuilderPool {
+
+	private final DocumentBuilderFactory documentBuilderFactory;
+
+	private final SimplePool<DocumentBuilder> pool = new SimplePool<DocumentBuilder>(0,
+			new SimplePool.PoolItemCallback<DocumentBuilder>() {
+
+				public DocumentBuilder createForPool() {
+					return createDocumentBuilder();
+				}
+
+				public boolean isStale(DocumentBuilder item) {
+					return false;
+				}
+
+				public void removedFromPool(DocumentBuilder item) {
+				}
+
+			});
+
+	public DocumentBuilderPool(DocumentBuilderFactory documentBuilderFactory) {
+		Assert.notNull(documentBuilderFactory, "DocumentBuilderFactory must not be null");
+		this.documentBuilderFactory = documentBuilderFactory;
+	}
+
+	public Document parse(InputSource inputSource) throws SAXException, IOException {
+		DocumentBuilder documentBuilder = this.obtain();
+		try {
+			return documentBuilder.parse(inputSource);
+		}
+		finally {
+			this.release(documentBuilder);
+		}
+	}
+
+	public Document parse(File file) throws SAXException, IOException {
+		DocumentBuilder documentBuilder = this.obtain();
+		try {
+			return documentBuilder.parse(file);
+		}
+		finally {
+			this.release(documentBuilder);
+		}
+	}
+
+	public Document newDocument() {
+		DocumentBuilder documentBuilder = this.obtain();
+		try {
+			return documentBuilder.newDocument();
+		}
+		finally {
+			this.release(documentBuilder);
+		}
+	}
+
+	/**
+	 * Create a new {@link DocumentBuilder} for the pool; subclasses may override, for
+	 * example to set an {@link org.xml.sax.EntityResolver} on the builder.
+	 * @return the document builder.
+	 */
+	protected DocumentBuilder createDocumentBuilder() {
+		synchronized (this.documentBuilderFactory) {
+			try {
+				return this.documentBuilderFactory.newDocumentBuilder();
+			}
+			catch (ParserConfigurationException e) {
+				throw new MessagingException("failed to create a new DocumentBuilder", e);
+			}
+		}
+	}
+
+	private DocumentBuilder obtain() {
+		return this.pool.getItem();
+	}
+
+	private void release(DocumentBuilder documentBuilder) {
+		this.pool.releaseItem(documentBuilder);
+	}
+
+}
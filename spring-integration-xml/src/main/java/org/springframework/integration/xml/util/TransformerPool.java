@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.util;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.util.SimplePool;
+import org.springframework.util.Assert;
+
+/**
+ * A pool of {@link Transformer}s, created either from {@link Templates} or (identity
+ * transformers) from a {@link TransformerFactory}. Transformers are not thread-safe
+ * but can be reused after they are {@link Transformer#reset() reset}, which removes any
+ * parameters and output properties set by the user. The pool grows to the number of
+ * threads using it concurrently. If the transformers do not support
+ * {@link Transformer#reset() reset}, they are not pooled and a new one is created for
+ * each {@link #getTransformer()}.
+ * <p>
+ * Each {@link #getTransformer()} must be followed by a
+ * {@link #releaseTransformer(Transformer)}, typically in a finally block.
+ *
+ * @since 3.0
+ */
+public class TransformerPool {
+
+	private final Templates templates;
+
+	private final TransformerFactory transformerFactory;
+
+	private final SimplePool<Transformer> pool = new SimplePool<Transformer>(0,
+			new SimplePool.PoolItemCallback<Transformer>() {
+
+				public Transformer createForPool() {
+					try {
+						return createTransformer();
+					}
+					catch (TransformerConfigurationException e) {
+						throw new MessagingException("failed to create a new Transformer", e);
+					}
+				}
+
+				public boolean isStale(Transformer item) {
+					return false;
+				}
+
+				public void removedFromPool(Transformer item) {
+				}
+
+			});
+
+	private volatile Boolean resetSupported;
+
+	/**
+	 * Create a pool of transformers for the templates.
+	 * @param templates the templates.
+	 */
+	public TransformerPool(Templates templates) {
+		Assert.notNull(templates, "Templates must not be null");
+		this.templates = templates;
+		this.transformerFactory = null;
+	}
+
+	/**
+	 * Create a pool of identity transformers.
+	 * @param transformerFactory the factory.
+	 */
+	public TransformerPool(TransformerFactory transformerFactory) {
+		Assert.notNull(transformerFactory, "TransformerFactory must not be null");
+		this.templates = null;
+		this.transformerFactory = transformerFactory;
+	}
+
+	public Transformer getTransformer() {
+		if (this.isResetSupported()) {
+			return this.pool.getItem();
+		}
+		try {
+			return this.createTransformer();
+		}
+		catch (TransformerConfigurationException e) {
+			throw new MessagingException("failed to create a new Transformer", e);
+		}
+	}
+
+	public void releaseTransformer(Transformer transformer) {
+		if (this.isResetSupported()) {
+			transformer.reset();
+			this.pool.releaseItem(transformer);
+		}
+	}
+
+	/*
+	 * Determined once, with a transformer that is not added to the pool, so that
+	 * transformers which cannot be reused are never allocated by the pool.
+	 */
+	private boolean isResetSupported() {
+		Boolean resetSupported = this.resetSupported;
+		if (resetSupported == null) {
+			try {
+				this.createTransformer().reset();
+				resetSupported = Boolean.TRUE;
+			}
+			catch (UnsupportedOperationException e) {
+				resetSupported = Boolean.FALSE;
+			}
+			catch (TransformerConfigurationException e) {
+				throw new MessagingException("failed to create a new Transformer", e);
+			}
+			this.resetSupported = resetSupported;
+		}
+		return resetSupported;
+	}
+
+	private Transformer createTransformer() throws TransformerConfigurationException {
+		if (this.templates != null) {
+			return this.templates.newTransformer();
+		}
+		synchronized (this.transformerFactory) {
+			return this.transformerFactory.newTransformer();
+		}
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides utility classes for XML processing.
+ */
+package org.springframework.integration.xml.util;
\ No newline at end of file
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.xpath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import org.springframework.integration.util.SimplePool;
+import org.springframework.util.Assert;
+import org.springframework.xml.namespace.SimpleNamespaceContext;
+import org.springframework.xml.xpath.NodeMapper;
+import org.springframework.xml.xpath.XPathException;
+import org.springframework.xml.xpath.XPathExpression;
+import org.springframework.xml.xpath.XPathParseException;
+
+/**
+ * Creates {@link XPathExpression}s, like the
+ * {@link org.springframework.xml.xpath.XPathExpressionFactory}, but the expressions
+ * created here can be evaluated concurrently: each wraps a pool of compiled JAXP
+ * expressions (which are not thread-safe) rather than serializing evaluations on a
+ * single compiled expression. Expressions are also cached, so that components using the
+ * same expression (and namespaces) share the compiled instances; the cache holds up to
+ * {@value #CACHE_SIZE} expressions.
+ *
+ * @since 3.0
+ */
+public abstract class CachingXPathExpressionFactory {
+
+	public static final int CACHE_SIZE = 256;
+
+	private static final XPathFactory xpathFactory = XPathFactory.newInstance();
+
+	@SuppressWarnings("serial")
+	private static final Map<List<Object>, XPathExpression> cache =
+			new LinkedHashMap<List<Object>, XPathExpression>(16, 0.75f, true) {
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<List<Object>, XPathExpression> eldest) {
+					return this.size() > CACHE_SIZE;
+				}
+
+			};
+
+	/**
+	 * Create (or obtain from the cache) an expression with no namespaces.
+	 * @param expression the XPath expression.
+	 * @return the compiled expression.
+	 * @throws XPathParseException if the expression is invalid.
+	 */
+	public static XPathExpression createXPathExpression(String expression) {
+		return createXPathExpression(expression, null);
+	}
+
+	/**
+	 * Create (or obtain from the cache) an expression.
+	 * @param expression the XPath expression.
+	 * @param namespaces the namespaces, with prefixes as the map keys; may be null.
+	 * @return the compiled expression.
+	 * @throws XPathParseException if the expression is invalid.
+	 */
+	public static XPathExpression createXPathExpression(String expression, Map<String, String> namespaces) {
+		Assert.hasLength(expression, "expression is empty");
+		Map<String, String> namespaceMap = (namespaces == null || namespaces.isEmpty())
+				? Collections.<String, String>emptyMap() : new HashMap<String, String>(namespaces);
+		List<Object> key = Arrays.<Object>asList(expression, namespaceMap);
+		XPathExpression xpathExpression;
+		synchronized (cache) {
+			xpathExpression = cache.get(key);
+		}
+		if (xpathExpression == null) {
+			xpathExpression = new PooledXPathExpression(expression, namespaceMap);
+			synchronized (cache) {
+				cache.put(key, xpathExpression);
+			}
+		}
+		return xpathExpression;
+	}
+
+
+	private static class PooledXPathExpression implements XPathExpression {
+
+		private final String expression;
+
+		private final SimpleNamespaceContext namespaceContext;
+
+		private final SimplePool<javax.xml.xpath.XPathExpression> pool;
+
+		private PooledXPathExpression(String expression, Map<String, String> namespaces) {
+			this.expression = expression;
+			if (namespaces.isEmpty()) {
+				this.namespaceContext = null;
+			}
+			else {
+				this.namespaceContext = new SimpleNamespaceContext();
+				this.namespaceContext.setBindings(namespaces);
+			}
+			// compile now, to detect invalid expressions
+			final AtomicReference<javax.xml.xpath.XPathExpression> compiled =
+					new AtomicReference<javax.xml.xpath.XPathExpression>(this.compile());
+			this.pool = new SimplePool<javax.xml.xpath.XPathExpression>(0,
+					new SimplePool.PoolItemCallback<javax.xml.xpath.XPathExpression>() {
+
+						public javax.xml.xpath.XPathExpression createForPool() {
+							javax.xml.xpath.XPathExpression item = compiled.getAndSet(null);
+							return item == null ? compile() : item;
+						}
+
+						public boolean isStale(javax.xml.xpath.XPathExpression item) {
+							return false;
+						}
+
+						public void removedFromPool(javax.xml.xpath.XPathExpression item) {
+						}
+
+					});
+		}
+
+		private javax.xml.xpath.XPathExpression compile() {
+			XPath xpath;
+			synchronized (xpathFactory) {
+				xpath = xpathFactory.newXPath();
+			}
+			if (this.namespaceContext != null) {
+				xpath.setNamespaceContext(this.namespaceContext);
+			}
+			try {
+				return xpath.compile(this.expression);
+			}
+			catch (XPathExpressionException e) {
+				throw new XPathParseException("Could not compile [" + this.expression + "] to a XPathExpression: "
+						+ e.getMessage(), e);
+			}
+		}
+
+		private Object evaluate(Node node, QName returnType) {
+			javax.xml.xpath.XPathExpression compiled = this.pool.getItem();
+			try {
+				return compiled.evaluate(node, returnType);
+			}
+			catch (XPathExpressionException e) {
+				throw new XPathException("Could not evaluate XPath expression:" + e.getMessage(), e);
+			}
+			finally {
+				this.pool.releaseItem(compiled);
+			}
+		}
+
+		public boolean evaluateAsBoolean(Node node) {
+			return (Boolean) this.evaluate(node, XPathConstants.BOOLEAN);
+		}
+
+		public Node evaluateAsNode(Node node) {
+			return (Node) this.evaluate(node, XPathConstants.NODE);
+		}
+
+		public List<Node> evaluateAsNodeList(Node node) {
+			NodeList nodeList = (NodeList) this.evaluate(node, XPathConstants.NODESET);
+			List<Node> nodes = new ArrayList<Node>(nodeList.getLength());
+			for (int i = 0; i < nodeList.getLength(); i++) {
+				nodes.add(nodeList.item(i));
+			}
+			return nodes;
+		}
+
+		public double evaluateAsNumber(Node node) {
+			return (Double) this.evaluate(node, XPathConstants.NUMBER);
+		}
+
+		public String evaluateAsString(Node node) {
+			return (String) this.evaluate(node, XPathConstants.STRING);
+		}
+
+		public <T> T evaluateAsObject(Node node, NodeMapper<T> nodeMapper) {
+			Node result = this.evaluateAsNode(node);
+			if (result == null) {
+				return null;
+			}
+			try {
+				return nodeMapper.mapNode(result, 0);
+			}
+			catch (DOMException e) {
+				throw new XPathException("Mapping resulted in DOMException", e);
+			}
+		}
+
+		public <T> List<T> evaluate(Node node, NodeMapper<T> nodeMapper) {
+			List<Node> nodes = this.evaluateAsNodeList(node);
+			List<T> results = new ArrayList<T>(nodes.size());
+			try {
+				for (int i = 0; i < nodes.size(); i++) {
+					results.add(nodeMapper.mapNode(nodes.get(i), i));
+				}
+			}
+			catch (DOMException e) {
+				throw new XPathException("Mapping resulted in DOMException", e);
+			}
+			return results;
+		}
+
+		@Override
+		public String toString() {
+			return this.expression;
+		}
+
+	}
+
+}
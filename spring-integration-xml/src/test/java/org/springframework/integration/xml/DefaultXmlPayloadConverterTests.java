@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2013 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,10 +16,14 @@
 package org.springframework.integration.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
@@ -34,6 +38,7 @@ import org.springframework.integration.MessagingException;
 import org.springframework.xml.transform.StringSource;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 
 /**
@@ -119,5 +124,46 @@ public class DefaultXmlPayloadConverterTests {
 		assertTrue("Wrong node returned", element == n);
     }
     
+	@Test
+	public void testReuseDocuments() {
+		String payload = new String(testDocumentAsString);
+		Node n1 = converter.convertToNode(payload);
+		assertNotSame(n1, converter.convertToNode(payload));
+		converter.setReuseDocuments(true);
+		n1 = converter.convertToNode(payload);
+		assertSame(n1, converter.convertToNode(payload));
+		assertNotSame(n1, converter.convertToNode(new String(testDocumentAsString)));
+		XMLAssert.assertXMLEqual(testDocument, (Document) n1);
+		converter.setReuseDocuments(false);
+		converter.setReuseDocuments(true);
+		assertNotSame(n1, converter.convertToNode(payload));
+	}
+
+	@Test
+	public void testEntityResolverRetainedBetweenConversions() {
+		final AtomicInteger resolved = new AtomicInteger();
+		converter = new DefaultXmlPayloadConverter() {
+
+			@Override
+			protected DocumentBuilder getDocumentBuilder() {
+				DocumentBuilder documentBuilder = super.getDocumentBuilder();
+				documentBuilder.setEntityResolver(new EntityResolver() {
+
+					public InputSource resolveEntity(String publicId, String systemId) {
+						resolved.incrementAndGet();
+						return new InputSource(new StringReader("<!ELEMENT test (#PCDATA)>"));
+					}
+
+				});
+				return documentBuilder;
+			}
+
+		};
+		String payload = "<!DOCTYPE test SYSTEM \"http://example.com/test.dtd\">" + testDocumentAsString;
+		XMLAssert.assertXMLEqual(testDocument, converter.convertToDocument(payload));
+		XMLAssert.assertXMLEqual(testDocument, converter.convertToDocument(payload));
+		assertEquals(2, resolved.get());
+	}
+
 
 }
@@ -19,6 +19,9 @@ package org.springframework.integration.xml.config;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.junit.Test;
@@ -31,6 +34,7 @@ import org.springframework.integration.MessageChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
 import org.springframework.integration.message.GenericMessage;
+import org.springframework.integration.xml.splitter.StreamingXPathMessageSplitter;
 import org.springframework.integration.xml.util.XmlTestUtil;
 import org.springframework.test.context.ContextConfiguration;
 import org.w3c.dom.Document;
@@ -114,4 +118,23 @@ public class XPathMessageSplitterParserTests {
 		assertTrue("DocumnetBuilderFactory was not expected stub ", documnetBuilderFactory instanceof DocumentBuilderFactory);
 	}
 
+	@Test
+	public void testStreaming() throws Exception {
+		TestXmlApplicationContext ctx = TestXmlApplicationContextHelper
+				.getTestAppContext(channelDefinitions
+						+ "<si-xml:xpath-splitter id='splitter' input-channel='test-input' output-channel='test-output' streaming='true'>"
+						+ "<si-xml:xpath-expression expression='/n:names/n:name' ns-prefix='n' ns-uri='urn:names'/></si-xml:xpath-splitter>");
+		EventDrivenConsumer consumer = (EventDrivenConsumer) ctx.getBean("splitter");
+		consumer.start();
+		Object handler = new DirectFieldAccessor(consumer).getPropertyValue("handler");
+		assertTrue(handler instanceof StreamingXPathMessageSplitter);
+		ctx.getAutowireCapableBeanFactory().autowireBeanProperties(this, AutowireCapableBeanFactory.AUTOWIRE_BY_TYPE,
+				false);
+		InputStream payload = new ByteArrayInputStream(
+				"<names xmlns='urn:names'><name>Bob</name><name>John</name></names>".getBytes());
+		inputChannel.send(new GenericMessage<InputStream>(payload));
+		assertEquals("Wrong number of split messages ", 2, outputChannel.getQueueSize());
+		assertEquals("<name xmlns=\"urn:names\">Bob</name>", outputChannel.receive(0).getPayload());
+	}
+
 }
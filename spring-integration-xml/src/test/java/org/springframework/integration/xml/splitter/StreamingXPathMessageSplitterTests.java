@@ -0,0 +1,212 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.w3c.dom.Document;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageDeliveryException;
+import org.springframework.integration.MessagingException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.message.GenericMessage;
+
+/**
+ * @since 3.0
+ */
+public class StreamingXPathMessageSplitterTests {
+
+	private static final String ORDERS = "<orders><order id=\"1\">one</order><order id=\"2\"><item>two</item></order>"
+			+ "<order id=\"3\"/></orders>";
+
+	private StreamingXPathMessageSplitter splitter;
+
+	private QueueChannel replyChannel = new QueueChannel();
+
+
+	@Before
+	public void setUp() {
+		splitter = new StreamingXPathMessageSplitter("/orders/order");
+		splitter.setOutputChannel(replyChannel);
+	}
+
+
+	@Test
+	public void splitString() {
+		splitter.handleMessage(new GenericMessage<String>(ORDERS));
+		List<Message<?>> messages = this.replyChannel.clear();
+		assertEquals(3, messages.size());
+		assertEquals("<order id=\"1\">one</order>", messages.get(0).getPayload());
+		assertEquals("<order id=\"2\"><item>two</item></order>", messages.get(1).getPayload());
+		assertTrue(((String) messages.get(2).getPayload()).startsWith("<order id=\"3\""));
+		assertEquals(Integer.valueOf(2), messages.get(1).getHeaders().getSequenceNumber());
+	}
+
+	@Test
+	public void splitInputStream() {
+		splitter.handleMessage(new GenericMessage<InputStream>(new ByteArrayInputStream(ORDERS.getBytes())));
+		assertEquals(3, this.replyChannel.clear().size());
+	}
+
+	@Test
+	public void splitFile() throws Exception {
+		File file = File.createTempFile("orders", ".xml");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		out.write(ORDERS.getBytes());
+		out.close();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		assertEquals(3, this.replyChannel.clear().size());
+		// closed
+		assertTrue(file.delete());
+	}
+
+	@Test
+	public void fileClosedWhenSendFails() throws Exception {
+		File file = File.createTempFile("orders", ".xml");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		out.write(ORDERS.getBytes());
+		out.close();
+		XMLInputFactory inputFactory = spy(XMLInputFactory.newInstance());
+		final AtomicReference<FileChannel> fileChannel = new AtomicReference<FileChannel>();
+		doAnswer(new Answer<Object>() {
+
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				// the channel is closed with the stream
+				fileChannel.set(((FileInputStream) invocation.getArguments()[0]).getChannel());
+				return invocation.callRealMethod();
+			}
+
+		}).when(inputFactory).createXMLEventReader(any(InputStream.class));
+		splitter.setXmlInputFactory(inputFactory);
+		final AtomicInteger sent = new AtomicInteger();
+		splitter.setOutputChannel(new MessageChannel() {
+
+			public boolean send(Message<?> message) {
+				return this.send(message, -1);
+			}
+
+			public boolean send(Message<?> message, long timeout) {
+				if (sent.incrementAndGet() == 2) {
+					throw new MessageDeliveryException(message, "test");
+				}
+				return true;
+			}
+
+		});
+		try {
+			splitter.handleMessage(new GenericMessage<File>(file));
+			fail("Expected exception");
+		}
+		catch (MessageDeliveryException e) {
+			assertEquals("test", e.getMessage());
+		}
+		assertEquals(2, sent.get());
+		assertFalse(fileChannel.get().isOpen());
+		assertTrue(file.delete());
+	}
+
+	@Test
+	public void splitWithCreateDocuments() {
+		splitter.setCreateDocuments(true);
+		splitter.handleMessage(new GenericMessage<String>(ORDERS));
+		List<Message<?>> messages = this.replyChannel.clear();
+		assertEquals(3, messages.size());
+		Document document = (Document) messages.get(1).getPayload();
+		assertEquals("order", document.getDocumentElement().getLocalName());
+		assertEquals("two", document.getDocumentElement().getTextContent());
+	}
+
+	@Test
+	public void descendantsAndNamespaces() {
+		splitter = new StreamingXPathMessageSplitter("//o:order", Collections.singletonMap("o", "urn:orders"));
+		splitter.setOutputChannel(replyChannel);
+		String payload = "<o:batch xmlns:o=\"urn:orders\"><o:orders><o:order>one</o:order>"
+				+ "<order>not this</order><o:order><o:order>two</o:order></o:order></o:orders></o:batch>";
+		splitter.handleMessage(new GenericMessage<String>(payload));
+		List<Message<?>> messages = this.replyChannel.clear();
+		assertEquals(2, messages.size());
+		assertEquals("<o:order xmlns:o=\"urn:orders\">one</o:order>", messages.get(0).getPayload());
+		assertEquals("<o:order xmlns:o=\"urn:orders\"><o:order>two</o:order></o:order>",
+				messages.get(1).getPayload());
+	}
+
+	@Test
+	public void wildcard() {
+		splitter = new StreamingXPathMessageSplitter("/*/*/item");
+		splitter.setOutputChannel(replyChannel);
+		splitter.handleMessage(new GenericMessage<String>(ORDERS));
+		List<Message<?>> messages = this.replyChannel.clear();
+		assertEquals(1, messages.size());
+		assertEquals("<item>two</item>", messages.get(0).getPayload());
+	}
+
+	@Test
+	public void elementsAreSentAsTheyAreRead() {
+		// truncated - the complete elements are sent before the error is detected
+		try {
+			splitter.handleMessage(new GenericMessage<String>("<orders><order>one</order><order>two</order><ord"));
+			fail("Expected exception");
+		}
+		catch (MessagingException e) {
+		}
+		assertEquals(2, this.replyChannel.clear().size());
+	}
+
+	@Test(expected = MessagingException.class)
+	public void noMatch() {
+		splitter.handleMessage(new GenericMessage<String>("<wrongDocument/>"));
+	}
+
+	@Test(expected = MessagingException.class)
+	public void invalidPayloadType() {
+		splitter.handleMessage(new GenericMessage<Integer>(123));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notStreamable() {
+		new StreamingXPathMessageSplitter("/orders/order[@id='1']");
+	}
+
+}
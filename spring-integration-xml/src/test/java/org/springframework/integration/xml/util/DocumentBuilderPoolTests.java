@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.integration.util.SimplePool;
+
+/**
+ * @since 3.0
+ */
+public class DocumentBuilderPoolTests {
+
+	@Test
+	public void testBuildersReused() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		DocumentBuilderPool pool = new DocumentBuilderPool(DocumentBuilderFactory.newInstance()) {
+
+			@Override
+			protected DocumentBuilder createDocumentBuilder() {
+				created.incrementAndGet();
+				return super.createDocumentBuilder();
+			}
+
+		};
+		for (int i = 0; i < 10; i++) {
+			assertEquals("foo", pool.parse(new InputSource(new StringReader("<foo/>")))
+					.getDocumentElement().getNodeName());
+		}
+		assertEquals(1, created.get());
+		assertEquals(1, TestUtils.getPropertyValue(pool, "pool", SimplePool.class).getAllocatedCount());
+	}
+
+	@Test
+	public void testEntityResolverRetained() throws Exception {
+		final AtomicInteger resolved = new AtomicInteger();
+		DocumentBuilderPool pool = new DocumentBuilderPool(DocumentBuilderFactory.newInstance()) {
+
+			@Override
+			protected DocumentBuilder createDocumentBuilder() {
+				DocumentBuilder documentBuilder = super.createDocumentBuilder();
+				documentBuilder.setEntityResolver(new EntityResolver() {
+
+					public InputSource resolveEntity(String publicId, String systemId) {
+						resolved.incrementAndGet();
+						return new InputSource(new StringReader("<!ELEMENT foo EMPTY>"));
+					}
+
+				});
+				return documentBuilder;
+			}
+
+		};
+		for (int i = 0; i < 2; i++) {
+			assertEquals("foo", pool.parse(new InputSource(new StringReader(
+					"<!DOCTYPE foo SYSTEM \"http://example.com/foo.dtd\"><foo/>")))
+					.getDocumentElement().getNodeName());
+		}
+		assertEquals(2, resolved.get());
+		assertEquals(1, TestUtils.getPropertyValue(pool, "pool", SimplePool.class).getAllocatedCount());
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.xml.xpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import org.springframework.integration.xml.util.XmlTestUtil;
+import org.springframework.xml.xpath.XPathExpression;
+import org.springframework.xml.xpath.XPathParseException;
+
+/**
+ * @since 3.0
+ */
+public class CachingXPathExpressionFactoryTests {
+
+	@Test
+	public void testCached() {
+		XPathExpression expression = CachingXPathExpressionFactory.createXPathExpression("/orders/order");
+		assertSame(expression, CachingXPathExpressionFactory.createXPathExpression("/orders/order"));
+		assertNotSame(expression, CachingXPathExpressionFactory.createXPathExpression("/orders/order",
+				Collections.singletonMap("o", "urn:orders")));
+		assertEquals("/orders/order", expression.toString());
+	}
+
+	@Test
+	public void testNamespaces() throws Exception {
+		XPathExpression expression = CachingXPathExpressionFactory.createXPathExpression("/o:orders/o:order/@id",
+				Collections.singletonMap("o", "urn:orders"));
+		Document document = XmlTestUtil.getDocumentForString(
+				"<orders xmlns=\"urn:orders\"><order id=\"1\"/><order id=\"2\"/></orders>");
+		assertEquals("1", expression.evaluateAsString(document));
+		assertEquals(2, expression.evaluateAsNodeList(document).size());
+		assertEquals(1.0, expression.evaluateAsNumber(document), 0);
+		assertTrue(expression.evaluateAsBoolean(document));
+	}
+
+	@Test(expected = XPathParseException.class)
+	public void testInvalid() {
+		CachingXPathExpressionFactory.createXPathExpression("/orders/order[");
+	}
+
+	@Test
+	public void testConcurrentEvaluation() throws Exception {
+		final XPathExpression expression = CachingXPathExpressionFactory.createXPathExpression("count(/orders/order)");
+		ExecutorService exec = Executors.newFixedThreadPool(10);
+		List<Future<Double>> futures = new ArrayList<Future<Double>>();
+		for (int i = 0; i < 100; i++) {
+			final int n = i % 10;
+			futures.add(exec.submit(new Callable<Double>() {
+
+				public Double call() throws Exception {
+					StringBuilder orders = new StringBuilder("<orders>");
+					for (int j = 0; j < n; j++) {
+						orders.append("<order/>");
+					}
+					orders.append("</orders>");
+					return expression.evaluateAsNumber(XmlTestUtil.getDocumentForString(orders.toString()));
+				}
+
+			}));
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i % 10, futures.get(i).get(10, TimeUnit.SECONDS), 0);
+		}
+		exec.shutdown();
+	}
+
+}